@@ -0,0 +1,158 @@
+package com.ric.adv_camera.vision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer/consumer throughput of the frame handoff between the camera callback and the processing
+ * thread. A background thread plays the camera, filling whatever buffers the pool hands back as
+ * fast as it can, while the benchmark thread plays the processing loop.
+ *
+ * <p>{@code slot} measures {@link FrameSlot}; {@code monitor} measures the previous
+ * synchronized/wait/notifyAll handoff for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameHandoffBenchmark {
+
+    @Param({SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String resolution;
+
+    @Param({"slot", "monitor"})
+    public String handoff;
+
+    @Param({"3", "5"})
+    public int bufferCount;
+
+    private FrameBufferPool pool;
+    private Handoff target;
+    private Thread producer;
+    private volatile boolean producing;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final ConcurrentLinkedQueue<byte[]> cameraQueue = new ConcurrentLinkedQueue<>();
+        pool = new FrameBufferPool(bufferCount, Nv21Utils.frameSize(
+                SyntheticFrames.width(resolution), SyntheticFrames.height(resolution)));
+        pool.attach(cameraQueue::add);
+        target = handoff.equals("slot") ? new SlotHandoff() : new MonitorHandoff();
+
+        producing = true;
+        producer = new Thread(() -> {
+            while (producing) {
+                byte[] data = cameraQueue.poll();
+                if (data == null) {
+                    Thread.yield();
+                    continue;
+                }
+                data[0]++;
+                FrameBufferPool.Lease lease = pool.lease(data);
+                if (lease != null) {
+                    target.offer(lease);
+                }
+            }
+        }, "fake-camera");
+        producer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        producing = false;
+        producer.join();
+        target.close();
+    }
+
+    @Benchmark
+    public void consume(Blackhole blackhole) throws InterruptedException {
+        FrameBufferPool.Lease frame = target.take();
+        if (frame != null) {
+            blackhole.consume(frame.array()[0]);
+            frame.release();
+        }
+    }
+
+    private interface Handoff {
+        void offer(FrameBufferPool.Lease frame);
+
+        FrameBufferPool.Lease take() throws InterruptedException;
+
+        void close();
+    }
+
+    private static final class SlotHandoff implements Handoff {
+        private final FrameSlot slot = new FrameSlot();
+
+        @Override
+        public void offer(FrameBufferPool.Lease frame) {
+            slot.offer(frame);
+        }
+
+        @Override
+        public FrameBufferPool.Lease take() throws InterruptedException {
+            return slot.take();
+        }
+
+        @Override
+        public void close() {
+            slot.close();
+        }
+    }
+
+    /** The monitor-based handoff VisionCamera used before {@link FrameSlot}. */
+    private static final class MonitorHandoff implements Handoff {
+        private final Object lock = new Object();
+        private boolean active = true;
+        private FrameBufferPool.Lease pendingFrameData;
+
+        @Override
+        public void offer(FrameBufferPool.Lease frame) {
+            synchronized (lock) {
+                if (pendingFrameData != null) {
+                    pendingFrameData.release();
+                }
+                pendingFrameData = frame;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public FrameBufferPool.Lease take() throws InterruptedException {
+            synchronized (lock) {
+                while (active && pendingFrameData == null) {
+                    lock.wait();
+                }
+                if (!active) {
+                    return null;
+                }
+                FrameBufferPool.Lease data = pendingFrameData;
+                pendingFrameData = null;
+                return data;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (lock) {
+                active = false;
+                if (pendingFrameData != null) {
+                    pendingFrameData.release();
+                    pendingFrameData = null;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+}
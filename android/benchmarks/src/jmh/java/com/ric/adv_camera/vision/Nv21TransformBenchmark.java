@@ -0,0 +1,63 @@
+package com.ric.adv_camera.vision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-frame NV21 work outside the detector: cropping to a region of interest, and decoding to
+ * ARGB with rotation and downscaling as snapshots and previews do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Nv21TransformBenchmark {
+
+    @Param({SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String resolution;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    @Param({"1", "2"})
+    public int downscale;
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private RegionOfInterest.Crop crop;
+    private byte[] cropped;
+    private int[] pixels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        width = SyntheticFrames.width(resolution);
+        height = SyntheticFrames.height(resolution);
+        frame = SyntheticFrames.nv21(width, height);
+        // A centered band, the typical barcode scan region.
+        crop = new RegionOfInterest(0.1f, 0.3f, 0.9f, 0.7f).toCrop(width, height, rotation);
+        cropped = new byte[Nv21Utils.frameSize(crop.width, crop.height)];
+        pixels = new int[Nv21Utils.argbWidth(width, height, rotation, downscale)
+                * Nv21Utils.argbHeight(width, height, rotation, downscale)];
+    }
+
+    @Benchmark
+    public byte[] crop() {
+        Nv21Utils.crop(frame, width, height, crop.left, crop.top, crop.width, crop.height, cropped);
+        return cropped;
+    }
+
+    @Benchmark
+    public int[] toArgb() {
+        Nv21Utils.toArgb(frame, width, height, rotation, false, downscale, pixels);
+        return pixels;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ric.adv_camera.vision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preview size and frame rate range selection over a supported-values list the size of a typical
+ * rear camera's, for each of the requested resolutions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PreviewConfigBenchmark {
+
+    private static final int[][] SUPPORTED_SIZES = {
+            {4000, 3000}, {4000, 2250}, {3840, 2160}, {3264, 2448}, {3264, 1836}, {2592, 1944},
+            {2560, 1440}, {2048, 1536}, {1920, 1440}, {1920, 1080}, {1600, 1200}, {1600, 900},
+            {1440, 1080}, {1280, 960}, {1280, 720}, {1024, 768}, {960, 720}, {960, 540},
+            {864, 480}, {800, 600}, {800, 480}, {720, 480}, {640, 480}, {640, 360},
+            {480, 320}, {352, 288}, {320, 240}, {176, 144},
+    };
+
+    private static final int[][] SUPPORTED_FPS_RANGES = {
+            {7500, 30000}, {8000, 30000}, {10000, 30000}, {15000, 15000}, {15000, 30000},
+            {20000, 20000}, {24000, 24000}, {30000, 30000}, {15000, 60000}, {60000, 60000},
+    };
+
+    @Param({SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String resolution;
+
+    private int desiredWidth;
+    private int desiredHeight;
+    private int[] widths;
+    private int[] heights;
+    private List<int[]> fpsRanges;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        desiredWidth = SyntheticFrames.width(resolution);
+        desiredHeight = SyntheticFrames.height(resolution);
+        widths = new int[SUPPORTED_SIZES.length];
+        heights = new int[SUPPORTED_SIZES.length];
+        for (int i = 0; i < SUPPORTED_SIZES.length; i++) {
+            widths[i] = SUPPORTED_SIZES[i][0];
+            heights[i] = SUPPORTED_SIZES[i][1];
+        }
+        fpsRanges = new ArrayList<>();
+        for (int[] range : SUPPORTED_FPS_RANGES) {
+            fpsRanges.add(range);
+        }
+    }
+
+    @Benchmark
+    public int size() {
+        return PreviewConfigSelector.closestSize(
+                widths, heights, widths.length, desiredWidth, desiredHeight);
+    }
+
+    @Benchmark
+    public int[] fpsRange() {
+        return PreviewConfigSelector.selectFpsRange(fpsRanges, 30000);
+    }
+}
@@ -0,0 +1,107 @@
+package com.ric.adv_camera.vision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding the barcodes of one frame for the event channel. {@code binary} measures {@link
+ * BarcodeResultEncoder}; {@code maps} builds the nested maps {@code
+ * BarcodeScannerProcessor.barcodeToMap} produces, which the standard codec then has to walk, for
+ * comparison. ML Kit's {@code Barcode} is not available on the JVM, so the barcodes are plain
+ * values with the same fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResultEncodingBenchmark {
+
+    @Param({"1", "8"})
+    public int barcodeCount;
+
+    private static final class FakeBarcode {
+        final int format;
+        final int valueType;
+        final int left;
+        final int top;
+        final int width;
+        final int height;
+        final int[] points;
+        final String rawValue;
+
+        FakeBarcode(int index) {
+            format = 256;
+            valueType = 7;
+            left = 100 + index * 40;
+            top = 200;
+            width = 180;
+            height = 60;
+            points = new int[] {
+                    left, top, left + width, top, left + width, top + height, left, top + height};
+            rawValue = "https://example.com/item/" + (100000 + index);
+        }
+    }
+
+    private FakeBarcode[] barcodes;
+    private final BarcodeResultEncoder encoder = new BarcodeResultEncoder();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        barcodes = new FakeBarcode[barcodeCount];
+        for (int i = 0; i < barcodeCount; i++) {
+            barcodes[i] = new FakeBarcode(i);
+        }
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        encoder.begin(12.5);
+        for (FakeBarcode barcode : barcodes) {
+            encoder.beginBarcode(barcode.format, barcode.valueType, true,
+                    barcode.left, barcode.top, barcode.width, barcode.height);
+            for (int i = 0; i < barcode.points.length; i += 2) {
+                encoder.addPoint(barcode.points[i], barcode.points[i + 1]);
+            }
+            encoder.endBarcode(barcode.rawValue, barcode.rawValue);
+        }
+        return encoder.finish();
+    }
+
+    @Benchmark
+    public Map<String, Object> maps() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (FakeBarcode barcode : barcodes) {
+            Map<String, Object> barcodeMap = new HashMap<>();
+            barcodeMap.put("left", (double) barcode.left);
+            barcodeMap.put("top", (double) barcode.top);
+            barcodeMap.put("width", (double) barcode.width);
+            barcodeMap.put("height", (double) barcode.height);
+            List<double[]> points = new ArrayList<>();
+            for (int i = 0; i < barcode.points.length; i += 2) {
+                points.add(new double[] {barcode.points[i], barcode.points[i + 1]});
+            }
+            barcodeMap.put("points", points);
+            barcodeMap.put("rawValue", barcode.rawValue);
+            barcodeMap.put("displayValue", barcode.rawValue);
+            barcodeMap.put("format", barcode.format);
+            barcodeMap.put("valueType", barcode.valueType);
+            list.add(barcodeMap);
+        }
+        Map<String, Object> event = new HashMap<>();
+        event.put("barcodes", list);
+        event.put("avgFrameLatency", 12.5);
+        return event;
+    }
+}
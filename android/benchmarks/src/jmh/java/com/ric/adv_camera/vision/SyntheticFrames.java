@@ -0,0 +1,104 @@
+package com.ric.adv_camera.vision;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/** Deterministic camera-like inputs for the benchmarks. */
+final class SyntheticFrames {
+
+    /** The resolutions every frame benchmark runs at, as {@code @Param} values. */
+    static final String VGA = "640x480";
+    static final String HD = "1280x720";
+    static final String FULL_HD = "1920x1080";
+
+    private SyntheticFrames() {}
+
+    static int width(String resolution) {
+        return Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+    }
+
+    static int height(String resolution) {
+        return Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+    }
+
+    /** An NV21 frame with a gradient and some noise, so no code path sees only constant data. */
+    static byte[] nv21(int width, int height) {
+        byte[] frame = new byte[Nv21Utils.frameSize(width, height)];
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame[y * width + x] = (byte) ((x + y) / 8 + random.nextInt(16));
+            }
+        }
+        for (int i = width * height; i < frame.length; i++) {
+            frame[i] = (byte) (128 + random.nextInt(32) - 16);
+        }
+        return frame;
+    }
+
+    /**
+     * The three planes of a YUV_420_888 image as direct buffers, laid out like a camera HAL would:
+     * {@code rowPadding} bytes after every row, and chroma either interleaved (pixel stride 2, in
+     * NV21 or NV12 order) or planar (pixel stride 1).
+     */
+    static final class Planes {
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+        final int yRowStride;
+        final int uvRowStride;
+        final int uvPixelStride;
+
+        Planes(int width, int height, int rowPadding, String chroma) {
+            byte[] nv21 = nv21(width, height);
+            yRowStride = width + rowPadding;
+            y = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+            for (int row = 0; row < height; row++) {
+                y.position(row * yRowStride);
+                y.put(nv21, row * width, width);
+            }
+            y.clear();
+
+            int chromaWidth = width / 2;
+            int chromaHeight = height / 2;
+            int chromaStart = width * height;
+            if (chroma.equals("planar")) {
+                uvPixelStride = 1;
+                uvRowStride = chromaWidth + rowPadding;
+                u = ByteBuffer.allocateDirect(uvRowStride * (chromaHeight - 1) + chromaWidth);
+                v = ByteBuffer.allocateDirect(uvRowStride * (chromaHeight - 1) + chromaWidth);
+                for (int row = 0; row < chromaHeight; row++) {
+                    for (int col = 0; col < chromaWidth; col++) {
+                        int source = chromaStart + row * width + 2 * col;
+                        v.put(row * uvRowStride + col, nv21[source]);
+                        u.put(row * uvRowStride + col, nv21[source + 1]);
+                    }
+                }
+            } else {
+                uvPixelStride = 2;
+                uvRowStride = width + rowPadding;
+                boolean vFirst = chroma.equals("nv21");
+                ByteBuffer memory =
+                        ByteBuffer.allocateDirect(uvRowStride * (chromaHeight - 1) + width);
+                for (int row = 0; row < chromaHeight; row++) {
+                    for (int col = 0; col < chromaWidth; col++) {
+                        int source = chromaStart + row * width + 2 * col;
+                        int target = row * uvRowStride + 2 * col;
+                        memory.put(target + (vFirst ? 0 : 1), nv21[source]);
+                        memory.put(target + (vFirst ? 1 : 0), nv21[source + 1]);
+                    }
+                }
+                // Each plane starts at its first sample and ends at its last one, as in an Image.
+                v = slice(memory, vFirst ? 0 : 1, memory.capacity() - 1);
+                u = slice(memory, vFirst ? 1 : 0, memory.capacity() - 1);
+            }
+        }
+
+        private static ByteBuffer slice(ByteBuffer memory, int start, int length) {
+            ByteBuffer view = memory.duplicate();
+            view.position(start);
+            view.limit(start + length);
+            return view.slice();
+        }
+    }
+}
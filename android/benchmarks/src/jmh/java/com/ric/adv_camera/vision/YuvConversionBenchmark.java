@@ -0,0 +1,85 @@
+package com.ric.adv_camera.vision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YUV_420_888 to NV21 conversion for the plane layouts cameras deliver. {@code converter} measures
+ * {@link Yuv420Converter} into a reused buffer; {@code bytewise} measures the previous conversion,
+ * one {@code ByteBuffer.get(int)} per sample into a new array, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YuvConversionBenchmark {
+
+    @Param({SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String resolution;
+
+    @Param({"nv21", "nv12", "planar"})
+    public String chroma;
+
+    @Param({"0", "64"})
+    public int rowPadding;
+
+    private int width;
+    private int height;
+    private SyntheticFrames.Planes planes;
+    private final Yuv420Converter converter = new Yuv420Converter();
+    private byte[] out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        width = SyntheticFrames.width(resolution);
+        height = SyntheticFrames.height(resolution);
+        planes = new SyntheticFrames.Planes(width, height, rowPadding, chroma);
+        out = new byte[Nv21Utils.frameSize(width, height)];
+    }
+
+    @Benchmark
+    public byte[] converter() {
+        converter.toNv21(
+                planes.y, planes.yRowStride,
+                planes.u, planes.v, planes.uvRowStride, planes.uvPixelStride,
+                width, height, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] bytewise() {
+        byte[] nv21 = new byte[width * height + 2 * (width * height / 4)];
+        unpackBytewise(planes.y, planes.yRowStride, 1, width, height, nv21, 0, 1);
+        unpackBytewise(planes.u, planes.uvRowStride, planes.uvPixelStride,
+                width / 2, height / 2, nv21, width * height + 1, 2);
+        unpackBytewise(planes.v, planes.uvRowStride, planes.uvPixelStride,
+                width / 2, height / 2, nv21, width * height, 2);
+        return nv21;
+    }
+
+    /** The per-sample loop BitmapUtils.unpackPlane used before {@link Yuv420Converter}. */
+    private static void unpackBytewise(
+            ByteBuffer buffer, int rowStride, int pixelStride, int cols, int rows,
+            byte[] out, int offset, int outPixelStride) {
+        int outputPos = offset;
+        int rowStart = 0;
+        for (int row = 0; row < rows; row++) {
+            int inputPos = rowStart;
+            for (int col = 0; col < cols; col++) {
+                out[outputPos] = buffer.get(inputPos);
+                outputPos += outPixelStride;
+                inputPos += pixelStride;
+            }
+            rowStart += rowStride;
+        }
+    }
+}
@@ -3,23 +3,25 @@ package com.ric.adv_camera;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
+import android.graphics.YuvImage;
 import android.hardware.Camera;
 import android.hardware.SensorManager;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
-import android.util.DisplayMetrics;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.OrientationEventListener;
@@ -29,30 +31,43 @@ import android.view.SurfaceView;
 import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 import com.google.mlkit.vision.barcode.Barcode;
+import com.ric.adv_camera.vision.BarcodeResultEncoder;
+import com.ric.adv_camera.vision.BarcodeTracker;
+import com.ric.adv_camera.vision.CameraBackend;
+import com.ric.adv_camera.vision.DetectionRateController;
+import com.ric.adv_camera.vision.FakeCameraBackend;
+import com.ric.adv_camera.vision.FrameBufferPool;
+import com.ric.adv_camera.vision.FrameMetadata;
+import com.ric.adv_camera.vision.FrameRecorder;
+import com.ric.adv_camera.vision.RegionOfInterest;
+import com.ric.adv_camera.vision.ReplayFrameSource;
+import com.ric.adv_camera.vision.ScanGovernor;
+import com.ric.adv_camera.vision.SceneChangeDetector;
+import com.ric.adv_camera.vision.SharpestFrameKeeper;
+import com.ric.adv_camera.vision.SharpnessFilter;
 import com.ric.adv_camera.vision.VisionCamera;
 import com.ric.adv_camera.vision.barcodescanner.BarcodeScannerProcessor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
@@ -60,8 +75,6 @@ import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.PluginRegistry;
 import io.flutter.plugin.platform.PlatformView;
 
-import static com.ric.adv_camera.vision.VisionCamera.IMAGE_FORMAT;
-
 class WaitForCameraObject {
     MethodChannel.Result o;
 
@@ -85,18 +98,29 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
     private final SurfaceView imgSurface;
     private final SurfaceHolder holderTransparent;
     private final SurfaceHolder surfaceHolder;
-    private Camera camera;
     private int cameraFacing = 0;
     private File folder;
     private Integer maxSize;
     private String savePath;
     private String fileNamePrefix = "adv_camera";
+    private final PictureSaver pictureSaver = new PictureSaver();
+    private BurstCapture burstCapture;
+    /** Owns every {@link #backend} call; Camera1 delivers its callbacks on this thread too. */
+    private final HandlerThread cameraThread;
+    private final Handler cameraHandler;
+    private final StartupTimeline startupTimeline = new StartupTimeline();
+    private final EventChannel barcodeChannel;
+    private final MetricsStreamHandler metricsStreamHandler;
+    private final EventChannel metricsChannel;
+    /** Resources from CameraPrewarmer, null when the view starts cold. */
+    @Nullable
+    private CameraPrewarmer.WarmResources warmResources;
+    private final CameraCapabilityStore capabilityStore;
+    private final ParameterChangeClassifier parameterChangeClassifier;
     private int iOrientation = 0;
     private int mPhotoAngle = 90;
     private String previewRatio;
-    private float mDist;
-    private Camera.Size pictureSize;
-    private String flashType = Camera.Parameters.FLASH_MODE_AUTO;
+    private String flashType = CameraBackend.FLASH_AUTO;
     private boolean bestPictureSize;
     //    private View focusRect;
     private WaitForCameraObject waitForCameraObject;
@@ -107,14 +131,52 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
     private int barcodeFormats = Barcode.FORMAT_ALL_FORMATS;
 
     private  EventChannel.EventSink mEventSink = null;
+    /** Reused for every barcode event; only touched on the main thread. */
+    private final BarcodeResultEncoder barcodeEncoder = new BarcodeResultEncoder();
+    /**
+     * Reports barcodes once per appearance instead of on every frame when tracking is enabled;
+     * only touched on the main thread.
+     */
+    @Nullable
+    private BarcodeTracker<Barcode> barcodeTracker;
     private BarcodeScannerProcessor barcodeScanner;
+    /** The region of interest set from Dart, before the governor scales it. */
+    @Nullable
+    private volatile RegionOfInterest requestedRegionOfInterest;
+    /**
+     * Steps scanning down while the device is hot, low on battery or memory, or falling behind;
+     * null when disabled. Only touched on the camera thread.
+     */
+    @Nullable
+    private ScanGovernor scanGovernor;
+    @Nullable
+    private DeviceSignalSource deviceSignals;
+    /** Formats scanned while the governor saves power, 0 to keep {@link #barcodeFormats}. */
+    private int reducedBarcodeFormats;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** Appends the scanner's telemetry to a file in debug mode, null otherwise. */
+    @Nullable
+    private TelemetryFileFlusher telemetryFlusher;
+    /** Writes the preview frames to a capture file while recording, null otherwise. */
+    @Nullable
+    private FrameRecorder frameRecorder;
+    /** Feeds the detector from a capture file instead of the camera while replaying. */
+    @Nullable
+    private ReplayFrameSource replaySource;
     private float initialWidth;
     private float initialHeight;
 
     private boolean enableDebugMode;
+    private int previewBufferCount = VisionCamera.DEFAULT_PREVIEW_BUFFER_COUNT;
 
 
     private VisionCamera visionCamera;
+    /** The cameraBackend creation param: "camera1", "camera2" or "fake". */
+    private String backendName = "camera1";
+    /** The open camera, null while there is none. */
+    private CameraBackend<? super SurfaceHolder> backend;
+    /** Sizes, flash, zoom and focus on top of {@link #backend}. */
+    private CameraController controller;
 
     @SuppressLint({"InflateParams", "ClickableViewAccessibility"})
     AdvCamera(
@@ -123,12 +185,15 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
             PluginRegistry.Registrar registrar, Object args) {
         this.context = context;
         this.activity = registrar.activity();
+        this.parameterChangeClassifier = new ParameterChangeClassifier(context);
+        this.capabilityStore = CameraCapabilityStore.getInstance(context);
 
         methodChannel = new MethodChannel(registrar.messenger(), "plugins.flutter.io/adv_camera/" + id);
         methodChannel.setMethodCallHandler(this);
 
-        final EventChannel eventChannel = new EventChannel(registrar.messenger(), "plugins.flutter.io/adv_camera/barcodeStream");
-        eventChannel.setStreamHandler(this);
+        // Per view, like the method channel, so every view's barcodes reach its own controller.
+        barcodeChannel = new EventChannel(registrar.messenger(), "plugins.flutter.io/adv_camera/barcodeStream/" + id);
+        barcodeChannel.setStreamHandler(this);
 
 
         view = registrar.activity().getLayoutInflater().inflate(com.ric.adv_camera.R.layout.activity_camera, null);
@@ -146,13 +211,23 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
         cameraFragment.listener = new FragmentLifecycleListener() {
             @Override
             public void onPause() {
-                if (camera != null)
-                    camera.stopPreview();
+                cameraHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (backend != null)
+                            backend.stopPreview();
+                    }
+                });
             }
 
             @Override
             public void onResume() {
-                setupCamera();
+                cameraHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        setupCamera();
+                    }
+                });
             }
         };
 
@@ -175,6 +250,12 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
             Object initialWidth = params.get("initialWidth");
             Object initialHeight = params.get("initialHeight");
             Object enableDebugMode = params.get("enableDebugMode");
+            Object previewBufferCount = params.get("previewBufferCount");
+            Object barcodeTracking = params.get("barcodeTracking");
+            Object barcodeConfirmFrames = params.get("barcodeConfirmFrames");
+            Object barcodeLostFrames = params.get("barcodeLostFrames");
+            Object reducedBarcodeFormats = params.get("governorBarcodeFormats");
+            Object cameraBackend = params.get("cameraBackend");
 
             if (initialCamera != null) {
                 if (initialCamera.equals("front")) {
@@ -247,37 +328,47 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
                 this.enableDebugMode = Boolean.parseBoolean(enableDebugMode.toString());
             }
 
-        }
-
-        imgSurface.setOnTouchListener(new View.OnTouchListener() {
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                // Get the pointer ID
-                Camera.Parameters params = camera.getParameters();
+            if(previewBufferCount != null) {
+                this.previewBufferCount = Integer.parseInt(previewBufferCount.toString());
+            }
 
-                int action = event.getAction();
+            if (barcodeTracking != null && Boolean.parseBoolean(barcodeTracking.toString())) {
+                int confirmFrames = barcodeConfirmFrames != null
+                        ? Integer.parseInt(barcodeConfirmFrames.toString())
+                        : BarcodeTracker.DEFAULT_CONFIRM_FRAMES;
+                int lostFrames = barcodeLostFrames != null
+                        ? Integer.parseInt(barcodeLostFrames.toString())
+                        : BarcodeTracker.DEFAULT_LOST_FRAMES;
+                this.barcodeTracker = new BarcodeTracker<>(confirmFrames, lostFrames);
+            }
 
-                Log.d(TAG,"onTouch: pointer count"+ event.getPointerCount()+" action: "+action);
+            if (reducedBarcodeFormats != null) {
+                this.reducedBarcodeFormats = Integer.parseInt(reducedBarcodeFormats.toString());
+            }
 
+            if (cameraBackend != null) {
+                this.backendName = cameraBackend.toString();
+            }
 
-                if (event.getPointerCount() > 1) {
-                    // handle multi-touch events
-                    if (action == MotionEvent.ACTION_POINTER_DOWN) {
-                        mDist = getFingerSpacing(event);
-                    } else if (action == MotionEvent.ACTION_MOVE && params.isZoomSupported()) {
-                        camera.cancelAutoFocus();
-                        handleZoom(event, params);
-                    }
-                } else {
-                    // handle single touch events
-                    if (action == MotionEvent.ACTION_UP) {
-                        int pointerId = event.getPointerId(0);
-                        int pointerIndex = event.findPointerIndex(pointerId);
+        }
+        controller = new CameraController(
+                (int) this.initialWidth, (int) this.initialHeight, this.bestPictureSize, this.flashType);
 
-                        // Get the pointer's current position
-                        handleFocus(event.getX(pointerIndex), event.getY(pointerIndex));
+        imgSurface.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                // The event is recycled once this returns, the camera thread gets its own copy.
+                final MotionEvent copy = MotionEvent.obtain(event);
+                cameraHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            handleTouch(copy);
+                        } finally {
+                            copy.recycle();
+                        }
                     }
-                }
+                });
                 return true;
             }
         });
@@ -293,203 +384,243 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
 
 
 
+        // Adopt the camera thread, camera and scanner of a matching prewarm() if there is one.
+        warmResources = CameraPrewarmer.claim(cameraFacing, barcodeFormats);
+        if (warmResources != null) {
+            cameraThread = warmResources.cameraThread;
+            cameraHandler = warmResources.cameraHandler;
+        } else {
+            cameraThread = new HandlerThread("AdvCamera");
+            cameraThread.start();
+            cameraHandler = new Handler(cameraThread.getLooper());
+        }
+
         identifyOrientationEvents();
-        visionCamera = new VisionCamera(activity);
-        barcodeScanner = new BarcodeScannerProcessor(this.context, this.barcodeFormats, this.enableDebugMode);
+        visionCamera = new VisionCamera();
+        if (warmResources != null && !enableDebugMode) {
+            barcodeScanner = warmResources.barcodeScanner;
+        } else {
+            if (warmResources != null) {
+                // The warm scanner was built without debug mode.
+                warmResources.barcodeScanner.stop();
+            }
+            barcodeScanner = new BarcodeScannerProcessor(this.context, this.barcodeFormats, this.enableDebugMode);
+        }
         barcodeScanner.setBarcodeEventHandler(this);
+        barcodeScanner.setDetectionRateController(visionCamera.getDetectionRateController());
+        barcodeScanner.setMetrics(visionCamera.getMetrics());
+        if (args instanceof HashMap) {
+            applyDetectionRate((Map<String, Object>) args);
+            Object sharpestFrameCount = ((Map<String, Object>) args).get("sharpestFrameCount");
+            if (sharpestFrameCount != null) {
+                barcodeScanner.setSharpestFrameCount(Integer.parseInt(sharpestFrameCount.toString()));
+            }
+        }
+        if (enableDebugMode) {
+            telemetryFlusher = new TelemetryFileFlusher(
+                    barcodeScanner.getTelemetry(), new File(context.getFilesDir(), TELEMETRY_FILE_NAME));
+            telemetryFlusher.start();
+        }
+        metricsStreamHandler = new MetricsStreamHandler(visionCamera.getMetrics());
+        metricsChannel = new EventChannel(registrar.messenger(), "plugins.flutter.io/adv_camera/metrics/" + id);
+        metricsChannel.setStreamHandler(metricsStreamHandler);
+        if (args instanceof HashMap) {
+            Map<String, Object> params = (Map<String, Object>) args;
+            Object enableGovernor = params.get("enableGovernor");
+            if (enableGovernor != null && Boolean.parseBoolean(enableGovernor.toString())) {
+                deviceSignals = new DeviceSignalSource(context, visionCamera.getMetrics());
+                scanGovernor = new ScanGovernor(deviceSignals);
+                Object governorLatencyBudgetMs = params.get("governorLatencyBudgetMs");
+                if (governorLatencyBudgetMs != null) {
+                    scanGovernor.setLatencyBudgetMs(Long.parseLong(governorLatencyBudgetMs.toString()));
+                }
+                cameraHandler.postDelayed(governorTick, GOVERNOR_INTERVAL_MS);
+            }
+            requestedRegionOfInterest = parseRegionOfInterest(params.get("regionOfInterest"));
+            applyRegionOfInterest();
+        }
     }
 
 
     @Override
-    public void onMethodCall(MethodCall methodCall, @NonNull MethodChannel.Result result) {
-        switch (methodCall.method) {
-            case "waitForCamera":
-                if (camera == null)
-                    waitForCameraObject = new WaitForCameraObject(result);
-                else
-                    result.success(true);
-                break;
-            case "turnOff":
-                camera.stopPreview();
-                result.success(null);
-                break;
-            case "setPreviewRatio": {
-                String previewRatio = "";
+    public void onMethodCall(final MethodCall methodCall, @NonNull MethodChannel.Result result) {
+        final MainThreadResult mainThreadResult = new MainThreadResult(result);
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleMethodCall(methodCall, mainThreadResult);
+                } catch (RuntimeException e) {
+                    // E.g. a call before the camera is open or an argument of the wrong type; the
+                    // camera thread has to survive it and Dart still needs an answer.
+                    Log.e(TAG, methodCall.method + " failed", e);
+                    if (!mainThreadResult.hasReplied()) {
+                        mainThreadResult.error("Camera Error", methodCall.method, e.getMessage());
+                    }
+                }
+            }
+        });
+    }
 
+    /** Runs on the camera thread; {@code result} forwards to the main thread. */
+    private void handleMethodCall(MethodCall methodCall, MethodChannel.Result result) {
+        if (handleCameraCall(methodCall, result)) {
+            return;
+        }
+        switch (methodCall.method) {
+            case "setSavePath":
                 if (methodCall.arguments instanceof HashMap) {
                     @SuppressWarnings({"unchecked"})
                     Map<String, Object> params = (Map<String, Object>) methodCall.arguments;
-                    Object previewRatioRaw = params.get("previewRatio");
-                    previewRatio = previewRatioRaw == null ? null : previewRatioRaw.toString();
+                    this.savePath = params.get("savePath") == null ? null : params.get("savePath").toString();
                 }
 
-                Camera.Parameters param = camera.getParameters();
-
-                List<Camera.Size> sizes = param.getSupportedPreviewSizes();
-                Camera.Size selectedSize = null;
-                for (Camera.Size size : sizes) {
-                    if (asFraction(size.width, size.height).equals(previewRatio)) {
-                        selectedSize = size;
-                        break;
-                    }
-                }
+                folder = new File(this.savePath);
 
-                if (selectedSize == null) {
-                    result.success(false);
-                    return;
+                if (!folder.exists()) {
+                    folder.mkdirs();
                 }
 
-                this.previewRatio = previewRatio;
-
-                param.setPreviewSize(selectedSize.width, selectedSize.height);
-
-                camera.stopPreview();
-                camera.setParameters(param);
-                startPreview();
-
                 result.success(true);
                 break;
-            }
-            case "switchCamera":
-                if (cameraFacing == 0) {
-                    cameraFacing = 1;
-                } else {
-                    cameraFacing = 0;
+            case "setDetectionRate": {
+                if (methodCall.arguments instanceof HashMap) {
+                    @SuppressWarnings({"unchecked"})
+                    Map<String, Object> params = (Map<String, Object>) methodCall.arguments;
+                    applyDetectionRate(params);
                 }
 
-                camera.stopPreview();
-                camera.release();
-                setupCamera();
                 result.success(true);
                 break;
-            case "getPreviewSize": {
-                final Camera.Size size = camera.getParameters().getPreviewSize();
-                result.success(size.width + ":" + size.height);
-                break;
             }
-            case "getPictureSizes": {
-                List<String> pictureSizes = new ArrayList<>();
-
-                Camera.Parameters param = camera.getParameters();
-
-                List<Camera.Size> sizes = param.getSupportedPictureSizes();
-                for (Camera.Size size : sizes) {
-                    pictureSizes.add(size.width + ":" + size.height);
-                }
-
-                result.success(pictureSizes);
-                break;
-            }
-            case "setPictureSize": {
-                int pictureWidth = 0;
-                int pictureHeight = 0;
-                String error = "";
+            case "setRegionOfInterest": {
+                Object roi = null;
 
                 if (methodCall.arguments instanceof HashMap) {
                     @SuppressWarnings({"unchecked"})
                     Map<String, Object> params = (Map<String, Object>) methodCall.arguments;
-                    pictureWidth = (int) params.get("pictureWidth");
-                    pictureHeight = (int) params.get("pictureHeight");
+                    roi = params.get("regionOfInterest");
                 }
 
-                Camera.Parameters param = camera.getParameters();
-
-                param.setPictureSize(pictureWidth, pictureHeight);
-
-                camera.stopPreview();
-
                 try {
-                    camera.setParameters(param);
-                    this.pictureSize = camera.new Size(pictureWidth, pictureHeight);
-                } catch (RuntimeException e) {
-                    error = e.getMessage();
-                }
-
-                startPreview();
-
-                if (error.isEmpty()) {
+                    requestedRegionOfInterest = parseRegionOfInterest(roi);
+                    applyRegionOfInterest();
                     result.success(true);
-                } else {
-                    result.error("Camera Error", "setPictureSize", error);
+                } catch (IllegalArgumentException e) {
+                    result.error("Camera Error", "setRegionOfInterest", e.getMessage());
                 }
                 break;
             }
-            case "setSavePath":
+            case "captureImage": {
+                Integer maxSize = this.maxSize;
                 if (methodCall.arguments instanceof HashMap) {
                     @SuppressWarnings({"unchecked"})
                     Map<String, Object> params = (Map<String, Object>) methodCall.arguments;
-                    this.savePath = params.get("savePath") == null ? null : params.get("savePath").toString();
-                }
-
-                folder = new File(this.savePath);
-
-                if (!folder.exists()) {
-                    folder.mkdirs();
+                    Object maxSizeArg = params.get("maxSize");
+                    if (maxSizeArg != null) {
+                        maxSize = Integer.parseInt(maxSizeArg.toString());
+                    }
                 }
-
-                result.success(true);
-                break;
-            case "getFlashType": {
-                Camera.Parameters param = camera.getParameters();
-                result.success(param.getSupportedFlashModes());
+                captureImage(maxSize, result);
                 break;
             }
-            case "setFlashType": {
-                String flashType = "auto";
-
+            case "captureSharpestFrame": {
+                Integer maxSize = this.maxSize;
                 if (methodCall.arguments instanceof HashMap) {
                     @SuppressWarnings({"unchecked"})
                     Map<String, Object> params = (Map<String, Object>) methodCall.arguments;
-                    flashType = params.get("flashType") == null ? "auto" : params.get("flashType").toString();
+                    Object maxSizeArg = params.get("maxSize");
+                    if (maxSizeArg != null) {
+                        maxSize = Integer.parseInt(maxSizeArg.toString());
+                    }
                 }
-
-                Camera.Parameters param = camera.getParameters();
-
-                if (this.flashType.equals("torch") && flashType.equals("on")) {
-                    param.setFlashMode("off");
-                    camera.setParameters(param);
+                captureSharpestFrame(maxSize, result);
+                break;
+            }
+            case "startBurst": {
+                Map<String, Object> params = new HashMap<>();
+                if (methodCall.arguments instanceof HashMap) {
+                    @SuppressWarnings({"unchecked"})
+                    Map<String, Object> arguments = (Map<String, Object>) methodCall.arguments;
+                    params = arguments;
                 }
-
-                if (flashType.equals("torch")) {
-                    List<String> supportedFlashModes = param.getSupportedFlashModes();
-
-                    if (supportedFlashModes != null) {
-                        if (supportedFlashModes.contains(Camera.Parameters.FLASH_MODE_TORCH)) {
-                            this.flashType = Camera.Parameters.FLASH_MODE_TORCH;
-                        } else if (supportedFlashModes.contains(Camera.Parameters.FLASH_MODE_ON)) {
-                            this.flashType = Camera.Parameters.FLASH_MODE_ON;
-                        }
-                    }
-                } else {
-                    this.flashType = flashType;
+                startBurst(params, result);
+                break;
+            }
+            case "stopBurst":
+                if (burstCapture != null) {
+                    burstCapture.stop();
                 }
-
-                param.setFlashMode(translateFlashType(param.getSupportedFlashModes()));
-
-                camera.stopPreview();
-                camera.setParameters(param);
-                startPreview();
-
                 result.success(true);
                 break;
+            case "startFrameRecording": {
+                long maxBytes = DEFAULT_RECORDING_MAX_BYTES;
+                if (methodCall.arguments instanceof HashMap) {
+                    @SuppressWarnings({"unchecked"})
+                    Map<String, Object> params = (Map<String, Object>) methodCall.arguments;
+                    Object maxBytesArg = params.get("maxBytes");
+                    if (maxBytesArg != null) {
+                        maxBytes = Long.parseLong(maxBytesArg.toString());
+                    }
+                }
+                startFrameRecording(maxBytes, result);
+                break;
             }
-            case "setFocus": {
-                float x = 0f;
-                float y = 0f;
-
+            case "stopFrameRecording":
+                result.success(stopFrameRecording());
+                break;
+            case "startReplay": {
+                Map<String, Object> params = new HashMap<>();
                 if (methodCall.arguments instanceof HashMap) {
+                    @SuppressWarnings({"unchecked"})
+                    Map<String, Object> arguments = (Map<String, Object>) methodCall.arguments;
+                    params = arguments;
+                }
+                startReplay(params, result);
+                break;
+            }
+            case "stopReplay":
+                result.success(stopReplay());
+                break;
+            case "getStartupTimeline":
+                result.success(startupTimeline.toMap());
+                break;
+            case "getTelemetry": {
+                long since = 0;
+                if (methodCall.arguments instanceof HashMap) {
+                    @SuppressWarnings({"unchecked"})
                     Map<String, Object> params = (Map<String, Object>) methodCall.arguments;
-                    x = (float) Float.parseFloat(params.get("x").toString());
-                    y = (float) Float.parseFloat(params.get("y").toString());
+                    Object sinceRaw = params.get("since");
+                    if (sinceRaw != null) {
+                        since = Long.parseLong(sinceRaw.toString());
+                    }
                 }
 
-                handleFocus(x, y);
+                result.success(barcodeScanner.getTelemetry().toMap(since));
                 break;
             }
+            case "getGovernorState":
+                result.success(scanGovernor != null ? governorStateToMap() : null);
+                break;
+            case "getMetrics":
+                result.success(visionCamera.getMetrics().toMap(SystemClock.elapsedRealtime()));
+                break;
+            case "getPreviewBufferStats": {
+                FrameBufferPool pool = backend != null ? backend.getBufferPool() : null;
+                if (pool == null) {
+                    result.success(null);
+                    break;
+                }
 
-            case "turnOn" : {
-                startPreview();
-                result.success(null);
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("capacity", pool.getCapacity());
+                stats.put("leasesHeld", pool.getLeasesHeld());
+                stats.put("starvations", pool.getStarvationCount());
+                stats.put("recycled", pool.getRecycledCount());
+                stats.put("droppedFrames", visionCamera.getDroppedFrameCount());
+                stats.put("staticSceneSkips", barcodeScanner.getSceneChangeDetector().getSkippedCount());
+                stats.put("blurredSkips", barcodeScanner.getSharpnessFilter().getDroppedCount());
+                result.success(stats);
                 break;
             }
         }
@@ -507,6 +638,31 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
         }
         disposed = true;
         methodChannel.setMethodCallHandler(null);
+        barcodeChannel.setStreamHandler(null);
+        metricsChannel.setStreamHandler(null);
+        metricsStreamHandler.stop();
+        if (telemetryFlusher != null) {
+            telemetryFlusher.stop();
+        }
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                cameraHandler.removeCallbacks(governorTick);
+                if (burstCapture != null) {
+                    burstCapture.stop();
+                }
+                stopFrameRecording();
+                releaseCamera();
+                // Only once the camera is closed, so no picture can arrive for a stopped saver.
+                // Pictures already queued are still written.
+                pictureSaver.shutdown();
+                visionCamera.release();
+                // Hands the scanner client back to the pool, also when the pipeline never got it.
+                barcodeScanner.stop();
+                // Anything posted after this is dropped, including a late surfaceDestroyed.
+                cameraThread.quit();
+            }
+        });
 
 
         CameraFragment f = (CameraFragment) activity.getFragmentManager()
@@ -518,20 +674,43 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
 
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
-        setupCamera();
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                setupCamera();
+            }
+        });
     }
 
+    /** Opens and configures {@link #backend}; runs on the camera thread. */
     private void setupCamera() {
+        startupTimeline.mark(StartupTimeline.SETUP_STARTED);
+        if (backend != null) {
+            // Resumed without the surface going away, e.g. after switchCamera.
+            releaseCamera();
+        }
+
+        Camera warmCamera = null;
+        if (warmResources != null) {
+            warmCamera = warmResources.takeCamera();
+            warmResources = null;
+        }
+        CameraBackend<? super SurfaceHolder> opened = createBackend();
         try {
-            if (cameraFacing == 0) {
-                camera = Camera.open(0);
+            if (warmCamera != null && opened instanceof Camera1Backend) {
+                ((Camera1Backend) opened).adopt(warmCamera, cameraFacing);
             } else {
-                camera = Camera.open(1);
+                if (warmCamera != null) {
+                    warmCamera.release();
+                }
+                opened.open(cameraFacing);
             }
-        } catch (RuntimeException e) {
-            e.printStackTrace();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Opening the " + backendName + " camera failed", e);
             return;
         }
+        backend = opened;
+        startupTimeline.mark(StartupTimeline.CAMERA_OPENED);
 
         if (waitForCameraObject != null) {
             waitForCameraObject.notifyCameraSet();
@@ -539,132 +718,225 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
         }
 
         try {
-            Camera.Parameters param = camera.getParameters();
-            List<Camera.Size> sizes = param.getSupportedPictureSizes();
-            Collections.sort(sizes, new Comparator<Camera.Size>() {
-                @Override
-                public int compare(Camera.Size o1, Camera.Size o2) {
-                    return (o2.width - o1.width) + (o2.height - o1.height);
-                }
-            });
-
-            if (this.bestPictureSize) {
-                pictureSize = sizes.get(0);
-            } else {
-                pictureSize = param.getPictureSize();
+            final String capabilitiesKey = CameraCapabilityStore.key(
+                    backendName, cameraFacing, initialWidth, initialHeight, bestPictureSize);
+            CameraCapabilities cached = capabilityStore.get(capabilitiesKey);
+            CameraCapabilities applied = controller.attach(backend, cached);
+            if (applied != cached) {
+                capabilityStore.put(capabilitiesKey, applied);
             }
-
-            for(Camera.Size s : sizes) {
-                Log.d(TAG, "available size: "+s.width+"x"+s.height);
+            if (scanGovernor != null && enableMlVision) {
+                // The governor may have scaled the preview down before the camera restarted.
+                controller.applyPreviewScale(scanGovernor.getPolicy().previewScale);
             }
+            backend.setPreviewBufferCount(previewBufferCount);
+            startupTimeline.mark(StartupTimeline.PARAMETERS_APPLIED);
 
-            Camera.Size selectedSize = sizes.get((int) Math.floor(sizes.size()/2));
-            for (Camera.Size size : sizes) {
-                if (size.width == initialWidth && size.height == initialHeight) {
-                    selectedSize = size;
-                    break;
-                }
+            backend.setDisplayRotation(getDisplayDegrees());
+            backend.setPreviewTarget(surfaceHolder);
+            if (enableMlVision) {
+                visionCamera.setMachineLearningFrameProcessor(barcodeScanner);
             }
+            // Also without ML vision, for bursts and frame recordings.
+            visionCamera.start(backend, null);
+            visionCamera.runOnNextFrame(new Runnable() {
+                @Override
+                public void run() {
+                    startupTimeline.mark(StartupTimeline.FIRST_PREVIEW_FRAME);
+                }
+            });
+            backend.startPreview();
+            startupTimeline.mark(StartupTimeline.PREVIEW_STARTED);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Starting the " + backendName + " preview failed", e);
+            FirebaseCrashlytics.getInstance().recordException(e);
+        }
+    }
 
-            Log.d(TAG, ">> selected size: "+selectedSize.width+"x"+selectedSize.height);
-
-            //get diff to get perfact preview sizes
-            DisplayMetrics displaymetrics = new DisplayMetrics();
-            activity.getWindowManager().getDefaultDisplay().getMetrics(displaymetrics);
+    /**
+     * Applies the detection rate keys found in {@code params}; keys that are absent keep their
+     * current value.
+     */
+    private void applyDetectionRate(Map<String, Object> params) {
+        DetectionRateController controller = visionCamera.getDetectionRateController();
+        Object frameStride = params.get("detectionFrameStride");
+        Object targetDetectionsPerSecond = params.get("targetDetectionsPerSecond");
+        Object latencyBudgetMs = params.get("detectorLatencyBudgetMs");
+        Object skipStaticScenes = params.get("skipStaticScenes");
+        Object staticSceneThreshold = params.get("staticSceneThreshold");
+        Object staticSceneRefreshMs = params.get("staticSceneRefreshMs");
+        Object skipBlurredFrames = params.get("skipBlurredFrames");
+        Object blurThresholdRatio = params.get("blurThresholdRatio");
+
+        if (frameStride != null) {
+            controller.setFrameStride(Integer.parseInt(frameStride.toString()));
+        }
 
-            param.setPreviewSize(selectedSize.width, selectedSize.height);
-            param.setPictureSize(pictureSize.width, pictureSize.height);
-            param.setFlashMode(translateFlashType(param.getSupportedFlashModes()));
+        if (targetDetectionsPerSecond != null) {
+            controller.setTargetDetectionsPerSecond(Float.parseFloat(targetDetectionsPerSecond.toString()));
+        }
 
+        if (latencyBudgetMs != null) {
+            controller.setLatencyBudgetMs(Long.parseLong(latencyBudgetMs.toString()));
+        }
 
-            List<String> supportedFocusMode = param.getSupportedFocusModes();
-            for (String _mode : supportedFocusMode) {
-                Log.d(TAG, "available focus mode: "+_mode);
-            }
+        SceneChangeDetector sceneChangeDetector = barcodeScanner.getSceneChangeDetector();
+        if (staticSceneThreshold != null) {
+            sceneChangeDetector.setThreshold(Float.parseFloat(staticSceneThreshold.toString()));
+        }
 
+        if (staticSceneRefreshMs != null) {
+            sceneChangeDetector.setRefreshIntervalMs(Long.parseLong(staticSceneRefreshMs.toString()));
+        }
 
+        if (skipStaticScenes != null) {
+            sceneChangeDetector.setEnabled(Boolean.parseBoolean(skipStaticScenes.toString()));
+        }
 
-            String focusMode = Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE;
-            if (!supportedFocusMode.contains(focusMode)) {
-                focusMode =  Camera.Parameters.FOCUS_MODE_AUTO;
-            }
-            Log.i(TAG, "Set Focus mode "+focusMode);
-            param.setFocusMode(focusMode);
-            param.setPreviewFormat(IMAGE_FORMAT);
+        SharpnessFilter sharpnessFilter = barcodeScanner.getSharpnessFilter();
+        if (blurThresholdRatio != null) {
+            sharpnessFilter.setThresholdRatio(Float.parseFloat(blurThresholdRatio.toString()));
+        }
 
+        if (skipBlurredFrames != null) {
+            sharpnessFilter.setEnabled(Boolean.parseBoolean(skipBlurredFrames.toString()));
+        }
+    }
 
-            /// I block this script because Xiaomi 4a and Huawei gets rotated because of this
-            int orientation = setCameraDisplayOrientation(0);
-//            param.setRotation(orientation);
-            //SetRecordingHint to true also a workaround for low framerate on Nexus 4
-            //https://stackoverflow.com/questions/14131900/extreme-camera-lag-on-nexus-4
-            param.setRecordingHint(true);
+    /** Hands the requested region to the scanner, shrunk while the governor asks for it. */
+    private void applyRegionOfInterest() {
+        RegionOfInterest roi = requestedRegionOfInterest;
+        float scale = scanGovernor != null ? scanGovernor.getPolicy().regionScale : 1f;
+        if (scale < 1f) {
+            roi = (roi != null ? roi : FULL_FRAME).scale(scale);
+        }
+        barcodeScanner.setRegionOfInterest(roi);
+    }
 
-            try {
-                camera.setParameters(param);
-            } catch (RuntimeException e) {
-                //Log.d(TAG, "set Parameters Failed\n" + pictureSize.width + ", " + pictureSize.height);
-                Log.e(TAG, "Set Camera Paramters failed", e);
-                FirebaseCrashlytics.getInstance().recordException(e);
+    /** Re-evaluates the governor every {@link #GOVERNOR_INTERVAL_MS}; runs on the camera thread. */
+    private final Runnable governorTick = new Runnable() {
+        @Override
+        public void run() {
+            if (disposed) {
+                return;
             }
-
-            if(this.enableMlVision) {
-                visionCamera.setMachineLearningFrameProcessor(barcodeScanner);
-                visionCamera.start(camera);
+            deviceSignals.refresh();
+            if (scanGovernor.evaluate(SystemClock.elapsedRealtime())) {
+                applyGovernorPolicy();
             }
-
-            camera.setPreviewDisplay(surfaceHolder);
-            camera.startPreview();
-        } catch (Exception e) {
-            e.printStackTrace();
+            cameraHandler.postDelayed(this, GOVERNOR_INTERVAL_MS);
         }
-    }
-
-
-    public String translateFlashType(List<String> supportedModes) {
-        String result = this.flashType;
-
-        if (cameraFacing == 1) {
-            if (!this.flashType.equals("off")) {
-                result = "on";
+    };
+
+    /** Applies the policy of the governor's current level and reports it to Dart. */
+    private void applyGovernorPolicy() {
+        ScanGovernor.Policy policy = scanGovernor.getPolicy();
+        Log.i(TAG, "Governor level " + ScanGovernor.levelName(scanGovernor.getLevel())
+                + " (" + scanGovernor.getReason() + ")");
+
+        visionCamera.getDetectionRateController().setMaxDetectionsPerSecond(policy.maxDetectionsPerSecond);
+        applyRegionOfInterest();
+        if (reducedBarcodeFormats != 0) {
+            barcodeScanner.setBarcodeFormats(policy.reducedFormats ? reducedBarcodeFormats : barcodeFormats);
+        }
+        if (backend != null && enableMlVision) {
+            try {
+                controller.applyPreviewScale(policy.previewScale);
+            } catch (IOException e) {
+                Log.e(TAG, "Scaling the preview by " + policy.previewScale + " failed", e);
             }
         }
 
-        if (supportedModes != null && !supportedModes.contains(result)) {
-            if (supportedModes.size() > 0) {
-                result = supportedModes.get(0);
-            } else {
-                result = "";
+        final Map<String, Object> arguments = governorStateToMap();
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                methodChannel.invokeMethod("onGovernorLevelChanged", arguments);
             }
-        } else {
-            result = "off";
+        });
+    }
+
+    private Map<String, Object> governorStateToMap() {
+        ScanGovernor.Policy policy = scanGovernor.getPolicy();
+        Map<String, Object> state = new HashMap<>();
+        state.put("level", scanGovernor.getLevel());
+        state.put("levelName", ScanGovernor.levelName(scanGovernor.getLevel()));
+        state.put("reason", scanGovernor.getReason());
+        state.put("maxDetectionsPerSecond", (double) policy.maxDetectionsPerSecond);
+        state.put("previewScale", (double) policy.previewScale);
+        state.put("regionScale", (double) policy.regionScale);
+        state.put("reducedFormats", policy.reducedFormats);
+        return state;
+    }
+
+    /**
+     * Reads a region of interest sent as a map of normalized left/top/right/bottom values.
+     *
+     * @return the region, or null to scan the whole frame
+     */
+    private static RegionOfInterest parseRegionOfInterest(Object raw) {
+        if (!(raw instanceof Map)) {
+            return null;
         }
 
-        return result;
+        Map<?, ?> roi = (Map<?, ?>) raw;
+        return new RegionOfInterest(
+                Float.parseFloat(roi.get("left").toString()),
+                Float.parseFloat(roi.get("top").toString()),
+                Float.parseFloat(roi.get("right").toString()),
+                Float.parseFloat(roi.get("bottom").toString()));
     }
 
     @Override
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
         Log.d(TAG, "surfaceChanged");
-        refreshCamera();
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                refreshCamera();
+            }
+        });
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
+        // The preview has to be stopped before the surface goes away, so wait for it.
+        final CountDownLatch released = new CountDownLatch(1);
+        boolean posted = cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                releaseCamera();
+                released.countDown();
+            }
+        });
+        if (!posted) {
+            return;
+        }
         try {
-            visionCamera.release();
-            camera.stopPreview();
-            camera.release();
-            camera = null;
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (!released.await(CAMERA_RELEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Timed out waiting for the camera to be released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private int setCameraDisplayOrientation(int cameraId) {
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        Camera.getCameraInfo(cameraId, info);
+    /** Runs on the camera thread. */
+    private void releaseCamera() {
+        if (backend == null) {
+            return;
+        }
+        // Not release(): that stops the barcode processor, which the view reuses with the next
+        // camera. dispose() releases it.
+        visionCamera.stop();
+        replaySource = null;
+        controller.detach();
+        backend.close();
+        backend = null;
+    }
 
+    /** The display rotation in degrees, as the preview has to compensate it. */
+    private int getDisplayDegrees() {
         int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
 
         if (Build.MODEL.equalsIgnoreCase("Nexus 6") && cameraFacing == 1) {
@@ -687,67 +959,16 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
                 degrees = 270;
                 break;
         }
-
-        int result;
-
-        if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-
-            result = (info.orientation + degrees) % 360;
-            result = (360 - result) % 360; // compensate the mirror
-
-        } else {
-            result = (info.orientation - degrees + 360) % 360;
-
-        }
-
-        camera.setDisplayOrientation(result);
-
-        return result;
-
+        return degrees;
     }
 
-
     private void refreshCamera() {
-        if (surfaceHolder.getSurface() == null) {
+        if (surfaceHolder.getSurface() == null || backend == null) {
             return;
         }
-        try {
-            camera.stopPreview();
-            Camera.Parameters param = camera.getParameters();
-            param.setFlashMode(translateFlashType(param.getSupportedFlashModes()));
-            refreshCameraPreview(param);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    void startPreview() {
-        try {
-            camera.setPreviewDisplay(surfaceHolder);
-            if (enableMlVision && visionCamera != null) {
-                visionCamera.bindPreviewCallbacks();
-            }
-            camera.startPreview();
-        } catch (IOException exception) {
-            exception.printStackTrace();
-        }
-    }
-
-    private void refreshCameraPreview(Camera.Parameters param) {
-        try {
-            //this is unnecessary because on certain device (Xiaomi 4A / Huawei) it is rotated
-            int orientation = setCameraDisplayOrientation(0);
-//            param.setRotation(orientation);
-            camera.setParameters(param);
-            startPreview();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        backend.setDisplayRotation(getDisplayDegrees());
     }
 
-
-
     @Override
     public void onListen(Object arguments, EventChannel.EventSink events) {
 
@@ -767,13 +988,17 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
     boolean barcode_i_flag = true;
     Random barcodeAlphaRandom = new Random();
     @Override
-    public void onBarCodeRead(List<Barcode> barcodes, double avgFrameLatency) {
-        canvas = holderTransparent.lockCanvas();
+    public void onBarCodeRead(List<Barcode> barcodes, FrameMetadata frameMetadata, double avgFrameLatency) {
+        startupTimeline.mark(StartupTimeline.FIRST_DETECTION);
+        if (barcodeTracker != null) {
+            trackBarcodes(barcodes, frameMetadata, avgFrameLatency);
+        }
+        Canvas canvas = holderTransparent.lockCanvas();
         try {
             if (canvas != null && canvas.getHeight() > 0) {
                 canvas.drawColor(0, PorterDuff.Mode.CLEAR);
                 //border's properties
-                paint = new Paint();
+                Paint paint = new Paint();
                 paint.setStyle(Paint.Style.STROKE);
                 paint.setColor(Color.argb( (int)Math.floor(barcodeAlphaRandom.nextGaussian()*255), 191 , 7 , 17));
                 paint.setStrokeWidth(3);
@@ -791,28 +1016,33 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
                     //canvas.drawText(frameLatencyText, 5, BARCODE_I_MIN, paint);
                     //canvas.drawTextRun(frameLatencyText.toCharArray(),0, frameLatencyText.length(),0, frameLatencyText.length(), 5, BARCODE_I_MIN, false, paint);
                 } else {
-                    Map<String, Object> barcodeResponse = new HashMap<String, Object>();
-                    List<Map<String, Object>> encodedBarcodes = new ArrayList<>();
+                    barcodeEncoder.begin(avgFrameLatency);
+                    // With a region of interest the detector only saw that region already, so the
+                    // scan line band does not need to filter the results again.
+                    boolean filterToBand = requestedRegionOfInterest == null;
+                    int offsetX = frameMetadata.getOffsetX();
+                    int offsetY = frameMetadata.getOffsetY();
                     for (Barcode barcode : barcodes) {
                         Rect boundingBox = barcode.getBoundingBox();
-                        boundingBox = new Rect(boundingBox.left - 50, boundingBox.top -50, boundingBox.right - 50, boundingBox.bottom - 50);
+                        boundingBox = new Rect(boundingBox.left + offsetX - 50, boundingBox.top + offsetY - 50, boundingBox.right + offsetX - 50, boundingBox.bottom + offsetY - 50);
 
-                        if((boundingBox.top > BARCODE_I_MIN && boundingBox.top < BARCODE_I_MAX )|| (boundingBox.bottom > BARCODE_I_MIN && boundingBox.bottom < BARCODE_I_MAX)) {
+                        if(!filterToBand || isInScanBand(boundingBox)) {
                            // Log.d(TAG, "rendering barcode- top:"+boundingBox.top+" bottom:"+boundingBox.bottom+" "+barcode.getRawValue());
                             canvas.drawRect(boundingBox, paint);
-                            Map<String, Object> barcodeMap = BarcodeScannerProcessor.barcodeToMap(barcode);
-                            encodedBarcodes.add(barcodeMap);
+                            BarcodeScannerProcessor.writeBarcode(barcodeEncoder, barcode, offsetX, offsetY);
                         } else {
                             Log.d(TAG, "SKIPPING barcode- top:"+boundingBox.top+" bottom:"+boundingBox.bottom+" "+barcode.getRawValue());
                         }
                     }
 
-                    if(mEventSink !=null){
-                        barcodeResponse.put("barcodes", encodedBarcodes);
-                        barcodeResponse.put("avgLatency", avgFrameLatency);
-                        mEventSink.success(barcodeResponse);
-                    } else {
-                        Log.d(TAG, "eventSink is null");
+                    // With tracking on, barcodes are reported through onBarcodeTrack when they change.
+                    if(barcodeTracker == null) {
+                        if(mEventSink !=null){
+                            // One byte[] instead of a map per barcode, see BarcodeResultEncoder for the layout.
+                            mEventSink.success(barcodeEncoder.finish());
+                        } else {
+                            Log.d(TAG, "eventSink is null");
+                        }
                     }
                 }
             }
@@ -825,61 +1055,473 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
 
 
 
-    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
+    /** Whether a barcode box, in drawing coordinates, touches the band swept by the scan line. */
+    private boolean isInScanBand(Rect box) {
+        return (box.top > BARCODE_I_MIN && box.top < BARCODE_I_MAX)
+                || (box.bottom > BARCODE_I_MIN && box.bottom < BARCODE_I_MAX);
+    }
 
-        if (height > reqHeight || width > reqWidth) {
-            if (width > height) {
-                inSampleSize = Math.round((float) height / (float) reqHeight);
-            } else {
-                inSampleSize = Math.round((float) width / (float) reqWidth);
+    /** Feeds one detection result to the tracker and sends its changes to Dart. */
+    private void trackBarcodes(
+            List<Barcode> barcodes, FrameMetadata frameMetadata, double avgFrameLatency) {
+        boolean filterToBand = requestedRegionOfInterest == null;
+        int offsetX = frameMetadata.getOffsetX();
+        int offsetY = frameMetadata.getOffsetY();
+        barcodeTracker.beginFrame();
+        for (Barcode barcode : barcodes) {
+            Rect box = barcode.getBoundingBox();
+            if (box == null) {
+                continue;
+            }
+            if (filterToBand && !isInScanBand(new Rect(box.left + offsetX - 50, box.top + offsetY - 50,
+                    box.right + offsetX - 50, box.bottom + offsetY - 50))) {
+                continue;
+            }
+            barcodeTracker.addDetection(barcode.getRawValue(), barcode.getFormat(),
+                    box.left + offsetX, box.top + offsetY, box.right + offsetX, box.bottom + offsetY,
+                    barcode);
+        }
+
+        List<BarcodeTracker.Event<Barcode>> events = barcodeTracker.endFrame();
+        if (events.isEmpty()) {
+            return;
+        }
+        // Finished before onBarCodeRead starts the results message on the same encoder.
+        barcodeEncoder.beginTrackEvents(avgFrameLatency);
+        for (BarcodeTracker.Event<Barcode> event : events) {
+            barcodeEncoder.beginTrackEvent(event.type, event.trackId);
+            BarcodeScannerProcessor.writeBarcode(barcodeEncoder, event.barcode, offsetX, offsetY);
+        }
+        methodChannel.invokeMethod("onBarcodeTrack", barcodeEncoder.finish());
+    }
+
+    private void captureImage(final Integer maxSize, final MethodChannel.Result result) {
+        if (backend == null) {
+            result.error("Camera Error", "captureImage", "Camera is not open");
+            return;
+        }
+
+        final int rotation = controller.getPhotoRotation(mPhotoAngle);
+        DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.getDefault());
+        final File file = new File(folder.getAbsolutePath(), fileNamePrefix + "_" + dateFormat.format(new Date()) + ".jpg");
+
+        backend.takePicture(new CameraBackend.PictureCallback() {
+            @Override
+            public void onPictureTaken(byte[] jpeg) {
+                pictureSaver.save(jpeg, file, rotation, maxSize, captureCallback("captureImage", result));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                // E.g. a capture already in progress or the preview not running.
+                result.error("Camera Error", "captureImage", e.getMessage());
             }
+        });
+    }
+
+    /** Saves the sharpest of the recent preview frames kept by the scanner, without a shutter. */
+    private void captureSharpestFrame(Integer maxSize, MethodChannel.Result result) {
+        SharpestFrameKeeper.Frame frame = barcodeScanner.getSharpestFrame();
+        if (frame == null) {
+            result.error("Camera Error", "captureSharpestFrame", "No preview frame kept, set sharpestFrameCount");
+            return;
         }
-        return inSampleSize;
+
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        YuvImage image = new YuvImage(frame.data, ImageFormat.NV21, frame.width, frame.height, null);
+        if (!image.compressToJpeg(new Rect(0, 0, frame.width, frame.height), BurstCapture.DEFAULT_JPEG_QUALITY, jpeg)) {
+            result.error("Camera Error", "captureSharpestFrame", "Failed to encode the preview frame");
+            return;
+        }
+
+        DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.getDefault());
+        File file = new File(folder.getAbsolutePath(), fileNamePrefix + "_" + dateFormat.format(new Date()) + ".jpg");
+        int rotation = backend != null ? controller.getPhotoRotation(mPhotoAngle) : 0;
+        pictureSaver.save(jpeg.toByteArray(), file, rotation, maxSize, captureCallback("captureSharpestFrame", result));
     }
 
-    private String getSavePhotoLocal(Bitmap bitmap) {
-        String path = "";
-        Date currentTime = Calendar.getInstance().getTime();
+    /** Reports a saved capture to Dart, both as the method result and as onImageCaptured. */
+    private PictureSaver.Callback captureCallback(final String method, final MethodChannel.Result result) {
+        return new PictureSaver.Callback() {
+            @Override
+            public void onSaved(String path) {
+                Map<String, Object> arguments = new HashMap<>();
+                arguments.put("path", path);
+                methodChannel.invokeMethod("onImageCaptured", arguments);
+                result.success(path);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                result.error("Camera Error", method, e.getMessage());
+            }
+        };
+    }
+
+    private void startBurst(Map<String, Object> params, MethodChannel.Result result) {
+        if (backend == null) {
+            result.error("Camera Error", "startBurst", "Camera is not open");
+            return;
+        }
+        if (replaySource != null) {
+            // Preview frames would come from the capture file.
+            result.error("Camera Error", "startBurst", "A replay is running");
+            return;
+        }
+        if (burstCapture != null && burstCapture.isCapturing()) {
+            result.error("Camera Error", "startBurst", "A burst is already in progress");
+            return;
+        }
+
+        String mode = params.get("mode") == null ? BurstCapture.MODE_AUTO : params.get("mode").toString();
+        int maxFrames = params.get("maxFrames") == null
+                ? BurstCapture.DEFAULT_MAX_FRAMES
+                : Integer.parseInt(params.get("maxFrames").toString());
+        long byteBudget = params.get("byteBudget") == null
+                ? BurstCapture.DEFAULT_BYTE_BUDGET
+                : Long.parseLong(params.get("byteBudget").toString());
+        int jpegQuality = params.get("jpegQuality") == null
+                ? BurstCapture.DEFAULT_JPEG_QUALITY
+                : Integer.parseInt(params.get("jpegQuality").toString());
+
         DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+        String filePrefix = fileNamePrefix + "_burst_" + dateFormat.format(new Date());
+
         try {
-            OutputStream output;
-            File file = new File(folder.getAbsolutePath(), fileNamePrefix + "_" + dateFormat.format(currentTime) + ".jpg");
-            try {
-                output = new FileOutputStream(file);
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-                output.flush();
-                output.close();
-                path = file.getAbsolutePath();
-            } catch (Exception e) {
-                e.printStackTrace();
+            burstCapture = new BurstCapture(folder, filePrefix, controller.getPhotoRotation(mPhotoAngle),
+                    maxFrames, byteBudget, jpegQuality, new BurstCapture.Listener() {
+                @Override
+                public void onFrameSaved(int index, long timestamp, String path) {
+                    Map<String, Object> arguments = new HashMap<>();
+                    arguments.put("index", index);
+                    arguments.put("timestamp", timestamp);
+                    arguments.put("path", path);
+                    methodChannel.invokeMethod("onBurstFrame", arguments);
+                }
+
+                @Override
+                public void onFrameDropped(int index, long timestamp) {
+                    Map<String, Object> arguments = new HashMap<>();
+                    arguments.put("index", index);
+                    arguments.put("timestamp", timestamp);
+                    arguments.put("reason", "overflow");
+                    methodChannel.invokeMethod("onBurstFrameDropped", arguments);
+                }
+
+                @Override
+                public void onFrameFailed(int index, long timestamp, Exception e) {
+                    Map<String, Object> arguments = new HashMap<>();
+                    arguments.put("index", index);
+                    arguments.put("timestamp", timestamp);
+                    arguments.put("reason", "error");
+                    arguments.put("error", e.getMessage());
+                    methodChannel.invokeMethod("onBurstFrameDropped", arguments);
+                }
+
+                @Override
+                public void onBurstFinished(int captured, int dropped) {
+                    Map<String, Object> arguments = new HashMap<>();
+                    arguments.put("captured", captured);
+                    arguments.put("dropped", dropped);
+                    methodChannel.invokeMethod("onBurstFinished", arguments);
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            result.error("Camera Error", "startBurst", e.getMessage());
+            return;
+        }
+
+        burstCapture.start(backend, cameraHandler, new BurstCapture.PreviewFrameSource() {
+            @Override
+            public void setPreviewFrameListener(VisionCamera.PreviewFrameListener listener) {
+                visionCamera.setPreviewFrameListener(listener);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        }, mode);
+        result.success(true);
+    }
+
+    /** Starts writing the preview frames to a new capture file, replacing any recording. */
+    private void startFrameRecording(long maxBytes, MethodChannel.Result result) {
+        if (backend == null) {
+            result.error("Camera Error", "startFrameRecording", "Camera is not open");
+            return;
         }
-        return path;
+        if (replaySource != null) {
+            result.error("Camera Error", "startFrameRecording", "A replay is running");
+            return;
+        }
+        stopFrameRecording();
+
+        File directory = context.getExternalFilesDir(null);
+        if (directory == null) {
+            directory = context.getFilesDir();
+        }
+        DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+        File file = new File(directory,
+                fileNamePrefix + "_frames_" + dateFormat.format(new Date()) + CAPTURE_FILE_SUFFIX);
+        try {
+            frameRecorder = new FrameRecorder(file, maxBytes);
+        } catch (IOException e) {
+            result.error("Camera Error", "startFrameRecording", e.getMessage());
+            return;
+        }
+        visionCamera.setFrameRecorder(frameRecorder);
+        result.success(file.getAbsolutePath());
     }
 
-    private int getPhotoRotation() {
-        int rotation;
-        int orientation = mPhotoAngle;
+    /** Finishes the capture file; returns its path and size, or null if nothing was recording. */
+    @Nullable
+    private Map<String, Object> stopFrameRecording() {
+        if (frameRecorder == null) {
+            return null;
+        }
+        visionCamera.setFrameRecorder(null);
+        FrameRecorder recorder = frameRecorder;
+        frameRecorder = null;
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Closing " + recorder.getFile() + " failed", e);
+        }
 
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        if (cameraFacing == 0) {
-            Camera.getCameraInfo(0, info);
-        } else {
-            Camera.getCameraInfo(1, info);
+        Map<String, Object> recording = new HashMap<>();
+        recording.put("path", recorder.getFile().getAbsolutePath());
+        recording.put("frames", recorder.getFrameCount());
+        recording.put("bytes", recorder.getBytesWritten());
+        return recording;
+    }
+
+    /**
+     * Runs the detector on the frames of a capture file instead of the camera's, which keeps
+     * showing the live preview. Results arrive as if they came from the camera.
+     */
+    private void startReplay(Map<String, Object> params, MethodChannel.Result result) {
+        if (!enableMlVision) {
+            result.error("Camera Error", "startReplay", "The vision pipeline is not running");
+            return;
+        }
+        if (backend == null) {
+            result.error("Camera Error", "startReplay", "Camera is not open");
+            return;
+        }
+        if (params.get("path") == null) {
+            result.error("Camera Error", "startReplay", "No capture file given");
+            return;
+        }
+        File file = new File(params.get("path").toString());
+        float speed = params.get("speed") == null
+                ? 1f
+                : Float.parseFloat(params.get("speed").toString());
+        boolean loop = params.get("loop") != null
+                && Boolean.parseBoolean(params.get("loop").toString());
+
+        stopFrameRecording();
+        visionCamera.stop();
+        final ReplayFrameSource source = new ReplayFrameSource(file, speed, loop);
+        try {
+            visionCamera.start(source, new VisionCamera.SourceEndListener() {
+                @Override
+                public void onSourceEnd(@Nullable IOException error) {
+                    final Map<String, Object> arguments = new HashMap<>();
+                    arguments.put("frames", source.getDeliveredFrameCount());
+                    arguments.put("skipped", source.getSkippedFrameCount());
+                    arguments.put("error", error != null ? error.getMessage() : null);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            methodChannel.invokeMethod("onReplayFinished", arguments);
+                        }
+                    });
+                }
+            });
+        } catch (IOException e) {
+            visionCamera.stop();
+            resumeCameraFrames();
+            result.error("Camera Error", "startReplay", e.getMessage());
+            return;
         }
+        replaySource = source;
+        result.success(true);
+    }
 
-        if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            rotation = (info.orientation - orientation + 360) % 360;
-        } else {
-            rotation = (info.orientation + orientation) % 360;
+    /** Goes back to detecting on camera frames; returns whether a replay was running. */
+    private boolean stopReplay() {
+        if (replaySource == null) {
+            return false;
+        }
+        replaySource = null;
+        visionCamera.stop();
+        resumeCameraFrames();
+        return true;
+    }
+
+    /** Hooks the vision pipeline back onto the camera after it was stopped. */
+    private void resumeCameraFrames() {
+        if (backend == null) {
+            return;
+        }
+        try {
+            visionCamera.start(backend, null);
+        } catch (IOException e) {
+            Log.e(TAG, "Restarting the vision pipeline failed", e);
+        }
+    }
+
+    private CameraBackend<? super SurfaceHolder> createBackend() {
+        switch (backendName) {
+            case "camera2":
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    return new Camera2Backend(context);
+                }
+                Log.w(TAG, "Camera2 needs Android 5.0, using Camera1");
+                return new Camera1Backend(cameraHandler, parameterChangeClassifier);
+            case "fake":
+                return new FakeCameraBackend();
+            default:
+                return new Camera1Backend(cameraHandler, parameterChangeClassifier);
+        }
+    }
+
+    /**
+     * Handles the calls that need the open {@link #backend}.
+     *
+     * @return false for calls that do not touch the camera, which are handled as usual
+     */
+    private boolean handleCameraCall(MethodCall methodCall, final MethodChannel.Result result) {
+        switch (methodCall.method) {
+            case "waitForCamera":
+                if (backend == null)
+                    waitForCameraObject = new WaitForCameraObject(result);
+                else
+                    result.success(true);
+                return true;
+            case "turnOff":
+            case "turnOn":
+            case "switchCamera":
+            case "setPreviewRatio":
+            case "getPreviewSize":
+            case "getPictureSizes":
+            case "setPictureSize":
+            case "getFlashType":
+            case "setFlashType":
+            case "setFocus":
+                break;
+            default:
+                return false;
+        }
+        if (backend == null) {
+            result.error("Camera Error", methodCall.method, "Camera is not open");
+            return true;
+        }
+
+        Map<String, Object> params = new HashMap<>();
+        if (methodCall.arguments instanceof HashMap) {
+            @SuppressWarnings({"unchecked"})
+            Map<String, Object> arguments = (Map<String, Object>) methodCall.arguments;
+            params = arguments;
+        }
+        try {
+            switch (methodCall.method) {
+                case "turnOff":
+                    backend.stopPreview();
+                    result.success(null);
+                    break;
+                case "turnOn":
+                    backend.startPreview();
+                    result.success(null);
+                    break;
+                case "switchCamera":
+                    cameraFacing = cameraFacing == 0 ? 1 : 0;
+                    startupTimeline.begin();
+                    setupCamera();
+                    result.success(backend != null);
+                    break;
+                case "setPreviewRatio": {
+                    String previewRatio = params.get("previewRatio") == null ? null : params.get("previewRatio").toString();
+                    if (!controller.setPreviewRatio(previewRatio)) {
+                        result.success(false);
+                        break;
+                    }
+                    this.previewRatio = previewRatio;
+                    if (scanGovernor != null && enableMlVision) {
+                        // Scaled down from the new size like it was from the old one.
+                        controller.applyPreviewScale(scanGovernor.getPolicy().previewScale);
+                    }
+                    result.success(true);
+                    break;
+                }
+                case "getPreviewSize": {
+                    int[] size = backend.getPreviewSize();
+                    result.success(size[0] + ":" + size[1]);
+                    break;
+                }
+                case "getPictureSizes": {
+                    List<String> pictureSizes = new ArrayList<>();
+                    for (int[] size : backend.getSupportedPictureSizes()) {
+                        pictureSizes.add(size[0] + ":" + size[1]);
+                    }
+                    result.success(pictureSizes);
+                    break;
+                }
+                case "setPictureSize":
+                    controller.setPictureSize(
+                            Integer.parseInt(params.get("pictureWidth").toString()),
+                            Integer.parseInt(params.get("pictureHeight").toString()));
+                    result.success(true);
+                    break;
+                case "getFlashType":
+                    result.success(backend.getSupportedFlashModes());
+                    break;
+                case "setFlashType":
+                    controller.setFlashType(params.get("flashType") == null ? "auto" : params.get("flashType").toString());
+                    result.success(true);
+                    break;
+                case "setFocus":
+                    focus(Float.parseFloat(params.get("x").toString()),
+                            Float.parseFloat(params.get("y").toString()));
+                    result.success(true);
+                    break;
+            }
+        } catch (IOException e) {
+            result.error("Camera Error", methodCall.method, e.getMessage());
+        }
+        return true;
+    }
+
+    /** Pinch zoom and tap to focus; runs on the camera thread. */
+    private void handleTouch(MotionEvent event) {
+        if (backend == null) {
+            return;
+        }
+        int action = event.getAction();
+        if (event.getPointerCount() > 1) {
+            if (action == MotionEvent.ACTION_POINTER_DOWN) {
+                controller.startPinch(getFingerSpacing(event));
+            } else if (action == MotionEvent.ACTION_MOVE) {
+                try {
+                    controller.pinch(getFingerSpacing(event));
+                } catch (IOException e) {
+                    Log.w(TAG, "Zooming failed", e);
+                }
+            }
+        } else if (action == MotionEvent.ACTION_UP) {
+            int pointerIndex = event.findPointerIndex(event.getPointerId(0));
+            focus(event.getX(pointerIndex), event.getY(pointerIndex));
         }
+    }
 
-        return rotation;
+    /** Focuses around a point of the preview and draws the focus rectangle. */
+    private void focus(float x, float y) {
+        RegionOfInterest area = controller.focus(x, y, imgSurface.getWidth(), imgSurface.getHeight(),
+                focusRectSize, new CameraBackend.FocusCallback() {
+                    @Override
+                    public void onFocused(boolean success) {
+                        Log.d(TAG, "autofocus result: " + success);
+                    }
+                });
+        if (area != null) {
+            setFocus(x - focusRectSize, y - focusRectSize, x + focusRectSize, y + focusRectSize, focusRectColor);
+        }
     }
 
     private void identifyOrientationEvents() {
@@ -919,151 +1561,6 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
     }
 
 
-    private void handleZoom(MotionEvent event, Camera.Parameters params) {
-        int maxZoom = params.getMaxZoom();
-        int zoom = params.getZoom();
-        float newDist = getFingerSpacing(event);
-
-        if (Math.abs(newDist - mDist) < 2) return;
-
-        if (newDist > mDist) {
-            //zoom in
-            if (zoom < maxZoom)
-                zoom++;
-        } else if (newDist < mDist) {
-            //zoom out
-            if (zoom > 0)
-                zoom--;
-        }
-        mDist = newDist;
-        params.setZoom(zoom);
-        camera.setParameters(params);
-    }
-
-    private void handleFocus(float initialX, float initialY) {
-        Log.d(TAG, "handleFocus");
-        final int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
-        int surfaceHeight = imgSurface.getHeight();
-        int surfaceWidth = imgSurface.getWidth();
-
-        /// normal
-        float x = initialY;
-        float y = surfaceWidth - initialX;
-
-        if (rotation == Surface.ROTATION_90) {
-            /// for this rotation, we have to swap upper right corner to bottom left corner
-            /// the rest, bottom right and upper left, will still be the same
-            /// rotate left
-            final float xPercentage = initialY / surfaceHeight;
-            final float yPercentage = initialX / surfaceWidth;
-            final boolean condition = (xPercentage > .5) == (yPercentage > .5);
-            x = !condition ? (1 - xPercentage) * surfaceHeight : initialY;
-            y = !condition ? (1 - yPercentage) * surfaceWidth : initialX;
-        } else if (rotation == Surface.ROTATION_270) {
-            /// for this rotation, we have to swap upper left corner to bottom right corner
-            /// the rest, bottom left and upper right, will still be the same
-            /// rotate right
-            final float xPercentage = initialY / surfaceHeight;
-            final float yPercentage = initialX / surfaceWidth;
-            final boolean condition = (xPercentage > .5) == (yPercentage > .5);
-            x = condition ? (1 - xPercentage) * surfaceHeight : initialY;
-            y = condition ? (1 - yPercentage) * surfaceWidth : initialX;
-        }
-
-        //cancel previous actions
-        camera.cancelAutoFocus();
-
-        Rect touchRect = new Rect(
-                (int) (x - focusRectSize),
-                (int) (y - focusRectSize),
-                (int) (x + focusRectSize),
-                (int) (y + focusRectSize));
-
-        int aboutToBeLeft = touchRect.left;
-        int aboutToBeTop = touchRect.top;
-        int aboutToBeRight = touchRect.right;
-        int aboutToBeBottom = touchRect.bottom;
-
-        if (aboutToBeLeft < 0) {
-            aboutToBeLeft = 0;
-            aboutToBeRight = 200;
-        }
-        if (aboutToBeTop < 0) {
-            aboutToBeTop = 0;
-            aboutToBeBottom = 200;
-        }
-        if (aboutToBeRight > surfaceHeight) {
-            aboutToBeRight = surfaceHeight;
-            aboutToBeLeft = surfaceHeight - 200;
-        }
-        if (aboutToBeBottom > surfaceWidth) {
-            aboutToBeBottom = surfaceWidth;
-            aboutToBeTop = surfaceWidth - 200;
-        }
-
-        aboutToBeLeft = aboutToBeLeft * 2000 / surfaceHeight - 1000;
-        aboutToBeTop = aboutToBeTop * 2000 / surfaceWidth - 1000;
-        aboutToBeRight = aboutToBeRight * 2000 / surfaceHeight - 1000;
-        aboutToBeBottom = aboutToBeBottom * 2000 / surfaceWidth - 1000;
-
-        Rect focusRect = new Rect(
-                aboutToBeLeft,
-                aboutToBeTop,
-                aboutToBeRight,
-                aboutToBeBottom);
-
-//        this.focusRect.setLeft(touchRect.left);
-//        this.focusRect.setTop(touchRect.top);
-//        this.focusRect.setRight(touchRect.right);
-//        this.focusRect.setBottom(touchRect.bottom);
-
-        final float RectLeft = initialX - focusRectSize;
-        final float RectTop = initialY - focusRectSize;
-        final float RectRight = initialX + focusRectSize;
-        final float RectBottom = initialY + focusRectSize;
-
-        setFocus(RectLeft, RectTop, RectRight, RectBottom, focusRectColor);
-
-        Camera.Parameters parameters = null;
-
-        try {
-            parameters = camera.getParameters();
-        } catch (Exception e) {
-            FirebaseCrashlytics.getInstance().recordException(e);
-            Log.e("Error", "Error getting parameter:" + e);
-        }
-
-        // check if parameters are set (handle RuntimeException: getParameters failed (empty parameters))
-        if (parameters != null) {
-            List<Camera.Area> mylist2 = new ArrayList<>();
-
-            mylist2.add(new Camera.Area(focusRect, 1000));
-
-            List<String> supportedFocusMode = parameters.getSupportedFocusModes();
-            String focusMode = Camera.Parameters.FOCUS_MODE_AUTO;
-            if (!supportedFocusMode.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
-                if (supportedFocusMode.size() > 0) {
-                    focusMode = supportedFocusMode.get(0);
-                }
-            }
-            parameters.setFocusMode(focusMode);
-            if (focusMode.equals(Camera.Parameters.FOCUS_MODE_AUTO))
-                parameters.setFocusAreas(mylist2);
-
-            try {
-                camera.setParameters(parameters);
-                camera.autoFocus(new Camera.AutoFocusCallback() {
-                    @Override
-                    public void onAutoFocus(boolean success, Camera camera) {
-                        Log.d(TAG, "autofocus result: "+success);
-                    }
-                });
-            } catch (Exception e) {
-                Log.e("error", "error => " + e);
-            }
-        }
-    }
-
     private float getFingerSpacing(MotionEvent event) {
         // ...
         float x = event.getX(0) - event.getX(1);
@@ -1071,61 +1568,56 @@ public class AdvCamera implements MethodChannel.MethodCallHandler,
         return (float) Math.sqrt(x * x + y * y);
     }
 
-    /**
-     * @return the greatest common denominator
-     */
-    private static long gcm(long a, long b) {
-        return b == 0 ? a : gcm(b, a % b); // Not bad for one line of code :)
-    }
-
-    private static String asFraction(long a, long b) {
-        long gcm = gcm(a, b);
-        return (a / gcm) + ":" + (b / gcm);
-    }
-
     private static String TAG = "ADV_CAMERA";
-
-    Canvas canvas;
-    Paint paint;
-    Canvas dismissCanvas;
+    private static final long CAMERA_RELEASE_TIMEOUT_MS = 2500;
+    private static final long GOVERNOR_INTERVAL_MS = 5000;
+    private static final String TELEMETRY_FILE_NAME = "adv_camera_telemetry.csv";
+    private static final String CAPTURE_FILE_SUFFIX = ".frames";
+    private static final long DEFAULT_RECORDING_MAX_BYTES = 512L * 1024 * 1024;
+    private static final RegionOfInterest FULL_FRAME = new RegionOfInterest(0f, 0f, 1f, 1f);
+
+    /** Identifies the latest focus rectangle, so only its own timeout clears it. Main thread only. */
     long lastId;
 
-    private void setFocus(float RectLeft, float RectTop, float RectRight, float RectBottom, int color) {
-
-        canvas = holderTransparent.lockCanvas();
-        canvas.drawColor(0, PorterDuff.Mode.CLEAR);
-        //border's properties
-        paint = new Paint();
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setColor(color);
-        paint.setStrokeWidth(3);
-        canvas.drawRect(RectLeft, RectTop, RectRight, RectBottom, paint);
-
-        holderTransparent.unlockCanvasAndPost(canvas);
-
-        final long id = System.currentTimeMillis();
-        final DismissHandler handler = new DismissHandler(id);
-        lastId = id;
-
-        handler.postDelayed(new Runnable() {
+    /**
+     * Draws the focus rectangle for two seconds. Called from the camera thread; the overlay is
+     * drawn on the main thread, where the barcode boxes are drawn too.
+     */
+    private void setFocus(final float RectLeft, final float RectTop, final float RectRight, final float RectBottom, final int color) {
+        mainHandler.post(new Runnable() {
             @Override
             public void run() {
-                if (handler.id == lastId) {
-                    dismissCanvas = holderTransparent.lockCanvas();
-                    if (dismissCanvas != null) {
-                        dismissCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
-                        holderTransparent.unlockCanvasAndPost(dismissCanvas);
-                    }
+                // null while the overlay surface is not ready
+                Canvas canvas = holderTransparent.lockCanvas();
+                if (canvas == null) {
+                    return;
                 }
-            }
-        }, 2000);
-    }
-}
+                canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+                //border's properties
+                Paint paint = new Paint();
+                paint.setStyle(Paint.Style.STROKE);
+                paint.setColor(color);
+                paint.setStrokeWidth(3);
+                canvas.drawRect(RectLeft, RectTop, RectRight, RectBottom, paint);
 
-class DismissHandler extends Handler {
-    long id;
+                holderTransparent.unlockCanvasAndPost(canvas);
+
+                final long id = System.currentTimeMillis();
+                lastId = id;
 
-    public DismissHandler(long id) {
-        this.id = id;
+                mainHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (id == lastId) {
+                            Canvas dismissCanvas = holderTransparent.lockCanvas();
+                            if (dismissCanvas != null) {
+                                dismissCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+                                holderTransparent.unlockCanvasAndPost(dismissCanvas);
+                            }
+                        }
+                    }
+                }, 2000);
+            }
+        });
     }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import android.net.Uri;
 import android.provider.MediaStore;
 import android.util.Log;
 
+import com.google.mlkit.vision.barcode.Barcode;
 import com.karumi.dexter.Dexter;
 import com.karumi.dexter.MultiplePermissionsReport;
 import com.karumi.dexter.PermissionToken;
@@ -18,6 +19,7 @@ import com.karumi.dexter.listener.multi.MultiplePermissionsListener;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
@@ -31,9 +33,12 @@ import io.flutter.plugin.common.PluginRegistry.Registrar;
  */
 public class AdvCameraPlugin implements MethodCallHandler {
     private Activity activity;
+    /** The application context; the warm camera and scanner outlive any activity. */
+    private final Context context;
 
     private AdvCameraPlugin(Registrar registrar) {
         this.activity = registrar.activity();
+        this.context = registrar.context();
     }
 
     public static void registerWith(Registrar registrar) {
@@ -51,12 +56,32 @@ public class AdvCameraPlugin implements MethodCallHandler {
         final MethodChannel channel = new MethodChannel(registrar.messenger(), "adv_camera");
         channel.setMethodCallHandler(new AdvCameraPlugin(registrar));
 
+        // Start reading the cached camera capabilities before the first view needs them.
+        CameraCapabilityStore.getInstance(registrar.context());
+
     }
 
     @Override
     public void onMethodCall(MethodCall call, final Result result) {
         if (call.method.equals("checkForPermission")) {
             checkForPermission(result);
+        } else if (call.method.equals("prewarm")) {
+            int cameraFacing = 0;
+            int barcodeFormats = Barcode.FORMAT_ALL_FORMATS;
+            if (call.arguments instanceof HashMap) {
+                @SuppressWarnings({"unchecked"})
+                Map<String, Object> params = (Map<String, Object>) call.arguments;
+                Object cameraType = params.get("cameraType");
+                Object formats = params.get("barcodeFormats");
+                if ("front".equals(cameraType)) {
+                    cameraFacing = 1;
+                }
+                if (formats != null) {
+                    barcodeFormats = Integer.parseInt(formats.toString());
+                }
+            }
+            CameraPrewarmer.prewarm(context, cameraFacing, barcodeFormats);
+            result.success(true);
         } else {
             result.notImplemented();
         }
@@ -0,0 +1,316 @@
+package com.ric.adv_camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.ric.adv_camera.vision.ByteBudgetQueue;
+import com.ric.adv_camera.vision.CameraBackend;
+import com.ric.adv_camera.vision.Nv21Utils;
+import com.ric.adv_camera.vision.VisionCamera;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Captures a burst of frames and writes them as JPEG files.
+ *
+ * <p>Frames come either from {@link CameraBackend#takePicture}, one after the other, or from the
+ * preview stream. They are held in a {@link ByteBudgetQueue} so a burst never holds more than a
+ * fixed amount of memory; a frame that does not fit is dropped and reported. A small pool of
+ * encoder threads drains the queue. All camera calls and accepted pictures happen on the camera
+ * thread, and listener calls are delivered on the main thread.
+ *
+ * <p>Picture mode pays for a full capture per frame; on Camera1 that includes a preview restart.
+ * {@link #MODE_AUTO} moves to preview frames once that round trip is too slow.
+ */
+class BurstCapture implements VisionCamera.PreviewFrameListener {
+    static final String MODE_PICTURE = "picture";
+    static final String MODE_PREVIEW = "preview";
+    /** Takes pictures, and falls back to preview frames when the first picture is too slow. */
+    static final String MODE_AUTO = "auto";
+
+    static final int DEFAULT_MAX_FRAMES = 10;
+    static final long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+    static final int DEFAULT_JPEG_QUALITY = 90;
+
+    private static final String TAG = "BurstCapture";
+    /** Shutter-to-JPEG time above which auto mode switches to preview frames. */
+    private static final long SLOW_PICTURE_MS = 300;
+    private static final int ENCODER_THREADS =
+            Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+
+    interface Listener {
+        void onFrameSaved(int index, long timestamp, String path);
+
+        void onFrameDropped(int index, long timestamp);
+
+        void onFrameFailed(int index, long timestamp, Exception e);
+
+        /** Capture has stopped and every accepted frame has been written or has failed. */
+        void onBurstFinished(int captured, int dropped);
+    }
+
+    /** Where preview frames come from; the caller decides how the listener is hooked up. */
+    interface PreviewFrameSource {
+        void setPreviewFrameListener(@Nullable VisionCamera.PreviewFrameListener listener);
+    }
+
+    private static final class Frame {
+        final int index;
+        final long timestamp;
+        final byte[] data;
+        final boolean jpeg;
+        final int width;
+        final int height;
+
+        Frame(int index, long timestamp, byte[] data, boolean jpeg, int width, int height) {
+            this.index = index;
+            this.timestamp = timestamp;
+            this.data = data;
+            this.jpeg = jpeg;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final File folder;
+    private final String filePrefix;
+    private final int rotation;
+    private final int jpegQuality;
+    private final Listener listener;
+
+    private final ByteBudgetQueue<Frame> queue;
+    private final ExecutorService encoderExecutor = Executors.newFixedThreadPool(ENCODER_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private CameraBackend<?> backend;
+    private Handler cameraHandler;
+    private PreviewFrameSource previewSource;
+    private boolean fallBackToPreview;
+
+    private volatile boolean capturing;
+    private volatile boolean pictureInFlight;
+    private final BurstCounter counter;
+    /** Accepted frames that are not written yet. */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * @param filePrefix prefix of the file names, each frame adds its index
+     * @param rotation clockwise rotation in degrees recorded as EXIF orientation
+     */
+    BurstCapture(
+            File folder,
+            String filePrefix,
+            int rotation,
+            int maxFrames,
+            long byteBudget,
+            int jpegQuality,
+            Listener listener) {
+        this.folder = folder;
+        this.filePrefix = filePrefix;
+        this.rotation = rotation;
+        this.counter = new BurstCounter(maxFrames);
+        this.jpegQuality = jpegQuality;
+        this.listener = listener;
+        this.queue = new ByteBudgetQueue<>(byteBudget);
+    }
+
+    /**
+     * Starts capturing in one of {@link #MODE_PICTURE}, {@link #MODE_PREVIEW} or {@link
+     * #MODE_AUTO}. Must be called on the camera thread.
+     *
+     * @param cameraHandler the camera thread, where each picture is handed back to
+     */
+    void start(CameraBackend<?> backend, Handler cameraHandler, PreviewFrameSource previewSource,
+               String mode) {
+        this.backend = backend;
+        this.cameraHandler = cameraHandler;
+        this.previewSource = previewSource;
+        this.fallBackToPreview = MODE_AUTO.equals(mode);
+        capturing = true;
+
+        if (MODE_PREVIEW.equals(mode)) {
+            previewSource.setPreviewFrameListener(this);
+        } else {
+            takeNextPicture();
+        }
+    }
+
+    /** Stops capturing; frames already accepted are still written. */
+    void stop() {
+        if (!capturing) {
+            return;
+        }
+        capturing = false;
+        previewSource.setPreviewFrameListener(null);
+        finishIfDone();
+    }
+
+    boolean isCapturing() {
+        return capturing;
+    }
+
+    private void takeNextPicture() {
+        final long requestedAt = SystemClock.elapsedRealtime();
+        pictureInFlight = true;
+        backend.takePicture(new CameraBackend.PictureCallback() {
+            @Override
+            public void onPictureTaken(final byte[] jpeg) {
+                // Some backends deliver pictures on their own thread.
+                cameraHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPicture(jpeg, requestedAt);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final Exception e) {
+                cameraHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.e(TAG, "takePicture failed, stopping the burst", e);
+                        pictureInFlight = false;
+                        stop();
+                        finishIfDone();
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPicture(byte[] jpeg, long requestedAt) {
+        pictureInFlight = false;
+        // A picture requested before stop() still belongs to the burst.
+        accept(new Frame(counter.next(), System.currentTimeMillis(), jpeg, true, 0, 0));
+        if (!capturing) {
+            finishIfDone();
+        } else if (fallBackToPreview
+                && SystemClock.elapsedRealtime() - requestedAt > SLOW_PICTURE_MS) {
+            Log.d(TAG, "Picture path too slow, continuing the burst with preview frames");
+            previewSource.setPreviewFrameListener(this);
+        } else {
+            takeNextPicture();
+        }
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, int width, int height) {
+        if (!capturing) {
+            return;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        int size = Nv21Utils.frameSize(width, height);
+        // Drop before copying, the buffer goes back to the camera either way.
+        if (!queue.fits(size)) {
+            drop(counter.next(), timestamp);
+            if (counter.isComplete()) {
+                stop();
+            }
+        } else {
+            accept(new Frame(counter.next(), timestamp, Arrays.copyOf(data, size), false, width,
+                    height));
+        }
+    }
+
+    private void accept(Frame frame) {
+        pending.incrementAndGet();
+        if (queue.offer(frame, frame.data.length)) {
+            counter.onCaptured();
+            encoderExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    encodeNext();
+                }
+            });
+        } else {
+            pending.decrementAndGet();
+            drop(frame.index, frame.timestamp);
+        }
+
+        if (counter.isComplete()) {
+            stop();
+        }
+    }
+
+    private void drop(final int index, final long timestamp) {
+        counter.onDropped();
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFrameDropped(index, timestamp);
+            }
+        });
+    }
+
+    private void encodeNext() {
+        final Frame frame = queue.poll();
+        if (frame == null) {
+            return;
+        }
+
+        try {
+            final File file = new File(folder, filePrefix + "_" + frame.index + ".jpg");
+            byte[] jpeg = frame.data;
+            if (!frame.jpeg) {
+                YuvImage image = new YuvImage(frame.data, ImageFormat.NV21, frame.width, frame.height, null);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                image.compressToJpeg(new Rect(0, 0, frame.width, frame.height), jpegQuality, output);
+                jpeg = output.toByteArray();
+            }
+            PictureSaver.writeJpeg(jpeg, file, rotation);
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFrameSaved(frame.index, frame.timestamp, file.getAbsolutePath());
+                }
+            });
+        } catch (final IOException e) {
+            Log.e(TAG, "Failed to write burst frame " + frame.index, e);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFrameFailed(frame.index, frame.timestamp, e);
+                }
+            });
+        } finally {
+            queue.release(frame.data.length);
+            if (pending.decrementAndGet() == 0 && !capturing) {
+                finishIfDone();
+            }
+        }
+    }
+
+    private void finishIfDone() {
+        if (capturing || pictureInFlight || pending.get() > 0 || !finished.compareAndSet(false, true)) {
+            return;
+        }
+        encoderExecutor.shutdown();
+
+        final int captured = counter.getCaptured();
+        final int dropped = counter.getDropped();
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onBurstFinished(captured, dropped);
+            }
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package com.ric.adv_camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Numbers the frames of a burst and counts how each one ended: captured once it is in the queue,
+ * or dropped. Both kinds use up a frame number, so a burst stops after {@code maxFrames} frames
+ * however many of them fit.
+ *
+ * <p>{@link #next} and {@link #isComplete} are called on the camera thread. The counts may be read
+ * on whichever thread finishes the burst.
+ */
+final class BurstCounter {
+    private final int maxFrames;
+    private int taken;
+    private final AtomicInteger captured = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    BurstCounter(int maxFrames) {
+        if (maxFrames < 1) {
+            throw new IllegalArgumentException("Invalid frame count: " + maxFrames);
+        }
+        this.maxFrames = maxFrames;
+    }
+
+    /** Returns the index of the next frame. */
+    int next() {
+        return taken++;
+    }
+
+    /** Whether the burst has used up its frames. */
+    boolean isComplete() {
+        return taken >= maxFrames;
+    }
+
+    void onCaptured() {
+        captured.incrementAndGet();
+    }
+
+    void onDropped() {
+        dropped.incrementAndGet();
+    }
+
+    int getCaptured() {
+        return captured.get();
+    }
+
+    int getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,515 @@
+package com.ric.adv_camera;
+
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import com.ric.adv_camera.vision.CameraBackend;
+import com.ric.adv_camera.vision.FrameBufferPool;
+import com.ric.adv_camera.vision.FrameMetadata;
+import com.ric.adv_camera.vision.Nv21Utils;
+import com.ric.adv_camera.vision.PreviewConfigSelector;
+import com.ric.adv_camera.vision.RegionOfInterest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.ric.adv_camera.vision.VisionCamera.IMAGE_FORMAT;
+
+/**
+ * {@link CameraBackend} on {@code android.hardware.Camera}.
+ *
+ * <p>Preview frames arrive through {@code setPreviewCallbackWithBuffer} on the thread that opened
+ * the camera, into the buffers of a {@link FrameBufferPool} attached to {@code addCallbackBuffer}.
+ * Settings go through a {@link CameraParameterCache}, so they are read from the camera service once
+ * per open. Flash and picture size changes are tried while the preview runs, as far as the {@link
+ * ParameterChangeClassifier} allows; zoom alone is deferred so pinch moves merge into one call.
+ */
+class Camera1Backend implements CameraBackend<SurfaceHolder> {
+    private static final String TAG = "Camera1Backend";
+
+    private static final int BUFFER_COUNT = 3;
+    /** Preview frame rate asked for, scaled by 1000 like the supported ranges. */
+    private static final int REQUESTED_FPS = 30000;
+
+    private final CameraParameterCache parameterCache;
+    private final ParameterChangeClassifier parameterChangeClassifier;
+
+    private Camera camera;
+    private int facing = FACING_BACK;
+    private int sensorOrientation;
+    private int displayRotation;
+    private SurfaceHolder previewTarget;
+    private boolean previewing;
+
+    private volatile FrameBufferPool bufferPool;
+    private int bufferCount = BUFFER_COUNT;
+    private FrameMetadata frameMetadata;
+    private volatile Sink sink;
+
+    private final Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            FrameBufferPool pool = bufferPool;
+            FrameBufferPool.Lease frame = pool != null ? pool.lease(data) : null;
+            if (frame == null) {
+                return;
+            }
+            try {
+                Sink target = sink;
+                if (target != null) {
+                    frame.setTimestampMs(SystemClock.elapsedRealtime());
+                    target.onFrame(frame, frameMetadata);
+                }
+            } finally {
+                // Hands the buffer back to the camera unless the sink retained it.
+                frame.release();
+            }
+        }
+    };
+
+    /** @param handler the thread that uses the backend, for deferred parameter commits */
+    Camera1Backend(Handler handler, ParameterChangeClassifier parameterChangeClassifier) {
+        this.parameterCache = new CameraParameterCache(handler);
+        this.parameterChangeClassifier = parameterChangeClassifier;
+    }
+
+    @Override
+    public void open(int facing) throws IOException {
+        if (camera != null) {
+            throw new IOException("Camera already open");
+        }
+        int cameraId = findCameraId(facing);
+        if (cameraId < 0) {
+            throw new IOException("No camera facing " + facing);
+        }
+        Camera opened;
+        try {
+            opened = Camera.open(cameraId);
+        } catch (RuntimeException e) {
+            throw new IOException("Opening camera " + cameraId + " failed", e);
+        }
+        adopt(opened, facing);
+    }
+
+    /** Takes over a camera that is already open, e.g. one warmed up by {@link CameraPrewarmer}. */
+    void adopt(Camera camera, int facing) throws IOException {
+        int cameraId = findCameraId(facing);
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        // The prewarmer opens cameras by index, like the rest of the plugin.
+        Camera.getCameraInfo(cameraId >= 0 ? cameraId : facing, info);
+        this.camera = camera;
+        this.facing = facing;
+        this.sensorOrientation = info.orientation;
+        try {
+            parameterCache.attach(camera);
+            CameraParameterCache.Transaction transaction = parameterCache.begin();
+            Camera.Parameters parameters = transaction.parameters();
+            parameters.setPreviewFormat(IMAGE_FORMAT);
+            List<String> focusModes = parameters.getSupportedFocusModes();
+            if (focusModes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
+                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+            } else if (focusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
+                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+            }
+            int[] fpsRange = PreviewConfigSelector.selectFpsRange(
+                    parameters.getSupportedPreviewFpsRange(), REQUESTED_FPS);
+            if (fpsRange != null) {
+                parameters.setPreviewFpsRange(
+                        fpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                        fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+            }
+            // Works around a low preview frame rate on some devices, e.g. the Nexus 4.
+            parameters.setRecordingHint(true);
+            transaction.commit();
+        } catch (RuntimeException e) {
+            close();
+            throw new IOException("Configuring the camera failed", e);
+        }
+        applyDisplayOrientation();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return camera != null;
+    }
+
+    @Override
+    public void close() {
+        if (camera == null) {
+            return;
+        }
+        stopPreview();
+        parameterCache.invalidate();
+        camera.release();
+        camera = null;
+    }
+
+    @Override
+    public int getFacing() {
+        return facing;
+    }
+
+    @Override
+    public void setDisplayRotation(int degrees) {
+        displayRotation = degrees;
+        if (camera != null) {
+            applyDisplayOrientation();
+        }
+    }
+
+    @Override
+    public int getFrameRotation() {
+        return PreviewConfigSelector.frameRotation(
+                facing == FACING_FRONT, sensorOrientation, displayRotation);
+    }
+
+    @Override
+    public int getSensorOrientation() {
+        return sensorOrientation;
+    }
+
+    @Override
+    public void setPreviewTarget(SurfaceHolder target) throws IOException {
+        previewTarget = target;
+        if (camera != null) {
+            camera.setPreviewDisplay(target);
+        }
+    }
+
+    @Override
+    public void startPreview() throws IOException {
+        if (camera == null) {
+            throw new IOException("Camera not open");
+        }
+        if (previewing) {
+            return;
+        }
+
+        Camera.Size size = parameterCache.get().getPreviewSize();
+        frameMetadata = new FrameMetadata.Builder()
+                .setWidth(size.width)
+                .setHeight(size.height)
+                .setRotation(getFrameRotation())
+                .build();
+        // One spare byte, as some devices write past the NV21 frame size.
+        bufferPool =
+                new FrameBufferPool(bufferCount, Nv21Utils.frameSize(size.width, size.height) + 1);
+        camera.setPreviewCallbackWithBuffer(previewCallback);
+        final Camera target = camera;
+        bufferPool.attach(target::addCallbackBuffer);
+        try {
+            camera.setPreviewDisplay(previewTarget);
+            camera.startPreview();
+        } catch (IOException | RuntimeException e) {
+            camera.setPreviewCallbackWithBuffer(null);
+            bufferPool.detach();
+            throw e instanceof IOException
+                    ? (IOException) e
+                    : new IOException("Starting the preview failed", e);
+        }
+        previewing = true;
+    }
+
+    @Override
+    public void stopPreview() {
+        if (camera == null || !previewing) {
+            return;
+        }
+        previewing = false;
+        camera.stopPreview();
+        camera.setPreviewCallbackWithBuffer(null);
+        // Buffers still leased by the sink must not go back to a camera that may be released.
+        bufferPool.detach();
+    }
+
+    @Override
+    public void setPreviewBufferCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid preview buffer count: " + count);
+        }
+        bufferCount = count;
+    }
+
+    @Override
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void start(Sink sink) {
+        this.sink = sink;
+    }
+
+    /** Frames arrive on the camera's thread, so once this returns there none is being delivered. */
+    @Override
+    public void stop() {
+        sink = null;
+    }
+
+    @Override
+    public List<int[]> getSupportedPreviewSizes() {
+        return toPairs(parameterCache.get().getSupportedPreviewSizes());
+    }
+
+    @Override
+    public List<int[]> getSupportedPictureSizes() {
+        return toPairs(parameterCache.get().getSupportedPictureSizes());
+    }
+
+    @Override
+    public List<String> getSupportedFlashModes() {
+        List<String> modes = parameterCache.get().getSupportedFlashModes();
+        return modes != null ? modes : Collections.<String>emptyList();
+    }
+
+    @Override
+    public float getMaxZoomRatio() {
+        Camera.Parameters parameters = parameterCache.get();
+        if (!parameters.isZoomSupported()) {
+            return 1f;
+        }
+        return parameters.getZoomRatios().get(parameters.getMaxZoom()) / 100f;
+    }
+
+    @Override
+    public int[] getPreviewSize() {
+        Camera.Size size = parameterCache.get().getPreviewSize();
+        return new int[] {size.width, size.height};
+    }
+
+    @Override
+    public Editor edit() {
+        return new Camera1Editor();
+    }
+
+    @Override
+    public void focus(RegionOfInterest area, final FocusCallback callback) {
+        if (camera == null) {
+            callback.onFocused(false);
+            return;
+        }
+        camera.cancelAutoFocus();
+
+        // Camera1 areas run from -1000 to 1000 over the unrotated frame.
+        Rect rect = new Rect(
+                Math.round(area.getLeft() * 2000) - 1000,
+                Math.round(area.getTop() * 2000) - 1000,
+                Math.round(area.getRight() * 2000) - 1000,
+                Math.round(area.getBottom() * 2000) - 1000);
+        List<Camera.Area> areas = Collections.singletonList(new Camera.Area(rect, 1000));
+
+        CameraParameterCache.Transaction transaction = parameterCache.begin();
+        Camera.Parameters parameters = transaction.parameters();
+        if (parameters.getSupportedFocusModes().contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
+            parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+            if (parameters.getMaxNumFocusAreas() > 0) {
+                parameters.setFocusAreas(areas);
+            }
+        }
+        if (parameters.getMaxNumMeteringAreas() > 0) {
+            parameters.setMeteringAreas(areas);
+        }
+        try {
+            transaction.commit();
+            camera.autoFocus(new Camera.AutoFocusCallback() {
+                @Override
+                public void onAutoFocus(boolean success, Camera camera) {
+                    callback.onFocused(success);
+                }
+            });
+        } catch (RuntimeException e) {
+            callback.onFocused(false);
+        }
+    }
+
+    @Override
+    public void takePicture(final PictureCallback callback) {
+        if (camera == null || !previewing) {
+            callback.onError(new IOException("Preview not running"));
+            return;
+        }
+        try {
+            camera.takePicture(null, null, new Camera.PictureCallback() {
+                @Override
+                public void onPictureTaken(byte[] data, Camera camera) {
+                    // Camera1 stops the preview for a picture and must not be asked to start it
+                    // again, or take the next picture, until the JPEG callback has been called.
+                    // The shutter callback comes too early for that, so the restart happens here
+                    // and costs the time it takes to encode the JPEG.
+                    previewing = false;
+                    try {
+                        camera.startPreview();
+                        previewing = true;
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Restarting the preview failed", e);
+                    }
+                    callback.onPictureTaken(data);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Thrown when a capture is already in progress.
+            callback.onError(e);
+        }
+    }
+
+    private void applyDisplayOrientation() {
+        camera.setDisplayOrientation(PreviewConfigSelector.displayOrientation(
+                facing == FACING_FRONT, getFrameRotation()));
+    }
+
+    /** The id of the first camera with {@code facing}, or -1. */
+    private static int findCameraId(int facing) {
+        int wanted = facing == FACING_FRONT
+                ? Camera.CameraInfo.CAMERA_FACING_FRONT
+                : Camera.CameraInfo.CAMERA_FACING_BACK;
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        for (int i = 0; i < Camera.getNumberOfCameras(); i++) {
+            Camera.getCameraInfo(i, info);
+            if (info.facing == wanted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<int[]> toPairs(List<Camera.Size> sizes) {
+        List<int[]> pairs = new ArrayList<>(sizes.size());
+        for (Camera.Size size : sizes) {
+            pairs.add(new int[] {size.width, size.height});
+        }
+        return pairs;
+    }
+
+    private class Camera1Editor implements Editor {
+        private int[] previewSize;
+        private int[] pictureSize;
+        private String flashMode;
+        private float zoomRatio = -1f;
+
+        @Override
+        public Editor setPreviewSize(int width, int height) {
+            previewSize = new int[] {width, height};
+            return this;
+        }
+
+        @Override
+        public Editor setPictureSize(int width, int height) {
+            pictureSize = new int[] {width, height};
+            return this;
+        }
+
+        @Override
+        public Editor setFlashMode(String flashMode) {
+            this.flashMode = flashMode;
+            return this;
+        }
+
+        @Override
+        public Editor setZoomRatio(float zoomRatio) {
+            this.zoomRatio = zoomRatio;
+            return this;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (camera == null) {
+                throw new IOException("Camera not open");
+            }
+            if (previewSize == null && pictureSize == null && flashMode == null) {
+                if (zoomRatio > 0) {
+                    // Pinch moves arrive faster than the camera applies parameters, merge them.
+                    CameraParameterCache.Transaction transaction = parameterCache.begin();
+                    write(transaction.parameters());
+                    transaction.commitLater();
+                }
+                return;
+            }
+
+            Camera.Size current = parameterCache.get().getPreviewSize();
+            // The buffers are sized for the preview, so a new size always restarts it.
+            boolean restart = previewing && previewSize != null
+                    && (previewSize[0] != current.width || previewSize[1] != current.height);
+            if (previewing && !restart && canApplyLive()) {
+                CameraParameterCache.Transaction transaction = parameterCache.begin();
+                write(transaction.parameters());
+                try {
+                    transaction.commit();
+                    recordLiveOutcome(true);
+                    return;
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Live parameter change rejected, retrying with a preview restart", e);
+                    recordLiveOutcome(false);
+                    restart = true;
+                }
+            }
+            if (restart) {
+                stopPreview();
+            }
+
+            // A rejected live attempt was rolled back, so the changes are written again.
+            CameraParameterCache.Transaction transaction = parameterCache.begin();
+            write(transaction.parameters());
+            try {
+                transaction.commit();
+            } catch (RuntimeException e) {
+                throw new IOException("The camera rejected the settings", e);
+            } finally {
+                if (restart) {
+                    startPreview();
+                }
+            }
+        }
+
+        private void write(Camera.Parameters parameters) {
+            if (previewSize != null) {
+                parameters.setPreviewSize(previewSize[0], previewSize[1]);
+            }
+            if (pictureSize != null) {
+                parameters.setPictureSize(pictureSize[0], pictureSize[1]);
+            }
+            if (flashMode != null) {
+                parameters.setFlashMode(flashMode);
+            }
+            if (zoomRatio > 0 && parameters.isZoomSupported()) {
+                parameters.setZoom(zoomIndex(parameters.getZoomRatios(), zoomRatio));
+            }
+        }
+
+        /** Whether this device took the flash and picture size changes without a restart before. */
+        private boolean canApplyLive() {
+            return (flashMode == null
+                            || !parameterChangeClassifier.needsRestart(ParameterChangeClassifier.FLASH))
+                    && (pictureSize == null
+                            || !parameterChangeClassifier.needsRestart(ParameterChangeClassifier.PICTURE_SIZE));
+        }
+
+        /** Remembers for this device whether the flash and picture size changes can be made live. */
+        private void recordLiveOutcome(boolean applied) {
+            if (flashMode != null) {
+                parameterChangeClassifier.recordLiveOutcome(ParameterChangeClassifier.FLASH, applied);
+            }
+            if (pictureSize != null) {
+                parameterChangeClassifier.recordLiveOutcome(
+                        ParameterChangeClassifier.PICTURE_SIZE, applied);
+            }
+        }
+    }
+
+    /** The index of the zoom ratio, in hundredths, closest to {@code zoomRatio}. */
+    private static int zoomIndex(List<Integer> ratios, float zoomRatio) {
+        int wanted = Math.round(zoomRatio * 100);
+        int index = 0;
+        for (int i = 1; i < ratios.size(); i++) {
+            if (Math.abs(ratios.get(i) - wanted) < Math.abs(ratios.get(index) - wanted)) {
+                index = i;
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,773 @@
+package com.ric.adv_camera;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import com.ric.adv_camera.vision.BitmapUtils;
+import com.ric.adv_camera.vision.CameraBackend;
+import com.ric.adv_camera.vision.FrameBufferPool;
+import com.ric.adv_camera.vision.FrameMetadata;
+import com.ric.adv_camera.vision.Nv21Utils;
+import com.ric.adv_camera.vision.PreviewConfigSelector;
+import com.ric.adv_camera.vision.RegionOfInterest;
+import com.ric.adv_camera.vision.Yuv420Converter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CameraBackend} on {@code android.hardware.camera2}.
+ *
+ * <p>The preview goes to the target surface and, at the same size, to an {@link ImageReader} in
+ * {@code YUV_420_888}. Each image is converted with a {@link Yuv420Converter} straight into a
+ * pooled NV21 buffer, the only copy on the way to the detector, and closed right away so the camera
+ * never waits for the detector. Pictures come from a second, JPEG {@link ImageReader}.
+ *
+ * <p>Camera2 is asynchronous; this class runs its callbacks on a thread of its own and waits for
+ * the camera where the {@link CameraBackend} contract is synchronous, so it must not be called from
+ * that thread. Frames, focus and picture results arrive there too.
+ *
+ * <p>If the target surface has no fixed size, the camera rounds it to a supported one.
+ */
+@RequiresApi(VERSION_CODES.LOLLIPOP)
+class Camera2Backend implements CameraBackend<SurfaceHolder> {
+    private static final String TAG = "Camera2Backend";
+
+    private static final long OPEN_TIMEOUT_MS = 2500;
+    private static final int BUFFER_COUNT = 3;
+    /** Images the YUV reader holds; one being converted and one arriving. */
+    private static final int MAX_IMAGES = 2;
+    /** Preview size used until one is set, as for the Camera1 default of the plugin. */
+    private static final int DEFAULT_PREVIEW_WIDTH = 1280;
+    private static final int DEFAULT_PREVIEW_HEIGHT = 720;
+
+    private final CameraManager cameraManager;
+
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+
+    private CameraDevice device;
+    private CameraCharacteristics characteristics;
+    private int facing = FACING_BACK;
+    private int sensorOrientation;
+    private int displayRotation;
+    private SurfaceHolder previewTarget;
+
+    private Size previewSize;
+    private Size pictureSize;
+    private String flashMode = FLASH_OFF;
+    private float zoomRatio = 1f;
+    /** Set by focus(), cleared by the next continuous focus request. */
+    private MeteringRectangle[] focusRegions;
+
+    private CameraCaptureSession session;
+    private CaptureRequest.Builder previewRequest;
+    private ImageReader frameReader;
+    private ImageReader pictureReader;
+
+    // Frames are converted and delivered under this lock, so readers are never closed mid-frame.
+    private final Object frameLock = new Object();
+    private final Yuv420Converter converter = new Yuv420Converter();
+    private volatile FrameBufferPool bufferPool;
+    private int bufferCount = BUFFER_COUNT;
+    private FrameMetadata frameMetadata;
+    private volatile Sink sink;
+
+    // Only touched on the camera thread once the preview runs.
+    private FocusCallback pendingFocus;
+    private PictureCallback pendingPicture;
+
+    Camera2Backend(Context context) {
+        cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void open(int facing) throws IOException {
+        if (device != null) {
+            throw new IOException("Camera already open");
+        }
+        String cameraId;
+        try {
+            cameraId = findCameraId(facing);
+            if (cameraId == null) {
+                throw new IOException("No camera facing " + facing);
+            }
+            characteristics = cameraManager.getCameraCharacteristics(cameraId);
+        } catch (CameraAccessException e) {
+            throw new IOException("Reading the cameras failed", e);
+        }
+        this.facing = facing;
+        Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        sensorOrientation = orientation != null ? orientation : 0;
+
+        List<int[]> previewSizes = getSupportedPreviewSizes();
+        previewSize = closest(previewSizes, DEFAULT_PREVIEW_WIDTH, DEFAULT_PREVIEW_HEIGHT);
+        pictureSize = largest(getSupportedPictureSizes());
+
+        cameraThread = new HandlerThread("Camera2Backend");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
+
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CameraDevice[] result = new CameraDevice[1];
+        try {
+            cameraManager.openCamera(cameraId, new CameraDevice.StateCallback() {
+                @Override
+                public void onOpened(@NonNull CameraDevice camera) {
+                    result[0] = camera;
+                    opened.countDown();
+                }
+
+                @Override
+                public void onDisconnected(@NonNull CameraDevice camera) {
+                    Log.w(TAG, "Camera disconnected");
+                    camera.close();
+                    opened.countDown();
+                }
+
+                @Override
+                public void onError(@NonNull CameraDevice camera, int error) {
+                    Log.e(TAG, "Camera error " + error);
+                    camera.close();
+                    opened.countDown();
+                }
+            }, cameraHandler);
+            if (!opened.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Opening camera " + cameraId + " timed out");
+            }
+        } catch (CameraAccessException | SecurityException e) {
+            quitCameraThread();
+            throw new IOException("Opening camera " + cameraId + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            quitCameraThread();
+            throw new IOException("Interrupted while opening camera " + cameraId, e);
+        } catch (IOException e) {
+            quitCameraThread();
+            throw e;
+        }
+        if (result[0] == null) {
+            quitCameraThread();
+            throw new IOException("Opening camera " + cameraId + " failed");
+        }
+        device = result[0];
+    }
+
+    @Override
+    public boolean isOpen() {
+        return device != null;
+    }
+
+    @Override
+    public void close() {
+        if (device == null) {
+            return;
+        }
+        stopPreview();
+        device.close();
+        device = null;
+        quitCameraThread();
+    }
+
+    @Override
+    public int getFacing() {
+        return facing;
+    }
+
+    /** The preview itself is rotated by the surface, only the frames need to know. */
+    @Override
+    public void setDisplayRotation(int degrees) {
+        displayRotation = degrees;
+    }
+
+    @Override
+    public int getFrameRotation() {
+        return PreviewConfigSelector.frameRotation(
+                facing == FACING_FRONT, sensorOrientation, displayRotation);
+    }
+
+    @Override
+    public int getSensorOrientation() {
+        return sensorOrientation;
+    }
+
+    @Override
+    public void setPreviewTarget(SurfaceHolder target) {
+        previewTarget = target;
+    }
+
+    @Override
+    public void startPreview() throws IOException {
+        if (device == null) {
+            throw new IOException("Camera not open");
+        }
+        if (session != null) {
+            return;
+        }
+        if (previewTarget == null || previewTarget.getSurface() == null) {
+            throw new IOException("No preview surface");
+        }
+
+        int width = previewSize.getWidth();
+        int height = previewSize.getHeight();
+        synchronized (frameLock) {
+            frameMetadata = new FrameMetadata.Builder()
+                    .setWidth(width)
+                    .setHeight(height)
+                    .setRotation(getFrameRotation())
+                    .build();
+            bufferPool = new FrameBufferPool(bufferCount, Nv21Utils.frameSize(width, height));
+            converter.resetLayout();
+        }
+        frameReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, MAX_IMAGES);
+        frameReader.setOnImageAvailableListener(onFrameAvailable, cameraHandler);
+        pictureReader = ImageReader.newInstance(
+                pictureSize.getWidth(), pictureSize.getHeight(), ImageFormat.JPEG, 1);
+        pictureReader.setOnImageAvailableListener(onPictureAvailable, cameraHandler);
+
+        Surface previewSurface = previewTarget.getSurface();
+        List<Surface> outputs =
+                Arrays.asList(previewSurface, frameReader.getSurface(), pictureReader.getSurface());
+        final CountDownLatch configured = new CountDownLatch(1);
+        final CameraCaptureSession[] result = new CameraCaptureSession[1];
+        try {
+            device.createCaptureSession(outputs, new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession configuredSession) {
+                    result[0] = configuredSession;
+                    configured.countDown();
+                }
+
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession failedSession) {
+                    configured.countDown();
+                }
+            }, cameraHandler);
+            if (!configured.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS) || result[0] == null) {
+                throw new IOException("Configuring the capture session failed");
+            }
+            session = result[0];
+
+            previewRequest = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            previewRequest.addTarget(previewSurface);
+            previewRequest.addTarget(frameReader.getSurface());
+            focusRegions = null;
+            applySettings(previewRequest, false);
+            session.setRepeatingRequest(
+                    previewRequest.build(), previewCaptureCallback, cameraHandler);
+        } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+            stopPreview();
+            throw new IOException("Starting the preview failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopPreview();
+            throw new IOException("Interrupted while starting the preview", e);
+        } catch (IOException e) {
+            stopPreview();
+            throw e;
+        }
+    }
+
+    @Override
+    public void stopPreview() {
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        previewRequest = null;
+        synchronized (frameLock) {
+            if (frameReader != null) {
+                frameReader.close();
+                frameReader = null;
+            }
+            if (pictureReader != null) {
+                pictureReader.close();
+                pictureReader = null;
+            }
+        }
+        if (cameraHandler != null) {
+            // The callbacks are only touched on the camera thread.
+            cameraHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (pendingFocus != null) {
+                        pendingFocus.onFocused(false);
+                        pendingFocus = null;
+                    }
+                    if (pendingPicture != null) {
+                        pendingPicture.onError(new IOException("Preview stopped"));
+                        pendingPicture = null;
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void setPreviewBufferCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid preview buffer count: " + count);
+        }
+        bufferCount = count;
+    }
+
+    @Override
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void start(Sink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void stop() {
+        // Waits for a frame being delivered to the old sink.
+        synchronized (frameLock) {
+            sink = null;
+        }
+    }
+
+    @Override
+    public List<int[]> getSupportedPreviewSizes() {
+        return toPairs(configurations().getOutputSizes(ImageFormat.YUV_420_888));
+    }
+
+    @Override
+    public List<int[]> getSupportedPictureSizes() {
+        return toPairs(configurations().getOutputSizes(ImageFormat.JPEG));
+    }
+
+    @Override
+    public List<String> getSupportedFlashModes() {
+        Boolean available = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        if (available == null || !available) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(FLASH_OFF, FLASH_ON, FLASH_AUTO, FLASH_TORCH);
+    }
+
+    @Override
+    public float getMaxZoomRatio() {
+        Float maxZoom =
+                characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        return maxZoom != null ? maxZoom : 1f;
+    }
+
+    @Override
+    public int[] getPreviewSize() {
+        return new int[] {previewSize.getWidth(), previewSize.getHeight()};
+    }
+
+    @Override
+    public Editor edit() {
+        return new Camera2Editor();
+    }
+
+    @Override
+    public void focus(final RegionOfInterest area, final FocusCallback callback) {
+        if (session == null) {
+            callback.onFocused(false);
+            return;
+        }
+        Rect sensor = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        int left = Math.round(area.getLeft() * (sensor.width() - 1));
+        int top = Math.round(area.getTop() * (sensor.height() - 1));
+        int right = Math.round(area.getRight() * (sensor.width() - 1));
+        int bottom = Math.round(area.getBottom() * (sensor.height() - 1));
+        final MeteringRectangle[] regions = {new MeteringRectangle(
+                left, top, Math.max(1, right - left), Math.max(1, bottom - top),
+                MeteringRectangle.METERING_WEIGHT_MAX)};
+
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (session == null) {
+                    callback.onFocused(false);
+                    return;
+                }
+                if (pendingFocus != null) {
+                    pendingFocus.onFocused(false);
+                }
+                pendingFocus = callback;
+                focusRegions = regions;
+                try {
+                    // The repeating request keeps the regions, a single one triggers the scan.
+                    applySettings(previewRequest, false);
+                    session.setRepeatingRequest(
+                            previewRequest.build(), previewCaptureCallback, cameraHandler);
+                    CaptureRequest.Builder trigger =
+                            device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                    trigger.addTarget(frameReader.getSurface());
+                    applySettings(trigger, false);
+                    trigger.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                            CameraMetadata.CONTROL_AF_TRIGGER_START);
+                    session.capture(trigger.build(), null, cameraHandler);
+                } catch (CameraAccessException | IllegalStateException e) {
+                    Log.e(TAG, "Focusing failed", e);
+                    pendingFocus = null;
+                    callback.onFocused(false);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void takePicture(final PictureCallback callback) {
+        if (session == null) {
+            callback.onError(new IOException("Preview not running"));
+            return;
+        }
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (session == null) {
+                    callback.onError(new IOException("Preview not running"));
+                    return;
+                }
+                if (pendingPicture != null) {
+                    callback.onError(new IOException("A picture is already being taken"));
+                    return;
+                }
+                try {
+                    CaptureRequest.Builder still =
+                            device.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+                    still.addTarget(pictureReader.getSurface());
+                    applySettings(still, true);
+                    pendingPicture = callback;
+                    session.capture(still.build(), null, cameraHandler);
+                } catch (CameraAccessException | IllegalStateException e) {
+                    pendingPicture = null;
+                    callback.onError(e);
+                }
+            }
+        });
+    }
+
+    private final ImageReader.OnImageAvailableListener onFrameAvailable =
+            new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            synchronized (frameLock) {
+                if (reader != frameReader) {
+                    return;
+                }
+                Image image = reader.acquireLatestImage();
+                if (image == null) {
+                    return;
+                }
+                FrameBufferPool.Lease frame = null;
+                try {
+                    Sink target = sink;
+                    // Like a camera, no frame while the sink still holds every buffer.
+                    frame = target != null ? bufferPool.acquire() : null;
+                    if (frame == null) {
+                        return;
+                    }
+                    BitmapUtils.yuv420ThreePlanesToNV21(image.getPlanes(),
+                            image.getWidth(), image.getHeight(), converter, frame.array());
+                    frame.setTimestampMs(SystemClock.elapsedRealtime());
+                    target.onFrame(frame, frameMetadata);
+                } finally {
+                    // The data was copied out, the camera can reuse the image right away.
+                    image.close();
+                    if (frame != null) {
+                        frame.release();
+                    }
+                }
+            }
+        }
+    };
+
+    private final ImageReader.OnImageAvailableListener onPictureAvailable =
+            new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            byte[] jpeg;
+            try {
+                ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                jpeg = new byte[buffer.remaining()];
+                buffer.get(jpeg);
+            } finally {
+                image.close();
+            }
+            PictureCallback callback = pendingPicture;
+            pendingPicture = null;
+            if (callback != null) {
+                callback.onPictureTaken(jpeg);
+            }
+        }
+    };
+
+    /** Reports the end of a focus scan started by {@link #focus}. */
+    private final CameraCaptureSession.CaptureCallback previewCaptureCallback =
+            new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            if (pendingFocus == null) {
+                return;
+            }
+            Integer state = result.get(CaptureResult.CONTROL_AF_STATE);
+            if (state == null) {
+                return;
+            }
+            if (state == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED
+                    || state == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
+                FocusCallback callback = pendingFocus;
+                pendingFocus = null;
+                callback.onFocused(state == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED);
+            }
+        }
+    };
+
+    /** Writes focus, flash and zoom into {@code request}. */
+    private void applySettings(CaptureRequest.Builder request, boolean still) {
+        request.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+        if (focusRegions != null) {
+            request.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_AUTO);
+            if (maxRegions(CameraCharacteristics.CONTROL_MAX_REGIONS_AF) > 0) {
+                request.set(CaptureRequest.CONTROL_AF_REGIONS, focusRegions);
+            }
+            if (maxRegions(CameraCharacteristics.CONTROL_MAX_REGIONS_AE) > 0) {
+                request.set(CaptureRequest.CONTROL_AE_REGIONS, focusRegions);
+            }
+        } else if (supportsAfMode(CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
+            request.set(CaptureRequest.CONTROL_AF_MODE,
+                    CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        }
+
+        int aeMode = CameraMetadata.CONTROL_AE_MODE_ON;
+        int flash = CameraMetadata.FLASH_MODE_OFF;
+        if (getSupportedFlashModes().contains(flashMode)) {
+            switch (flashMode) {
+                case FLASH_ON:
+                    // Only fires for pictures; the preview would otherwise light up constantly.
+                    aeMode = still
+                            ? CameraMetadata.CONTROL_AE_MODE_ON_ALWAYS_FLASH
+                            : CameraMetadata.CONTROL_AE_MODE_ON;
+                    break;
+                case FLASH_AUTO:
+                    aeMode = CameraMetadata.CONTROL_AE_MODE_ON_AUTO_FLASH;
+                    break;
+                case FLASH_TORCH:
+                    flash = CameraMetadata.FLASH_MODE_TORCH;
+                    break;
+                default:
+                    break;
+            }
+        }
+        request.set(CaptureRequest.CONTROL_AE_MODE, aeMode);
+        request.set(CaptureRequest.FLASH_MODE, flash);
+
+        Rect sensor = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        if (sensor != null && zoomRatio > 1f) {
+            int cropWidth = Math.round(sensor.width() / zoomRatio);
+            int cropHeight = Math.round(sensor.height() / zoomRatio);
+            int left = (sensor.width() - cropWidth) / 2;
+            int top = (sensor.height() - cropHeight) / 2;
+            request.set(CaptureRequest.SCALER_CROP_REGION,
+                    new Rect(left, top, left + cropWidth, top + cropHeight));
+        }
+    }
+
+    private int maxRegions(CameraCharacteristics.Key<Integer> key) {
+        Integer max = characteristics.get(key);
+        return max != null ? max : 0;
+    }
+
+    private boolean supportsAfMode(int mode) {
+        int[] modes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        if (modes == null) {
+            return false;
+        }
+        for (int available : modes) {
+            if (available == mode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private StreamConfigurationMap configurations() {
+        return characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    }
+
+    private String findCameraId(int facing) throws CameraAccessException {
+        int wanted = facing == FACING_FRONT
+                ? CameraMetadata.LENS_FACING_FRONT
+                : CameraMetadata.LENS_FACING_BACK;
+        for (String id : cameraManager.getCameraIdList()) {
+            Integer lensFacing = cameraManager.getCameraCharacteristics(id)
+                    .get(CameraCharacteristics.LENS_FACING);
+            if (lensFacing != null && lensFacing == wanted) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    private void quitCameraThread() {
+        if (cameraThread != null) {
+            cameraThread.quitSafely();
+            cameraThread = null;
+            cameraHandler = null;
+        }
+    }
+
+    private static List<int[]> toPairs(Size[] sizes) {
+        if (sizes == null) {
+            return Collections.emptyList();
+        }
+        List<int[]> pairs = new ArrayList<>(sizes.length);
+        for (Size size : sizes) {
+            pairs.add(new int[] {size.getWidth(), size.getHeight()});
+        }
+        return pairs;
+    }
+
+    private static Size closest(List<int[]> sizes, int desiredWidth, int desiredHeight) {
+        int count = sizes.size();
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = sizes.get(i)[0];
+            heights[i] = sizes.get(i)[1];
+        }
+        int selected = PreviewConfigSelector.closestSize(
+                widths, heights, count, desiredWidth, desiredHeight);
+        return selected >= 0 ? new Size(widths[selected], heights[selected]) : null;
+    }
+
+    private static Size largest(List<int[]> sizes) {
+        int[] best = null;
+        for (int[] size : sizes) {
+            if (best == null || (long) size[0] * size[1] > (long) best[0] * best[1]) {
+                best = size;
+            }
+        }
+        return best != null ? new Size(best[0], best[1]) : null;
+    }
+
+    private static boolean contains(List<int[]> sizes, int width, int height) {
+        for (int[] size : sizes) {
+            if (size[0] == width && size[1] == height) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Camera2Editor implements Editor {
+        private Size newPreviewSize = previewSize;
+        private Size newPictureSize = pictureSize;
+        private String newFlashMode = flashMode;
+        private float newZoomRatio = zoomRatio;
+
+        @Override
+        public Editor setPreviewSize(int width, int height) {
+            newPreviewSize = new Size(width, height);
+            return this;
+        }
+
+        @Override
+        public Editor setPictureSize(int width, int height) {
+            newPictureSize = new Size(width, height);
+            return this;
+        }
+
+        @Override
+        public Editor setFlashMode(String flashMode) {
+            newFlashMode = flashMode;
+            return this;
+        }
+
+        @Override
+        public Editor setZoomRatio(float zoomRatio) {
+            newZoomRatio = zoomRatio;
+            return this;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (device == null) {
+                throw new IOException("Camera not open");
+            }
+            if (!contains(getSupportedPreviewSizes(),
+                    newPreviewSize.getWidth(), newPreviewSize.getHeight())) {
+                throw new IOException("Unsupported preview size " + newPreviewSize);
+            }
+            if (!contains(getSupportedPictureSizes(),
+                    newPictureSize.getWidth(), newPictureSize.getHeight())) {
+                throw new IOException("Unsupported picture size " + newPictureSize);
+            }
+            if (!FLASH_OFF.equals(newFlashMode)
+                    && !getSupportedFlashModes().contains(newFlashMode)) {
+                throw new IOException("Unsupported flash mode " + newFlashMode);
+            }
+            if (newZoomRatio < 1f || newZoomRatio > getMaxZoomRatio()) {
+                throw new IOException("Unsupported zoom ratio " + newZoomRatio);
+            }
+
+            // The readers are sized for the preview and the pictures.
+            boolean restart = session != null
+                    && (!newPreviewSize.equals(previewSize) || !newPictureSize.equals(pictureSize));
+            if (restart) {
+                stopPreview();
+            }
+            previewSize = newPreviewSize;
+            pictureSize = newPictureSize;
+            flashMode = newFlashMode;
+            zoomRatio = newZoomRatio;
+            if (restart) {
+                startPreview();
+            } else if (session != null) {
+                try {
+                    applySettings(previewRequest, false);
+                    session.setRepeatingRequest(
+                            previewRequest.build(), previewCaptureCallback, cameraHandler);
+                } catch (CameraAccessException | IllegalStateException e) {
+                    throw new IOException("Applying the settings failed", e);
+                }
+            }
+        }
+    }
+}
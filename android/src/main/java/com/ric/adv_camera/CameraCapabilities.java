@@ -0,0 +1,40 @@
+package com.ric.adv_camera;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * What {@link CameraController#attach} picked for one camera and one size request: the preview
+ * size and the picture size. Stored by {@link CameraCapabilityStore} so a later startup can skip
+ * enumerating the supported sizes.
+ */
+final class CameraCapabilities {
+    final int previewWidth;
+    final int previewHeight;
+    /** 0 when the camera keeps its default picture size. */
+    final int pictureWidth;
+    final int pictureHeight;
+
+    CameraCapabilities(int previewWidth, int previewHeight, int pictureWidth, int pictureHeight) {
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.pictureWidth = pictureWidth;
+        this.pictureHeight = pictureHeight;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeShort(previewWidth);
+        out.writeShort(previewHeight);
+        out.writeShort(pictureWidth);
+        out.writeShort(pictureHeight);
+    }
+
+    static CameraCapabilities readFrom(DataInputStream in) throws IOException {
+        int previewWidth = in.readUnsignedShort();
+        int previewHeight = in.readUnsignedShort();
+        int pictureWidth = in.readUnsignedShort();
+        int pictureHeight = in.readUnsignedShort();
+        return new CameraCapabilities(previewWidth, previewHeight, pictureWidth, pictureHeight);
+    }
+}
@@ -0,0 +1,160 @@
+package com.ric.adv_camera;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists {@link CameraCapabilities} per camera backend, facing and size request in a small binary
+ * file in app storage.
+ *
+ * <p>The file is tagged with {@link Build#FINGERPRINT} and discarded when it does not match, so an
+ * OS update, which can change what the camera HAL reports, starts from a fresh probe. Loading starts
+ * on plugin registration on a background thread; lookups wait briefly for it and otherwise behave
+ * like a miss.
+ */
+class CameraCapabilityStore {
+    private static final String TAG = "CameraCapabilityStore";
+    private static final String FILE_NAME = "adv_camera_capabilities.bin";
+    private static final int VERSION = 2;
+    /** How long a lookup waits for the file to be loaded before treating it as a miss. */
+    private static final long LOAD_TIMEOUT_MS = 300;
+
+    private static CameraCapabilityStore instance;
+
+    private final File file;
+    private final String fingerprint;
+    private final Map<String, CameraCapabilities> entries = new HashMap<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    /** Returns the process-wide store, starting to load it on first use. */
+    static synchronized CameraCapabilityStore getInstance(Context context) {
+        if (instance == null) {
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            instance = new CameraCapabilityStore(file, Build.FINGERPRINT);
+            instance.loadInBackground();
+        }
+        return instance;
+    }
+
+    /**
+     * Key of the capabilities chosen for the camera facing {@code facing} through {@code backend},
+     * as each camera API lists its own sizes, and the requested sizes.
+     */
+    static String key(String backend, int facing, float initialWidth, float initialHeight, boolean bestPictureSize) {
+        return backend + ":" + facing + ":" + (int) initialWidth + "x" + (int) initialHeight + ":" + bestPictureSize;
+    }
+
+    private CameraCapabilityStore(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    @Nullable
+    CameraCapabilities get(String key) {
+        awaitLoaded();
+        synchronized (this) {
+            return entries.get(key);
+        }
+    }
+
+    void put(String key, CameraCapabilities capabilities) {
+        awaitLoaded();
+        synchronized (this) {
+            entries.put(key, capabilities);
+            save();
+        }
+    }
+
+    /** Drops an entry the camera no longer accepts. */
+    void remove(String key) {
+        awaitLoaded();
+        synchronized (this) {
+            if (entries.remove(key) != null) {
+                save();
+            }
+        }
+    }
+
+    private void loadInBackground() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } finally {
+                    loaded.countDown();
+                }
+            }
+        }, "AdvCameraCapabilities").start();
+    }
+
+    private void awaitLoaded() {
+        try {
+            if (!loaded.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Capabilities not loaded in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION || !fingerprint.equals(in.readUTF())) {
+                Log.d(TAG, "Discarding capabilities of another build");
+                file.delete();
+                return;
+            }
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                entries.put(key, CameraCapabilities.readFrom(in));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file + ", starting over", e);
+            entries.clear();
+            file.delete();
+        }
+    }
+
+    /** Writes all entries to a temporary file and swaps it in, so a crash never leaves half a file. */
+    private void save() {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+            out.writeShort(entries.size());
+            for (Map.Entry<String, CameraCapabilities> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+            temporary.delete();
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            Log.w(TAG, "Failed to replace " + file);
+            temporary.delete();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.ric.adv_camera;
+
+import com.ric.adv_camera.vision.CameraBackend;
+import com.ric.adv_camera.vision.PreviewConfigSelector;
+import com.ric.adv_camera.vision.RegionOfInterest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The camera decisions of an {@link AdvCamera} view on top of whichever {@link CameraBackend} is
+ * open: which preview and picture size to use, the flash mode for the requested flash type, pinch
+ * zoom, where a tap focuses, and how far the governor scales the preview down. It knows nothing of
+ * the view itself, so it can be driven by a {@link com.ric.adv_camera.vision.FakeCameraBackend}.
+ *
+ * <p>Not thread safe; use it from the camera thread, like the backend.
+ */
+class CameraController {
+    /** Finger movement, in pixels, below which a pinch does not zoom. */
+    private static final float MIN_PINCH_DELTA = 2f;
+
+    private final int initialWidth;
+    private final int initialHeight;
+    private final boolean bestPictureSize;
+
+    private CameraBackend<?> backend;
+    private String flashType;
+    /** The size chosen on attach or by setPreviewRatio, which the governor scales down from. */
+    private int[] basePreviewSize;
+    private float zoomRatio = 1f;
+    private float pinchSpacing;
+
+    /**
+     * @param initialWidth the preview width to get closest to
+     * @param initialHeight the preview height to get closest to
+     * @param bestPictureSize whether to take pictures at the largest size instead of the default
+     * @param flashType one of the {@code CameraBackend.FLASH_} modes
+     */
+    CameraController(int initialWidth, int initialHeight, boolean bestPictureSize, String flashType) {
+        this.initialWidth = initialWidth;
+        this.initialHeight = initialHeight;
+        this.bestPictureSize = bestPictureSize;
+        this.flashType = flashType;
+    }
+
+    /**
+     * Sets up a newly opened {@code backend} before its preview starts: preview and picture size,
+     * and the flash mode.
+     *
+     * @param cached what an earlier attach chose for the same camera and request, or null to choose
+     *     now; a choice the camera no longer accepts is made again
+     * @return what was applied, to be cached
+     * @throws IOException if the camera rejects the settings
+     */
+    CameraCapabilities attach(CameraBackend<?> backend, CameraCapabilities cached)
+            throws IOException {
+        this.backend = backend;
+        zoomRatio = 1f;
+        pinchSpacing = 0f;
+        if (cached != null) {
+            try {
+                apply(cached);
+                return cached;
+            } catch (IOException e) {
+                // E.g. another camera behind the same facing after an update; choose again below.
+            }
+        }
+
+        CameraCapabilities chosen = choose();
+        apply(chosen);
+        return chosen;
+    }
+
+    /** Forgets the backend, e.g. before it is closed. */
+    void detach() {
+        backend = null;
+        basePreviewSize = null;
+    }
+
+    CameraBackend<?> getBackend() {
+        return backend;
+    }
+
+    /**
+     * Switches to the supported preview size with aspect ratio {@code ratio}, e.g. "16:9", closest
+     * to the initial size.
+     *
+     * @return false if the camera has no preview size with that ratio
+     */
+    boolean setPreviewRatio(String ratio) throws IOException {
+        List<int[]> sizes = backend.getSupportedPreviewSizes();
+        int count = sizes.size();
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        int matching = 0;
+        for (int[] size : sizes) {
+            if (asFraction(size[0], size[1]).equals(ratio)) {
+                widths[matching] = size[0];
+                heights[matching] = size[1];
+                matching++;
+            }
+        }
+        int selected = PreviewConfigSelector.closestSize(
+                widths, heights, matching, initialWidth, initialHeight);
+        if (selected < 0) {
+            return false;
+        }
+
+        backend.edit().setPreviewSize(widths[selected], heights[selected]).commit();
+        basePreviewSize = new int[] {widths[selected], heights[selected]};
+        return true;
+    }
+
+    void setPictureSize(int width, int height) throws IOException {
+        backend.edit().setPictureSize(width, height).commit();
+    }
+
+    String getFlashType() {
+        return flashType;
+    }
+
+    /** Applies {@code flashType}, or the closest mode the camera has; see {@link #selectFlashMode}. */
+    void setFlashType(String flashType) throws IOException {
+        String previous = selectFlashMode();
+        this.flashType = flashType;
+        String flashMode = selectFlashMode();
+        if (flashMode == null) {
+            return;
+        }
+        if (CameraBackend.FLASH_TORCH.equals(previous) && CameraBackend.FLASH_ON.equals(flashMode)) {
+            // Some devices keep the torch lit unless it is switched off on its own first.
+            backend.edit().setFlashMode(CameraBackend.FLASH_OFF).commit();
+        }
+        backend.edit().setFlashMode(flashMode).commit();
+    }
+
+    /**
+     * The backend's mode for the flash type, with torch falling back to on, or null when the camera
+     * has no flash.
+     */
+    String selectFlashMode() {
+        List<String> supported = backend.getSupportedFlashModes();
+        if (supported.isEmpty()) {
+            return null;
+        }
+        if (supported.contains(flashType)) {
+            return flashType;
+        }
+        if (CameraBackend.FLASH_TORCH.equals(flashType) && supported.contains(CameraBackend.FLASH_ON)) {
+            return CameraBackend.FLASH_ON;
+        }
+        return CameraBackend.FLASH_OFF;
+    }
+
+    /**
+     * Switches to the preview size for the governor's {@code scale}: the largest supported one with
+     * the aspect ratio of the base size and at most {@code scale} times its width and height, or the
+     * base size if there is none. The backend restarts a running preview for it.
+     *
+     * @return whether the preview size changed
+     */
+    boolean applyPreviewScale(float scale) throws IOException {
+        if (basePreviewSize == null) {
+            return false;
+        }
+        int[] target = selectScaledPreviewSize(backend.getSupportedPreviewSizes(), scale);
+        if (Arrays.equals(target, backend.getPreviewSize())) {
+            return false;
+        }
+        backend.edit().setPreviewSize(target[0], target[1]).commit();
+        return true;
+    }
+
+    /** Starts a pinch with the fingers {@code spacing} pixels apart. */
+    void startPinch(float spacing) {
+        pinchSpacing = spacing;
+    }
+
+    /**
+     * Zooms by how much the fingers moved apart since the last call, between 1 and the camera's
+     * maximum.
+     *
+     * @return whether the zoom ratio changed
+     */
+    boolean pinch(float spacing) throws IOException {
+        if (pinchSpacing <= 0 || Math.abs(spacing - pinchSpacing) < MIN_PINCH_DELTA) {
+            return false;
+        }
+        float ratio = Math.max(1f,
+                Math.min(backend.getMaxZoomRatio(), zoomRatio * spacing / pinchSpacing));
+        pinchSpacing = spacing;
+        if (ratio == zoomRatio) {
+            return false;
+        }
+        backend.edit().setZoomRatio(ratio).commit();
+        zoomRatio = ratio;
+        return true;
+    }
+
+    float getZoomRatio() {
+        return zoomRatio;
+    }
+
+    /**
+     * Focuses and meters around a point of the view showing the preview.
+     *
+     * @param halfSize half the side of the focus area, in view pixels
+     * @return the area handed to the backend, relative to the unrotated frame, or null when the
+     *     view has no size yet
+     */
+    RegionOfInterest focus(float x, float y, int viewWidth, int viewHeight, float halfSize,
+                           CameraBackend.FocusCallback callback) {
+        if (viewWidth == 0 || viewHeight == 0) {
+            return null;
+        }
+        float relativeX = Math.max(0f, Math.min(1f, x / viewWidth));
+        float relativeY = Math.max(0f, Math.min(1f, y / viewHeight));
+        if (backend.getFacing() == CameraBackend.FACING_FRONT) {
+            // The front preview is mirrored.
+            relativeX = 1f - relativeX;
+        }
+        float halfWidth = Math.max(1f, halfSize) / viewWidth;
+        float halfHeight = Math.max(1f, halfSize) / viewHeight;
+        RegionOfInterest area = new RegionOfInterest(
+                Math.max(0f, relativeX - halfWidth),
+                Math.max(0f, relativeY - halfHeight),
+                Math.min(1f, relativeX + halfWidth),
+                Math.min(1f, relativeY + halfHeight))
+                .toSensorOrientation(backend.getFrameRotation());
+        backend.focus(area, callback);
+        return area;
+    }
+
+    /**
+     * The clockwise rotation that makes a picture upright, for a device turned {@code
+     * deviceOrientation} degrees clockwise from its natural orientation.
+     */
+    int getPhotoRotation(int deviceOrientation) {
+        int sensorOrientation = backend.getSensorOrientation();
+        if (backend.getFacing() == CameraBackend.FACING_FRONT) {
+            return (sensorOrientation - deviceOrientation + 360) % 360;
+        }
+        return (sensorOrientation + deviceOrientation) % 360;
+    }
+
+    /** The preview size closest to the initial one and the picture size, for a cache miss. */
+    private CameraCapabilities choose() {
+        int[] previewSize = closestSize(backend.getSupportedPreviewSizes(), initialWidth, initialHeight);
+        if (previewSize == null) {
+            previewSize = backend.getPreviewSize();
+        }
+        int[] pictureSize = bestPictureSize ? largestSize(backend.getSupportedPictureSizes()) : null;
+        return new CameraCapabilities(
+                previewSize[0], previewSize[1],
+                pictureSize != null ? pictureSize[0] : 0, pictureSize != null ? pictureSize[1] : 0);
+    }
+
+    private void apply(CameraCapabilities capabilities) throws IOException {
+        CameraBackend.Editor editor = backend.edit()
+                .setPreviewSize(capabilities.previewWidth, capabilities.previewHeight);
+        if (capabilities.pictureWidth > 0) {
+            editor.setPictureSize(capabilities.pictureWidth, capabilities.pictureHeight);
+        }
+        String flashMode = selectFlashMode();
+        if (flashMode != null) {
+            editor.setFlashMode(flashMode);
+        }
+        editor.commit();
+        basePreviewSize = new int[] {capabilities.previewWidth, capabilities.previewHeight};
+    }
+
+    private int[] selectScaledPreviewSize(List<int[]> sizes, float scale) {
+        if (scale >= 1f) {
+            return basePreviewSize;
+        }
+
+        String ratio = asFraction(basePreviewSize[0], basePreviewSize[1]);
+        long maxArea = (long) (basePreviewSize[0] * scale) * (long) (basePreviewSize[1] * scale);
+        int[] selected = null;
+        for (int[] size : sizes) {
+            long area = (long) size[0] * size[1];
+            if (area <= maxArea
+                    && asFraction(size[0], size[1]).equals(ratio)
+                    && (selected == null || area > (long) selected[0] * selected[1])) {
+                selected = size;
+            }
+        }
+        return selected != null ? selected : basePreviewSize;
+    }
+
+    /** The size closest to {@code width} x {@code height}, or null if none is listed. */
+    private static int[] closestSize(List<int[]> sizes, int width, int height) {
+        int count = sizes.size();
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = sizes.get(i)[0];
+            heights[i] = sizes.get(i)[1];
+        }
+        int selected = PreviewConfigSelector.closestSize(widths, heights, count, width, height);
+        return selected >= 0 ? sizes.get(selected) : null;
+    }
+
+    private static int[] largestSize(List<int[]> sizes) {
+        int[] largest = null;
+        for (int[] size : sizes) {
+            if (largest == null || (long) size[0] * size[1] > (long) largest[0] * largest[1]) {
+                largest = size;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * @return the greatest common divisor
+     */
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /** The aspect ratio of a size in lowest terms, e.g. "16:9". */
+    static String asFraction(long a, long b) {
+        long gcd = gcd(a, b);
+        return (a / gcd) + ":" + (b / gcd);
+    }
+}
@@ -0,0 +1,138 @@
+package com.ric.adv_camera;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Holds the parameters of the open camera so they are read from the camera service once per
+ * {@link #attach}, not on every touch event or method call.
+ *
+ * <p>Changes go through a {@link Transaction}: edit {@link Transaction#parameters()}, then
+ * {@link Transaction#commit()} applies everything with a single {@code setParameters}. If the
+ * camera rejects the change the cache rolls back to what the camera still has. {@link
+ * Transaction#commitLater()} defers the call so that bursts of edits, such as pinch-zoom move
+ * events, are merged into one {@code setParameters}.
+ *
+ * <p>Not thread safe; use it from the thread that owns the camera.
+ */
+class CameraParameterCache {
+    private static final String TAG = "CameraParameterCache";
+
+    private final Handler handler;
+    private Camera camera;
+    private Camera.Parameters parameters;
+    /** Last state known to be applied, to roll back a rejected deferred commit. */
+    private String committed;
+    private boolean commitScheduled;
+
+    private final Runnable deferredCommit = new Runnable() {
+        @Override
+        public void run() {
+            commitScheduled = false;
+            if (camera == null) {
+                return;
+            }
+            try {
+                apply();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Deferred setParameters failed", e);
+            }
+        }
+    };
+
+    /** @param handler runs deferred commits; must be on the thread that owns the camera */
+    CameraParameterCache(Handler handler) {
+        this.handler = handler;
+    }
+
+    /** Reads the parameters of a newly opened camera. */
+    void attach(Camera camera) {
+        this.camera = camera;
+        this.parameters = camera.getParameters();
+        this.committed = parameters.flatten();
+    }
+
+    /** Forgets the camera, e.g. before it is released or switched. Pending edits are discarded. */
+    void invalidate() {
+        handler.removeCallbacks(deferredCommit);
+        commitScheduled = false;
+        camera = null;
+        parameters = null;
+        committed = null;
+    }
+
+    /**
+     * Returns the cached parameters, or null when no camera is attached. Treat them as read-only,
+     * changes belong in a {@link Transaction}.
+     */
+    @Nullable
+    Camera.Parameters get() {
+        return parameters;
+    }
+
+    /**
+     * Starts a transaction on the cached parameters.
+     *
+     * @throws IllegalStateException if no camera is attached
+     */
+    Transaction begin() {
+        if (parameters == null) {
+            throw new IllegalStateException("No camera attached");
+        }
+        return new Transaction();
+    }
+
+    private void apply() {
+        try {
+            camera.setParameters(parameters);
+            committed = parameters.flatten();
+        } catch (RuntimeException e) {
+            parameters.unflatten(committed);
+            throw e;
+        }
+    }
+
+    /** A set of changes applied with one {@code setParameters}. */
+    class Transaction {
+        private Transaction() {
+        }
+
+        /** The parameters to edit. */
+        Camera.Parameters parameters() {
+            return parameters;
+        }
+
+        /**
+         * Applies the changes now, together with any deferred ones.
+         *
+         * @throws RuntimeException if the camera rejects the parameters, after rolling back
+         */
+        void commit() {
+            if (commitScheduled) {
+                handler.removeCallbacks(deferredCommit);
+                commitScheduled = false;
+            }
+            apply();
+        }
+
+        /** Discards the changes, and any deferred ones, when they are not going to be applied. */
+        void rollback() {
+            if (commitScheduled) {
+                handler.removeCallbacks(deferredCommit);
+                commitScheduled = false;
+            }
+            parameters.unflatten(committed);
+        }
+
+        /** Applies the changes on the next turn of the camera thread, merged with later edits. */
+        void commitLater() {
+            if (!commitScheduled) {
+                commitScheduled = true;
+                handler.post(deferredCommit);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.ric.adv_camera;
+
+import android.content.Context;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.ric.adv_camera.vision.barcodescanner.BarcodeScannerProcessor;
+
+/**
+ * Opens the camera and builds the barcode scanner ahead of the first {@link AdvCamera}, so a scan
+ * screen opened cold does not pay for the camera open and the model load on its first frame.
+ *
+ * <p>The camera is opened on the thread that will become the view's camera thread, since Camera1
+ * delivers callbacks on the thread that opened it. The first view asking for the same camera and
+ * barcode formats {@link #claim claims} the thread, the camera and the scanner. Resources nobody
+ * claims are released after {@link #UNCLAIMED_TIMEOUT_MS} so other apps can use the camera.
+ */
+final class CameraPrewarmer {
+    private static final String TAG = "CameraPrewarmer";
+    private static final long UNCLAIMED_TIMEOUT_MS = 15000;
+
+    /** Resources prepared for one camera and set of barcode formats. */
+    static final class WarmResources {
+        final int cameraFacing;
+        final int barcodeFormats;
+        final HandlerThread cameraThread;
+        final Handler cameraHandler;
+        final BarcodeScannerProcessor barcodeScanner;
+        /** Only touched on the camera thread. */
+        private Camera camera;
+
+        private WarmResources(int cameraFacing, int barcodeFormats, BarcodeScannerProcessor barcodeScanner) {
+            this.cameraFacing = cameraFacing;
+            this.barcodeFormats = barcodeFormats;
+            this.barcodeScanner = barcodeScanner;
+            this.cameraThread = new HandlerThread("AdvCamera");
+            this.cameraThread.start();
+            this.cameraHandler = new Handler(cameraThread.getLooper());
+        }
+
+        /**
+         * Returns the pre-opened camera once, or null if opening failed. Call on the camera thread,
+         * where the open was queued first.
+         */
+        @Nullable
+        Camera takeCamera() {
+            Camera opened = camera;
+            camera = null;
+            return opened;
+        }
+
+        private void release() {
+            cameraHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (camera != null) {
+                        camera.release();
+                        camera = null;
+                    }
+                    cameraThread.quit();
+                }
+            });
+            barcodeScanner.stop();
+        }
+    }
+
+    private static WarmResources warm;
+
+    private CameraPrewarmer() {
+    }
+
+    /**
+     * Starts opening {@code cameraFacing} (0 rear, 1 front) and warming a scanner for {@code
+     * barcodeFormats}. Replaces resources warmed for a different configuration.
+     */
+    static synchronized void prewarm(Context context, int cameraFacing, int barcodeFormats) {
+        if (warm != null) {
+            if (warm.cameraFacing == cameraFacing && warm.barcodeFormats == barcodeFormats) {
+                return;
+            }
+            warm.release();
+        }
+
+        BarcodeScannerProcessor scanner = new BarcodeScannerProcessor(context, barcodeFormats, false);
+        final WarmResources resources = new WarmResources(cameraFacing, barcodeFormats, scanner);
+        warm = resources;
+
+        final int cameraId = cameraFacing;
+        resources.cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resources.camera = Camera.open(cameraId);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to pre-open camera " + cameraId, e);
+                }
+            }
+        });
+        scanner.warmUp();
+
+        resources.cameraHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                releaseIfUnclaimed(resources);
+            }
+        }, UNCLAIMED_TIMEOUT_MS);
+    }
+
+    /** Hands the warm resources to a view if they match its configuration, otherwise null. */
+    @Nullable
+    static synchronized WarmResources claim(int cameraFacing, int barcodeFormats) {
+        if (warm == null || warm.cameraFacing != cameraFacing || warm.barcodeFormats != barcodeFormats) {
+            return null;
+        }
+        WarmResources claimed = warm;
+        warm = null;
+        return claimed;
+    }
+
+    private static synchronized void releaseIfUnclaimed(WarmResources resources) {
+        if (warm == resources) {
+            Log.d(TAG, "Pre-opened camera was not claimed, releasing it");
+            warm = null;
+            resources.release();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ric.adv_camera;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.ric.adv_camera.vision.LatencyHistogram;
+import com.ric.adv_camera.vision.PipelineMetrics;
+import com.ric.adv_camera.vision.ScanGovernor;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads the {@link ScanGovernor} signals from the device: the thermal status, the battery and
+ * memory state, and the detector latency measured by the pipeline.
+ *
+ * <p>{@code PowerManager.getCurrentThermalStatus} only exists from Android 10 and the plugin
+ * compiles against an older SDK, so it is looked up at runtime. Older devices fall back to the
+ * battery temperature, which the battery broadcast reports everywhere.
+ */
+class DeviceSignalSource implements ScanGovernor.SignalSource {
+    private static final String TAG = "DeviceSignalSource";
+
+    /** Detector samples needed before the latency counts. */
+    private static final long MIN_LATENCY_SAMPLES = 10;
+    /** Battery temperatures, in tenths of a degree Celsius, for the fallback thermal status. */
+    private static final int BATTERY_TEMP_LIGHT = 400;
+    private static final int BATTERY_TEMP_MODERATE = 430;
+    private static final int BATTERY_TEMP_SEVERE = 460;
+
+    private final Context context;
+    private final PipelineMetrics metrics;
+    private final ActivityManager activityManager;
+    private final PowerManager powerManager;
+    private final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    private Method thermalStatusMethod;
+
+    // Read from one sticky broadcast per evaluation, see refresh().
+    private int batteryPercent = -1;
+    private boolean charging;
+    private int batteryTemperature = -1;
+
+    DeviceSignalSource(Context context, PipelineMetrics metrics) {
+        this.context = context.getApplicationContext();
+        this.metrics = metrics;
+        activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (Build.VERSION.SDK_INT >= 29) {
+            try {
+                thermalStatusMethod = PowerManager.class.getMethod("getCurrentThermalStatus");
+            } catch (NoSuchMethodException e) {
+                Log.w(TAG, "Thermal status not available", e);
+            }
+        }
+    }
+
+    /** Reads the battery state; call before each {@link ScanGovernor#evaluate}. */
+    void refresh() {
+        // A null receiver only returns the last sticky broadcast, nothing stays registered.
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            batteryPercent = -1;
+            charging = false;
+            batteryTemperature = -1;
+            return;
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        batteryPercent = level >= 0 && scale > 0 ? level * 100 / scale : -1;
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+        batteryTemperature = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, -1);
+    }
+
+    @Override
+    public int getThermalStatus() {
+        if (thermalStatusMethod != null && powerManager != null) {
+            try {
+                return (Integer) thermalStatusMethod.invoke(powerManager);
+            } catch (Exception e) {
+                Log.w(TAG, "Reading the thermal status failed", e);
+                thermalStatusMethod = null;
+            }
+        }
+
+        if (batteryTemperature < 0) {
+            return ScanGovernor.THERMAL_UNKNOWN;
+        } else if (batteryTemperature >= BATTERY_TEMP_SEVERE) {
+            return ScanGovernor.THERMAL_SEVERE;
+        } else if (batteryTemperature >= BATTERY_TEMP_MODERATE) {
+            return ScanGovernor.THERMAL_MODERATE;
+        } else if (batteryTemperature >= BATTERY_TEMP_LIGHT) {
+            return ScanGovernor.THERMAL_LIGHT;
+        }
+        return ScanGovernor.THERMAL_NONE;
+    }
+
+    @Override
+    public int getBatteryPercent() {
+        return batteryPercent;
+    }
+
+    @Override
+    public boolean isCharging() {
+        return charging;
+    }
+
+    @Override
+    public boolean isLowMemory() {
+        activityManager.getMemoryInfo(memoryInfo);
+        return memoryInfo.lowMemory;
+    }
+
+    @Override
+    public long getDetectorLatencyMs() {
+        LatencyHistogram.Snapshot detector = metrics.getDetectorLatency(SystemClock.elapsedRealtime());
+        return detector.count >= MIN_LATENCY_SAMPLES ? detector.p95Ms : -1;
+    }
+}
@@ -0,0 +1,175 @@
+package com.ric.adv_camera;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Puts the EXIF orientation into JPEG bytes before they are written, so a picture is written once
+ * instead of written and then rewritten by {@code ExifInterface.saveAttributes()}.
+ *
+ * <p>An orientation tag already in the Exif segment, as cameras write it, is overwritten in place.
+ * A JPEG without Exif, e.g. one encoded from a bitmap, gets a minimal Exif segment holding only the
+ * orientation. Only a JPEG whose Exif lacks the tag cannot be handled this way.
+ */
+final class ExifOrientation {
+
+    /** {@link #apply} wrote the orientation into the existing tag. */
+    static final int PATCHED = -1;
+    /** {@link #apply} found Exif without an orientation tag, or no JPEG. */
+    static final int UNSUPPORTED = -2;
+
+    /** Orientation values of the EXIF specification, as in {@code ExifInterface}. */
+    static final int ORIENTATION_NORMAL = 1;
+    static final int ORIENTATION_ROTATE_180 = 3;
+    static final int ORIENTATION_ROTATE_90 = 6;
+    static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+
+    private ExifOrientation() {
+    }
+
+    /** @param rotation clockwise rotation in degrees needed to view the picture upright */
+    static int forRotation(int rotation) {
+        switch (rotation) {
+            case 90:
+                return ORIENTATION_ROTATE_90;
+            case 180:
+                return ORIENTATION_ROTATE_180;
+            case 270:
+                return ORIENTATION_ROTATE_270;
+            default:
+                return ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Writes {@code orientation} into the Exif orientation tag of {@code jpeg}, in place.
+     *
+     * @return {@link #PATCHED}; the offset at which {@link #segment} has to be inserted when there
+     *     is no Exif segment; or {@link #UNSUPPORTED}
+     */
+    static int apply(byte[] jpeg, int orientation) {
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != MARKER_SOI) {
+            return UNSUPPORTED;
+        }
+        int insertAt = 2;
+        int pos = 2;
+        while (pos + 4 <= jpeg.length) {
+            if ((jpeg[pos] & 0xFF) != 0xFF) {
+                return UNSUPPORTED;
+            }
+            int marker = jpeg[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte before the marker.
+                pos++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                break;
+            }
+            int end = pos + 2 + readShort(jpeg, pos + 2, false);
+            if (end > jpeg.length) {
+                return UNSUPPORTED;
+            }
+            if (marker == MARKER_APP1 && startsWith(jpeg, pos + 4, EXIF_HEADER)) {
+                return patchTiff(jpeg, pos + 4 + EXIF_HEADER.length, end, orientation)
+                        ? PATCHED
+                        : UNSUPPORTED;
+            }
+            if (marker == MARKER_APP0 && pos == 2) {
+                // JFIF wants its APP0 first.
+                insertAt = end;
+            }
+            pos = end;
+        }
+        return insertAt;
+    }
+
+    /** A complete APP1 segment with an Exif block that only holds {@code orientation}. */
+    static byte[] segment(int orientation) {
+        return new byte[] {
+                (byte) 0xFF, (byte) MARKER_APP1, 0, 34,
+                'E', 'x', 'i', 'f', 0, 0,
+                // Big endian TIFF header, IFD0 right after it.
+                'M', 'M', 0, 42, 0, 0, 0, 8,
+                // One entry: orientation, SHORT, count 1, value padded to four bytes.
+                0, 1,
+                0x01, 0x12, 0, TYPE_SHORT, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+                // No next IFD.
+                0, 0, 0, 0,
+        };
+    }
+
+    private static boolean patchTiff(byte[] jpeg, int tiff, int end, int orientation) {
+        if (tiff + 8 > end) {
+            return false;
+        }
+        boolean littleEndian;
+        if (jpeg[tiff] == 'I' && jpeg[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (jpeg[tiff] == 'M' && jpeg[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return false;
+        }
+        long ifdOffset = readInt(jpeg, tiff + 4, littleEndian) & 0xFFFFFFFFL;
+        if (ifdOffset > end - tiff - 2) {
+            return false;
+        }
+        int ifd = tiff + (int) ifdOffset;
+        int count = readShort(jpeg, ifd, littleEndian);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                return false;
+            }
+            if (readShort(jpeg, entry, littleEndian) == TAG_ORIENTATION) {
+                if (readShort(jpeg, entry + 2, littleEndian) != TYPE_SHORT) {
+                    return false;
+                }
+                // A single SHORT sits in the first two bytes of the value field.
+                writeShort(jpeg, entry + 8, orientation, littleEndian);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (offset + prefix.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int first = data[offset] & 0xFF;
+        int second = data[offset + 1] & 0xFF;
+        return littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int high = readShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+        int low = readShort(data, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+
+    private static void writeShort(byte[] data, int offset, int value, boolean littleEndian) {
+        byte high = (byte) (value >> 8);
+        byte low = (byte) value;
+        data[offset] = littleEndian ? low : high;
+        data[offset + 1] = littleEndian ? high : low;
+    }
+}
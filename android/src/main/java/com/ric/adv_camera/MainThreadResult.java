@@ -0,0 +1,68 @@
+package com.ric.adv_camera;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Forwards a method call result to the main thread, where Flutter expects it, so method calls can
+ * be handled on the camera thread. Only the first reply is forwarded, Flutter throws on a second.
+ */
+class MainThreadResult implements MethodChannel.Result {
+    private final MethodChannel.Result result;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean replied = new AtomicBoolean();
+
+    MainThreadResult(MethodChannel.Result result) {
+        this.result = result;
+    }
+
+    @Override
+    public void success(@Nullable final Object value) {
+        if (replied.getAndSet(true)) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                result.success(value);
+            }
+        });
+    }
+
+    @Override
+    public void error(final String errorCode, @Nullable final String errorMessage, @Nullable final Object errorDetails) {
+        if (replied.getAndSet(true)) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                result.error(errorCode, errorMessage, errorDetails);
+            }
+        });
+    }
+
+    @Override
+    public void notImplemented() {
+        if (replied.getAndSet(true)) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                result.notImplemented();
+            }
+        });
+    }
+
+    /** Whether a reply has been sent, so a failing handler knows whether it still owes one. */
+    boolean hasReplied() {
+        return replied.get();
+    }
+}
@@ -0,0 +1,65 @@
+package com.ric.adv_camera;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.ric.adv_camera.vision.PipelineMetrics;
+
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Pushes a {@link PipelineMetrics} snapshot to Dart at a fixed interval while someone listens. The
+ * listener may pass {@code {"intervalMs": n}} to change the default of one push per second.
+ */
+class MetricsStreamHandler implements EventChannel.StreamHandler {
+    private static final long DEFAULT_INTERVAL_MS = 1000;
+    private static final long MIN_INTERVAL_MS = 100;
+
+    private final PipelineMetrics metrics;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private EventChannel.EventSink eventSink;
+    private long intervalMs = DEFAULT_INTERVAL_MS;
+
+    private final Runnable push = new Runnable() {
+        @Override
+        public void run() {
+            if (eventSink == null) {
+                return;
+            }
+            eventSink.success(metrics.toMap(SystemClock.elapsedRealtime()));
+            mainHandler.postDelayed(this, intervalMs);
+        }
+    };
+
+    MetricsStreamHandler(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        intervalMs = DEFAULT_INTERVAL_MS;
+        if (arguments instanceof Map) {
+            Object interval = ((Map<?, ?>) arguments).get("intervalMs");
+            if (interval != null) {
+                intervalMs = Math.max(MIN_INTERVAL_MS, Long.parseLong(interval.toString()));
+            }
+        }
+        eventSink = events;
+        mainHandler.removeCallbacks(push);
+        mainHandler.postDelayed(push, intervalMs);
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        stop();
+    }
+
+    /** Stops pushing, e.g. when the view is disposed. */
+    void stop() {
+        mainHandler.removeCallbacks(push);
+        eventSink = null;
+    }
+}
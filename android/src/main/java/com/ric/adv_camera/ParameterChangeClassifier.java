@@ -0,0 +1,51 @@
+package com.ric.adv_camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+/**
+ * Decides whether a parameter change can be applied while the preview runs, or needs the
+ * stopPreview / setParameters / startPreview cycle that blanks the preview.
+ *
+ * <p>Flash and picture size are tried live first; zoom is always applied live. When a device
+ * rejects a live change, the change is recorded as needing a restart for that device model, and the
+ * outcome is kept in shared preferences so later sessions go straight to the path that works.
+ * Preview size always needs a restart, the camera does not allow it to change while previewing.
+ */
+class ParameterChangeClassifier {
+    static final String FLASH = "flash";
+    static final String PICTURE_SIZE = "pictureSize";
+    static final String PREVIEW_SIZE = "previewSize";
+
+    private static final String PREFERENCES_NAME = "adv_camera_parameter_changes";
+    private static final String LIVE = "live";
+    private static final String RESTART = "restart";
+
+    private final SharedPreferences preferences;
+    private final String model = Build.MODEL;
+
+    ParameterChangeClassifier(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Whether {@code change} has to be applied with the preview stopped on this device. */
+    boolean needsRestart(String change) {
+        if (PREVIEW_SIZE.equals(change)) {
+            return true;
+        }
+        return RESTART.equals(preferences.getString(key(change), null));
+    }
+
+    /** Records how {@code change} went when it was tried live. */
+    void recordLiveOutcome(String change, boolean applied) {
+        String decision = applied ? LIVE : RESTART;
+        if (!decision.equals(preferences.getString(key(change), null))) {
+            preferences.edit().putString(key(change), decision).apply();
+        }
+    }
+
+    private String key(String change) {
+        return model + "/" + change;
+    }
+}
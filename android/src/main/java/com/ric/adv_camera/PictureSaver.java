@@ -0,0 +1,183 @@
+package com.ric.adv_camera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writes captured JPEGs to disk on a dedicated I/O thread.
+ *
+ * <p>The bytes from {@code Camera.takePicture} are written as they are; they are only decoded and
+ * re-encoded when a maximum size is requested and the picture exceeds it. The orientation is
+ * recorded as EXIF instead of rotating the pixels, put into the bytes before they are written so
+ * each file is written once. Callbacks are delivered on the main thread.
+ */
+class PictureSaver {
+    interface Callback {
+        void onSaved(String path);
+
+        void onError(Exception e);
+    }
+
+    private static final String TAG = "PictureSaver";
+    private static final int DOWNSAMPLED_JPEG_QUALITY = 90;
+
+    // A single writer keeps files in shot order and never competes with itself for the disk.
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Queues {@code jpeg} to be written to {@code file}. After {@link #shutdown()} the callback
+     * gets an error instead.
+     *
+     * @param rotation clockwise rotation in degrees needed to view the picture upright
+     * @param maxSize maximum length of the longest side, or null to keep the full size
+     */
+    void save(
+            final byte[] jpeg,
+            final File file,
+            final int rotation,
+            @Nullable final Integer maxSize,
+            final Callback callback) {
+        try {
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        byte[] bytes = maxSize != null ? downsampleIfNeeded(jpeg, maxSize) : jpeg;
+                        writeJpeg(bytes, file, rotation);
+                        final String path = file.getAbsolutePath();
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onSaved(path);
+                            }
+                        });
+                    } catch (final Exception e) {
+                        Log.e(TAG, "Failed to save picture to " + file, e);
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onError(e);
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // A picture delivered after dispose().
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onError(e);
+                }
+            });
+        }
+    }
+
+    /** Lets queued pictures finish writing, then stops the I/O thread. */
+    void shutdown() {
+        ioExecutor.shutdown();
+    }
+
+    /**
+     * Writes {@code jpeg} to {@code file} with the EXIF orientation for {@code rotation}, in a
+     * single write unless the JPEG has Exif without an orientation tag. May modify {@code jpeg}.
+     */
+    static void writeJpeg(byte[] jpeg, File file, int rotation) throws IOException {
+        int orientation = ExifOrientation.forRotation(rotation);
+        int insertAt = ExifOrientation.apply(jpeg, orientation);
+        if (insertAt >= 0) {
+            write(file,
+                    ByteBuffer.wrap(jpeg, 0, insertAt),
+                    ByteBuffer.wrap(ExifOrientation.segment(orientation)),
+                    ByteBuffer.wrap(jpeg, insertAt, jpeg.length - insertAt));
+            return;
+        }
+        write(file, ByteBuffer.wrap(jpeg));
+        if (insertAt == ExifOrientation.UNSUPPORTED) {
+            // Rare enough to pay for ExifInterface rewriting the file.
+            writeOrientation(file, orientation);
+        }
+    }
+
+    private static void write(File file, ByteBuffer... buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        try (FileOutputStream output = new FileOutputStream(file);
+             FileChannel channel = output.getChannel()) {
+            while (last.hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+    }
+
+    private static void writeOrientation(File file, int orientation) throws IOException {
+        ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+        exif.saveAttributes();
+    }
+
+    /** Returns {@code jpeg} unchanged unless its longest side exceeds {@code maxSize}. */
+    private static byte[] downsampleIfNeeded(byte[] jpeg, int maxSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (Math.max(options.outWidth, options.outHeight) <= maxSize) {
+            return jpeg;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options, maxSize, maxSize);
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (bitmap == null) {
+            return jpeg;
+        }
+
+        // inSampleSize only halves, finish with an exact scale if still too large.
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longest > maxSize) {
+            float scale = (float) maxSize / longest;
+            Bitmap scaled = Bitmap.createScaledBitmap(
+                    bitmap,
+                    Math.round(bitmap.getWidth() * scale),
+                    Math.round(bitmap.getHeight() * scale),
+                    true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, DOWNSAMPLED_JPEG_QUALITY, output);
+        bitmap.recycle();
+        return output.toByteArray();
+    }
+
+    /** Largest power of two sample size that keeps both sides at or above the requested size. */
+    private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        final int height = options.outHeight;
+        final int width = options.outWidth;
+        int inSampleSize = 1;
+
+        while (Math.max(width, height) / (inSampleSize * 2) >= Math.max(reqWidth, reqHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
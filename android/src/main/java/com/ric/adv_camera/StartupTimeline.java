@@ -0,0 +1,40 @@
+package com.ric.adv_camera;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Milestones of a camera startup, in milliseconds since {@link #begin()}. Only the first occurrence
+ * of each milestone is kept, so marking from a per-frame path is cheap after the first time.
+ */
+class StartupTimeline {
+    /** The camera thread picked up the setup request. */
+    static final String SETUP_STARTED = "setupStarted";
+    static final String CAMERA_OPENED = "cameraOpened";
+    static final String PARAMETERS_APPLIED = "parametersApplied";
+    static final String PREVIEW_STARTED = "previewStarted";
+    static final String FIRST_PREVIEW_FRAME = "firstPreviewFrame";
+    static final String FIRST_DETECTION = "firstDetection";
+
+    private long originMs = SystemClock.elapsedRealtime();
+    private final Map<String, Long> events = new LinkedHashMap<>();
+
+    /** Starts a new timeline, dropping the previous one. */
+    synchronized void begin() {
+        originMs = SystemClock.elapsedRealtime();
+        events.clear();
+    }
+
+    synchronized void mark(String event) {
+        if (!events.containsKey(event)) {
+            events.put(event, SystemClock.elapsedRealtime() - originMs);
+        }
+    }
+
+    /** Milestones reached so far, in the order they happened. */
+    synchronized Map<String, Long> toMap() {
+        return new LinkedHashMap<>(events);
+    }
+}
@@ -0,0 +1,72 @@
+package com.ric.adv_camera;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.ric.adv_camera.vision.TelemetryBuffer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Appends new {@link TelemetryBuffer} records to a CSV file every {@link #FLUSH_INTERVAL_MS}, so a
+ * debug build keeps a record of a whole shift without writing to disk on every frame.
+ *
+ * <p>Writes run one at a time on {@link AsyncTask#SERIAL_EXECUTOR}, which needs no thread of its
+ * own; the timer runs on the main looper.
+ */
+class TelemetryFileFlusher {
+    private static final String TAG = "TelemetryFileFlusher";
+    static final long FLUSH_INTERVAL_MS = 30000;
+
+    private final TelemetryBuffer telemetry;
+    private final File file;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Only touched by the serial executor.
+    private long nextSequence;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            AsyncTask.SERIAL_EXECUTOR.execute(write);
+            mainHandler.postDelayed(this, FLUSH_INTERVAL_MS);
+        }
+    };
+
+    private final Runnable write = new Runnable() {
+        @Override
+        public void run() {
+            boolean newFile = !file.exists();
+            try (Writer writer = new FileWriter(file, true)) {
+                if (newFile) {
+                    writer.write(TelemetryBuffer.CSV_HEADER);
+                }
+                nextSequence = telemetry.writeCsv(writer, nextSequence);
+            } catch (IOException e) {
+                Log.w(TAG, "Writing telemetry to " + file + " failed", e);
+            }
+        }
+    };
+
+    TelemetryFileFlusher(TelemetryBuffer telemetry, File file) {
+        this.telemetry = telemetry;
+        this.file = file;
+        // Earlier records may belong to a previous view, which flushed them itself.
+        this.nextSequence = telemetry.getNextSequence();
+    }
+
+    void start() {
+        mainHandler.removeCallbacks(flush);
+        mainHandler.postDelayed(flush, FLUSH_INTERVAL_MS);
+    }
+
+    /** Stops the timer and writes what is left, e.g. when the view is disposed. */
+    void stop() {
+        mainHandler.removeCallbacks(flush);
+        AsyncTask.SERIAL_EXECUTOR.execute(write);
+    }
+}
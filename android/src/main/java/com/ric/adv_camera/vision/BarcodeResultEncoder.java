@@ -0,0 +1,185 @@
+package com.ric.adv_camera.vision;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Writes the barcodes of one detection, or the tracker events of one frame, into a compact binary
+ * message, decoded on the Dart side by {@code decodeBarcodeResults} and {@code
+ * decodeBarcodeTrackEvents} in {@code barcodes.dart}.
+ *
+ * <p>Layout, little-endian, version {@value #VERSION}:
+ *
+ * <pre>
+ * header:  u8 version, u8 kind, u16 barcode count, f64 average frame latency (ms)
+ * barcode: only in {@link #KIND_TRACK_EVENTS} messages: u8 event type, i32 track id,
+ *          i32 format, i32 valueType,
+ *          u8 has bounds, i32 left, i32 top, i32 width, i32 height (zero without bounds),
+ *          u8 point count, point count x (i32 x, i32 y),
+ *          string raw value, string display value
+ * string:  i32 UTF-8 byte length (-1 for null), bytes
+ * </pre>
+ *
+ * <p>The buffer is reused across messages and only grows, so encoding allocates nothing but the
+ * final array handed to the platform channel. Not thread safe.
+ */
+public class BarcodeResultEncoder {
+
+    public static final int VERSION = 1;
+    /** The barcodes of one detection. */
+    public static final int KIND_RESULTS = 0;
+    /** {@link BarcodeTracker} events, each with the barcode it is about. */
+    public static final int KIND_TRACK_EVENTS = 1;
+
+    private static final int COUNT_OFFSET = 2;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+    private int kind;
+    private int count;
+    private int pointCountPosition;
+    private int pointCount;
+
+    /** Starts a new message of detection results, discarding anything written before. */
+    public void begin(double avgFrameLatencyMs) {
+        begin(KIND_RESULTS, avgFrameLatencyMs);
+    }
+
+    /**
+     * Starts a new message of tracker events, discarding anything written before. Each event is
+     * written with {@link #beginTrackEvent} followed by its barcode.
+     */
+    public void beginTrackEvents(double avgFrameLatencyMs) {
+        begin(KIND_TRACK_EVENTS, avgFrameLatencyMs);
+    }
+
+    /**
+     * Starts an event of a tracker event message; follow with its barcode through {@link
+     * #beginBarcode}.
+     *
+     * @param type {@link BarcodeTracker#APPEARED}, {@link BarcodeTracker#UPDATED} or {@link
+     *     BarcodeTracker#LOST}
+     */
+    public void beginTrackEvent(int type, int trackId) {
+        if (kind != KIND_TRACK_EVENTS) {
+            throw new IllegalStateException("Not a track event message");
+        }
+        ensureRemaining(1 + 4);
+        buffer.put((byte) type);
+        buffer.putInt(trackId);
+    }
+
+    /**
+     * Starts a barcode; follow with its corner points through {@link #addPoint} and finish it with
+     * {@link #endBarcode}.
+     */
+    public void beginBarcode(
+            int format, int valueType, boolean hasBounds, int left, int top, int width, int height) {
+        if (count == 0xFFFF) {
+            throw new IllegalStateException("Too many barcodes in one message");
+        }
+        ensureRemaining(4 + 4 + 1 + 16 + 1);
+        buffer.putInt(format);
+        buffer.putInt(valueType);
+        buffer.put((byte) (hasBounds ? 1 : 0));
+        buffer.putInt(hasBounds ? left : 0);
+        buffer.putInt(hasBounds ? top : 0);
+        buffer.putInt(hasBounds ? width : 0);
+        buffer.putInt(hasBounds ? height : 0);
+        pointCountPosition = buffer.position();
+        pointCount = 0;
+        buffer.put((byte) 0);
+    }
+
+    public void addPoint(int x, int y) {
+        if (pointCount == 0xFF) {
+            throw new IllegalStateException("Too many corner points");
+        }
+        ensureRemaining(8);
+        buffer.putInt(x);
+        buffer.putInt(y);
+        pointCount++;
+    }
+
+    public void endBarcode(String rawValue, String displayValue) {
+        buffer.put(pointCountPosition, (byte) pointCount);
+        putString(rawValue);
+        putString(displayValue);
+        count++;
+    }
+
+    /** Number of barcodes added since {@link #begin}. */
+    public int getCount() {
+        return count;
+    }
+
+    /** Finishes the message and returns it; the encoder can be reused right away. */
+    public byte[] finish() {
+        buffer.putShort(COUNT_OFFSET, (short) count);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private void begin(int kind, double avgFrameLatencyMs) {
+        buffer.clear();
+        this.kind = kind;
+        count = 0;
+        buffer.put((byte) VERSION);
+        buffer.put((byte) kind);
+        buffer.putShort((short) 0);
+        buffer.putDouble(avgFrameLatencyMs);
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensureRemaining(4);
+            buffer.putInt(-1);
+            return;
+        }
+        // At most three bytes per char: a surrogate pair is two chars and four bytes.
+        ensureRemaining(4 + value.length() * 3);
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, encoded as '?' like String.getBytes does.
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putInt(lengthPosition, buffer.position() - start);
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        while (capacity - buffer.position() < bytes) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,239 @@
+package com.ric.adv_camera.vision;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows barcodes across detection results so that a code in view is reported once, not on every
+ * frame.
+ *
+ * <p>A detection continues the track with the same value and format whose box overlaps it most
+ * (intersection over union), or the only such track when the code moved too far for any overlap.
+ * Detections without a track start a new one. A track is {@link #APPEARED reported} once it has
+ * been seen in {@code confirmFrames} results, which filters out one-off misreads, is {@link
+ * #UPDATED reported again} when its box has moved noticeably, and is {@link #LOST reported lost}
+ * after {@code lostFrames} results without it. Tracks dropped before they were confirmed are never
+ * reported.
+ *
+ * <p>Feed each detection result with {@link #beginFrame()}, {@link #addDetection} for every
+ * barcode and {@link #endFrame()}. Not thread safe.
+ *
+ * @param <T> the detector's barcode type, handed back with the events
+ */
+public class BarcodeTracker<T> {
+
+    public static final int APPEARED = 0;
+    public static final int UPDATED = 1;
+    public static final int LOST = 2;
+
+    public static final int DEFAULT_CONFIRM_FRAMES = 3;
+    public static final int DEFAULT_LOST_FRAMES = 5;
+
+    /** Overlap at or above which a detection continues a track of the same value. */
+    private static final float MATCH_IOU = 0.3f;
+    /** Overlap with the last reported box below which a moved track is reported again. */
+    private static final float UPDATE_IOU = 0.7f;
+
+    /** A change of a track. */
+    public static final class Event<T> {
+        public final int type;
+        public final int trackId;
+        public final String value;
+        public final int format;
+        public final int left;
+        public final int top;
+        public final int right;
+        public final int bottom;
+        /** The detection that caused the event, the last one seen for {@link #LOST}. */
+        public final T barcode;
+
+        Event(int type, Track<T> track) {
+            this.type = type;
+            this.trackId = track.id;
+            this.value = track.value;
+            this.format = track.format;
+            this.left = track.left;
+            this.top = track.top;
+            this.right = track.right;
+            this.bottom = track.bottom;
+            this.barcode = track.barcode;
+        }
+    }
+
+    private static final class Track<T> {
+        final int id;
+        final String value;
+        final int format;
+        int left;
+        int top;
+        int right;
+        int bottom;
+        T barcode;
+        int hits;
+        int missed;
+        boolean matched;
+        boolean confirmed;
+        // Box of the last event, to tell a real move from jitter.
+        int reportedLeft;
+        int reportedTop;
+        int reportedRight;
+        int reportedBottom;
+
+        Track(int id, String value, int format) {
+            this.id = id;
+            this.value = value;
+            this.format = format;
+        }
+    }
+
+    private final int confirmFrames;
+    private final int lostFrames;
+    private final List<Track<T>> tracks = new ArrayList<>();
+    private final List<Event<T>> events = new ArrayList<>();
+    private int nextTrackId = 1;
+
+    public BarcodeTracker() {
+        this(DEFAULT_CONFIRM_FRAMES, DEFAULT_LOST_FRAMES);
+    }
+
+    /**
+     * @param confirmFrames results a barcode must be seen in before it is reported, at least 1
+     * @param lostFrames consecutive results without a barcode before it is reported lost, at least 1
+     */
+    public BarcodeTracker(int confirmFrames, int lostFrames) {
+        if (confirmFrames < 1 || lostFrames < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid tracker frames: confirm " + confirmFrames + ", lost " + lostFrames);
+        }
+        this.confirmFrames = confirmFrames;
+        this.lostFrames = lostFrames;
+    }
+
+    /** Starts a new detection result. */
+    public void beginFrame() {
+        events.clear();
+        for (Track<T> track : tracks) {
+            track.matched = false;
+        }
+    }
+
+    /** Adds one barcode of the current result, with its box in frame coordinates. */
+    public void addDetection(String value, int format, int left, int top, int right, int bottom, T barcode) {
+        Track<T> track = findTrack(value, format, left, top, right, bottom);
+        if (track == null) {
+            track = new Track<>(nextTrackId++, value, format);
+            tracks.add(track);
+        }
+        track.matched = true;
+        track.missed = 0;
+        track.hits++;
+        track.left = left;
+        track.top = top;
+        track.right = right;
+        track.bottom = bottom;
+        track.barcode = barcode;
+
+        if (!track.confirmed) {
+            if (track.hits >= confirmFrames) {
+                track.confirmed = true;
+                report(APPEARED, track);
+            }
+        } else if (iou(left, top, right, bottom,
+                track.reportedLeft, track.reportedTop, track.reportedRight, track.reportedBottom)
+                < UPDATE_IOU) {
+            report(UPDATED, track);
+        }
+    }
+
+    /**
+     * Ends the current result and ages the tracks that were not in it.
+     *
+     * @return the events of this result, valid until the next {@link #beginFrame()}
+     */
+    public List<Event<T>> endFrame() {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            Track<T> track = tracks.get(i);
+            if (track.matched) {
+                continue;
+            }
+            if (++track.missed >= lostFrames) {
+                tracks.remove(i);
+                if (track.confirmed) {
+                    events.add(new Event<>(LOST, track));
+                }
+            } else if (!track.confirmed) {
+                // Confirmation needs consistent results, a gap starts it over.
+                track.hits = 0;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Drops every track, e.g. when the camera stops.
+     *
+     * @return lost events for the confirmed tracks, valid until the next {@link #beginFrame()}
+     */
+    public List<Event<T>> reset() {
+        events.clear();
+        for (Track<T> track : tracks) {
+            if (track.confirmed) {
+                events.add(new Event<>(LOST, track));
+            }
+        }
+        tracks.clear();
+        return events;
+    }
+
+    /** Number of live tracks, confirmed or not. */
+    public int getTrackCount() {
+        return tracks.size();
+    }
+
+    private Track<T> findTrack(String value, int format, int left, int top, int right, int bottom) {
+        Track<T> best = null;
+        float bestIou = -1f;
+        int candidates = 0;
+        for (Track<T> track : tracks) {
+            if (track.matched || track.format != format || !equal(track.value, value)) {
+                continue;
+            }
+            candidates++;
+            float overlap = iou(left, top, right, bottom, track.left, track.top, track.right, track.bottom);
+            if (overlap > bestIou) {
+                bestIou = overlap;
+                best = track;
+            }
+        }
+        if (bestIou >= MATCH_IOU || candidates == 1) {
+            return best;
+        }
+        return null;
+    }
+
+    private void report(int type, Track<T> track) {
+        track.reportedLeft = track.left;
+        track.reportedTop = track.top;
+        track.reportedRight = track.right;
+        track.reportedBottom = track.bottom;
+        events.add(new Event<>(type, track));
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Intersection over union of two boxes; 0 when either is empty. */
+    static float iou(int left1, int top1, int right1, int bottom1,
+                     int left2, int top2, int right2, int bottom2) {
+        long intersectionWidth = Math.min(right1, right2) - Math.max(left1, left2);
+        long intersectionHeight = Math.min(bottom1, bottom2) - Math.max(top1, top2);
+        if (intersectionWidth <= 0 || intersectionHeight <= 0) {
+            return 0f;
+        }
+        long intersection = intersectionWidth * intersectionHeight;
+        long area1 = (long) (right1 - left1) * (bottom1 - top1);
+        long area2 = (long) (right2 - left2) * (bottom2 - top2);
+        return (float) intersection / (area1 + area2 - intersection);
+    }
+}
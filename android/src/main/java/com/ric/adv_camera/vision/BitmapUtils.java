@@ -16,14 +16,9 @@
 
 package com.ric.adv_camera.vision;
 
-import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
 import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.Image;
 import android.media.Image.Plane;
 import android.net.Uri;
@@ -35,7 +30,6 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.exifinterface.media.ExifInterface;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -47,27 +41,67 @@ public class BitmapUtils {
   /** Converts NV21 format byte buffer to bitmap. */
   @Nullable
   public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
-    data.rewind();
-    byte[] imageInBuffer = new byte[data.limit()];
-    data.get(imageInBuffer, 0, imageInBuffer.length);
-    try {
-      YuvImage image =
-          new YuvImage(
-              imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-      ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
+    return getBitmap(data, metadata, /* downscale= */ 1, /* mirror= */ false, null, null);
+  }
+
+  /**
+   * Converts NV21 format byte buffer to an upright bitmap without going through JPEG.
+   *
+   * <p>Decoding, rotation, mirroring and downscaling happen in a single pass. Pass the bitmap and
+   * pixel array returned by or used for a previous snapshot to avoid allocating new ones; they are
+   * reused when they are mutable ARGB_8888 and large enough.
+   *
+   * @param downscale integer downscale factor, 1 for full size
+   * @param mirror whether to flip the upright image horizontally, e.g. for the front camera
+   * @param reuse a bitmap to draw into, or null
+   * @param pixels a scratch pixel array, or null
+   */
+  @Nullable
+  public static Bitmap getBitmap(
+      ByteBuffer data,
+      FrameMetadata metadata,
+      int downscale,
+      boolean mirror,
+      @Nullable Bitmap reuse,
+      @Nullable int[] pixels) {
+    int width = metadata.getWidth();
+    int height = metadata.getHeight();
+    int rotation = metadata.getRotation();
+    int outWidth = Nv21Utils.argbWidth(width, height, rotation, downscale);
+    int outHeight = Nv21Utils.argbHeight(width, height, rotation, downscale);
+
+    byte[] nv21;
+    if (data.hasArray() && data.arrayOffset() == 0) {
+      nv21 = data.array();
+    } else {
+      data.rewind();
+      nv21 = new byte[data.limit()];
+      data.get(nv21, 0, nv21.length);
+    }
 
-      Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+    if (pixels == null || pixels.length < outWidth * outHeight) {
+      pixels = new int[outWidth * outHeight];
+    }
 
-      stream.close();
-      return rotateBitmap(bmp, metadata.getRotation(), false, false);
+    try {
+      Nv21Utils.toArgb(nv21, width, height, rotation, mirror, downscale, pixels);
+
+      Bitmap bitmap = reuse;
+      if (bitmap == null
+          || !bitmap.isMutable()
+          || bitmap.getConfig() != Bitmap.Config.ARGB_8888
+          || bitmap.getWidth() != outWidth
+          || bitmap.getHeight() != outHeight) {
+        bitmap = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+      }
+      bitmap.setPixels(pixels, 0, outWidth, 0, 0, outWidth, outHeight);
+      return bitmap;
     } catch (Exception e) {
       Log.e("VisionProcessorBase", "Error: " + e.getMessage());
     }
     return null;
   }
 
-
   /** Rotates a bitmap if it is converted from a bytebuffer. */
   private static Bitmap rotateBitmap(
           Bitmap bitmap, int rotationDegrees, boolean flipX, boolean flipY) {
@@ -175,96 +209,51 @@ public class BitmapUtils {
    * NV21 format. This happens if the planes share the same buffer, the V buffer is one position
    * before the U buffer and the planes have a pixelStride of 2. If this is case, we can just copy
    * them to the NV21 array.
+   *
+   * <p>The copy itself is done by {@code converter}, which picks row-wise bulk copies for the
+   * planes' layout, into {@code out}: a caller-owned buffer of at least {@link
+   * Nv21Utils#frameSize} bytes, e.g. from a {@link FrameBufferPool}, so no array is allocated per
+   * frame.
    */
   @RequiresApi(VERSION_CODES.KITKAT)
-  private static ByteBuffer yuv420ThreePlanesToNV21(
-          Plane[] yuv420888planes, int width, int height) {
-    int imageSize = width * height;
-    byte[] out = new byte[imageSize + 2 * (imageSize / 4)];
-
-    if (areUVPlanesNV21(yuv420888planes, width, height)) {
-      // Copy the Y values.
-      yuv420888planes[0].getBuffer().get(out, 0, imageSize);
-
-      ByteBuffer uBuffer = yuv420888planes[1].getBuffer();
-      ByteBuffer vBuffer = yuv420888planes[2].getBuffer();
-      // Get the first V value from the V buffer, since the U buffer does not contain it.
-      vBuffer.get(out, imageSize, 1);
-      // Copy the first U value and the remaining VU values from the U buffer.
-      uBuffer.get(out, imageSize + 1, 2 * imageSize / 4 - 1);
-    } else {
-      // Fallback to copying the UV values one by one, which is slower but also works.
-      // Unpack Y.
-      unpackPlane(yuv420888planes[0], width, height, out, 0, 1);
-      // Unpack U.
-      unpackPlane(yuv420888planes[1], width, height, out, imageSize + 1, 2);
-      // Unpack V.
-      unpackPlane(yuv420888planes[2], width, height, out, imageSize, 2);
-    }
-
-    return ByteBuffer.wrap(out);
-  }
-
-  /** Checks if the UV plane buffers of a YUV_420_888 image are in the NV21 format. */
-  @RequiresApi(VERSION_CODES.KITKAT)
-  private static boolean areUVPlanesNV21(Plane[] planes, int width, int height) {
-    int imageSize = width * height;
-
-    ByteBuffer uBuffer = planes[1].getBuffer();
-    ByteBuffer vBuffer = planes[2].getBuffer();
-
-    // Backup buffer properties.
-    int vBufferPosition = vBuffer.position();
-    int uBufferLimit = uBuffer.limit();
-
-    // Advance the V buffer by 1 byte, since the U buffer will not contain the first V value.
-    vBuffer.position(vBufferPosition + 1);
-    // Chop off the last byte of the U buffer, since the V buffer will not contain the last U value.
-    uBuffer.limit(uBufferLimit - 1);
-
-    // Check that the buffers are equal and have the expected number of elements.
-    boolean areNV21 =
-        (vBuffer.remaining() == (2 * imageSize / 4 - 2)) && (vBuffer.compareTo(uBuffer) == 0);
-
-    // Restore buffers to their initial state.
-    vBuffer.position(vBufferPosition);
-    uBuffer.limit(uBufferLimit);
-
-    return areNV21;
+  public static void yuv420ThreePlanesToNV21(
+      Plane[] yuv420888planes, int width, int height, Yuv420Converter converter, byte[] out) {
+    converter.toNv21(
+        yuv420888planes[0].getBuffer(),
+        yuv420888planes[0].getRowStride(),
+        yuv420888planes[1].getBuffer(),
+        yuv420888planes[2].getBuffer(),
+        yuv420888planes[1].getRowStride(),
+        yuv420888planes[1].getPixelStride(),
+        width,
+        height,
+        out);
   }
 
   /**
    * Unpack an image plane into a byte array.
    *
    * <p>The input plane data will be copied in 'out', starting at 'offset' and every pixel will be
-   * spaced by 'pixelStride'. Note that there is no row padding on the output.
+   * spaced by 'pixelStride'. Note that there is no row padding on the output. The plane is {@code
+   * width} x {@code height} samples, i.e. half the image size for a chroma plane.
    */
-  @TargetApi(VERSION_CODES.KITKAT)
-  private static void unpackPlane(
-          Plane plane, int width, int height, byte[] out, int offset, int pixelStride) {
-    ByteBuffer buffer = plane.getBuffer();
-    buffer.rewind();
-
-    // Compute the size of the current plane.
-    // We assume that it has the aspect ratio as the original image.
-    int numRow = (buffer.limit() + plane.getRowStride() - 1) / plane.getRowStride();
-    if (numRow == 0) {
-      return;
-    }
-    int scaleFactor = height / numRow;
-    int numCol = width / scaleFactor;
-
-    // Extract the data in the output buffer.
-    int outputPos = offset;
-    int rowStart = 0;
-    for (int row = 0; row < numRow; row++) {
-      int inputPos = rowStart;
-      for (int col = 0; col < numCol; col++) {
-        out[outputPos] = buffer.get(inputPos);
-        outputPos += pixelStride;
-        inputPos += plane.getPixelStride();
-      }
-      rowStart += plane.getRowStride();
-    }
+  @RequiresApi(VERSION_CODES.KITKAT)
+  public static void unpackPlane(
+      Plane plane,
+      int width,
+      int height,
+      Yuv420Converter converter,
+      byte[] out,
+      int offset,
+      int pixelStride) {
+    converter.unpackPlane(
+        plane.getBuffer(),
+        plane.getRowStride(),
+        plane.getPixelStride(),
+        width,
+        height,
+        out,
+        offset,
+        pixelStride);
   }
 }
@@ -0,0 +1,73 @@
+package com.ric.adv_camera.vision;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FIFO queue bounded by the total size of its items rather than by their number, so a handful
+ * of full-resolution frames and many small ones are held to the same memory cap.
+ *
+ * <p>An item's bytes stay reserved after {@link #poll} until the consumer calls {@link #release},
+ * which lets the budget also cover frames that are still being encoded.
+ */
+public class ByteBudgetQueue<T> {
+
+    private final long budgetBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final ConcurrentLinkedQueue<T> items = new ConcurrentLinkedQueue<>();
+
+    public ByteBudgetQueue(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Invalid byte budget: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Whether {@code bytes} currently fit in the budget, to skip preparing an item that would be
+     * rejected anyway.
+     */
+    public boolean fits(long bytes) {
+        return reservedBytes.get() + bytes <= budgetBytes;
+    }
+
+    /**
+     * Adds {@code item} if its {@code bytes} fit in what is left of the budget.
+     *
+     * @return false if the item would exceed the budget
+     */
+    public boolean offer(T item, long bytes) {
+        while (true) {
+            long reserved = reservedBytes.get();
+            if (reserved + bytes > budgetBytes) {
+                return false;
+            }
+            if (reservedBytes.compareAndSet(reserved, reserved + bytes)) {
+                items.add(item);
+                return true;
+            }
+        }
+    }
+
+    /** Removes the oldest item, or returns null if the queue is empty. */
+    public T poll() {
+        return items.poll();
+    }
+
+    /** Gives back the bytes of an item taken with {@link #poll} once it is no longer held. */
+    public void release(long bytes) {
+        long reserved = reservedBytes.addAndGet(-bytes);
+        if (reserved < 0) {
+            throw new IllegalStateException("Released more bytes than were reserved");
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /** Bytes of the queued items plus those taken but not yet released. */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+}
@@ -0,0 +1,126 @@
+package com.ric.adv_camera.vision;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The camera operations the plugin needs, independent of the camera API behind them: Camera1,
+ * Camera2, or {@link FakeCameraBackend}, which feeds synthetic frames and runs on a desktop JVM.
+ *
+ * <p>Preview frames come as NV21 through the {@link FrameSource} methods, once {@link
+ * #startPreview()} has been called. A frame's buffer goes back to the backend only after every
+ * lease on it is released, so the backend never overwrites a frame that is still being read.
+ *
+ * <p>Settings change through an {@link Editor} that applies all of its changes at once, or none of
+ * them. Sizes are {@code {width, height}} pairs in the sensor's orientation.
+ *
+ * <p>Call a backend from one thread, e.g. the plugin's camera thread; callbacks arrive on a thread
+ * chosen by the implementation.
+ *
+ * @param <S> the preview target, e.g. a {@code SurfaceHolder}
+ */
+public interface CameraBackend<S> extends FrameSource {
+
+    int FACING_BACK = 0;
+    int FACING_FRONT = 1;
+
+    /** Flash modes, spelled like the Camera1 ones and those of the Dart API. */
+    String FLASH_OFF = "off";
+    String FLASH_ON = "on";
+    String FLASH_AUTO = "auto";
+    String FLASH_TORCH = "torch";
+
+    /** Receives the result of {@link #focus}. */
+    interface FocusCallback {
+        void onFocused(boolean success);
+    }
+
+    /** Receives the result of {@link #takePicture}. */
+    interface PictureCallback {
+        /** The JPEG data, not yet rotated upright. */
+        void onPictureTaken(byte[] jpeg);
+
+        void onError(Exception e);
+    }
+
+    /** Changes to the settings, applied together by {@link #commit()}. */
+    interface Editor {
+        Editor setPreviewSize(int width, int height);
+
+        Editor setPictureSize(int width, int height);
+
+        /** One of the FLASH_ constants from {@link #getSupportedFlashModes()}. */
+        Editor setFlashMode(String flashMode);
+
+        /** From 1 up to {@link #getMaxZoomRatio()}. */
+        Editor setZoomRatio(float zoomRatio);
+
+        /**
+         * Applies the changes. A new preview size restarts a running preview.
+         *
+         * @throws IOException if the camera rejected them, which leaves the previous settings
+         */
+        void commit() throws IOException;
+    }
+
+    /** @param facing {@link #FACING_BACK} or {@link #FACING_FRONT} */
+    void open(int facing) throws IOException;
+
+    boolean isOpen();
+
+    /** Stops the preview and frames and releases the camera. Safe to call when not open. */
+    void close();
+
+    int getFacing();
+
+    /**
+     * Tells the backend how the display is rotated, in degrees, so the preview is shown upright and
+     * frames report the rotation that makes them upright.
+     */
+    void setDisplayRotation(int degrees);
+
+    /** Degrees by which frames have to be rotated clockwise to be upright. */
+    int getFrameRotation();
+
+    /** Degrees the sensor is rotated clockwise from the device's natural orientation. */
+    int getSensorOrientation();
+
+    void setPreviewTarget(S target) throws IOException;
+
+    void startPreview() throws IOException;
+
+    void stopPreview();
+
+    /**
+     * Sets how many frames may be held at once, e.g. by the detector. Takes effect on the next
+     * {@link #startPreview()}.
+     */
+    void setPreviewBufferCount(int count);
+
+    /** The frame buffers of the running or last preview, or null before the first one. */
+    FrameBufferPool getBufferPool();
+
+    List<int[]> getSupportedPreviewSizes();
+
+    List<int[]> getSupportedPictureSizes();
+
+    /** Empty when the camera has no flash. */
+    List<String> getSupportedFlashModes();
+
+    /** 1 when the camera cannot zoom. */
+    float getMaxZoomRatio();
+
+    /** The preview size in use, {@code {width, height}}. */
+    int[] getPreviewSize();
+
+    /** Starts changing settings. */
+    Editor edit();
+
+    /**
+     * Focuses on {@code area}, in relative coordinates of the unrotated frame, and meters on it.
+     */
+    void focus(RegionOfInterest area, FocusCallback callback);
+
+    /** Takes a full resolution picture; the preview keeps running or restarts by itself. */
+    void takePicture(PictureCallback callback);
+}
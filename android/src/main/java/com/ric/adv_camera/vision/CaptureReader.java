@@ -0,0 +1,164 @@
+package com.ric.adv_camera.vision;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the frames of a capture file written by {@link FrameRecorder}, in order.
+ *
+ * <p>The file is mapped a chunk at a time, so a recording larger than a single mapping can hold, or
+ * than the heap, is read without copying it into memory first. {@link #advance()} moves to the next
+ * frame and the getters describe it; {@link #readData} copies its data out.
+ *
+ * <p>Not thread-safe.
+ */
+public class CaptureReader implements Closeable {
+
+    private final RandomAccessFile input;
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+
+    private long position = FrameRecorder.HEADER_SIZE;
+    private long dataPosition = -1;
+    private long timestampMs;
+    private int width;
+    private int height;
+    private int rotation;
+    private int length;
+
+    /** @throws IOException if the file cannot be read or is not a capture file */
+    public CaptureReader(File file) throws IOException {
+        input = new RandomAccessFile(file, "r");
+        try {
+            channel = input.getChannel();
+            fileSize = channel.size();
+            if (!ensureMapped(0, FrameRecorder.HEADER_SIZE)
+                    || chunk.getInt(0) != FrameRecorder.MAGIC) {
+                throw new IOException("Not a capture file: " + file);
+            }
+            int version = chunk.getInt(4);
+            if (version != FrameRecorder.VERSION) {
+                throw new IOException("Unsupported capture file version " + version + ": " + file);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next frame.
+     *
+     * @return false at the end of the recording
+     */
+    public boolean advance() throws IOException {
+        dataPosition = -1;
+        if (!ensureMapped(position, FrameRecorder.RECORD_HEADER_SIZE)) {
+            return false;
+        }
+
+        int offset = (int) (position - chunkStart);
+        if (chunk.getInt(offset) != FrameRecorder.RECORD_MAGIC) {
+            // The zeroed end of a recording that was not closed.
+            return false;
+        }
+        timestampMs = chunk.getLong(offset + 4);
+        width = chunk.getInt(offset + 12);
+        height = chunk.getInt(offset + 16);
+        rotation = chunk.getInt(offset + 20);
+        length = chunk.getInt(offset + 24);
+
+        long start = position + FrameRecorder.RECORD_HEADER_SIZE;
+        if (length < 0 || start + length > fileSize) {
+            // Cut off while it was being written.
+            return false;
+        }
+        dataPosition = start;
+        position = start + length;
+        return true;
+    }
+
+    /** Goes back to before the first frame. */
+    public void rewind() {
+        position = FrameRecorder.HEADER_SIZE;
+        dataPosition = -1;
+    }
+
+    /** When the current frame was recorded, in the recording device's milliseconds. */
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    /** Number of data bytes of the current frame. */
+    public int getLength() {
+        return length;
+    }
+
+    /** The metadata of the current frame, stamped with its recorded time. */
+    public FrameMetadata getMetadata() {
+        return new FrameMetadata.Builder()
+                .setWidth(width)
+                .setHeight(height)
+                .setRotation(rotation)
+                .setTimestampMs(timestampMs)
+                .build();
+    }
+
+    /** Copies the data of the current frame to the start of {@code out}. */
+    public void readData(byte[] out) throws IOException {
+        if (dataPosition < 0) {
+            throw new IllegalStateException("No current frame.");
+        }
+        if (out.length < length) {
+            throw new IllegalArgumentException(
+                    "Output of " + out.length + " bytes too small for " + length);
+        }
+        ensureMapped(dataPosition, length);
+        chunk.position((int) (dataPosition - chunkStart));
+        chunk.get(out, 0, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunk = null;
+        input.close();
+    }
+
+    /**
+     * Makes sure {@code size} bytes from {@code start} are mapped, mapping a new chunk from {@code
+     * start} if they are not.
+     *
+     * @return false if the file ends before them
+     */
+    private boolean ensureMapped(long start, int size) throws IOException {
+        if (start + size > fileSize) {
+            return false;
+        }
+        if (chunk != null && start >= chunkStart && start + size <= chunkStart + chunk.capacity()) {
+            return true;
+        }
+        long mapSize = Math.min(fileSize - start, Math.max(FrameRecorder.CHUNK_SIZE, size));
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, mapSize);
+        chunkStart = start;
+        return true;
+    }
+}
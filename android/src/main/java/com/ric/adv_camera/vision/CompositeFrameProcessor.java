@@ -0,0 +1,178 @@
+package com.ric.adv_camera.vision;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hands every camera frame to several processors, e.g. a barcode scanner next to a frame recorder,
+ * so a second analysis does not need a second camera pipeline.
+ *
+ * <p>The frame buffer is not copied: each processor receives the same {@link
+ * FrameBufferPool.Lease} and retains it for as long as it needs the data, so the camera only gets
+ * the buffer back once the slowest of them released it. Processors must treat the buffer as
+ * read-only. Each processor has its own {@link DetectionRateController} to limit how often it runs.
+ *
+ * <p>Processors derived from {@link VisionProcessorBase} report their results to a {@link
+ * FrameResultMerger}, which hands them on per frame, keyed by processor name.
+ */
+public class CompositeFrameProcessor implements VisionImageProcessor {
+
+    private static final String TAG = "CompositeFrameProcessor";
+
+    /** One processor and its rate limit. */
+    public static final class Branch {
+        private final String name;
+        private final VisionImageProcessor processor;
+        private final DetectionRateController rateController = new DetectionRateController();
+        private final boolean producesResults;
+
+        private Branch(String name, VisionImageProcessor processor, boolean producesResults) {
+            this.name = name;
+            this.processor = processor;
+            this.producesResults = producesResults;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public VisionImageProcessor getProcessor() {
+            return processor;
+        }
+
+        /** Limits how often this processor receives frames; it sees every frame by default. */
+        public DetectionRateController getRateController() {
+            return rateController;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Branch> branches = new CopyOnWriteArrayList<>();
+    @Nullable
+    private final FrameResultMerger merger;
+
+    // Only touched on the frame processing thread.
+    private final List<Branch> accepted = new ArrayList<>();
+    private final List<String> expected = new ArrayList<>();
+
+    /** @param listener receives the merged results per frame, or null to not merge them */
+    public CompositeFrameProcessor(@Nullable FrameResultMerger.Listener listener) {
+        this.merger = listener != null ? new FrameResultMerger(listener) : null;
+    }
+
+    /**
+     * Adds {@code processor} under {@code name}, the key of its results in the merged results.
+     *
+     * @throws IllegalArgumentException if the name is already taken
+     */
+    public Branch addProcessor(@NonNull String name, @NonNull VisionImageProcessor processor) {
+        for (Branch branch : branches) {
+            if (branch.name.equals(name)) {
+                throw new IllegalArgumentException("Processor already added: " + name);
+            }
+        }
+
+        Branch branch;
+        if (processor instanceof VisionProcessorBase) {
+            VisionProcessorBase<?> base = (VisionProcessorBase<?>) processor;
+            branch = new Branch(name, processor, merger != null);
+            // The processor's detector latency drives the back-off of its own branch only.
+            base.setDetectionRateController(branch.rateController);
+            if (merger != null) {
+                forwardResults(base, name, merger);
+            }
+        } else {
+            branch = new Branch(name, processor, false);
+        }
+        branches.add(branch);
+        return branch;
+    }
+
+    /** Removes and stops the processor added under {@code name}, if any. */
+    public void removeProcessor(@NonNull String name) {
+        for (Branch branch : branches) {
+            if (branch.name.equals(name)) {
+                branches.remove(branch);
+                branch.processor.stop();
+                return;
+            }
+        }
+    }
+
+    @Nullable
+    public Branch getBranch(@NonNull String name) {
+        for (Branch branch : branches) {
+            if (branch.name.equals(name)) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    /** Whether no processor is added, in which case frames need not be handed over at all. */
+    public boolean isEmpty() {
+        return branches.isEmpty();
+    }
+
+    @Override
+    public void processBitmap(Bitmap bitmap) {
+        for (Branch branch : branches) {
+            branch.processor.processBitmap(bitmap);
+        }
+    }
+
+    @Override
+    public void processByteBuffer(FrameBufferPool.Lease data, FrameMetadata frameMetadata) {
+        long nowMs = SystemClock.elapsedRealtime();
+        accepted.clear();
+        expected.clear();
+        for (Branch branch : branches) {
+            if (branch.rateController.shouldProcess(nowMs)) {
+                accepted.add(branch);
+                if (branch.producesResults) {
+                    expected.add(branch.name);
+                }
+            }
+        }
+
+        // Announced before any processor starts, a fast one may report before the loop ends.
+        long timestampMs = frameMetadata.getTimestampMs();
+        if (merger != null && timestampMs > 0 && !expected.isEmpty()) {
+            merger.expect(timestampMs, expected);
+        }
+
+        for (int i = 0; i < accepted.size(); i++) {
+            Branch branch = accepted.get(i);
+            try {
+                branch.processor.processByteBuffer(data, frameMetadata);
+            } catch (Exception e) {
+                // One failing processor must not starve the others.
+                Log.e(TAG, "Processor " + branch.name + " failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        for (Branch branch : branches) {
+            branch.processor.stop();
+        }
+        branches.clear();
+        if (merger != null) {
+            merger.clear();
+        }
+    }
+
+    private static <T> void forwardResults(
+            VisionProcessorBase<T> processor, final String name, final FrameResultMerger merger) {
+        processor.setResultListener(
+                (results, frameMetadata) -> merger.onResult(name, frameMetadata.getTimestampMs(), results));
+    }
+}
@@ -0,0 +1,151 @@
+package com.ric.adv_camera.vision;
+
+/**
+ * Decides which camera frames are sent to the detector.
+ *
+ * <p>Detection can be limited to every Nth frame ({@link #setFrameStride}) and/or to a target
+ * number of detections per second ({@link #setTargetDetectionsPerSecond}), which a ceiling
+ * ({@link #setMaxDetectionsPerSecond}) can lower further. When a latency budget is set, the
+ * measured detector latency is smoothed and the controller backs off (fewer detections) while it
+ * stays above the budget, then ramps back up once it recovers.
+ *
+ * <p>Times are passed in by the caller so the controller does not depend on a particular clock.
+ */
+public class DetectionRateController {
+
+    /** Weight of a new latency sample in the smoothed average. */
+    private static final double LATENCY_SMOOTHING = 0.2;
+    /** Number of latency samples between two back-off adjustments. */
+    private static final int SAMPLES_PER_ADJUSTMENT = 5;
+    /** Latency, relative to the budget, below which the rate ramps back up. */
+    private static final double RECOVERY_RATIO = 0.75;
+    private static final double BACKOFF_STEP_UP = 1.5;
+    private static final double BACKOFF_STEP_DOWN = 1.25;
+    private static final double MAX_BACKOFF = 8.0;
+
+    private int frameStride = 1;
+    private float targetDetectionsPerSecond;
+    private float maxDetectionsPerSecond;
+    private long latencyBudgetMs;
+
+    private double backoff = 1.0;
+    private double averageLatencyMs = -1;
+    private int samplesSinceAdjustment;
+
+    private long framesSinceDetection;
+    /** Time from which the next detection is due, advanced by one interval per detection. */
+    private double nextDetectionMs = Double.NEGATIVE_INFINITY;
+    private long skippedFrames;
+
+    /** Runs detection on every {@code frameStride}-th frame; 1 means every frame. */
+    public synchronized void setFrameStride(int frameStride) {
+        if (frameStride < 1) {
+            throw new IllegalArgumentException("Invalid frame stride: " + frameStride);
+        }
+        this.frameStride = frameStride;
+    }
+
+    /** Caps the detection rate; 0 or less removes the cap. */
+    public synchronized void setTargetDetectionsPerSecond(float targetDetectionsPerSecond) {
+        this.targetDetectionsPerSecond = Math.max(0f, targetDetectionsPerSecond);
+    }
+
+    /**
+     * Sets a ceiling for the detection rate on top of the target, e.g. while the device saves power;
+     * 0 or less removes it.
+     */
+    public synchronized void setMaxDetectionsPerSecond(float maxDetectionsPerSecond) {
+        this.maxDetectionsPerSecond = Math.max(0f, maxDetectionsPerSecond);
+    }
+
+    /** Sets the detector latency above which the rate backs off; 0 or less disables adapting. */
+    public synchronized void setLatencyBudgetMs(long latencyBudgetMs) {
+        this.latencyBudgetMs = Math.max(0L, latencyBudgetMs);
+        if (this.latencyBudgetMs == 0) {
+            backoff = 1.0;
+        }
+    }
+
+    /**
+     * Called for every frame delivered by the camera.
+     *
+     * @param nowMs the current time in milliseconds
+     * @return whether the frame should be sent to the detector
+     */
+    public synchronized boolean shouldProcess(long nowMs) {
+        framesSinceDetection++;
+
+        float rate = targetDetectionsPerSecond;
+        if (maxDetectionsPerSecond > 0f && (rate <= 0f || rate > maxDetectionsPerSecond)) {
+            rate = maxDetectionsPerSecond;
+        }
+
+        // The back-off stretches the time cap when there is one, otherwise the stride.
+        long stride = rate > 0f
+                ? frameStride
+                : Math.max(1L, Math.round(frameStride * backoff));
+        boolean process = framesSinceDetection >= stride;
+
+        if (process && rate > 0f) {
+            double intervalMs = 1000.0 / rate * backoff;
+            process = nowMs >= nextDetectionMs;
+            if (process) {
+                // Advanced from the last deadline rather than from this frame, so camera jitter does
+                // not lose the time a frame arrives after it. Kept from falling behind the clock, so
+                // a pause costs at most one early detection instead of a burst.
+                nextDetectionMs = nextDetectionMs == Double.NEGATIVE_INFINITY
+                        ? nowMs + intervalMs
+                        : Math.max(nextDetectionMs + intervalMs, nowMs);
+            }
+        }
+
+        if (process) {
+            framesSinceDetection = 0;
+        } else {
+            skippedFrames++;
+        }
+        return process;
+    }
+
+    /** Reports the latency of a finished detection. */
+    public synchronized void onDetectorLatency(long latencyMs) {
+        averageLatencyMs = averageLatencyMs < 0
+                ? latencyMs
+                : averageLatencyMs + LATENCY_SMOOTHING * (latencyMs - averageLatencyMs);
+
+        if (latencyBudgetMs <= 0 || ++samplesSinceAdjustment < SAMPLES_PER_ADJUSTMENT) {
+            return;
+        }
+        samplesSinceAdjustment = 0;
+
+        if (averageLatencyMs > latencyBudgetMs) {
+            backoff = Math.min(MAX_BACKOFF, backoff * BACKOFF_STEP_UP);
+        } else if (averageLatencyMs < latencyBudgetMs * RECOVERY_RATIO) {
+            backoff = Math.max(1.0, backoff / BACKOFF_STEP_DOWN);
+        }
+    }
+
+    /** Resets the per-session state, keeping the configuration. */
+    public synchronized void reset() {
+        backoff = 1.0;
+        averageLatencyMs = -1;
+        samplesSinceAdjustment = 0;
+        framesSinceDetection = 0;
+        nextDetectionMs = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Factor by which the configured rate is currently slowed down, 1 when not backing off. */
+    public synchronized double getBackoff() {
+        return backoff;
+    }
+
+    /** Smoothed detector latency, or -1 before the first detection. */
+    public synchronized double getAverageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    /** Number of frames that were not sent to the detector. */
+    public synchronized long getSkippedFrameCount() {
+        return skippedFrames;
+    }
+}
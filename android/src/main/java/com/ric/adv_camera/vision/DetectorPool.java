@@ -0,0 +1,52 @@
+package com.ric.adv_camera.vision;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The detector threads of the process, shared by the processors of every camera view: detections
+ * and their completion handling run here, so a second view shares the threads of the first instead
+ * of bringing its own.
+ *
+ * <p>The pool has a thread per core, since the detector is CPU bound, and lets threads exit after
+ * {@link #KEEP_ALIVE_SECONDS} without work. It is never shut down.
+ */
+public final class DetectorPool {
+
+    public static final long KEEP_ALIVE_SECONDS = 60;
+    /** Keeps a second view's detection from waiting on the first one on single-core devices. */
+    public static final int MIN_THREADS = 2;
+
+    private static ThreadPoolExecutor executor;
+
+    private DetectorPool() {}
+
+    public static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int threads = poolSize(Runtime.getRuntime().availableProcessors());
+            executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DetectorThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /** Number of threads for a device with {@code cores} cores. */
+    public static int poolSize(int cores) {
+        return Math.max(MIN_THREADS, cores);
+    }
+
+    private static final class DetectorThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Detector-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
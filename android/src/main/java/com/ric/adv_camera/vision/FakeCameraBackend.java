@@ -0,0 +1,371 @@
+package com.ric.adv_camera.vision;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CameraBackend} without a camera: while the preview runs it renders synthetic NV21 frames
+ * at a fixed rate, so the plugin's frame handling can be exercised and timed on a desktop JVM or an
+ * emulator, with the same frames on every run.
+ *
+ * <p>Settings are only recorded; focusing always succeeds. Pictures are the bytes set with {@link
+ * #setPictureData}, by default there are none and {@link #takePicture} fails.
+ */
+public class FakeCameraBackend implements CameraBackend<Object> {
+
+    public static final int SENSOR_ORIENTATION = 90;
+    public static final float DEFAULT_FRAMES_PER_SECOND = 30f;
+    public static final int BUFFER_COUNT = 3;
+
+    /** Draws the frame with the given index. */
+    public interface FrameRenderer {
+        void render(long index, byte[] nv21, int width, int height);
+    }
+
+    /** A gradient that moves a little with every frame, over neutral chroma. */
+    public static final FrameRenderer GRADIENT = new FrameRenderer() {
+        @Override
+        public void render(long index, byte[] nv21, int width, int height) {
+            int shift = (int) (index % 256);
+            for (int y = 0; y < height; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    nv21[row + x] = (byte) ((x + y) / 4 + shift);
+                }
+            }
+            Arrays.fill(nv21, width * height, Nv21Utils.frameSize(width, height), (byte) 128);
+        }
+    };
+
+    private static final List<int[]> DEFAULT_SIZES = Collections.unmodifiableList(Arrays.asList(
+            new int[] {640, 480}, new int[] {1280, 720}, new int[] {1920, 1080}));
+    private static final List<String> FLASH_MODES = Collections.unmodifiableList(Arrays.asList(
+            FLASH_OFF, FLASH_ON, FLASH_AUTO, FLASH_TORCH));
+    private static final float MAX_ZOOM_RATIO = 4f;
+
+    private final FrameRenderer renderer;
+    private final float framesPerSecond;
+
+    private boolean open;
+    private int facing = FACING_BACK;
+    private int displayRotation;
+    private int[] previewSize = DEFAULT_SIZES.get(0);
+    private int[] pictureSize = DEFAULT_SIZES.get(DEFAULT_SIZES.size() - 1);
+    private String flashMode = FLASH_OFF;
+    private float zoomRatio = 1f;
+    private RegionOfInterest focusArea;
+    private byte[] pictureData;
+
+    private volatile Sink sink;
+    private final Object sinkLock = new Object();
+    private Thread previewThread;
+    private volatile boolean previewing;
+    private volatile long renderedFrameCount;
+    private int bufferCount = BUFFER_COUNT;
+    private volatile FrameBufferPool bufferPool;
+
+    public FakeCameraBackend() {
+        this(GRADIENT, DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    /** @param framesPerSecond the preview frame rate, 0 or less to render as fast as possible */
+    public FakeCameraBackend(FrameRenderer renderer, float framesPerSecond) {
+        this.renderer = renderer;
+        this.framesPerSecond = framesPerSecond;
+    }
+
+    /** Sets what {@link #takePicture} returns, or null to make it fail. */
+    public void setPictureData(byte[] pictureData) {
+        this.pictureData = pictureData;
+    }
+
+    @Override
+    public void open(int facing) throws IOException {
+        if (open) {
+            throw new IOException("Camera already open");
+        }
+        this.facing = facing;
+        open = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        stopPreview();
+        open = false;
+    }
+
+    @Override
+    public int getFacing() {
+        return facing;
+    }
+
+    @Override
+    public void setDisplayRotation(int degrees) {
+        displayRotation = degrees;
+    }
+
+    @Override
+    public int getFrameRotation() {
+        return PreviewConfigSelector.frameRotation(
+                facing == FACING_FRONT, SENSOR_ORIENTATION, displayRotation);
+    }
+
+    @Override
+    public int getSensorOrientation() {
+        return SENSOR_ORIENTATION;
+    }
+
+    /** Accepts any target, there is nothing to draw on. */
+    @Override
+    public void setPreviewTarget(Object target) {
+    }
+
+    @Override
+    public void startPreview() throws IOException {
+        if (!open) {
+            throw new IOException("Camera not open");
+        }
+        if (previewing) {
+            return;
+        }
+        previewing = true;
+        final int width = previewSize[0];
+        final int height = previewSize[1];
+        final int rotation = getFrameRotation();
+        bufferPool = new FrameBufferPool(bufferCount, Nv21Utils.frameSize(width, height));
+        final FrameBufferPool pool = bufferPool;
+        previewThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                render(pool, width, height, rotation);
+            }
+        }, "FakeCameraBackend");
+        previewThread.start();
+    }
+
+    @Override
+    public void stopPreview() {
+        previewing = false;
+        if (previewThread == null) {
+            return;
+        }
+        previewThread.interrupt();
+        try {
+            previewThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        previewThread = null;
+    }
+
+    @Override
+    public void setPreviewBufferCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid preview buffer count: " + count);
+        }
+        bufferCount = count;
+    }
+
+    @Override
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void start(Sink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void stop() {
+        // Waits for a frame being delivered to the old sink.
+        synchronized (sinkLock) {
+            sink = null;
+        }
+    }
+
+    @Override
+    public List<int[]> getSupportedPreviewSizes() {
+        return DEFAULT_SIZES;
+    }
+
+    @Override
+    public List<int[]> getSupportedPictureSizes() {
+        return DEFAULT_SIZES;
+    }
+
+    @Override
+    public List<String> getSupportedFlashModes() {
+        return FLASH_MODES;
+    }
+
+    @Override
+    public float getMaxZoomRatio() {
+        return MAX_ZOOM_RATIO;
+    }
+
+    @Override
+    public int[] getPreviewSize() {
+        return previewSize.clone();
+    }
+
+    public int[] getPictureSize() {
+        return pictureSize.clone();
+    }
+
+    public String getFlashMode() {
+        return flashMode;
+    }
+
+    public float getZoomRatio() {
+        return zoomRatio;
+    }
+
+    /** The area of the last {@link #focus} call, or null. */
+    public RegionOfInterest getFocusArea() {
+        return focusArea;
+    }
+
+    public long getRenderedFrameCount() {
+        return renderedFrameCount;
+    }
+
+    @Override
+    public Editor edit() {
+        return new FakeEditor();
+    }
+
+    @Override
+    public void focus(RegionOfInterest area, FocusCallback callback) {
+        focusArea = area;
+        callback.onFocused(true);
+    }
+
+    @Override
+    public void takePicture(PictureCallback callback) {
+        if (pictureData == null) {
+            callback.onError(new IOException("No picture data set"));
+            return;
+        }
+        callback.onPictureTaken(pictureData.clone());
+    }
+
+    private void render(FrameBufferPool pool, int width, int height, int rotation) {
+        FrameMetadata metadata = new FrameMetadata.Builder()
+                .setWidth(width)
+                .setHeight(height)
+                .setRotation(rotation)
+                .build();
+        long intervalNanos = framesPerSecond > 0 ? (long) (1e9 / framesPerSecond) : 0;
+        long dueNanos = System.nanoTime();
+        for (long index = 0; previewing; index++) {
+            if (intervalNanos > 0) {
+                long remaining = dueNanos - System.nanoTime();
+                if (remaining > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(remaining);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                dueNanos += intervalNanos;
+            }
+
+            // Like a camera, no frame while the consumer still holds every buffer.
+            FrameBufferPool.Lease frame = pool.acquire();
+            if (frame == null) {
+                continue;
+            }
+            try {
+                renderer.render(index, frame.array(), width, height);
+                renderedFrameCount++;
+                frame.setTimestampMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+                synchronized (sinkLock) {
+                    Sink target = sink;
+                    if (target != null) {
+                        target.onFrame(frame, metadata);
+                    }
+                }
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    private class FakeEditor implements Editor {
+        private int[] newPreviewSize = previewSize;
+        private int[] newPictureSize = pictureSize;
+        private String newFlashMode = flashMode;
+        private float newZoomRatio = zoomRatio;
+
+        @Override
+        public Editor setPreviewSize(int width, int height) {
+            newPreviewSize = new int[] {width, height};
+            return this;
+        }
+
+        @Override
+        public Editor setPictureSize(int width, int height) {
+            newPictureSize = new int[] {width, height};
+            return this;
+        }
+
+        @Override
+        public Editor setFlashMode(String flashMode) {
+            newFlashMode = flashMode;
+            return this;
+        }
+
+        @Override
+        public Editor setZoomRatio(float zoomRatio) {
+            newZoomRatio = zoomRatio;
+            return this;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (!contains(DEFAULT_SIZES, newPreviewSize)) {
+                throw new IOException(
+                        "Unsupported preview size " + Arrays.toString(newPreviewSize));
+            }
+            if (!contains(DEFAULT_SIZES, newPictureSize)) {
+                throw new IOException(
+                        "Unsupported picture size " + Arrays.toString(newPictureSize));
+            }
+            if (!FLASH_MODES.contains(newFlashMode)) {
+                throw new IOException("Unsupported flash mode " + newFlashMode);
+            }
+            if (newZoomRatio < 1f || newZoomRatio > MAX_ZOOM_RATIO) {
+                throw new IOException("Unsupported zoom ratio " + newZoomRatio);
+            }
+            boolean restart = previewing && !Arrays.equals(previewSize, newPreviewSize);
+            if (restart) {
+                stopPreview();
+            }
+            previewSize = newPreviewSize;
+            pictureSize = newPictureSize;
+            flashMode = newFlashMode;
+            zoomRatio = newZoomRatio;
+            if (restart) {
+                startPreview();
+            }
+        }
+    }
+
+    private static boolean contains(List<int[]> sizes, int[] size) {
+        for (int[] candidate : sizes) {
+            if (Arrays.equals(candidate, size)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,235 @@
+package com.ric.adv_camera.vision;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed set of frame buffers whose ownership is tracked with reference-counted leases.
+ *
+ * <p>While a {@link Recycler} is attached (normally the camera's {@code addCallbackBuffer}), every
+ * buffer that is not leased belongs to it. A buffer handed back by the camera is turned into a
+ * {@link Lease} with {@link #lease(byte[])}; anyone that needs the data beyond the current call
+ * {@link Lease#retain() retains} it, and the buffer only goes back to the recycler once every holder
+ * has {@link Lease#release() released} it. Without a recycler the released buffers are kept in a
+ * free list and handed out again by {@link #acquire()}, which makes the same class usable as a
+ * plain scratch buffer pool.
+ */
+public class FrameBufferPool {
+
+    /** Receives buffers whose last lease has been released. */
+    public interface Recycler {
+        void recycle(byte[] buffer);
+    }
+
+    /** A counted reference to one of the pool's buffers. */
+    public final class Lease {
+        private final byte[] array;
+        private final AtomicInteger refCount = new AtomicInteger();
+        private long timestampMs;
+        private FrameMetadata metadata;
+
+        private Lease(byte[] array) {
+            this.array = array;
+        }
+
+        /**
+         * A new view of the leased buffer, positioned at its start. Each holder gets its own
+         * position and limit, so holders on different threads do not move each other's; only the
+         * bytes are shared. The view stays backed by {@link #array()} for consumers that read it
+         * directly.
+         */
+        public ByteBuffer getBuffer() {
+            return ByteBuffer.wrap(array);
+        }
+
+        /** The array backing {@link #getBuffer()}. */
+        public byte[] array() {
+            return array;
+        }
+
+        /**
+         * Stamps the leased frame with the time it was captured. Set it before the lease is handed
+         * to another thread, the hand-over publishes it.
+         */
+        public void setTimestampMs(long timestampMs) {
+            this.timestampMs = timestampMs;
+        }
+
+        /** The time passed to {@link #setTimestampMs}, 0 if none was. */
+        public long getTimestampMs() {
+            return timestampMs;
+        }
+
+        /**
+         * Describes a frame whose format differs from the producer's usual one, e.g. one from a
+         * {@link FrameSource}. Set it before the lease is handed to another thread.
+         */
+        public void setMetadata(FrameMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        /** The metadata passed to {@link #setMetadata}, null if none was. */
+        public FrameMetadata getMetadata() {
+            return metadata;
+        }
+
+        /** Adds a holder to this lease. Every call must be matched by a {@link #release()}. */
+        public Lease retain() {
+            while (true) {
+                int count = refCount.get();
+                if (count <= 0) {
+                    throw new IllegalStateException("Cannot retain a released frame buffer.");
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return this;
+                }
+            }
+        }
+
+        /**
+         * Drops one holder from this lease. The buffer goes back to the recycler (or the free list)
+         * when the last holder releases it.
+         */
+        public void release() {
+            int remaining = refCount.decrementAndGet();
+            if (remaining == 0) {
+                leasesHeld.decrementAndGet();
+                recycle(this);
+            } else if (remaining < 0) {
+                refCount.incrementAndGet();
+                throw new IllegalStateException("Frame buffer released more often than retained.");
+            }
+        }
+
+        private boolean open() {
+            if (!refCount.compareAndSet(0, 1)) {
+                return false;
+            }
+            timestampMs = 0;
+            metadata = null;
+            return true;
+        }
+    }
+
+    private final int capacity;
+    private final int bufferSize;
+
+    // Built once in the constructor and only read afterwards, so lookups need no locking.
+    private final IdentityHashMap<byte[], Lease> leases;
+    private final ConcurrentLinkedQueue<Lease> freeList = new ConcurrentLinkedQueue<>();
+
+    private volatile Recycler recycler;
+
+    private final AtomicInteger leasesHeld = new AtomicInteger();
+    private final AtomicLong starvationCount = new AtomicLong();
+    private final AtomicLong recycledCount = new AtomicLong();
+
+    public FrameBufferPool(int capacity, int bufferSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid buffer count: " + capacity);
+        }
+        this.capacity = capacity;
+        this.bufferSize = bufferSize;
+        leases = new IdentityHashMap<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            Lease lease = new Lease(new byte[bufferSize]);
+            leases.put(lease.array, lease);
+            freeList.add(lease);
+        }
+    }
+
+    /**
+     * Hands every buffer that is not currently leased to {@code recycler}, and routes buffers
+     * released from now on to it as well.
+     */
+    public synchronized void attach(Recycler recycler) {
+        this.recycler = recycler;
+        Lease lease;
+        while ((lease = freeList.poll()) != null) {
+            recycler.recycle(lease.array);
+        }
+    }
+
+    /**
+     * Stops handing buffers to the recycler. Buffers released afterwards are kept in the free list,
+     * so a camera that has already been released never receives them.
+     */
+    public synchronized void detach() {
+        recycler = null;
+    }
+
+    /**
+     * Opens a lease on a buffer that the recycler has handed back, e.g. a filled preview frame.
+     *
+     * @return the lease, or null if {@code data} does not belong to this pool or is already leased
+     */
+    public Lease lease(byte[] data) {
+        Lease lease = leases.get(data);
+        if (lease == null || !lease.open()) {
+            return null;
+        }
+        onLeased();
+        return lease;
+    }
+
+    /**
+     * Leases a buffer from the free list, for pools that are not attached to a recycler.
+     *
+     * @return the lease, or null if every buffer is currently in use
+     */
+    public Lease acquire() {
+        Lease lease = freeList.poll();
+        if (lease == null) {
+            starvationCount.incrementAndGet();
+            return null;
+        }
+        lease.open();
+        onLeased();
+        return lease;
+    }
+
+    private void onLeased() {
+        // Once every buffer is out of the recycler's hands the camera has nothing left to fill.
+        if (leasesHeld.incrementAndGet() == capacity) {
+            starvationCount.incrementAndGet();
+        }
+    }
+
+    private void recycle(Lease lease) {
+        recycledCount.incrementAndGet();
+        synchronized (this) {
+            Recycler target = recycler;
+            if (target != null) {
+                target.recycle(lease.array);
+            } else {
+                freeList.add(lease);
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /** Number of buffers that currently have at least one holder. */
+    public int getLeasesHeld() {
+        return leasesHeld.get();
+    }
+
+    /** Number of times every buffer was leased at once, leaving the producer without a buffer. */
+    public long getStarvationCount() {
+        return starvationCount.get();
+    }
+
+    /** Number of buffers handed back after their last holder released them. */
+    public long getRecycledCount() {
+        return recycledCount.get();
+    }
+}
@@ -22,6 +22,9 @@ public class FrameMetadata {
   private final int width;
   private final int height;
   private final int rotation;
+  private final int offsetX;
+  private final int offsetY;
+  private final long timestampMs;
 
   public int getWidth() {
     return width;
@@ -35,10 +38,35 @@ public class FrameMetadata {
     return rotation;
   }
 
-  private FrameMetadata(int width, int height, int rotation) {
+  /**
+   * Horizontal position of this frame's upright origin within the full upright preview frame, non
+   * zero when the frame was cropped to a region of interest.
+   */
+  public int getOffsetX() {
+    return offsetX;
+  }
+
+  /** Vertical counterpart of {@link #getOffsetX()}. */
+  public int getOffsetY() {
+    return offsetY;
+  }
+
+  /**
+   * When the camera delivered the frame, in {@code SystemClock.elapsedRealtime()} milliseconds, or 0
+   * for images that did not come from the camera.
+   */
+  public long getTimestampMs() {
+    return timestampMs;
+  }
+
+  private FrameMetadata(
+      int width, int height, int rotation, int offsetX, int offsetY, long timestampMs) {
     this.width = width;
     this.height = height;
     this.rotation = rotation;
+    this.offsetX = offsetX;
+    this.offsetY = offsetY;
+    this.timestampMs = timestampMs;
   }
 
   public static class Builder {
@@ -46,6 +74,9 @@ public class FrameMetadata {
     private int width;
     private int height;
     private int rotation;
+    private int offsetX;
+    private int offsetY;
+    private long timestampMs;
 
     public Builder setWidth(int width) {
       this.width = width;
@@ -62,8 +93,19 @@ public class FrameMetadata {
       return this;
     }
 
+    public Builder setOffset(int offsetX, int offsetY) {
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+      return this;
+    }
+
+    public Builder setTimestampMs(long timestampMs) {
+      this.timestampMs = timestampMs;
+      return this;
+    }
+
     public FrameMetadata build() {
-      return new FrameMetadata(width, height, rotation);
+      return new FrameMetadata(width, height, rotation, offsetX, offsetY, timestampMs);
     }
   }
 }
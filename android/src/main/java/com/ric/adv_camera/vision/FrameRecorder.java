@@ -0,0 +1,127 @@
+package com.ric.adv_camera.vision;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes raw NV21 frames and their metadata to a capture file, for a {@link ReplayFrameSource} to
+ * play back later, e.g. on a desktop JVM without a camera.
+ *
+ * <p>The file is written through memory-mapped chunks of {@link #CHUNK_SIZE} bytes, so recording a
+ * frame is a copy into memory and never waits for the disk; a new chunk is mapped when a frame does
+ * not fit into the rest of the current one. {@link #close()} trims the unused end of the last chunk.
+ *
+ * <p>Format, big-endian: a header of {@link #MAGIC}, {@link #VERSION} and 8 reserved bytes, then for
+ * every frame {@link #RECORD_MAGIC}, the timestamp in milliseconds as a long, width, height,
+ * rotation and data length as ints, and the data. A file that was not closed ends in zeros, where
+ * readers stop because the record magic is missing.
+ */
+public class FrameRecorder implements Closeable {
+
+    public static final int MAGIC = 0x41445643; // "ADVC"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_MAGIC = 0x46524d31; // "FRM1"
+    public static final int RECORD_HEADER_SIZE = 28;
+
+    public static final long CHUNK_SIZE = 16L * 1024 * 1024;
+
+    private final File file;
+    private final RandomAccessFile output;
+    private final FileChannel channel;
+    private final long maxBytes;
+
+    private MappedByteBuffer chunk;
+    private long position;
+    private long frameCount;
+    private boolean closed;
+
+    /**
+     * Creates or truncates {@code file}.
+     *
+     * @param maxBytes size the file may grow to, after which frames are no longer recorded
+     */
+    public FrameRecorder(File file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(0);
+            channel = output.getChannel();
+            map(0, HEADER_SIZE);
+            chunk.putInt(MAGIC).putInt(VERSION).putLong(0L);
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Appends a frame.
+     *
+     * @param data the frame, of which the first {@code length} bytes are written
+     * @return false if the recorder is closed or full and the frame was not written
+     */
+    public synchronized boolean record(byte[] data, int length, FrameMetadata metadata)
+            throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + length;
+        if (closed || position + recordSize > maxBytes) {
+            return false;
+        }
+
+        if (chunk.remaining() < recordSize) {
+            map(position, recordSize);
+        }
+        chunk.putInt(RECORD_MAGIC)
+                .putLong(metadata.getTimestampMs())
+                .putInt(metadata.getWidth())
+                .putInt(metadata.getHeight())
+                .putInt(metadata.getRotation())
+                .putInt(length)
+                .put(data, 0, length);
+        position += recordSize;
+        frameCount++;
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    /** Size of the capture file once it is closed. */
+    public synchronized long getBytesWritten() {
+        return position;
+    }
+
+    /** Writes out what is mapped and trims the file to the recorded frames. Safe to call twice. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            chunk.force();
+            chunk = null;
+            channel.truncate(position);
+        } finally {
+            output.close();
+        }
+    }
+
+    /** Maps the chunk starting at {@code start}, large enough for {@code minSize} bytes. */
+    private void map(long start, long minSize) throws IOException {
+        // The previous chunk is left to the kernel to write back. Mapping past the end grows the
+        // file.
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(CHUNK_SIZE, minSize));
+    }
+}
@@ -0,0 +1,96 @@
+package com.ric.adv_camera.vision;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Joins the results several processors produce for the same camera frame, keyed by the frame's
+ * timestamp, and hands them on in frame order.
+ *
+ * <p>A frame is announced with the processors that took it ({@link #expect}) and is complete once
+ * each of them delivered a result. Processors drop frames while they are busy, so a processor that
+ * reports a newer frame is taken to have skipped every older frame it still owed; that frame is
+ * then handed on with the results that did arrive. At most {@link #MAX_PENDING_FRAMES} frames wait,
+ * the oldest is handed on incomplete when another one is announced.
+ *
+ * <p>The listener is called on the thread whose call completed the frame, outside the merger's lock.
+ */
+public class FrameResultMerger {
+
+    /** Receives the merged results of a frame, keyed by processor name. */
+    public interface Listener {
+        void onMergedResults(long timestampMs, Map<String, Object> results);
+    }
+
+    static final int MAX_PENDING_FRAMES = 8;
+
+    private static final class PendingFrame {
+        final Set<String> waitingFor;
+        final Map<String, Object> results = new HashMap<>();
+
+        PendingFrame(Collection<String> processors) {
+            waitingFor = new HashSet<>(processors);
+        }
+    }
+
+    private final Listener listener;
+    private final TreeMap<Long, PendingFrame> pending = new TreeMap<>();
+
+    public FrameResultMerger(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Announces that {@code processors} are working on the frame taken at {@code timestampMs}. */
+    public void expect(long timestampMs, Collection<String> processors) {
+        List<Map.Entry<Long, PendingFrame>> ready = new ArrayList<>();
+        synchronized (this) {
+            pending.put(timestampMs, new PendingFrame(processors));
+            while (pending.size() > MAX_PENDING_FRAMES) {
+                ready.add(pending.pollFirstEntry());
+            }
+        }
+        deliver(ready);
+    }
+
+    /** Records the result {@code processor} produced for the frame taken at {@code timestampMs}. */
+    public void onResult(String processor, long timestampMs, Object results) {
+        List<Map.Entry<Long, PendingFrame>> ready = new ArrayList<>();
+        synchronized (this) {
+            PendingFrame frame = pending.get(timestampMs);
+            if (frame == null) {
+                // Already handed on without this result.
+                return;
+            }
+            frame.results.put(processor, results);
+            frame.waitingFor.remove(processor);
+            // Results of one processor arrive in frame order, it will not report older frames.
+            for (PendingFrame older : pending.headMap(timestampMs, false).values()) {
+                older.waitingFor.remove(processor);
+            }
+
+            while (!pending.isEmpty() && pending.firstEntry().getValue().waitingFor.isEmpty()) {
+                ready.add(pending.pollFirstEntry());
+            }
+        }
+        deliver(ready);
+    }
+
+    /** Forgets every pending frame without handing it on. */
+    public synchronized void clear() {
+        pending.clear();
+    }
+
+    private void deliver(List<Map.Entry<Long, PendingFrame>> frames) {
+        for (Map.Entry<Long, PendingFrame> frame : frames) {
+            if (!frame.getValue().results.isEmpty()) {
+                listener.onMergedResults(frame.getKey(), frame.getValue().results);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.ric.adv_camera.vision;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-slot, latest-frame-wins mailbox between the camera callback and the processing thread.
+ *
+ * <p>The producer never blocks: {@link #offer} swaps the new frame in and releases the frame it
+ * displaced, which hands that buffer straight back to the camera. The consumer only parks when the
+ * slot is empty. There must be at most one consumer thread at a time.
+ */
+public class FrameSlot {
+
+    private final AtomicReference<FrameBufferPool.Lease> slot = new AtomicReference<>();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile Thread consumer;
+    private volatile boolean closed;
+
+    /**
+     * Publishes {@code frame}, taking over the caller's lease on it. A frame that was still waiting
+     * in the slot is dropped and released.
+     *
+     * @return whether a waiting frame was dropped
+     */
+    public boolean offer(FrameBufferPool.Lease frame) {
+        FrameBufferPool.Lease displaced = slot.getAndSet(frame);
+        if (displaced != null) {
+            droppedCount.incrementAndGet();
+            displaced.release();
+        }
+
+        if (closed) {
+            // Lost a race with close(), make sure the frame is not stranded in the slot.
+            clear();
+            return displaced != null;
+        }
+
+        Thread waiter = consumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return displaced != null;
+    }
+
+    /**
+     * Waits for the next frame. The caller owns the returned lease and must release it.
+     *
+     * @return the most recent frame, or null once the slot has been closed
+     * @throws InterruptedException if the consumer thread is interrupted while waiting
+     */
+    public FrameBufferPool.Lease take() throws InterruptedException {
+        Thread current = Thread.currentThread();
+        while (true) {
+            if (closed) {
+                return null;
+            }
+
+            FrameBufferPool.Lease frame = slot.getAndSet(null);
+            if (frame != null) {
+                return frame;
+            }
+
+            // Publish ourselves before re-checking the slot, so that a frame offered in between
+            // either gets seen below or unparks us.
+            consumer = current;
+            if (slot.get() == null && !closed) {
+                LockSupport.park(this);
+            }
+            consumer = null;
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /** Re-opens the slot after {@link #close()}. */
+    public void open() {
+        closed = false;
+    }
+
+    /** Releases any waiting frame and wakes the consumer, whose {@link #take()} returns null. */
+    public void close() {
+        closed = true;
+        clear();
+        Thread waiter = consumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private void clear() {
+        FrameBufferPool.Lease leftover = slot.getAndSet(null);
+        if (leftover != null) {
+            leftover.release();
+        }
+    }
+
+    /** Number of frames that were overwritten before the consumer got to them. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
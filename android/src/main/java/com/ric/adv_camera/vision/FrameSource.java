@@ -0,0 +1,35 @@
+package com.ric.adv_camera.vision;
+
+import java.io.IOException;
+
+/**
+ * Produces NV21 frames for the detection pipeline from somewhere other than the live camera, e.g. a
+ * {@link ReplayFrameSource} reading a file written by {@link FrameRecorder}.
+ *
+ * <p>A source delivers frames on a thread of its own, one at a time, until it runs out or is
+ * stopped.
+ */
+public interface FrameSource {
+
+    /** Receives the frames of a source. */
+    interface Sink {
+        /**
+         * Called with each frame. The source releases {@code frame} when this returns, so a sink
+         * that keeps it must {@link FrameBufferPool.Lease#retain() retain} it.
+         */
+        void onFrame(FrameBufferPool.Lease frame, FrameMetadata metadata);
+
+        /**
+         * Called once after the last frame, unless the source was stopped first.
+         *
+         * @param error why the source ended early, or null if it ran out of frames
+         */
+        void onEnd(IOException error);
+    }
+
+    /** Starts delivering frames to {@code sink}. */
+    void start(Sink sink) throws IOException;
+
+    /** Stops delivering frames and waits until no {@link Sink#onFrame} call is running. */
+    void stop();
+}
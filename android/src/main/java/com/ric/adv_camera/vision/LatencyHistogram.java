@@ -0,0 +1,181 @@
+package com.ric.adv_camera.vision;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram over a sliding time window.
+ *
+ * <p>The window is split into slots of {@code slotMs}; each slot holds its own bucket counts and is
+ * cleared when time wraps around to it again, so a {@link #snapshot} only covers the last {@code
+ * windowMs}. Recording is lock-free and allocation-free. A sample that races with the slot being
+ * recycled may be lost, which is acceptable for monitoring.
+ *
+ * <p>Times are passed in by the caller so the histogram does not depend on a particular clock.
+ */
+public class LatencyHistogram {
+
+    /** Upper bounds of the buckets in milliseconds; the last bucket holds everything above. */
+    private static final long[] BUCKET_BOUNDS_MS = {
+            1, 2, 3, 4, 5, 6, 8, 10, 12, 15, 20, 25, 30, 40, 50, 60, 80, 100, 125, 150, 200, 250, 300,
+            400, 500, 750, 1000, 1500, 2000
+    };
+    private static final int BUCKET_COUNT = BUCKET_BOUNDS_MS.length + 1;
+
+    public static final long DEFAULT_WINDOW_MS = 10000;
+    public static final long DEFAULT_SLOT_MS = 1000;
+
+    private final long slotMs;
+    private final int slotCount;
+    /** Epoch (time / slotMs) each slot currently holds, -1 while unused. */
+    private final AtomicLongArray slotEpochs;
+    /** Bucket counts, {@link #BUCKET_COUNT} per slot. */
+    private final AtomicLongArray counts;
+    private final AtomicLongArray sums;
+
+    public LatencyHistogram() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_SLOT_MS);
+    }
+
+    public LatencyHistogram(long windowMs, long slotMs) {
+        if (slotMs <= 0 || windowMs < slotMs) {
+            throw new IllegalArgumentException("Invalid window: " + windowMs + "ms in " + slotMs + "ms slots");
+        }
+        this.slotMs = slotMs;
+        this.slotCount = (int) (windowMs / slotMs);
+        slotEpochs = new AtomicLongArray(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slotEpochs.set(i, -1);
+        }
+        counts = new AtomicLongArray(slotCount * BUCKET_COUNT);
+        sums = new AtomicLongArray(slotCount);
+    }
+
+    /** Adds a sample of {@code latencyMs} taken at {@code nowMs}. Negative samples are ignored. */
+    public void record(long latencyMs, long nowMs) {
+        if (latencyMs < 0) {
+            return;
+        }
+        long epoch = nowMs / slotMs;
+        int slot = (int) (epoch % slotCount);
+        long slotEpoch = slotEpochs.get(slot);
+        if (slotEpoch != epoch) {
+            if (slotEpoch > epoch) {
+                // Older than anything the window still holds.
+                return;
+            }
+            if (slotEpochs.compareAndSet(slot, slotEpoch, epoch)) {
+                clearSlot(slot);
+            }
+        }
+        counts.incrementAndGet(slot * BUCKET_COUNT + bucketOf(latencyMs));
+        sums.addAndGet(slot, latencyMs);
+    }
+
+    /** Summarizes the samples recorded within the window ending at {@code nowMs}. */
+    public Snapshot snapshot(long nowMs) {
+        long newestEpoch = nowMs / slotMs;
+        long[] merged = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            long epoch = slotEpochs.get(slot);
+            if (epoch < 0 || epoch > newestEpoch || newestEpoch - epoch >= slotCount) {
+                continue;
+            }
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                long bucketCount = counts.get(slot * BUCKET_COUNT + bucket);
+                merged[bucket] += bucketCount;
+                count += bucketCount;
+            }
+            sum += sums.get(slot);
+        }
+        return new Snapshot(
+                count,
+                count == 0 ? 0 : (double) sum / count,
+                percentile(merged, count, 0.50),
+                percentile(merged, count, 0.95),
+                percentile(merged, count, 0.99));
+    }
+
+    /** Forgets every sample. */
+    public void reset() {
+        for (int slot = 0; slot < slotCount; slot++) {
+            slotEpochs.set(slot, -1);
+            clearSlot(slot);
+        }
+    }
+
+    private void clearSlot(int slot) {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts.set(slot * BUCKET_COUNT + bucket, 0);
+        }
+        sums.set(slot, 0);
+    }
+
+    private static int bucketOf(long latencyMs) {
+        int low = 0;
+        int high = BUCKET_BOUNDS_MS.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BUCKET_BOUNDS_MS[mid] < latencyMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Upper bound of the bucket holding the {@code quantile} sample. Samples in the overflow bucket
+     * are reported as the largest bound.
+     */
+    private static long percentile(long[] buckets, long count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return BUCKET_BOUNDS_MS[Math.min(bucket, BUCKET_BOUNDS_MS.length - 1)];
+            }
+        }
+        return BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1];
+    }
+
+    /** Latency summary of one window. Percentiles are bucket upper bounds in milliseconds. */
+    public static final class Snapshot {
+        public final long count;
+        public final double meanMs;
+        public final long p50Ms;
+        public final long p95Ms;
+        public final long p99Ms;
+
+        Snapshot(long count, double meanMs, long p50Ms, long p95Ms, long p99Ms) {
+            this.count = count;
+            this.meanMs = meanMs;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.p99Ms = p99Ms;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("count", count);
+            map.put("mean", meanMs);
+            map.put("p50", p50Ms);
+            map.put("p95", p95Ms);
+            map.put("p99", p99Ms);
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + ", p50=" + p50Ms + ", p95=" + p95Ms + ", p99=" + p99Ms;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.ric.adv_camera.vision;
+
+/**
+ * Plain-Java operations on NV21 frames: a full-resolution Y plane followed by a half-resolution
+ * plane of interleaved V/U pairs.
+ */
+public final class Nv21Utils {
+
+    private Nv21Utils() {}
+
+    /** Size in bytes of an NV21 frame of the given dimensions. */
+    public static int frameSize(int width, int height) {
+        return width * height + 2 * (((width + 1) / 2) * ((height + 1) / 2));
+    }
+
+    /**
+     * Copies a rectangle out of an NV21 frame into {@code dst} as a tightly packed NV21 frame of
+     * {@code cropWidth} x {@code cropHeight}. The rectangle must be aligned to even pixels.
+     *
+     * @param src the source frame
+     * @param width the source frame width
+     * @param height the source frame height
+     * @param dst the destination, at least {@code frameSize(cropWidth, cropHeight)} bytes long
+     */
+    public static void crop(
+            byte[] src, int width, int height,
+            int left, int top, int cropWidth, int cropHeight,
+            byte[] dst) {
+        if (((left | top | cropWidth | cropHeight) & 1) != 0
+                || left < 0 || top < 0
+                || left + cropWidth > width || top + cropHeight > height) {
+            throw new IllegalArgumentException("Invalid NV21 crop " + left + "," + top + " "
+                    + cropWidth + "x" + cropHeight + " of " + width + "x" + height);
+        }
+        if (dst.length < frameSize(cropWidth, cropHeight)) {
+            throw new IllegalArgumentException("Crop buffer too small: " + dst.length);
+        }
+
+        // Y plane, one row at a time.
+        int srcPos = top * width + left;
+        int dstPos = 0;
+        for (int row = 0; row < cropHeight; row++) {
+            System.arraycopy(src, srcPos, dst, dstPos, cropWidth);
+            srcPos += width;
+            dstPos += cropWidth;
+        }
+
+        // VU plane: half the rows, and each row holds one V/U pair per two pixels, so the byte
+        // offsets within a row are the same as for the Y plane.
+        srcPos = width * height + (top / 2) * width + left;
+        for (int row = 0; row < cropHeight / 2; row++) {
+            System.arraycopy(src, srcPos, dst, dstPos, cropWidth);
+            srcPos += width;
+            dstPos += cropWidth;
+        }
+    }
+
+    /**
+     * Width of the image produced by {@link #toArgb} for a frame of {@code width} x {@code height}.
+     */
+    public static int argbWidth(int width, int height, int rotation, int downscale) {
+        return (rotation == 90 || rotation == 270) ? height / downscale : width / downscale;
+    }
+
+    /**
+     * Height of the image produced by {@link #toArgb} for a frame of {@code width} x {@code height}.
+     */
+    public static int argbHeight(int width, int height, int rotation, int downscale) {
+        return (rotation == 90 || rotation == 270) ? width / downscale : height / downscale;
+    }
+
+    /**
+     * Decodes an NV21 frame into ARGB_8888 pixels in a single pass, rotating, mirroring and
+     * downscaling on the way. Downscaling samples every {@code downscale}-th pixel.
+     *
+     * @param nv21 the source frame
+     * @param width the source frame width
+     * @param height the source frame height
+     * @param rotation clockwise rotation to apply, one of 0, 90, 180 or 270
+     * @param mirror whether to flip the rotated image horizontally
+     * @param downscale integer downscale factor, 1 for full size
+     * @param out destination pixels, row-major with a stride of {@link #argbWidth}; must hold at
+     *     least {@code argbWidth * argbHeight} values
+     */
+    public static void toArgb(
+            byte[] nv21, int width, int height,
+            int rotation, boolean mirror, int downscale,
+            int[] out) {
+        if (downscale < 1) {
+            throw new IllegalArgumentException("Invalid downscale: " + downscale);
+        }
+        int scaledWidth = width / downscale;
+        int scaledHeight = height / downscale;
+        int outWidth = argbWidth(width, height, rotation, downscale);
+        int outHeight = argbHeight(width, height, rotation, downscale);
+        if (out.length < outWidth * outHeight) {
+            throw new IllegalArgumentException("Pixel buffer too small: " + out.length);
+        }
+
+        // Rotation and mirroring are affine, so the destination index moves by a constant step per
+        // source column and per source row.
+        int origin = outputIndex(0, 0, scaledWidth, scaledHeight, rotation, mirror);
+        int columnStep = outputIndex(1, 0, scaledWidth, scaledHeight, rotation, mirror) - origin;
+        int rowStep = outputIndex(0, 1, scaledWidth, scaledHeight, rotation, mirror) - origin;
+
+        int frameSize = width * height;
+        int rowStart = origin;
+        for (int row = 0; row < scaledHeight; row++) {
+            int y = row * downscale;
+            int yIndex = y * width;
+            int uvIndex = frameSize + (y >> 1) * width;
+            int dst = rowStart;
+            for (int column = 0; column < scaledWidth; column++) {
+                int x = column * downscale;
+                int luma = nv21[yIndex + x] & 0xff;
+                int uv = uvIndex + (x & ~1);
+                int v = (nv21[uv] & 0xff) - 128;
+                int u = (nv21[uv + 1] & 0xff) - 128;
+
+                // BT.601 full range, fixed point with 10 fractional bits.
+                int r = luma + ((1436 * v) >> 10);
+                int g = luma - ((352 * u + 731 * v) >> 10);
+                int b = luma + ((1815 * u) >> 10);
+                r = r < 0 ? 0 : (r > 255 ? 255 : r);
+                g = g < 0 ? 0 : (g > 255 ? 255 : g);
+                b = b < 0 ? 0 : (b > 255 ? 255 : b);
+
+                out[dst] = 0xff000000 | (r << 16) | (g << 8) | b;
+                dst += columnStep;
+            }
+            rowStart += rowStep;
+        }
+    }
+
+    /** Index in the rotated, mirrored output of source pixel ({@code x}, {@code y}). */
+    private static int outputIndex(
+            int x, int y, int width, int height, int rotation, boolean mirror) {
+        int outX;
+        int outY;
+        int outWidth;
+        switch (rotation) {
+            case 90:
+                outX = height - 1 - y;
+                outY = x;
+                outWidth = height;
+                break;
+            case 180:
+                outX = width - 1 - x;
+                outY = height - 1 - y;
+                outWidth = width;
+                break;
+            case 270:
+                outX = y;
+                outY = width - 1 - x;
+                outWidth = height;
+                break;
+            default:
+                outX = x;
+                outY = y;
+                outWidth = width;
+        }
+        if (mirror) {
+            outX = outWidth - 1 - outX;
+        }
+        return outY * outWidth + outX;
+    }
+}
@@ -0,0 +1,197 @@
+package com.ric.adv_camera.vision;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and drop statistics of the detection pipeline over a sliding window.
+ *
+ * <ul>
+ *   <li>queue wait: from the camera delivering a frame to the detector starting on it,
+ *   <li>detector: time spent in the detector,
+ *   <li>callback: from the detector finishing to the results being delivered on the main thread,
+ *   <li>frame: the whole way from the camera to the delivered results.
+ * </ul>
+ *
+ * <p>Every method may be called from any thread. Times are passed in by the caller so the metrics
+ * do not depend on a particular clock.
+ */
+public class PipelineMetrics {
+
+    /** A newer frame replaced this one in the hand-over slot before the processing thread took it. */
+    public static final int DROP_SUPERSEDED_IN_SLOT = 0;
+    /** A newer frame replaced this one while the detector was busy with an earlier frame. */
+    public static final int DROP_SUPERSEDED_IN_PROCESSOR = 1;
+    /** No pool buffer was free to hold the frame. */
+    public static final int DROP_NO_BUFFER = 2;
+    /** The scene had not changed since the last detection; see {@link SceneChangeDetector}. */
+    public static final int DROP_STATIC_SCENE = 3;
+    /** The frame was blurred compared to the recent ones; see {@link SharpnessFilter}. */
+    public static final int DROP_BLURRED = 4;
+
+    private static final String[] DROP_NAMES = {
+            "superseded", "detectorBusy", "noBuffer", "staticScene", "blurred"
+    };
+
+    private final long windowMs;
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram detector;
+    private final LatencyHistogram callback;
+    private final LatencyHistogram frame;
+    private final WindowedCounter[] drops = new WindowedCounter[DROP_NAMES.length];
+    private final AtomicLong processedFrames = new AtomicLong();
+    private volatile double sharpnessScore;
+    private volatile double sharpnessThreshold;
+
+    public PipelineMetrics() {
+        this(LatencyHistogram.DEFAULT_WINDOW_MS, LatencyHistogram.DEFAULT_SLOT_MS);
+    }
+
+    public PipelineMetrics(long windowMs, long slotMs) {
+        this.windowMs = windowMs;
+        queueWait = new LatencyHistogram(windowMs, slotMs);
+        detector = new LatencyHistogram(windowMs, slotMs);
+        callback = new LatencyHistogram(windowMs, slotMs);
+        frame = new LatencyHistogram(windowMs, slotMs);
+        for (int i = 0; i < drops.length; i++) {
+            drops[i] = new WindowedCounter(windowMs, slotMs);
+        }
+    }
+
+    public void recordQueueWait(long latencyMs, long nowMs) {
+        queueWait.record(latencyMs, nowMs);
+    }
+
+    public void recordDetector(long latencyMs, long nowMs) {
+        detector.record(latencyMs, nowMs);
+    }
+
+    public void recordCallback(long latencyMs, long nowMs) {
+        callback.record(latencyMs, nowMs);
+    }
+
+    /** Records the end-to-end latency of a frame whose results were delivered. */
+    public void recordFrame(long latencyMs, long nowMs) {
+        processedFrames.incrementAndGet();
+        frame.record(latencyMs, nowMs);
+    }
+
+    /** Counts a frame that never reached the detector; {@code reason} is one of the DROP_ constants. */
+    public void recordDrop(int reason, long nowMs) {
+        drops[reason].increment(nowMs);
+    }
+
+    /** Records the sharpness score of the latest frame and the threshold it was held against. */
+    public void recordSharpness(double score, double threshold) {
+        sharpnessScore = score;
+        sharpnessThreshold = threshold;
+    }
+
+    public LatencyHistogram.Snapshot getFrameLatency(long nowMs) {
+        return frame.snapshot(nowMs);
+    }
+
+    public LatencyHistogram.Snapshot getDetectorLatency(long nowMs) {
+        return detector.snapshot(nowMs);
+    }
+
+    /** Forgets every sample, e.g. when the camera restarts with different settings. */
+    public void reset() {
+        queueWait.reset();
+        detector.reset();
+        callback.reset();
+        frame.reset();
+        for (WindowedCounter counter : drops) {
+            counter.reset();
+        }
+        processedFrames.set(0);
+        sharpnessScore = 0;
+        sharpnessThreshold = 0;
+    }
+
+    /** The current window as a map for the method channel. */
+    public Map<String, Object> toMap(long nowMs) {
+        Map<String, Object> dropped = new HashMap<>();
+        Map<String, Object> droppedTotal = new HashMap<>();
+        for (int i = 0; i < drops.length; i++) {
+            dropped.put(DROP_NAMES[i], drops[i].count(nowMs));
+            droppedTotal.put(DROP_NAMES[i], drops[i].total());
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("windowMs", windowMs);
+        map.put("queueWait", queueWait.snapshot(nowMs).toMap());
+        map.put("detector", detector.snapshot(nowMs).toMap());
+        map.put("callback", callback.snapshot(nowMs).toMap());
+        map.put("frame", frame.snapshot(nowMs).toMap());
+        map.put("dropped", dropped);
+        map.put("droppedTotal", droppedTotal);
+        map.put("processedTotal", processedFrames.get());
+        Map<String, Object> sharpness = new HashMap<>();
+        sharpness.put("score", sharpnessScore);
+        sharpness.put("threshold", sharpnessThreshold);
+        map.put("sharpness", sharpness);
+        return map;
+    }
+
+    /** Event count over the same sliding window as {@link LatencyHistogram}, plus a running total. */
+    private static final class WindowedCounter {
+        private final long slotMs;
+        private final int slotCount;
+        private final AtomicLongArray slotEpochs;
+        private final AtomicLongArray counts;
+        private final AtomicLong total = new AtomicLong();
+
+        WindowedCounter(long windowMs, long slotMs) {
+            this.slotMs = slotMs;
+            this.slotCount = (int) (windowMs / slotMs);
+            slotEpochs = new AtomicLongArray(slotCount);
+            counts = new AtomicLongArray(slotCount);
+            for (int i = 0; i < slotCount; i++) {
+                slotEpochs.set(i, -1);
+            }
+        }
+
+        void increment(long nowMs) {
+            total.incrementAndGet();
+            long epoch = nowMs / slotMs;
+            int slot = (int) (epoch % slotCount);
+            long slotEpoch = slotEpochs.get(slot);
+            if (slotEpoch != epoch) {
+                if (slotEpoch > epoch) {
+                    return;
+                }
+                if (slotEpochs.compareAndSet(slot, slotEpoch, epoch)) {
+                    counts.set(slot, 0);
+                }
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        long count(long nowMs) {
+            long newestEpoch = nowMs / slotMs;
+            long count = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                long epoch = slotEpochs.get(slot);
+                if (epoch >= 0 && epoch <= newestEpoch && newestEpoch - epoch < slotCount) {
+                    count += counts.get(slot);
+                }
+            }
+            return count;
+        }
+
+        long total() {
+            return total.get();
+        }
+
+        void reset() {
+            for (int slot = 0; slot < slotCount; slot++) {
+                slotEpochs.set(slot, -1);
+                counts.set(slot, 0);
+            }
+            total.set(0);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ric.adv_camera.vision;
+
+import java.util.List;
+
+/**
+ * The preview size, frame rate and orientation choices of {@link VisionCamera} and the {@link
+ * CameraBackend}s, on plain values so they do not need a camera.
+ */
+public final class PreviewConfigSelector {
+
+    /** Indices into a frame rate range, the same as {@code Camera.Parameters.PREVIEW_FPS_*_INDEX}. */
+    public static final int FPS_MIN_INDEX = 0;
+    public static final int FPS_MAX_INDEX = 1;
+
+    private PreviewConfigSelector() {}
+
+    /**
+     * Index of the size closest to the desired one, minimizing the sum of the width and height
+     * differences, or -1 if {@code count} is 0. Among equally close sizes the first one wins.
+     */
+    public static int closestSize(
+            int[] widths, int[] heights, int count, int desiredWidth, int desiredHeight) {
+        int selected = -1;
+        int minDiff = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int diff = Math.abs(widths[i] - desiredWidth) + Math.abs(heights[i] - desiredHeight);
+            if (diff < minDiff) {
+                selected = i;
+                minDiff = diff;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Selects the range whose upper bound is as close as possible to {@code desiredFpsScaled} while
+     * its lower bound is as small as possible, to properly expose frames in low light. Rates are
+     * scaled by 1000 as in the camera API.
+     *
+     * @return the selected range, or null if {@code ranges} is empty
+     */
+    public static int[] selectFpsRange(List<int[]> ranges, int desiredFpsScaled) {
+        int[] selectedFpsRange = null;
+        int minUpperBoundDiff = Integer.MAX_VALUE;
+        int minLowerBound = Integer.MAX_VALUE;
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            int upperBoundDiff = Math.abs(desiredFpsScaled - range[FPS_MAX_INDEX]);
+            int lowerBound = range[FPS_MIN_INDEX];
+            if (upperBoundDiff <= minUpperBoundDiff && lowerBound <= minLowerBound) {
+                selectedFpsRange = range;
+                minUpperBoundDiff = upperBoundDiff;
+                minLowerBound = lowerBound;
+            }
+        }
+        return selectedFpsRange;
+    }
+
+    /**
+     * Degrees by which a camera's frames have to be rotated clockwise to be upright.
+     *
+     * @param sensorOrientation the camera's mounting angle, as in {@code CameraInfo.orientation}
+     * @param displayDegrees how far the display is rotated from its natural orientation
+     */
+    public static int frameRotation(boolean front, int sensorOrientation, int displayDegrees) {
+        return front
+                ? (sensorOrientation + displayDegrees) % 360
+                : (sensorOrientation - displayDegrees + 360) % 360;
+    }
+
+    /**
+     * The angle to pass to Camera1's {@code setDisplayOrientation} for a preview shown upright;
+     * front cameras are mirrored, so theirs is the other way round.
+     */
+    public static int displayOrientation(boolean front, int frameRotation) {
+        return front ? (360 - frameRotation) % 360 : frameRotation;
+    }
+}
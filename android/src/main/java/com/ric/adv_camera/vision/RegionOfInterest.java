@@ -0,0 +1,209 @@
+package com.ric.adv_camera.vision;
+
+/**
+ * A rectangle of the preview, in normalized (0..1) coordinates of the upright preview as the user
+ * sees it, that the detector should be limited to.
+ *
+ * <p>Camera frames arrive in sensor orientation, so {@link #toCrop} maps the rectangle onto the
+ * frame for a given rotation and returns where the cropped image ends up in the upright full frame,
+ * which is what detection results have to be shifted by.
+ */
+public final class RegionOfInterest {
+
+    private final float left;
+    private final float top;
+    private final float right;
+    private final float bottom;
+
+    // Last computed crop, frames rarely change size or rotation.
+    private volatile Crop lastCrop;
+
+    public RegionOfInterest(float left, float top, float right, float bottom) {
+        if (left < 0f || top < 0f || right > 1f || bottom > 1f || left >= right || top >= bottom) {
+            throw new IllegalArgumentException(
+                    "Invalid region of interest: " + left + ", " + top + ", " + right + ", " + bottom);
+        }
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+
+    /** Fraction of the frame covered by this region. */
+    public float getArea() {
+        return (right - left) * (bottom - top);
+    }
+
+    /**
+     * Returns this region with both dimensions multiplied by {@code factor}, around the same center
+     * and clipped to the frame.
+     */
+    public RegionOfInterest scale(float factor) {
+        if (factor <= 0f) {
+            throw new IllegalArgumentException("Invalid scale factor: " + factor);
+        }
+        float centerX = (left + right) / 2f;
+        float centerY = (top + bottom) / 2f;
+        float halfWidth = (right - left) * factor / 2f;
+        float halfHeight = (bottom - top) * factor / 2f;
+        return new RegionOfInterest(
+                Math.max(0f, centerX - halfWidth),
+                Math.max(0f, centerY - halfHeight),
+                Math.min(1f, centerX + halfWidth),
+                Math.min(1f, centerY + halfHeight));
+    }
+
+    /**
+     * Returns this region rotated back into sensor orientation, in normalized coordinates of the
+     * unrotated frame, e.g. for a camera's focus area.
+     *
+     * @param rotation the clockwise rotation in degrees that makes the frame upright
+     */
+    public RegionOfInterest toSensorOrientation(int rotation) {
+        float x0;
+        float y0;
+        float x1;
+        float y1;
+        switch (rotation) {
+            case 90:
+                x0 = top;
+                x1 = bottom;
+                y0 = 1f - right;
+                y1 = 1f - left;
+                break;
+            case 180:
+                x0 = 1f - right;
+                x1 = 1f - left;
+                y0 = 1f - bottom;
+                y1 = 1f - top;
+                break;
+            case 270:
+                x0 = 1f - bottom;
+                x1 = 1f - top;
+                y0 = left;
+                y1 = right;
+                break;
+            default:
+                x0 = left;
+                x1 = right;
+                y0 = top;
+                y1 = bottom;
+        }
+        return new RegionOfInterest(x0, y0, x1, y1);
+    }
+
+    /**
+     * Maps this region onto an NV21 frame.
+     *
+     * @param width the frame width, in sensor orientation
+     * @param height the frame height, in sensor orientation
+     * @param rotation the clockwise rotation in degrees that makes the frame upright
+     * @return the crop, aligned to even pixels as NV21 requires
+     */
+    public Crop toCrop(int width, int height, int rotation) {
+        Crop cached = lastCrop;
+        if (cached != null
+                && cached.frameWidth == width
+                && cached.frameHeight == height
+                && cached.rotation == rotation) {
+            return cached;
+        }
+
+        RegionOfInterest sensor = toSensorOrientation(rotation);
+        float x0 = sensor.left;
+        float y0 = sensor.top;
+        float x1 = sensor.right;
+        float y1 = sensor.bottom;
+
+        int cropLeft = ((int) Math.floor(x0 * width)) & ~1;
+        int cropTop = ((int) Math.floor(y0 * height)) & ~1;
+        int cropRight = Math.min(width & ~1, ((int) Math.ceil(x1 * width) + 1) & ~1);
+        int cropBottom = Math.min(height & ~1, ((int) Math.ceil(y1 * height) + 1) & ~1);
+        cropRight = Math.max(cropRight, cropLeft + 2);
+        cropBottom = Math.max(cropBottom, cropTop + 2);
+
+        // Where the crop's upright origin lands in the upright full frame.
+        int offsetX;
+        int offsetY;
+        switch (rotation) {
+            case 90:
+                offsetX = height - cropBottom;
+                offsetY = cropLeft;
+                break;
+            case 180:
+                offsetX = width - cropRight;
+                offsetY = height - cropBottom;
+                break;
+            case 270:
+                offsetX = cropTop;
+                offsetY = width - cropRight;
+                break;
+            default:
+                offsetX = cropLeft;
+                offsetY = cropTop;
+        }
+
+        Crop crop = new Crop(
+                width, height, rotation,
+                cropLeft, cropTop, cropRight - cropLeft, cropBottom - cropTop,
+                offsetX, offsetY);
+        lastCrop = crop;
+        return crop;
+    }
+
+    /** A region of interest mapped onto a frame of a given size and rotation. */
+    public static final class Crop {
+        final int frameWidth;
+        final int frameHeight;
+        final int rotation;
+
+        /** Crop rectangle in frame (sensor) pixels. */
+        public final int left;
+        public final int top;
+        public final int width;
+        public final int height;
+
+        /** Translation from the cropped upright image to the upright full frame. */
+        public final int offsetX;
+        public final int offsetY;
+
+        Crop(int frameWidth, int frameHeight, int rotation,
+             int left, int top, int width, int height, int offsetX, int offsetY) {
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+            this.rotation = rotation;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        /** Whether the crop covers the whole frame, in which case there is nothing to cut. */
+        public boolean isFullFrame() {
+            return left == 0 && top == 0 && width == frameWidth && height == frameHeight;
+        }
+
+        /** Size in bytes of the cropped NV21 image. */
+        public int getNv21Size() {
+            return width * height * 3 / 2;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.ric.adv_camera.vision;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays back a capture file written by {@link FrameRecorder}, so a field recording can be run
+ * through the pipeline again, on the device or on a desktop JVM.
+ *
+ * <p>Frames keep their recorded spacing, divided by the speed: 1 is the original rate, 4 four times
+ * as fast, and 0 or less as fast as the sink takes them. Like a camera, the source copies each frame
+ * into one of a few pooled buffers and skips frames while the sink holds on to all of them, which
+ * {@link #getSkippedFrameCount()} counts. The metadata passed to the sink keeps the recorded
+ * timestamps; the leases are stamped with the time of delivery instead.
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+
+    private final File file;
+    private final float speed;
+    private final boolean looping;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long deliveredFrameCount;
+    private volatile long skippedFrameCount;
+
+    /**
+     * @param speed factor for the recorded frame rate, 0 or less to deliver as fast as possible
+     * @param looping whether to start over at the end of the recording until stopped
+     */
+    public ReplayFrameSource(File file, float speed, boolean looping) {
+        this.file = file;
+        this.speed = speed;
+        this.looping = looping;
+    }
+
+    /** @throws IOException if the file is not a readable capture file */
+    @Override
+    public synchronized void start(final Sink sink) throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Replay of " + file + " already started.");
+        }
+        final CaptureReader reader = new CaptureReader(file);
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay(reader, sink);
+            }
+        }, "ReplayFrameSource");
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public long getDeliveredFrameCount() {
+        return deliveredFrameCount;
+    }
+
+    /** Number of frames skipped because the sink still held every buffer. */
+    public long getSkippedFrameCount() {
+        return skippedFrameCount;
+    }
+
+    private void replay(CaptureReader reader, Sink sink) {
+        FrameBufferPool pool = null;
+        try {
+            do {
+                long firstTimestampMs = 0;
+                long startNanos = -1;
+                boolean empty = true;
+                while (running && reader.advance()) {
+                    empty = false;
+                    if (speed > 0) {
+                        if (startNanos < 0) {
+                            firstTimestampMs = reader.getTimestampMs();
+                            startNanos = System.nanoTime();
+                        }
+                        long offsetNanos = TimeUnit.MILLISECONDS.toNanos(
+                                reader.getTimestampMs() - firstTimestampMs);
+                        if (!sleepUntil(startNanos + (long) (offsetNanos / speed))) {
+                            return;
+                        }
+                    }
+
+                    // A recording changes frame size when the preview size changed while recording.
+                    if (pool == null || pool.getBufferSize() < reader.getLength()) {
+                        pool = new FrameBufferPool(DEFAULT_BUFFER_COUNT, reader.getLength());
+                    }
+                    FrameBufferPool.Lease frame = pool.acquire();
+                    if (frame == null) {
+                        skippedFrameCount++;
+                        continue;
+                    }
+                    try {
+                        reader.readData(frame.array());
+                        frame.setTimestampMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+                        sink.onFrame(frame, reader.getMetadata());
+                    } finally {
+                        frame.release();
+                    }
+                    deliveredFrameCount++;
+                }
+                if (empty) {
+                    break;
+                }
+                reader.rewind();
+            } while (looping && running);
+
+            if (running) {
+                sink.onEnd(null);
+            }
+        } catch (IOException e) {
+            sink.onEnd(e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // Only read from, nothing is lost.
+            }
+        }
+    }
+
+    /** @return false if interrupted by {@link #stop()} */
+    private boolean sleepUntil(long dueNanos) {
+        long remaining;
+        while (running && (remaining = dueNanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return running;
+    }
+}
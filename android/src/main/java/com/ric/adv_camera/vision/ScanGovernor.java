@@ -0,0 +1,219 @@
+package com.ric.adv_camera.vision;
+
+/**
+ * Steps scanning down to cheaper settings while the device is hot, low on battery, short of memory
+ * or falling behind, and back up once it recovers, so a device lasts a whole shift.
+ *
+ * <p>Each {@link #evaluate} reads the signals from a {@link SignalSource} and maps each of them to
+ * the level it calls for; the worst one wins. The governor moves to a worse level at once, but only
+ * steps one level back up after every signal allowed it for {@link #DEFAULT_RECOVERY_MS}, so a
+ * signal hovering around a threshold does not make the settings flap. What a level means is
+ * described by its {@link Policy}; applying it is up to the caller.
+ *
+ * <p>Times are passed in by the caller so the governor does not depend on a particular clock.
+ */
+public class ScanGovernor {
+
+    public static final int LEVEL_NORMAL = 0;
+    public static final int LEVEL_REDUCED = 1;
+    public static final int LEVEL_SAVING = 2;
+    public static final int LEVEL_MINIMAL = 3;
+
+    /** Thermal status values, matching those of {@code android.os.PowerManager}. */
+    public static final int THERMAL_UNKNOWN = -1;
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+
+    public static final long DEFAULT_RECOVERY_MS = 30000;
+    public static final long DEFAULT_LATENCY_BUDGET_MS = 250;
+
+    private static final String[] LEVEL_NAMES = {"normal", "reduced", "saving", "minimal"};
+
+    /** Battery percentages at or below which, when not charging, the levels above normal apply. */
+    private static final int BATTERY_REDUCED = 35;
+    private static final int BATTERY_SAVING = 20;
+    private static final int BATTERY_MINIMAL = 10;
+
+    /** The device state the governor reacts to. */
+    public interface SignalSource {
+
+        /** One of the THERMAL_ constants, or a higher {@code PowerManager} status. */
+        int getThermalStatus();
+
+        /** Battery level in percent, or -1 if unknown. */
+        int getBatteryPercent();
+
+        boolean isCharging();
+
+        /** Whether the system considers memory low. */
+        boolean isLowMemory();
+
+        /** Recent 95th percentile detector latency, or -1 without enough samples. */
+        long getDetectorLatencyMs();
+    }
+
+    /** The settings of a level. */
+    public static final class Policy {
+        /** Upper bound for the detection rate; 0 leaves it uncapped. */
+        public final float maxDetectionsPerSecond;
+        /** Factor for both preview dimensions, relative to the configured preview size. */
+        public final float previewScale;
+        /** Factor for both dimensions of the region of interest, around its center. */
+        public final float regionScale;
+        /** Whether detection is limited to the reduced format set, if one is configured. */
+        public final boolean reducedFormats;
+
+        public Policy(
+                float maxDetectionsPerSecond, float previewScale, float regionScale, boolean reducedFormats) {
+            this.maxDetectionsPerSecond = maxDetectionsPerSecond;
+            this.previewScale = previewScale;
+            this.regionScale = regionScale;
+            this.reducedFormats = reducedFormats;
+        }
+    }
+
+    private static final Policy[] DEFAULT_POLICIES = {
+            new Policy(0f, 1f, 1f, false),
+            new Policy(10f, 1f, 1f, false),
+            new Policy(5f, 0.75f, 0.8f, true),
+            new Policy(2f, 0.5f, 0.6f, true),
+    };
+
+    private final SignalSource signals;
+    private long recoveryMs = DEFAULT_RECOVERY_MS;
+    private long latencyBudgetMs = DEFAULT_LATENCY_BUDGET_MS;
+
+    private int level = LEVEL_NORMAL;
+    private String reason = "none";
+    private long betterSinceMs = -1;
+
+    public ScanGovernor(SignalSource signals) {
+        this.signals = signals;
+    }
+
+    /** Sets how long the signals must allow a better level before the governor steps back up. */
+    public synchronized void setRecoveryMs(long recoveryMs) {
+        this.recoveryMs = Math.max(0L, recoveryMs);
+    }
+
+    /** Sets the detector latency above which the governor steps down; 0 or less ignores latency. */
+    public synchronized void setLatencyBudgetMs(long latencyBudgetMs) {
+        this.latencyBudgetMs = Math.max(0L, latencyBudgetMs);
+    }
+
+    /**
+     * Reads the signals and moves to the level they call for.
+     *
+     * @param nowMs the current time in milliseconds
+     * @return whether the level changed
+     */
+    public synchronized boolean evaluate(long nowMs) {
+        int target = LEVEL_NORMAL;
+        String targetReason = "none";
+
+        int thermal = thermalLevel(signals.getThermalStatus());
+        if (thermal > target) {
+            target = thermal;
+            targetReason = "thermal";
+        }
+        int battery = signals.isCharging() ? LEVEL_NORMAL : batteryLevel(signals.getBatteryPercent());
+        if (battery > target) {
+            target = battery;
+            targetReason = "battery";
+        }
+        int memory = signals.isLowMemory() ? LEVEL_SAVING : LEVEL_NORMAL;
+        if (memory > target) {
+            target = memory;
+            targetReason = "memory";
+        }
+        int latency = latencyLevel(signals.getDetectorLatencyMs());
+        if (latency > target) {
+            target = latency;
+            targetReason = "latency";
+        }
+
+        if (target > level) {
+            level = target;
+            reason = targetReason;
+            betterSinceMs = -1;
+            return true;
+        }
+        if (target == level) {
+            betterSinceMs = -1;
+            return false;
+        }
+
+        if (betterSinceMs < 0) {
+            betterSinceMs = nowMs;
+        }
+        if (nowMs - betterSinceMs < recoveryMs) {
+            return false;
+        }
+        // One level at a time, the next step waits for another recovery period.
+        level--;
+        reason = level == target ? targetReason : "recovering";
+        betterSinceMs = level > target ? nowMs : -1;
+        return true;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /** The signal that caused the current level: none, thermal, battery, memory or latency. */
+    public synchronized String getReason() {
+        return reason;
+    }
+
+    public synchronized Policy getPolicy() {
+        return DEFAULT_POLICIES[level];
+    }
+
+    /** Goes back to the normal level, e.g. when the camera restarts. */
+    public synchronized void reset() {
+        level = LEVEL_NORMAL;
+        reason = "none";
+        betterSinceMs = -1;
+    }
+
+    public static String levelName(int level) {
+        return LEVEL_NAMES[level];
+    }
+
+    private static int thermalLevel(int status) {
+        if (status >= THERMAL_SEVERE) {
+            return LEVEL_MINIMAL;
+        } else if (status == THERMAL_MODERATE) {
+            return LEVEL_SAVING;
+        } else if (status == THERMAL_LIGHT) {
+            return LEVEL_REDUCED;
+        }
+        return LEVEL_NORMAL;
+    }
+
+    private static int batteryLevel(int percent) {
+        if (percent < 0) {
+            return LEVEL_NORMAL;
+        } else if (percent <= BATTERY_MINIMAL) {
+            return LEVEL_MINIMAL;
+        } else if (percent <= BATTERY_SAVING) {
+            return LEVEL_SAVING;
+        } else if (percent <= BATTERY_REDUCED) {
+            return LEVEL_REDUCED;
+        }
+        return LEVEL_NORMAL;
+    }
+
+    private int latencyLevel(long latencyMs) {
+        if (latencyBudgetMs <= 0 || latencyMs < 0) {
+            return LEVEL_NORMAL;
+        } else if (latencyMs > 2 * latencyBudgetMs) {
+            return LEVEL_SAVING;
+        } else if (latencyMs > latencyBudgetMs) {
+            return LEVEL_REDUCED;
+        }
+        return LEVEL_NORMAL;
+    }
+}
@@ -0,0 +1,137 @@
+package com.ric.adv_camera.vision;
+
+/**
+ * Tells whether a frame differs enough from the last one sent to the detector to be worth a
+ * detection, for fixed cameras that look at the same scene most of the time.
+ *
+ * <p>Each frame is reduced to a {@value #THUMBNAIL_WIDTH}x{@value #THUMBNAIL_HEIGHT} luma thumbnail
+ * taken from the Y plane of the NV21 data. The sum of absolute differences against the thumbnail of
+ * the last processed frame, divided by the thumbnail size, is compared with the threshold. The
+ * reference only moves when a frame is processed, so a slow drift still adds up to a change. A frame
+ * is processed at least every refresh interval regardless, so results keep coming for a scene that
+ * does not move.
+ *
+ * <p>Times are passed in by the caller so the detector does not depend on a particular clock.
+ */
+public class SceneChangeDetector {
+
+    public static final int THUMBNAIL_WIDTH = 32;
+    public static final int THUMBNAIL_HEIGHT = 24;
+
+    /** Mean absolute luma difference per thumbnail pixel that counts as a change. */
+    public static final float DEFAULT_THRESHOLD = 4f;
+    public static final long DEFAULT_REFRESH_INTERVAL_MS = 1000;
+
+    /** Pixels sampled per thumbnail cell in each direction; enough to average out sensor noise. */
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private static final int THUMBNAIL_SIZE = THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT;
+
+    private boolean enabled;
+    private float threshold = DEFAULT_THRESHOLD;
+    private long refreshIntervalMs = DEFAULT_REFRESH_INTERVAL_MS;
+
+    private final int[] thumbnail = new int[THUMBNAIL_SIZE];
+    private final int[] reference = new int[THUMBNAIL_SIZE];
+    private boolean hasReference;
+    private int referenceWidth;
+    private int referenceHeight;
+    private long referenceMs;
+    private long skippedCount;
+
+    /** Turns skipping on or off; off processes every frame. */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        hasReference = false;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Sets the mean absolute luma difference (0..255) above which a frame counts as changed. */
+    public synchronized void setThreshold(float threshold) {
+        if (threshold < 0f) {
+            throw new IllegalArgumentException("Invalid scene change threshold: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /** Processes a frame at least this often even if nothing changed; 0 or less never forces one. */
+    public synchronized void setRefreshIntervalMs(long refreshIntervalMs) {
+        this.refreshIntervalMs = refreshIntervalMs;
+    }
+
+    /**
+     * Called for every frame that would be sent to the detector.
+     *
+     * @param nv21 the frame, only its Y plane is read
+     * @param nowMs the current time in milliseconds
+     * @return whether the frame should be processed; if so it becomes the new reference
+     */
+    public synchronized boolean shouldProcess(byte[] nv21, int width, int height, long nowMs) {
+        if (!enabled) {
+            return true;
+        }
+
+        buildThumbnail(nv21, width, height, thumbnail);
+        boolean process = !hasReference
+                || width != referenceWidth
+                || height != referenceHeight
+                || (refreshIntervalMs > 0 && nowMs - referenceMs >= refreshIntervalMs)
+                || sumOfAbsoluteDifferences(thumbnail, reference) > threshold * THUMBNAIL_SIZE;
+
+        if (!process) {
+            skippedCount++;
+            return false;
+        }
+        System.arraycopy(thumbnail, 0, reference, 0, THUMBNAIL_SIZE);
+        hasReference = true;
+        referenceWidth = width;
+        referenceHeight = height;
+        referenceMs = nowMs;
+        return true;
+    }
+
+    /** Number of frames skipped because the scene had not changed. */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /** Forgets the reference frame, so the next frame is processed. */
+    public synchronized void reset() {
+        hasReference = false;
+    }
+
+    /**
+     * Averages a grid of samples from each cell of the Y plane into a {@value #THUMBNAIL_WIDTH}x
+     * {@value #THUMBNAIL_HEIGHT} thumbnail.
+     */
+    public static void buildThumbnail(byte[] nv21, int width, int height, int[] out) {
+        for (int cellY = 0; cellY < THUMBNAIL_HEIGHT; cellY++) {
+            int top = cellY * height / THUMBNAIL_HEIGHT;
+            int cellHeight = (cellY + 1) * height / THUMBNAIL_HEIGHT - top;
+            for (int cellX = 0; cellX < THUMBNAIL_WIDTH; cellX++) {
+                int left = cellX * width / THUMBNAIL_WIDTH;
+                int cellWidth = (cellX + 1) * width / THUMBNAIL_WIDTH - left;
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int row = (top + (2 * sy + 1) * cellHeight / (2 * SAMPLES_PER_CELL)) * width;
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        sum += nv21[row + left + (2 * sx + 1) * cellWidth / (2 * SAMPLES_PER_CELL)] & 0xFF;
+                    }
+                }
+                out[cellY * THUMBNAIL_WIDTH + cellX] = sum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+            }
+        }
+    }
+
+    /** Sum of absolute differences of two thumbnails. */
+    public static long sumOfAbsoluteDifferences(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < THUMBNAIL_SIZE; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,109 @@
+package com.ric.adv_camera.vision;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Keeps the sharpest of the last {@code frameCount} frames, so a capture can use an in-focus frame
+ * instead of whatever frame the camera delivers next.
+ *
+ * <p>Frames are kept in a queue of decreasing sharpness: a new frame evicts every older frame that
+ * is not sharper, since those can no longer be the sharpest of any later window. The head of the
+ * queue is the sharpest frame of the window. At most {@code frameCount} copies exist at any time and
+ * their buffers are reused.
+ */
+public class SharpestFrameKeeper {
+
+    /** A copy of a kept frame, owned by the caller. */
+    public static final class Frame {
+        public final byte[] data;
+        public final int width;
+        public final int height;
+        public final int rotation;
+        public final double score;
+        public final long timestampMs;
+
+        Frame(byte[] data, int width, int height, int rotation, double score, long timestampMs) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.score = score;
+            this.timestampMs = timestampMs;
+        }
+    }
+
+    private static final class Entry {
+        byte[] data;
+        int length;
+        int width;
+        int height;
+        int rotation;
+        double score;
+        long timestampMs;
+        long sequence;
+    }
+
+    private final int frameCount;
+    private final ArrayDeque<Entry> window = new ArrayDeque<>();
+    private final ArrayDeque<Entry> free = new ArrayDeque<>();
+    private long sequence;
+
+    public SharpestFrameKeeper(int frameCount) {
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("Invalid frame count: " + frameCount);
+        }
+        this.frameCount = frameCount;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /** Offers a frame; the first {@code length} bytes of {@code nv21} are copied if it is kept. */
+    public synchronized void offer(
+            byte[] nv21, int length, int width, int height, int rotation, double score, long timestampMs) {
+        sequence++;
+        while (!window.isEmpty() && window.peekFirst().sequence <= sequence - frameCount) {
+            free.addLast(window.pollFirst());
+        }
+        while (!window.isEmpty() && window.peekLast().score <= score) {
+            free.addLast(window.pollLast());
+        }
+
+        Entry entry = free.isEmpty() ? new Entry() : free.pollFirst();
+        if (entry.data == null || entry.data.length < length) {
+            entry.data = new byte[length];
+        }
+        System.arraycopy(nv21, 0, entry.data, 0, length);
+        entry.length = length;
+        entry.width = width;
+        entry.height = height;
+        entry.rotation = rotation;
+        entry.score = score;
+        entry.timestampMs = timestampMs;
+        entry.sequence = sequence;
+        window.addLast(entry);
+    }
+
+    /** Returns a copy of the sharpest frame of the window, or null if none was offered yet. */
+    public synchronized Frame getSharpest() {
+        Entry best = window.peekFirst();
+        if (best == null) {
+            return null;
+        }
+        return new Frame(
+                Arrays.copyOf(best.data, best.length),
+                best.width,
+                best.height,
+                best.rotation,
+                best.score,
+                best.timestampMs);
+    }
+
+    /** Forgets every frame and frees the buffers, e.g. when the camera stops. */
+    public synchronized void clear() {
+        window.clear();
+        free.clear();
+    }
+}
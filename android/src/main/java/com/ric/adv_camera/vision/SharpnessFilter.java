@@ -0,0 +1,121 @@
+package com.ric.adv_camera.vision;
+
+/**
+ * Scores how sharp a frame is and drops frames that are blurred compared to the recent ones, e.g.
+ * during a continuous-focus sweep or while the camera is moving.
+ *
+ * <p>The score is the variance of the Laplacian of the Y plane, sampled on a grid of every
+ * {@code sampleStep}-th pixel. It has no absolute scale, a low-contrast scene scores low even when
+ * in focus, so the threshold adapts: it is a fixed fraction of a smoothed average of recent scores.
+ * A frame is never dropped more than {@link #MAX_CONSECUTIVE_DROPS} times in a row, so a scene that
+ * keeps getting blurrier still reaches the detector.
+ */
+public class SharpnessFilter {
+
+    public static final int DEFAULT_SAMPLE_STEP = 4;
+    /** Fraction of the recent average score below which a frame counts as blurred. */
+    public static final float DEFAULT_THRESHOLD_RATIO = 0.6f;
+
+    private static final int MAX_CONSECUTIVE_DROPS = 5;
+    /** Weight of a new score in the smoothed average. */
+    private static final double SMOOTHING = 0.1;
+
+    private boolean enabled;
+    private float thresholdRatio = DEFAULT_THRESHOLD_RATIO;
+
+    private double averageScore = -1;
+    private double lastScore;
+    private int consecutiveDrops;
+    private long droppedCount;
+
+    /** Turns dropping blurred frames on or off; scores are still computed while off. */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        consecutiveDrops = 0;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Sets the fraction (0..1) of the recent average score below which frames are dropped. */
+    public synchronized void setThresholdRatio(float thresholdRatio) {
+        if (thresholdRatio < 0f || thresholdRatio > 1f) {
+            throw new IllegalArgumentException("Invalid sharpness threshold ratio: " + thresholdRatio);
+        }
+        this.thresholdRatio = thresholdRatio;
+    }
+
+    /**
+     * Feeds the score of a frame into the adaptive threshold.
+     *
+     * @return whether the frame should be processed
+     */
+    public synchronized boolean accept(double score) {
+        lastScore = score;
+        double threshold = getThreshold();
+        averageScore = averageScore < 0 ? score : averageScore + SMOOTHING * (score - averageScore);
+
+        if (!enabled || score >= threshold || consecutiveDrops >= MAX_CONSECUTIVE_DROPS) {
+            consecutiveDrops = 0;
+            return true;
+        }
+        consecutiveDrops++;
+        droppedCount++;
+        return false;
+    }
+
+    /** The score below which frames are currently dropped, 0 before the first frame. */
+    public synchronized double getThreshold() {
+        return averageScore < 0 ? 0 : averageScore * thresholdRatio;
+    }
+
+    public synchronized double getLastScore() {
+        return lastScore;
+    }
+
+    /** Number of frames dropped as blurred. */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Forgets the recent scores, e.g. after the camera or the region changed. */
+    public synchronized void reset() {
+        averageScore = -1;
+        consecutiveDrops = 0;
+    }
+
+    /**
+     * Variance of the 4-neighbour Laplacian over a region of the Y plane.
+     *
+     * @param nv21 the frame, only its Y plane is read
+     * @param frameWidth row stride of the Y plane
+     * @param sampleStep distance between sampled pixels in both directions
+     */
+    public static double score(
+            byte[] nv21, int frameWidth, int left, int top, int width, int height, int sampleStep) {
+        long sum = 0;
+        long sumOfSquares = 0;
+        int count = 0;
+        // Each sample reads its direct neighbours, so the region's border is left out.
+        for (int y = top + 1; y < top + height - 1; y += sampleStep) {
+            int row = y * frameWidth;
+            for (int x = left + 1; x < left + width - 1; x += sampleStep) {
+                int center = row + x;
+                int laplacian = 4 * (nv21[center] & 0xFF)
+                        - (nv21[center - 1] & 0xFF)
+                        - (nv21[center + 1] & 0xFF)
+                        - (nv21[center - frameWidth] & 0xFF)
+                        - (nv21[center + frameWidth] & 0xFF);
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        return (double) sumOfSquares / count - mean * mean;
+    }
+}
@@ -0,0 +1,119 @@
+package com.ric.adv_camera.vision;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fixed-size in-memory ring of per-second pipeline records, for diagnosing a device in the field
+ * without writing to disk from the detection path.
+ *
+ * <p>Every record gets a sequence number. Readers pass the number after the last record they saw,
+ * so the same buffer can be polled over the method channel and appended to a file in batches.
+ * Records older than the ring's capacity are overwritten and skipped by slow readers.
+ */
+public class TelemetryBuffer {
+
+    /** Ten minutes of records at one per second. */
+    public static final int DEFAULT_CAPACITY = 600;
+
+    public static final String CSV_HEADER =
+            "sequence,timestampMs,framesPerSecond,frameLatencyMs,availableMemoryMb\n";
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final int[] framesPerSecond;
+    private final double[] frameLatencyMs;
+    private final long[] availableMemoryMb;
+    private long nextSequence;
+
+    public TelemetryBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TelemetryBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid telemetry capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+        framesPerSecond = new int[capacity];
+        frameLatencyMs = new double[capacity];
+        availableMemoryMb = new long[capacity];
+    }
+
+    /** Appends a record; does not allocate. */
+    public synchronized void record(
+            long timestampMs, int framesPerSecond, double frameLatencyMs, long availableMemoryMb) {
+        int index = (int) (nextSequence % capacity);
+        timestamps[index] = timestampMs;
+        this.framesPerSecond[index] = framesPerSecond;
+        this.frameLatencyMs[index] = frameLatencyMs;
+        this.availableMemoryMb[index] = availableMemoryMb;
+        nextSequence++;
+    }
+
+    /** Sequence number the next record will get. */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    /** The records from {@code sinceSequence} on that are still held, as maps for the method channel. */
+    public synchronized List<Map<String, Object>> toList(long sinceSequence) {
+        long first = firstAvailable(sinceSequence);
+        List<Map<String, Object>> records = new ArrayList<>((int) (nextSequence - first));
+        for (long sequence = first; sequence < nextSequence; sequence++) {
+            int index = (int) (sequence % capacity);
+            Map<String, Object> record = new HashMap<>();
+            record.put("sequence", sequence);
+            record.put("timestampMs", timestamps[index]);
+            record.put("framesPerSecond", framesPerSecond[index]);
+            record.put("frameLatencyMs", frameLatencyMs[index]);
+            record.put("availableMemoryMb", availableMemoryMb[index]);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * {@link #toList} together with the sequence number to pass on the next call, under one lock so
+     * no record is missed or repeated.
+     */
+    public synchronized Map<String, Object> toMap(long sinceSequence) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("records", toList(sinceSequence));
+        map.put("next", nextSequence);
+        return map;
+    }
+
+    /**
+     * Writes the records from {@code sinceSequence} on that are still held as CSV lines, see
+     * {@link #CSV_HEADER}.
+     *
+     * @return the sequence number to pass on the next call
+     */
+    public long writeCsv(Appendable out, long sinceSequence) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        long next;
+        synchronized (this) {
+            next = nextSequence;
+            for (long sequence = firstAvailable(sinceSequence); sequence < next; sequence++) {
+                int index = (int) (sequence % capacity);
+                lines.append(sequence).append(',')
+                        .append(timestamps[index]).append(',')
+                        .append(framesPerSecond[index]).append(',')
+                        .append(frameLatencyMs[index]).append(',')
+                        .append(availableMemoryMb[index]).append('\n');
+            }
+        }
+        // The caller's I/O happens outside the lock so the detection path never waits for it.
+        out.append(lines);
+        return next;
+    }
+
+    private long firstAvailable(long sinceSequence) {
+        return Math.min(nextSequence, Math.max(sinceSequence, Math.max(0L, nextSequence - capacity)));
+    }
+}
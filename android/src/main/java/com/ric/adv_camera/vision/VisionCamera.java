@@ -1,167 +1,164 @@
 package com.ric.adv_camera.vision;
 
-import android.Manifest;
 import android.annotation.SuppressLint;
-import android.app.Activity;
-import android.content.Context;
-import android.graphics.ImageFormat;
-import android.graphics.SurfaceTexture;
-import android.hardware.Camera;
-import android.hardware.Camera.CameraInfo;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.annotation.RequiresPermission;
+import android.graphics.ImageFormat;
 import android.util.Log;
-import android.view.Surface;
-import android.view.SurfaceHolder;
-import android.view.WindowManager;
-import com.google.android.gms.common.images.Size;
 import java.io.IOException;
 import java.lang.Thread.State;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.IdentityHashMap;
-import java.util.List;
-
-
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the detector on the frames of a {@link FrameSource}: the open {@link CameraBackend}, or a
+ * {@link ReplayFrameSource} instead of it. Frames are rate limited by a {@link
+ * DetectionRateController} and handed to a processing thread that always works on the newest one.
+ *
+ * <p>That thread passes each frame to a {@link CompositeFrameProcessor}, so further analyses can
+ * run next to the main detector ({@link #addFrameProcessor}) on the same buffer.
+ */
 public class VisionCamera {
-    @SuppressLint("InlinedApi")
-    public static final int CAMERA_FACING_BACK = CameraInfo.CAMERA_FACING_BACK;
-
-    @SuppressLint("InlinedApi")
-    public static final int CAMERA_FACING_FRONT = CameraInfo.CAMERA_FACING_FRONT;
-
     public static final int IMAGE_FORMAT = ImageFormat.NV21;
-    public static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH = 480;
-    public static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT = 360;
+    public static final int DEFAULT_PREVIEW_BUFFER_COUNT = 3;
+    /** Name of the processor set with {@link #setMachineLearningFrameProcessor}. */
+    public static final String MAIN_PROCESSOR = "main";
 
     private static final String TAG = "VisionCamera";
 
     /**
-     * The dummy surface texture must be assigned a chosen name. Since we never use an OpenGL context,
-     * we can choose any ID we want here. The dummy surface texture is not a crazy hack - it is
-     * actually how the camera team recommends using the camera without a preview.
+     * Dedicated thread and associated runnable for calling into the detector with frames, as the
+     * frames become available from the camera.
      */
-    private static final int DUMMY_TEXTURE_NAME = 100;
+    private Thread processingThread;
 
-    /**
-     * If the absolute difference between a preview size aspect ratio and a picture size aspect ratio
-     * is less than this tolerance, they are considered to be the same aspect ratio.
-     */
-    private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+    private final FrameProcessingRunnable processingRunnable;
+    private final Object processorLock = new Object();
 
-    protected Activity activity;
+    /** Every processor the frames go to, the main detector among them. */
+    private final CompositeFrameProcessor processors;
 
-    private Camera camera;
+    /** Decides which camera frames are worth a detection; see {@link DetectionRateController}. */
+    private final DetectionRateController detectionRateController = new DetectionRateController();
 
-    private int facing = CAMERA_FACING_BACK;
+    /** Latencies and drops of the frames on their way to the detector; see {@link PipelineMetrics}. */
+    private final PipelineMetrics metrics = new PipelineMetrics();
 
-    /** Rotation of the device, and thus the associated preview images captured from the device. */
-    private int rotationDegrees;
+    /** Sees every preview frame before the detector does, e.g. to capture a burst. */
+    private volatile PreviewFrameListener previewFrameListener;
 
-    private Size previewSize;
+    /** Runs once, when the next preview frame arrives. */
+    private final AtomicReference<Runnable> nextFrameCallback = new AtomicReference<>();
 
-    private static final float REQUESTED_FPS = 30.0f;
-    private static final boolean REQUESTED_AUTO_FOCUS = true;
+    /** Feeds the pipeline while started. */
+    private FrameSource frameSource;
 
-    // This instance needs to be held onto to avoid GC of its underlying resources. Even though it
-    // isn't used outside of the method that creates it, it still must have hard references maintained
-    // to it.
-    private SurfaceTexture dummySurfaceTexture;
+    /** Writes every preview frame to a capture file while set. */
+    private volatile FrameRecorder frameRecorder;
 
-    /**
-     * Dedicated thread and associated runnable for calling into the detector with frames, as the
-     * frames become available from the camera.
-     */
-    private Thread processingThread;
+    /** Receives every preview frame delivered by the source. */
+    public interface PreviewFrameListener {
+        /**
+         * Called on the source's thread. {@code data} goes back to the source afterwards, so it
+         * must be copied if it is kept; it may be longer than the frame.
+         */
+        void onPreviewFrame(byte[] data, int width, int height);
+    }
 
-    private final FrameProcessingRunnable processingRunnable;
-    private final Object processorLock = new Object();
+    /** Learns when a {@link FrameSource} has no more frames. */
+    public interface SourceEndListener {
+        /**
+         * Called on the source's thread.
+         *
+         * @param error why the source ended early, or null if it ran out of frames
+         */
+        void onSourceEnd(@Nullable IOException error);
+    }
 
-    private VisionImageProcessor frameProcessor;
+    public VisionCamera() {
+        this(null);
+    }
 
     /**
-     * Map to convert between a byte array, received from the camera, and its associated byte buffer.
-     * We use byte buffers internally because this is a more efficient way to call into native code
-     * later (avoids a potential copy).
-     *
-     * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
-     * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-     * identity ('==') check on the keys.
+     * @param mergedResultsListener receives the results of all processors joined per frame, see
+     *     {@link FrameResultMerger}; null to not merge them
      */
-    private final IdentityHashMap<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
-
-    public VisionCamera(Activity activity) {
-        this.activity = activity;
+    public VisionCamera(@Nullable FrameResultMerger.Listener mergedResultsListener) {
         processingRunnable = new FrameProcessingRunnable();
+        processors = new CompositeFrameProcessor(mergedResultsListener);
     }
 
     // ==============================================================================================
     // Public
     // ==============================================================================================
 
-    /** Stops the camera and releases the resources of the camera and underlying detector. */
+    /** Stops the pipeline and releases the resources of the underlying detector. */
     public void release() {
         Log.d(TAG, "released VisionCamera");
 
         synchronized (processorLock) {
             stop();
             processingRunnable.release();
-
-            if (frameProcessor != null) {
-                frameProcessor.stop();
-            }
+            processors.stop();
         }
     }
 
     /**
-     * Opens the camera and starts sending preview frames to the underlying detector. The preview
-     * frames are not displayed.
+     * Starts sending the frames of {@code source} to the detector, e.g. those of the open camera
+     * backend or of a recording being replayed. Every frame is first shown to the {@link
+     * PreviewFrameListener} and the {@link FrameRecorder}, if set; only frames the {@link
+     * DetectionRateController} lets through reach the detector, and only while a processor is set.
+     * Call {@link #stop()} before starting another source.
      *
-     * @throws IOException if the camera's preview texture or display could not be initialized
+     * @param endListener told when the source runs out of frames, or null
+     * @throws IOException if the source could not be started
      */
-    /*@RequiresPermission(Manifest.permission.CAMERA)
-    public synchronized VisionCamera start() throws IOException {
-        if (camera != null) {
-            return this;
-        }
-
-        camera = createCamera();
-        dummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
-        camera.setPreviewTexture(dummySurfaceTexture);
-        camera.startPreview();
-
+    public synchronized VisionCamera start(
+            @NonNull FrameSource source, @Nullable final SourceEndListener endListener)
+            throws IOException {
+        Log.d(TAG, "Starting VisionCamera");
+        detectionRateController.reset();
         processingThread = new Thread(processingRunnable);
         processingRunnable.setActive(true);
         processingThread.start();
-        return this;
-    }*/
 
-    /**
-     * Opens the camera and starts sending preview frames to the underlying detector. The supplied
-     * surface holder is used for the preview so frames can be displayed to the user.
-     *
-     * @param _camera the camera object to hook onto
-     * @throws IOException if the supplied surface holder could not be used as the preview display
-     */
-    @RequiresPermission(Manifest.permission.CAMERA)
-    public synchronized VisionCamera start(@NonNull Camera _camera) throws IOException {
-        Log.d(TAG, "Starting VisionCamera");
-        camera = _camera;
-        setupCamera();
-        //camera.setPreviewDisplay(surfaceHolder);
-        //camera.startPreview();
+        frameSource = source;
+        source.start(new FrameSource.Sink() {
+            @Override
+            public void onFrame(FrameBufferPool.Lease frame, FrameMetadata metadata) {
+                Runnable callback = nextFrameCallback.getAndSet(null);
+                if (callback != null) {
+                    callback.run();
+                }
+                PreviewFrameListener listener = previewFrameListener;
+                if (listener != null) {
+                    listener.onPreviewFrame(frame.array(), metadata.getWidth(), metadata.getHeight());
+                }
+                FrameRecorder recorder = frameRecorder;
+                if (recorder != null) {
+                    record(recorder, frame, metadata);
+                }
+                if (!processors.isEmpty()) {
+                    processingRunnable.setNextFrame(frame, metadata);
+                }
+            }
 
-        processingThread = new Thread(processingRunnable);
-        processingRunnable.setActive(true);
-        processingThread.start();
+            @Override
+            public void onEnd(IOException error) {
+                if (error != null) {
+                    Log.e(TAG, "Frame source failed", error);
+                }
+                if (endListener != null) {
+                    endListener.onSourceEnd(error);
+                }
+            }
+        });
         return this;
     }
 
     /**
-     * Closes the camera and stops sending frames to the underlying frame detector.
-     *
+     * Stops the source and stops sending frames to the underlying frame detector.
      *
      * <p>Call {@link #release()} instead to completely shut down this camera source and release the
      * resources of the underlying detector.
@@ -169,6 +166,11 @@ public class VisionCamera {
     public synchronized void stop() {
         Log.d(TAG, "stopped VisionCamera");
 
+        if (frameSource != null) {
+            // Stopped first so it can no longer offer frames to the slot being closed.
+            frameSource.stop();
+            frameSource = null;
+        }
         processingRunnable.setActive(false);
         if (processingThread != null) {
             try {
@@ -181,393 +183,105 @@ public class VisionCamera {
             }
             processingThread = null;
         }
-
-        if (camera != null) {
-            //camera.stopPreview();
-            camera.setPreviewCallbackWithBuffer(null);
-            /*try {
-                camera.setPreviewTexture(null);
-                dummySurfaceTexture = null;
-                camera.setPreviewDisplay(null);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to clear camera preview: " + e);
-            }*/
-            //camera.release();
-            camera = null;
-        }
-
-        // Release the reference to any image buffers, since these will no longer be in use.
-        bytesToByteBuffer.clear();
-    }
-
-    /** Changes the facing of the camera. */
-    public synchronized void setFacing(int facing) {
-        if ((facing != CAMERA_FACING_BACK) && (facing != CAMERA_FACING_FRONT)) {
-            throw new IllegalArgumentException("Invalid camera: " + facing);
-        }
-        this.facing = facing;
     }
 
-    /** Returns the preview size that is currently in use by the underlying camera. */
-    public Size getPreviewSize() {
-        return previewSize;
+    /** Returns the controller that limits how often frames are sent to the detector. */
+    public DetectionRateController getDetectionRateController() {
+        return detectionRateController;
     }
 
-    /**
-     * Returns the selected camera; one of {@link #CAMERA_FACING_BACK} or {@link
-     * #CAMERA_FACING_FRONT}.
-     */
-    public int getCameraFacing() {
-        return facing;
+    /** Returns the metrics of this camera's detection pipeline, to be shared with the processor. */
+    public PipelineMetrics getMetrics() {
+        return metrics;
     }
 
-    /**
-     * Opens the camera and applies the user settings.
-     *
-     * @throws IOException if camera cannot be found or preview cannot be processed
-     */
-    @SuppressLint("InlinedApi")
-    private void setupCamera() throws IOException {
-        /*int requestedCameraId = getIdForRequestedCamera(facing);
-        if (requestedCameraId == -1) {
-            throw new IOException("Could not find requested camera.");
-        }
-
-        SizePair sizePair = null;
-        if (sizePair == null) {
-            sizePair =
-                    selectSizePair(
-                            camera,
-                            DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH,
-                            DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT);
-        }
-
-        if (sizePair == null) {
-            throw new IOException("Could not find suitable preview size.");
-        }
-
-        previewSize = sizePair.preview;
-        Log.v(TAG, "Camera preview size: " + previewSize);
-
-        int[] previewFpsRange = selectPreviewFpsRange(camera, REQUESTED_FPS);
-        if (previewFpsRange == null) {
-            throw new IOException("Could not find suitable preview frames per second range.");
-        }
-
-        Camera.Parameters parameters = camera.getParameters();
-
-        Size pictureSize = sizePair.picture;
-        if (pictureSize != null) {
-            Log.v(TAG, "Camera picture size: " + pictureSize);
-            parameters.setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
-        }
-        parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
-        parameters.setPreviewFpsRange(
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
-        // Use YV12 so that we can exercise YV12->NV21 auto-conversion logic for OCR detection
-        parameters.setPreviewFormat(IMAGE_FORMAT);
-
-        setRotation(camera, parameters, requestedCameraId);
-
-        if (REQUESTED_AUTO_FOCUS) {
-            if (parameters
-                    .getSupportedFocusModes()
-                    .contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
-                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
-            } else {
-                Log.i(TAG, "Camera auto focus is not supported on this device.");
-            }
-        }
-
-        camera.setParameters(parameters);*/
-        int requestedCameraId = getIdForRequestedCamera(facing);
-        Camera.Parameters parameters = camera.getParameters();
-        setRotation(camera, parameters, requestedCameraId);
-        Camera.Size _size =  parameters.getPreviewSize();
-        previewSize = new Size(_size.width, _size.height);
-
-        int[] previewFpsRange = selectPreviewFpsRange(camera, REQUESTED_FPS);
-        if (previewFpsRange == null) {
-            throw new IOException("Could not find suitable preview frames per second range.");
-        }
-        parameters.setPreviewFpsRange(
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
-
-        camera.setParameters(parameters);
-
-
-
-        // Four frame buffers are needed for working with the camera:
-        //
-        //   one for the frame that is currently being executed upon in doing detection
-        //   one for the next pending frame to process immediately upon completing detection
-        //   two for the frames that the camera uses to populate future preview images
-        //
-        // Through trial and error it appears that two free buffers, in addition to the two buffers
-        // used in this code, are needed for the camera to work properly.  Perhaps the camera has
-        // one thread for acquiring images, and another thread for calling into user code.  If only
-        // three buffers are used, then the camera will spew thousands of warning messages when
-        // detection takes a non-trivial amount of time.
-        camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        /*camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));*/
-        Log.d(TAG, "preview callbacks set for size: "+_size.width+"x"+_size.height);
+    /** Returns the number of frames dropped because a newer frame replaced them while pending. */
+    public long getDroppedFrameCount() {
+        return processingRunnable.getDroppedFrameCount();
     }
 
-    public void bindPreviewCallbacks() {
-        camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
+    /** Sets the listener that sees every preview frame, or null to remove it. */
+    public void setPreviewFrameListener(@Nullable PreviewFrameListener previewFrameListener) {
+        this.previewFrameListener = previewFrameListener;
     }
 
     /**
-     * Gets the id for the camera specified by the direction it is facing. Returns -1 if no such
-     * camera was found.
-     *
-     * @param facing the desired camera (front-facing or rear-facing)
+     * Writes every preview frame to {@code recorder}, before any is skipped for detection, or stops
+     * writing when null. Closing the recorder stays with the caller.
      */
-    private static int getIdForRequestedCamera(int facing) {
-        CameraInfo cameraInfo = new CameraInfo();
-        for (int i = 0; i < Camera.getNumberOfCameras(); ++i) {
-            Camera.getCameraInfo(i, cameraInfo);
-            if (cameraInfo.facing == facing) {
-                return i;
-            }
-        }
-        return -1;
+    public void setFrameRecorder(@Nullable FrameRecorder recorder) {
+        this.frameRecorder = recorder;
     }
 
-    /**
-     * Selects the most suitable preview and picture size, given the desired width and height.
-     *
-     * <p>Even though we only need to find the preview size, it's necessary to find both the preview
-     * size and the picture size of the camera together, because these need to have the same aspect
-     * ratio. On some hardware, if you would only set the preview size, you will get a distorted
-     * image.
-     *
-     * @param camera the camera to select a preview size from
-     * @param desiredWidth the desired width of the camera preview frames
-     * @param desiredHeight the desired height of the camera preview frames
-     * @return the selected preview and picture size pair
-     */
-    public static SizePair selectSizePair(Camera camera, int desiredWidth, int desiredHeight) {
-        List<SizePair> validPreviewSizes = generateValidPreviewSizeList(camera);
-
-        // The method for selecting the best size is to minimize the sum of the differences between
-        // the desired values and the actual values for width and height.  This is certainly not the
-        // only way to select the best size, but it provides a decent tradeoff between using the
-        // closest aspect ratio vs. using the closest pixel area.
-        SizePair selectedPair = null;
-        int minDiff = Integer.MAX_VALUE;
-        for (SizePair sizePair : validPreviewSizes) {
-            Size size = sizePair.preview;
-            int diff =
-                    Math.abs(size.getWidth() - desiredWidth) + Math.abs(size.getHeight() - desiredHeight);
-            if (diff < minDiff) {
-                selectedPair = sizePair;
-                minDiff = diff;
-            }
-        }
-
-        return selectedPair;
+    /** Runs {@code callback} on the source's thread when the next preview frame arrives. */
+    public void runOnNextFrame(Runnable callback) {
+        nextFrameCallback.set(callback);
     }
 
-    /**
-     * Stores a preview size and a corresponding same-aspect-ratio picture size. To avoid distorted
-     * preview images on some devices, the picture size must be set to a size that is the same aspect
-     * ratio as the preview size or the preview may end up being distorted. If the picture size is
-     * null, then there is no picture size with the same aspect ratio as the preview size.
-     */
-    public static class SizePair {
-        public final Size preview;
-        @Nullable public final Size picture;
-
-        SizePair(Camera.Size previewSize, @Nullable Camera.Size pictureSize) {
-            preview = new Size(previewSize.width, previewSize.height);
-            picture = pictureSize != null ? new Size(pictureSize.width, pictureSize.height) : null;
-        }
-
-        public SizePair(Size previewSize, @Nullable Size pictureSize) {
-            preview = previewSize;
-            picture = pictureSize;
+    private void record(FrameRecorder recorder, FrameBufferPool.Lease frame, FrameMetadata metadata) {
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        FrameMetadata recorded = new FrameMetadata.Builder()
+                .setWidth(width)
+                .setHeight(height)
+                .setRotation(metadata.getRotation())
+                .setTimestampMs(SystemClock.elapsedRealtime())
+                .build();
+        try {
+            recorder.record(frame.array(), Nv21Utils.frameSize(width, height), recorded);
+        } catch (IOException e) {
+            Log.e(TAG, "Recording to " + recorder.getFile() + " failed, recording stopped", e);
+            frameRecorder = null;
         }
     }
 
+    // ==============================================================================================
+    // Frame processing
+    // ==============================================================================================
+
     /**
-     * Generates a list of acceptable preview sizes. Preview sizes are not acceptable if there is not
-     * a corresponding picture size of the same aspect ratio. If there is a corresponding picture size
-     * of the same aspect ratio, the picture size is paired up with the preview size.
-     *
-     * <p>This is necessary because even if we don't use still pictures, the still picture size must
-     * be set to a size that is the same aspect ratio as the preview size we choose. Otherwise, the
-     * preview images may be distorted on some devices.
+     * Sets the main detector, stopping the one set before. Its latency drives the back-off of
+     * {@link #getDetectionRateController()}, which limits the frames of every processor.
      */
-    public static List<SizePair> generateValidPreviewSizeList(Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
-        List<Camera.Size> supportedPreviewSizes = parameters.getSupportedPreviewSizes();
-        List<Camera.Size> supportedPictureSizes = parameters.getSupportedPictureSizes();
-        List<SizePair> validPreviewSizes = new ArrayList<>();
-        for (Camera.Size previewSize : supportedPreviewSizes) {
-            float previewAspectRatio = (float) previewSize.width / (float) previewSize.height;
-
-            // By looping through the picture sizes in order, we favor the higher resolutions.
-            // We choose the highest resolution in order to support taking the full resolution
-            // picture later.
-            for (Camera.Size pictureSize : supportedPictureSizes) {
-                float pictureAspectRatio = (float) pictureSize.width / (float) pictureSize.height;
-                if (Math.abs(previewAspectRatio - pictureAspectRatio) < ASPECT_RATIO_TOLERANCE) {
-                    validPreviewSizes.add(new SizePair(previewSize, pictureSize));
-                    break;
-                }
+    public void setMachineLearningFrameProcessor(@Nullable VisionImageProcessor processor) {
+        synchronized (processorLock) {
+            CompositeFrameProcessor.Branch current = processors.getBranch(MAIN_PROCESSOR);
+            // Setting the same processor again, e.g. when the camera restarts, must not stop it.
+            if (current != null && current.getProcessor() == processor) {
+                return;
             }
-        }
-
-        // If there are no picture sizes with the same aspect ratio as any preview sizes, allow all
-        // of the preview sizes and hope that the camera can handle it.  Probably unlikely, but we
-        // still account for it.
-        if (validPreviewSizes.size() == 0) {
-            Log.w(TAG, "No preview sizes have a corresponding same-aspect-ratio picture size");
-            for (Camera.Size previewSize : supportedPreviewSizes) {
-                // The null picture size will let us know that we shouldn't set a picture size.
-                validPreviewSizes.add(new SizePair(previewSize, null));
+            processors.removeProcessor(MAIN_PROCESSOR);
+            if (processor == null) {
+                return;
             }
-        }
-
-        return validPreviewSizes;
-    }
-
-    /**
-     * Selects the most suitable preview frames per second range, given the desired frames per second.
-     *
-     * @param camera the camera to select a frames per second range from
-     * @param desiredPreviewFps the desired frames per second for the camera preview frames
-     * @return the selected preview frames per second range
-     */
-    @SuppressLint("InlinedApi")
-    private static int[] selectPreviewFpsRange(Camera camera, float desiredPreviewFps) {
-        // The camera API uses integers scaled by a factor of 1000 instead of floating-point frame
-        // rates.
-        int desiredPreviewFpsScaled = (int) (desiredPreviewFps * 1000.0f);
-
-        // Selects a range with whose upper bound is as close as possible to the desired fps while its
-        // lower bound is as small as possible to properly expose frames in low light conditions. Note
-        // that this may select a range that the desired value is outside of. For example, if the
-        // desired frame rate is 30.5, the range (30, 30) is probably more desirable than (30, 40).
-        int[] selectedFpsRange = null;
-        int minUpperBoundDiff = Integer.MAX_VALUE;
-        int minLowerBound = Integer.MAX_VALUE;
-        List<int[]> previewFpsRangeList = camera.getParameters().getSupportedPreviewFpsRange();
-        for (int[] range : previewFpsRangeList) {
-            int upperBoundDiff =
-                    Math.abs(desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
-            int lowerBound = range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
-            if (upperBoundDiff <= minUpperBoundDiff && lowerBound <= minLowerBound) {
-                selectedFpsRange = range;
-                minUpperBoundDiff = upperBoundDiff;
-                minLowerBound = lowerBound;
+            processors.addProcessor(MAIN_PROCESSOR, processor);
+            if (processor instanceof VisionProcessorBase) {
+                // Reports to the camera-wide controller instead of the one of its branch.
+                VisionProcessorBase<?> base = (VisionProcessorBase<?>) processor;
+                base.setDetectionRateController(detectionRateController);
             }
         }
-        return selectedFpsRange;
     }
 
     /**
-     * Calculates the correct rotation for the given camera id and sets the rotation in the
-     * parameters. It also sets the camera's display orientation and rotation.
+     * Runs {@code processor} on the frames the main detector gets, sharing their buffer. The
+     * returned branch's {@link CompositeFrameProcessor.Branch#getRateController() rate controller}
+     * limits it further.
      *
-     * @param parameters the camera parameters for which to set the rotation
-     * @param cameraId the camera id to set rotation based on
+     * @param name key of its results in the merged results
+     * @throws IllegalArgumentException if the name is already taken
      */
-    private void setRotation(Camera camera, Camera.Parameters parameters, int cameraId) {
-        WindowManager windowManager = (WindowManager) activity.getSystemService(Context.WINDOW_SERVICE);
-        int degrees = 0;
-        int rotation = windowManager.getDefaultDisplay().getRotation();
-        switch (rotation) {
-            case Surface.ROTATION_0:
-                degrees = 0;
-                break;
-            case Surface.ROTATION_90:
-                degrees = 90;
-                break;
-            case Surface.ROTATION_180:
-                degrees = 180;
-                break;
-            case Surface.ROTATION_270:
-                degrees = 270;
-                break;
-            default:
-                Log.e(TAG, "Bad rotation value: " + rotation);
-        }
-
-        CameraInfo cameraInfo = new CameraInfo();
-        Camera.getCameraInfo(cameraId, cameraInfo);
-
-        int displayAngle;
-        if (cameraInfo.facing == CameraInfo.CAMERA_FACING_FRONT) {
-            this.rotationDegrees = (cameraInfo.orientation + degrees) % 360;
-            displayAngle = (360 - this.rotationDegrees) % 360; // compensate for it being mirrored
-        } else { // back-facing
-            this.rotationDegrees = (cameraInfo.orientation - degrees + 360) % 360;
-            displayAngle = this.rotationDegrees;
-        }
-        Log.d(TAG, "Display rotation is: " + rotation);
-        Log.d(TAG, "Camera face is: " + cameraInfo.facing);
-        Log.d(TAG, "Camera rotation is: " + cameraInfo.orientation);
-        // This value should be one of the degrees that ImageMetadata accepts: 0, 90, 180 or 270.
-        Log.d(TAG, "RotationDegrees is: " + this.rotationDegrees);
-
-        camera.setDisplayOrientation(displayAngle);
-        parameters.setRotation(this.rotationDegrees);
-    }
-
-    /**
-     * Creates one buffer for the camera preview callback. The size of the buffer is based off of the
-     * camera preview size and the format of the camera image.
-     *
-     * @return a new preview buffer of the appropriate size for the current camera settings
-     */
-    @SuppressLint("InlinedApi")
-    private byte[] createPreviewBuffer(Size previewSize) {
-        int bitsPerPixel = ImageFormat.getBitsPerPixel(IMAGE_FORMAT);
-        long sizeInBits = (long) previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-        int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
-
-        // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-        // should guarantee that there will be an array to work with.
-        byte[] byteArray = new byte[bufferSize];
-        ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-        if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-            // I don't think that this will ever happen.  But if it does, then we wouldn't be
-            // passing the preview content to the underlying detector later.
-            throw new IllegalStateException("Failed to create valid buffer for camera source.");
-        }
-
-        bytesToByteBuffer.put(byteArray, buffer);
-        return byteArray;
-    }
-
-    // ==============================================================================================
-    // Frame processing
-    // ==============================================================================================
-
-    /** Called when the camera has a new preview frame. */
-    private class CameraPreviewCallback implements Camera.PreviewCallback {
-        @Override
-        public void onPreviewFrame(byte[] data, Camera camera) {
-            processingRunnable.setNextFrame(data, camera);
+    public CompositeFrameProcessor.Branch addFrameProcessor(
+            @NonNull String name, @NonNull VisionImageProcessor processor) {
+        synchronized (processorLock) {
+            return processors.addProcessor(name, processor);
         }
     }
 
-    public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
+    /** Removes and stops the processor added under {@code name}, if any. */
+    public void removeFrameProcessor(@NonNull String name) {
         synchronized (processorLock) {
-            if (frameProcessor != null) {
-                frameProcessor.stop();
-            }
-            frameProcessor = processor;
+            processors.removeProcessor(name);
         }
     }
 
@@ -577,18 +291,14 @@ public class VisionCamera {
      * (i.e., without unnecessary context switching or waiting on the next frame).
      *
      * <p>While detection is running on a frame, new frames may be received from the camera. As these
-     * frames come in, the most recent frame is held onto as pending. As soon as detection and its
-     * associated processing is done for the previous frame, detection on the mostly recently received
-     * frame will immediately start on the same thread.
+     * frames come in, the most recent frame replaces the pending one in a lock-free {@link
+     * FrameSlot}, and the lease on the displaced buffer is released. As soon as detection and
+     * its associated processing is done for the previous frame, detection on the mostly recently
+     * received frame will immediately start on the same thread.
      */
     private class FrameProcessingRunnable implements Runnable {
 
-        // This lock guards all of the member variables below.
-        private final Object lock = new Object();
-        private boolean active = true;
-
-        // These pending variables hold the state associated with the new frame awaiting processing.
-        private ByteBuffer pendingFrameData;
+        private final FrameSlot pendingFrame = new FrameSlot();
 
         FrameProcessingRunnable() {}
 
@@ -598,49 +308,50 @@ public class VisionCamera {
          */
         @SuppressLint("Assert")
         void release() {
-            assert (processingThread.getState() == State.TERMINATED);
+            assert (processingThread == null || processingThread.getState() == State.TERMINATED);
         }
 
-        /** Marks the runnable as active/not active. Signals any blocked threads to continue. */
+        /**
+         * Marks the runnable as active/not active. Deactivating releases the pending frame and wakes
+         * the processing thread so it can exit.
+         */
         void setActive(boolean active) {
-            synchronized (lock) {
-                this.active = active;
-                lock.notifyAll();
+            if (active) {
+                pendingFrame.open();
+            } else {
+                pendingFrame.close();
             }
         }
 
+        /** Number of frames that were replaced by a newer one before reaching the detector. */
+        long getDroppedFrameCount() {
+            return pendingFrame.getDroppedCount();
+        }
+
         /**
-         * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
-         * present) back to the camera, and keeps a pending reference to the frame data for future use.
+         * Hands over a frame from a {@link FrameSource}. The source keeps its own lease, the slot
+         * takes a new one.
          */
-        @SuppressWarnings("ByteBufferBackingArray")
-        void setNextFrame(byte[] data, Camera camera) {
-            synchronized (lock) {
-                if (pendingFrameData != null) {
-                    camera.addCallbackBuffer(pendingFrameData.array());
-                    pendingFrameData = null;
-                }
-
-                if (!bytesToByteBuffer.containsKey(data)) {
-                    Log.d(
-                            TAG,
-                            "Skipping frame. Could not find ByteBuffer associated with the image "
-                                    + "data from the camera.");
-                    return;
-                }
-
-                pendingFrameData = bytesToByteBuffer.get(data);
+        void setNextFrame(FrameBufferPool.Lease frame, FrameMetadata metadata) {
+            long nowMs = SystemClock.elapsedRealtime();
+            if (!detectionRateController.shouldProcess(nowMs)) {
+                return;
+            }
 
-                // Notify the processor thread if it is waiting on the next frame (see below).
-                lock.notifyAll();
+            frame.retain();
+            // Latencies are measured on this device's clock, not the one the frame was recorded on.
+            frame.setTimestampMs(nowMs);
+            frame.setMetadata(metadata);
+            if (pendingFrame.offer(frame)) {
+                metrics.recordDrop(PipelineMetrics.DROP_SUPERSEDED_IN_SLOT, nowMs);
             }
         }
 
         /**
          * As long as the processing thread is active, this executes detection on frames continuously.
          * The next pending frame is either immediately available or hasn't been received yet. Once it
-         * is available, we transfer the frame info to local variables and run detection on that frame.
-         * It immediately loops back for the next frame without pausing.
+         * is available, we take over its lease and run detection on that frame. It immediately loops
+         * back for the next frame without pausing.
          *
          * <p>If detection takes longer than the time in between new frames from the camera, this will
          * mean that this loop will run without ever waiting on a frame, avoiding any context switching
@@ -650,58 +361,44 @@ public class VisionCamera {
          * FPS setting above to allow for some idle time in between frames.
          */
         @SuppressLint("InlinedApi")
-        @SuppressWarnings({"GuardedBy", "ByteBufferBackingArray"})
         @Override
         public void run() {
-            ByteBuffer data;
-
             while (true) {
-                synchronized (lock) {
-                    while (active && (pendingFrameData == null)) {
-                        try {
-                            // Wait for the next frame to be received from the camera, since we
-                            // don't have it yet.
-                            lock.wait();
-                        } catch (InterruptedException e) {
-                            Log.d(TAG, "Frame processing loop terminated.", e);
-                            return;
-                        }
-                    }
-
-                    if (!active) {
-                        // Exit the loop once this camera source is stopped or released.  We check
-                        // this here, immediately after the wait() above, to handle the case where
-                        // setActive(false) had been called, triggering the termination of this
-                        // loop.
-                        return;
-                    }
-
-                    // Hold onto the frame data locally, so that we can use this for detection
-                    // below.  We need to clear pendingFrameData to ensure that this buffer isn't
-                    // recycled back to the camera before we are done using that data.
-                    data = pendingFrameData;
-                    pendingFrameData = null;
+                FrameBufferPool.Lease data;
+                try {
+                    // Parks only while the slot is empty; returns null once this camera source is
+                    // stopped or released.
+                    data = pendingFrame.take();
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Frame processing loop terminated.", e);
+                    return;
                 }
 
-                // The code below needs to run outside of synchronization, because this will allow
-                // the camera to add pending frame(s) while we are running detection on the current
-                // frame.
+                if (data == null) {
+                    return;
+                }
 
+                // The processors are read without locking; removing one stops it, and it then
+                // ignores any frame still in flight.
+                // Every frame carries the format of the source that delivered it.
+                FrameMetadata format = data.getMetadata();
                 try {
-                    synchronized (processorLock) {
-                        frameProcessor.processByteBuffer(
+                    if (!processors.isEmpty()) {
+                        processors.processByteBuffer(
                                 data,
                                 new FrameMetadata.Builder()
-                                        .setWidth(previewSize.getWidth())
-                                        .setHeight(previewSize.getHeight())
-                                        .setRotation(rotationDegrees)
+                                        .setWidth(format.getWidth())
+                                        .setHeight(format.getHeight())
+                                        .setRotation(format.getRotation())
+                                        .setTimestampMs(data.getTimestampMs())
                                         .build()
                                 );
                     }
                 } catch (Exception t) {
                     Log.e(TAG, "Exception thrown from receiver.", t);
                 } finally {
-                    camera.addCallbackBuffer(data.array());
+                    // The processor retains its own lease if it is still using the buffer.
+                    data.release();
                 }
             }
         }
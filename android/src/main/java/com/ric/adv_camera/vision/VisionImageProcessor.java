@@ -21,17 +21,19 @@ import android.os.Build.VERSION_CODES;
 
 import com.google.mlkit.common.MlKitException;
 
-import java.nio.ByteBuffer;
-
 /** An interface to process the images with different vision detectors and custom image models. */
 public interface VisionImageProcessor {
 
   /** Processes a bitmap image. */
   void processBitmap(Bitmap bitmap);
 
-  /** Processes ByteBuffer image data, e.g. used for Camera1 live preview case. */
+  /**
+   * Processes ByteBuffer image data, e.g. used for Camera1 live preview case. The caller releases
+   * its own hold on {@code data} when this returns, so implementations that keep using the buffer
+   * afterwards must {@link FrameBufferPool.Lease#retain() retain} it and release it when done.
+   */
   void processByteBuffer(
-          ByteBuffer data, FrameMetadata frameMetadata)
+          FrameBufferPool.Lease data, FrameMetadata frameMetadata)
       throws MlKitException;
 
 
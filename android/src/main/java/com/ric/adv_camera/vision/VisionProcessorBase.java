@@ -19,7 +19,6 @@ package com.ric.adv_camera.vision;
 import android.app.ActivityManager;
 import android.app.ActivityManager.MemoryInfo;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.os.Build.VERSION_CODES;
 import android.os.SystemClock;
@@ -39,14 +38,7 @@ import com.google.mlkit.vision.common.InputImage;
 
 
 import java.nio.ByteBuffer;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
-import static java.lang.Math.max;
-import static java.lang.Math.min;
 
 /**
  * Abstract base class for vision frame processors. Subclasses need to implement {@link
@@ -56,63 +48,145 @@ import static java.lang.Math.min;
  */
 public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
+  /** Receives the results of every frame in addition to {@link #onSuccess}. */
+  public interface ResultListener<T> {
+    /** Called on the main thread. */
+    void onResults(@NonNull T results, @NonNull FrameMetadata frameMetadata);
+  }
+
   protected static final String MANUAL_TESTING_LOG = "LogTagForTest";
   private static final String TAG = "VisionProcessorBase";
 
+  // One crop is in flight at a time, the second buffer covers the hand-over between frames.
+  private static final int CROP_BUFFER_COUNT = 2;
+
   private final ActivityManager activityManager;
-  private final Timer fpsTimer = new Timer();
+  // Shared with the processors of the other views, see DetectorPool.
+  private final ThreadPoolExecutor detectorExecutor;
   private final ScopedExecutor executor;
 
   // Whether this processor is already shut down
   private boolean isShutdown;
 
-  // Used to calculate latency, running in the same thread, no sync needed.
-  private int numRuns = 0;
-  private long totalFrameMs = 0;
-  private long maxFrameMs = 0;
-  private long minFrameMs = Long.MAX_VALUE;
-  private long totalDetectorMs = 0;
-  private long maxDetectorMs = 0;
-  private long minDetectorMs = Long.MAX_VALUE;
+  // Latency histograms and drop counts, shared with the camera feeding this processor.
+  private volatile PipelineMetrics metrics = new PipelineMetrics();
 
-  // Frame count that have been processed so far in an one second interval to calculate FPS.
+  // Frame count that have been processed so far in the current one second interval to calculate
+  // FPS, and when that interval started. Only touched on the main thread.
   private int frameProcessedInOneSecondInterval = 0;
-  private int framesPerSecond = 0;
+  private long oneSecondIntervalStartMs = -1;
+
+  // Per-second records for diagnosis, written from the main thread listener.
+  private final TelemetryBuffer telemetry = new TelemetryBuffer();
 
-  // To keep the latest images and its metadata.
+  // To keep the latest images and its metadata. Both images hold a lease on their buffer so the
+  // camera cannot refill it before the detector is done with it.
   @GuardedBy("this")
-  private ByteBuffer latestImage;
+  private FrameBufferPool.Lease latestImage;
 
   @GuardedBy("this")
   private FrameMetadata latestImageMetaData;
   // To keep the images and metadata in process.
   @GuardedBy("this")
-  private ByteBuffer processingImage;
+  private FrameBufferPool.Lease processingImage;
 
   @GuardedBy("this")
   private FrameMetadata processingMetaData;
 
   private boolean debugMode;
 
-  private SharedPreferences prefs;
+  @Nullable
+  private volatile DetectionRateController detectionRateController;
+
+  @Nullable
+  private volatile RegionOfInterest regionOfInterest;
+
+  @Nullable
+  private volatile ResultListener<T> resultListener;
+
+  // Skips live frames that look like the last processed one, disabled unless configured.
+  private final SceneChangeDetector sceneChangeDetector = new SceneChangeDetector();
+
+  // Drops live frames blurred compared to the recent ones, disabled unless configured.
+  private final SharpnessFilter sharpnessFilter = new SharpnessFilter();
+
+  // Keeps the sharpest recent frames for capture, null unless configured.
+  @Nullable
+  private volatile SharpestFrameKeeper sharpestFrameKeeper;
+
+  // Reused output buffers for region of interest crops, only touched under the processor lock.
+  @GuardedBy("this")
+  private FrameBufferPool cropPool;
 
   protected VisionProcessorBase(Context context, boolean _debugMode) {
     activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
     //executor = new ScopedExecutor(TaskExecutors.MAIN_THREAD);
-    executor = new ScopedExecutor(new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,  new LinkedBlockingQueue<Runnable>() ));
-    fpsTimer.scheduleAtFixedRate(
-        new TimerTask() {
-          @Override
-          public void run() {
-            framesPerSecond = frameProcessedInOneSecondInterval;
-            frameProcessedInOneSecondInterval = 0;
-          }
-        },
-        /* delay= */ 0,
-        /* period= */ 1000);
+    detectorExecutor = DetectorPool.getExecutor();
+    executor = new ScopedExecutor(detectorExecutor);
     this.debugMode = _debugMode;
-    this.prefs = context.getSharedPreferences("FlutterSharedPreferences", Context.MODE_PRIVATE);
+  }
+
+  /** Reports detector latencies to {@code controller} so it can adapt the detection rate. */
+  public void setDetectionRateController(@Nullable DetectionRateController controller) {
+    this.detectionRateController = controller;
+  }
+
+  /** Sets the listener that sees the results of every frame, or null to remove it. */
+  public void setResultListener(@Nullable ResultListener<T> resultListener) {
+    this.resultListener = resultListener;
+  }
+
+  /** Records latencies and drops into {@code metrics}, e.g. the camera's own pipeline metrics. */
+  public void setMetrics(@NonNull PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** Per-second frame rate, latency and, in debug mode, memory records. */
+  public TelemetryBuffer getTelemetry() {
+    return telemetry;
+  }
+
+  /**
+   * Limits detection on live frames to {@code roi}. Frames are cropped before they reach the
+   * detector and the results are reported with the crop's offset in the full frame. Null scans the
+   * whole frame.
+   */
+  public void setRegionOfInterest(@Nullable RegionOfInterest roi) {
+    this.regionOfInterest = roi;
+  }
+
+  @Nullable
+  public RegionOfInterest getRegionOfInterest() {
+    return regionOfInterest;
+  }
+
+  /** Returns the filter that drops blurred live frames, to configure it. */
+  public SharpnessFilter getSharpnessFilter() {
+    return sharpnessFilter;
+  }
+
+  /**
+   * Keeps the sharpest of the last {@code frameCount} live frames for {@link #getSharpestFrame()};
+   * 0 stops keeping frames and frees them.
+   */
+  public void setSharpestFrameCount(int frameCount) {
+    sharpestFrameKeeper = frameCount > 0 ? new SharpestFrameKeeper(frameCount) : null;
+  }
+
+  /** Returns a copy of the sharpest recent live frame, or null if none is kept. */
+  @Nullable
+  public SharpestFrameKeeper.Frame getSharpestFrame() {
+    SharpestFrameKeeper keeper = sharpestFrameKeeper;
+    return keeper != null ? keeper.getSharpest() : null;
+  }
 
+  /** Returns the detector that skips live frames of an unchanged scene, to configure it. */
+  public SceneChangeDetector getSceneChangeDetector() {
+    return sceneChangeDetector;
   }
 
   // -----------------Code for processing single still image----------------------------------------
@@ -121,6 +195,10 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
     long frameStartMs = SystemClock.elapsedRealtime();
     requestDetectInImage(
         InputImage.fromBitmap(bitmap, 0),
+        new FrameMetadata.Builder()
+            .setWidth(bitmap.getWidth())
+            .setHeight(bitmap.getHeight())
+            .build(),
         /* originalCameraImage= */ null,
         /* shouldShowFps= */ false,
         frameStartMs);
@@ -129,14 +207,77 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   // -----------------Code for processing live preview frame from Camera1 API-----------------------
   @Override
   public synchronized void processByteBuffer(
-          ByteBuffer data, final FrameMetadata frameMetadata) {
-    latestImage = data;
+          FrameBufferPool.Lease data, final FrameMetadata frameMetadata) {
+    if (isShutdown) {
+      return;
+    }
+    long nowMs = SystemClock.elapsedRealtime();
+    if (!sceneChangeDetector.shouldProcess(
+        data.array(), frameMetadata.getWidth(), frameMetadata.getHeight(), nowMs)) {
+      metrics.recordDrop(PipelineMetrics.DROP_STATIC_SCENE, nowMs);
+      return;
+    }
+    if (!isSharpEnough(data, frameMetadata)) {
+      metrics.recordDrop(PipelineMetrics.DROP_BLURRED, nowMs);
+      return;
+    }
+    if (latestImage != null) {
+      // The pending frame never reached the detector, hand it back right away.
+      latestImage.release();
+      metrics.recordDrop(PipelineMetrics.DROP_SUPERSEDED_IN_PROCESSOR, nowMs);
+    }
+    latestImage = data.retain();
     latestImageMetaData = frameMetadata;
     if (processingImage == null && processingMetaData == null) {
       processLatestImage();
     }
   }
 
+  /**
+   * Scores the frame, or its region of interest, when blurred frames are dropped or the sharpest
+   * frames are kept.
+   *
+   * @return false if the frame should be dropped as blurred
+   */
+  @GuardedBy("this")
+  private boolean isSharpEnough(FrameBufferPool.Lease data, FrameMetadata frameMetadata) {
+    SharpestFrameKeeper keeper = sharpestFrameKeeper;
+    if (keeper == null && !sharpnessFilter.isEnabled()) {
+      return true;
+    }
+
+    int width = frameMetadata.getWidth();
+    int height = frameMetadata.getHeight();
+    RegionOfInterest roi = regionOfInterest;
+    double score;
+    if (roi != null) {
+      RegionOfInterest.Crop crop = roi.toCrop(width, height, frameMetadata.getRotation());
+      score =
+          SharpnessFilter.score(
+              data.array(), width, crop.left, crop.top, crop.width, crop.height,
+              SharpnessFilter.DEFAULT_SAMPLE_STEP);
+    } else {
+      score =
+          SharpnessFilter.score(
+              data.array(), width, 0, 0, width, height, SharpnessFilter.DEFAULT_SAMPLE_STEP);
+    }
+
+    double threshold = sharpnessFilter.getThreshold();
+    boolean sharp = sharpnessFilter.accept(score);
+    metrics.recordSharpness(score, threshold);
+    if (keeper != null) {
+      keeper.offer(
+          data.array(),
+          Nv21Utils.frameSize(width, height),
+          width,
+          height,
+          frameMetadata.getRotation(),
+          score,
+          frameMetadata.getTimestampMs());
+    }
+    return sharp;
+  }
+
   private synchronized void processLatestImage() {
     processingImage = latestImage;
     processingMetaData = latestImageMetaData;
@@ -147,25 +288,113 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
     }
   }
 
+  private synchronized void onImageProcessed(FrameBufferPool.Lease data) {
+    data.release();
+    processingImage = null;
+    processingMetaData = null;
+    if (!isShutdown) {
+      processLatestImage();
+    }
+  }
+
+  @GuardedBy("this")
   private void processImage(
-          ByteBuffer data, final FrameMetadata frameMetadata) {
+          final FrameBufferPool.Lease data, final FrameMetadata frameMetadata) {
     long frameStartMs = SystemClock.elapsedRealtime();
 
     // If live viewport is on (that is the underneath surface view takes care of the camera preview
     // drawing), skip the unnecessary bitmap creation that used for the manual preview drawing.
     Bitmap bitmap = null;
 
-    requestDetectInImage(
-            InputImage.fromByteBuffer(
-                data,
-                frameMetadata.getWidth(),
-                frameMetadata.getHeight(),
-                frameMetadata.getRotation(),
-                InputImage.IMAGE_FORMAT_NV21),
-            bitmap,
-            /* shouldShowFps= */ true,
-            frameStartMs)
-        .addOnSuccessListener(executor, results -> processLatestImage());
+    // Released by the completion listener once it is registered, and here if starting fails.
+    FrameBufferPool.Lease detectionData = data;
+    try {
+      FrameMetadata detectionMetaData = frameMetadata;
+      ByteBuffer detectionBuffer = data.getBuffer();
+
+      RegionOfInterest roi = regionOfInterest;
+      if (roi != null) {
+        RegionOfInterest.Crop crop =
+            roi.toCrop(frameMetadata.getWidth(), frameMetadata.getHeight(), frameMetadata.getRotation());
+        FrameBufferPool.Lease cropped = crop.isFullFrame() ? null : cropFrame(data, frameMetadata, crop);
+        if (cropped != null) {
+          // The crop is a copy, so the camera can have its buffer back right away.
+          data.release();
+          detectionData = cropped;
+          detectionMetaData =
+              new FrameMetadata.Builder()
+                  .setWidth(crop.width)
+                  .setHeight(crop.height)
+                  .setRotation(frameMetadata.getRotation())
+                  .setOffset(crop.offsetX, crop.offsetY)
+                  .setTimestampMs(frameMetadata.getTimestampMs())
+                  .build();
+          detectionBuffer = ByteBuffer.wrap(cropped.array(), 0, crop.getNv21Size()).slice();
+        }
+      }
+
+      final FrameBufferPool.Lease detectionLease = detectionData;
+      requestDetectInImage(
+              InputImage.fromByteBuffer(
+                  detectionBuffer,
+                  detectionMetaData.getWidth(),
+                  detectionMetaData.getHeight(),
+                  detectionMetaData.getRotation(),
+                  InputImage.IMAGE_FORMAT_NV21),
+              detectionMetaData,
+              bitmap,
+              /* shouldShowFps= */ true,
+              frameStartMs)
+          // Registered on the unscoped executor so the lease is returned even after stop(), and on
+          // completion rather than success so a failed detection does not stall the pipeline.
+          .addOnCompleteListener(detectorExecutor, task -> onImageProcessed(detectionLease));
+    } catch (RuntimeException e) {
+      // E.g. bad metadata or a detector closed by stop(). No listener will run, so the buffers are
+      // returned here, or the pool would run dry and the pipeline stall for good.
+      Log.e(TAG, "Failed to start detection", e);
+      detectionData.release();
+      processingImage = null;
+      processingMetaData = null;
+      if (latestImage != null) {
+        latestImage.release();
+        latestImage = null;
+        latestImageMetaData = null;
+      }
+    }
+  }
+
+  /**
+   * Copies the region of interest out of {@code data} into a pooled buffer.
+   *
+   * @return the lease on the cropped frame, or null if no crop buffer is free
+   */
+  @GuardedBy("this")
+  @Nullable
+  private FrameBufferPool.Lease cropFrame(
+      FrameBufferPool.Lease data, FrameMetadata frameMetadata, RegionOfInterest.Crop crop) {
+    int size = crop.getNv21Size();
+    if (cropPool == null || cropPool.getBufferSize() < size) {
+      // Sized for the whole frame so later region changes keep reusing the same buffers.
+      cropPool =
+          new FrameBufferPool(
+              CROP_BUFFER_COUNT,
+              Nv21Utils.frameSize(frameMetadata.getWidth(), frameMetadata.getHeight()));
+    }
+
+    FrameBufferPool.Lease cropped = cropPool.acquire();
+    if (cropped == null) {
+      return null;
+    }
+    Nv21Utils.crop(
+        data.array(),
+        frameMetadata.getWidth(),
+        frameMetadata.getHeight(),
+        crop.left,
+        crop.top,
+        crop.width,
+        crop.height,
+        cropped.array());
+    return cropped;
   }
 
 
@@ -173,57 +402,69 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   // -----------------Common processing logic-------------------------------------------------------
   private Task<T> requestDetectInImage(
       final InputImage image,
+      final FrameMetadata frameMetadata,
       @Nullable final Bitmap originalCameraImage,
       boolean shouldShowFps,
       long frameStartMs) {
+    final PipelineMetrics metrics = this.metrics;
     final long detectorStartMs = SystemClock.elapsedRealtime();
+    // Camera frames are timed from their arrival, so the wait for the detector counts as well.
+    final long frameArrivalMs =
+        frameMetadata.getTimestampMs() > 0 ? frameMetadata.getTimestampMs() : frameStartMs;
+    metrics.recordQueueWait(detectorStartMs - frameArrivalMs, detectorStartMs);
+    // Written on the detector's thread before the main thread listener is posted.
+    final long[] detectorEndMs = new long[1];
     return detectInImage(image)
+        .addOnSuccessListener(
+            Runnable::run,
+            results -> {
+              long endMs = SystemClock.elapsedRealtime();
+              detectorEndMs[0] = endMs;
+              metrics.recordDetector(endMs - detectorStartMs, endMs);
+              DetectionRateController rateController = detectionRateController;
+              if (rateController != null) {
+                rateController.onDetectorLatency(endMs - detectorStartMs);
+              }
+            })
         .addOnSuccessListener(
             TaskExecutors.MAIN_THREAD,
             results -> {
               long endMs = SystemClock.elapsedRealtime();
-              long currentFrameLatencyMs = endMs - frameStartMs;
-              long currentDetectorLatencyMs = endMs - detectorStartMs;
-              numRuns++;
+              metrics.recordCallback(endMs - detectorEndMs[0], endMs);
+              metrics.recordFrame(endMs - frameArrivalMs, endMs);
               frameProcessedInOneSecondInterval++;
-              totalFrameMs += currentFrameLatencyMs;
-              maxFrameMs = max(currentFrameLatencyMs, maxFrameMs);
-              minFrameMs = min(currentFrameLatencyMs, minFrameMs);
-              totalDetectorMs += currentDetectorLatencyMs;
-              maxDetectorMs = max(currentDetectorLatencyMs, maxDetectorMs);
-              minDetectorMs = min(currentDetectorLatencyMs, minDetectorMs);
-              double avgFrameLatency = totalFrameMs / numRuns;
-
-              // Only log inference info once per second. When frameProcessedInOneSecondInterval is
-              // equal to 1, it means this is the first frame processed during the current second.
-              if (frameProcessedInOneSecondInterval == 1) {
-                if(debugMode) {
-                    this.prefs.edit().putString("flutter.ConfigKey.CAMERA_DETECTOR_MS", String.valueOf(avgFrameLatency)).apply();
+              LatencyHistogram.Snapshot frameLatency = metrics.getFrameLatency(endMs);
+              double avgFrameLatency = frameLatency.meanMs;
+
+              // Only record inference info once per second, when the first frame of a new second
+              // arrives. The interval rolls over here instead of on a timer thread.
+              if (oneSecondIntervalStartMs < 0) {
+                oneSecondIntervalStartMs = endMs;
+              } else if (endMs - oneSecondIntervalStartMs >= 1000) {
+                long availableMegs = -1;
+                if (debugMode) {
+                  MemoryInfo mi = new MemoryInfo();
+                  activityManager.getMemoryInfo(mi);
+                  availableMegs = mi.availMem / 0x100000L;
+                  Log.d(TAG, "Frame latency: " + frameLatency);
+                  Log.d(TAG, "Memory available in system: " + availableMegs + " MB");
                 }
-                Log.d(TAG, "Num of Runs: " + numRuns);
-                Log.d(
-                    TAG,
-                    "Frame latency: max="
-                        + maxFrameMs
-                        + ", min="
-                        + minFrameMs
-                        + ", avg="
-                        + totalFrameMs / numRuns);
-                Log.d(
-                    TAG,
-                    "Detector latency: max="
-                        + maxDetectorMs
-                        + ", min="
-                        + minDetectorMs
-                        + ", avg="
-                        + totalDetectorMs / numRuns);
-                MemoryInfo mi = new MemoryInfo();
-                activityManager.getMemoryInfo(mi);
-                long availableMegs = mi.availMem / 0x100000L;
-                Log.d(TAG, "Memory available in system: " + availableMegs + " MB");
+                // The frame that opens the new second is not part of the finished one, which may
+                // have lasted longer than a second if frames paused.
+                int framesPerSecond = (int) Math.round(
+                    (frameProcessedInOneSecondInterval - 1) * 1000.0
+                        / (endMs - oneSecondIntervalStartMs));
+                telemetry.record(
+                    System.currentTimeMillis(), framesPerSecond, avgFrameLatency, availableMegs);
+                frameProcessedInOneSecondInterval = 1;
+                oneSecondIntervalStartMs = endMs;
               }
 
-              VisionProcessorBase.this.onSuccess(results, avgFrameLatency);
+              VisionProcessorBase.this.onSuccess(results, frameMetadata, avgFrameLatency);
+              ResultListener<T> listener = resultListener;
+              if (listener != null) {
+                listener.onResults(results, frameMetadata);
+              }
             })
         .addOnFailureListener(
             executor,
@@ -238,16 +479,26 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   @Override
   public void stop() {
     executor.shutdown();
-    isShutdown = true;
-    numRuns = 0;
-    totalFrameMs = 0;
-    totalDetectorMs = 0;
-    fpsTimer.cancel();
+    synchronized (this) {
+      isShutdown = true;
+      if (latestImage != null) {
+        latestImage.release();
+        latestImage = null;
+        latestImageMetaData = null;
+      }
+    }
   }
 
   protected abstract Task<T> detectInImage(InputImage image);
 
-  protected abstract void onSuccess(@NonNull T results, @Nullable double avgFrameLatency);
+  /**
+   * Called on the main thread with the detection results. Result coordinates are relative to the
+   * detected image; add {@link FrameMetadata#getOffsetX()}/{@link FrameMetadata#getOffsetY()} to
+   * place them in the full preview frame. {@code avgFrameLatency} is the mean frame latency over the
+   * {@link PipelineMetrics} window.
+   */
+  protected abstract void onSuccess(
+      @NonNull T results, @NonNull FrameMetadata frameMetadata, @Nullable double avgFrameLatency);
 
   protected abstract void onFailure(@NonNull Exception e);
 }
@@ -0,0 +1,258 @@
+package com.ric.adv_camera.vision;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the three planes of a YUV_420_888 image into NV21, copying whole rows wherever the plane
+ * layout allows it.
+ *
+ * <p>The Y plane is copied in one bulk {@code get} when its rows are tight and row by row when they
+ * are padded. For the chroma planes there are three layouts:
+ *
+ * <ul>
+ *   <li>{@link #CHROMA_NV21}: both planes have a pixel stride of 2 and the V plane starts one byte
+ *       before the U plane in the same memory, so the V plane already holds the interleaved VU rows
+ *       NV21 needs; they are bulk copied row by row,
+ *   <li>{@link #CHROMA_SEMI_PLANAR}: a pixel stride of 2 in another arrangement, e.g. NV12,
+ *   <li>{@link #CHROMA_PLANAR}: a pixel stride of 1, as in I420.
+ * </ul>
+ *
+ * The last two read each row with one bulk {@code get} into a scratch array and interleave it with
+ * a plain array loop, which the JIT compiles far better than a {@code ByteBuffer.get(int)} per
+ * byte.
+ *
+ * <p>Telling NV21 apart means comparing the two chroma planes, which costs about as much as copying
+ * them. A camera stream keeps its layout, so the result is remembered until the geometry changes.
+ * Flat chroma, e.g. from a covered lens or a gray frame, matches at any offset and proves nothing;
+ * such a frame takes the semi-planar path, which is right for either layout, and the detection is
+ * repeated on the next frame.
+ *
+ * <p>An instance reuses its scratch row and is not thread-safe; the output array is the caller's,
+ * typically a {@link FrameBufferPool} buffer.
+ */
+public class Yuv420Converter {
+
+    public static final int CHROMA_NV21 = 0;
+    public static final int CHROMA_SEMI_PLANAR = 1;
+    public static final int CHROMA_PLANAR = 2;
+
+    private byte[] rowScratch = new byte[0];
+
+    // The chroma layout last detected, and the geometry it was detected for.
+    private int chromaLayout = -1;
+    private int layoutWidth;
+    private int layoutHeight;
+    private int layoutRowStride;
+    private int layoutPixelStride;
+
+    /**
+     * Writes the image as NV21 into {@code out}, which must hold at least {@link
+     * Nv21Utils#frameSize} bytes for {@code width} and {@code height}. Width and height must be
+     * even. The buffers' positions are left unchanged.
+     *
+     * @param uvRowStride row stride of the U and V planes, which YUV_420_888 guarantees are equal
+     * @param uvPixelStride pixel stride of the U and V planes, likewise
+     */
+    public void toNv21(
+            ByteBuffer yBuffer,
+            int yRowStride,
+            ByteBuffer uBuffer,
+            ByteBuffer vBuffer,
+            int uvRowStride,
+            int uvPixelStride,
+            int width,
+            int height,
+            byte[] out) {
+        int imageSize = width * height;
+        if (out.length < imageSize + imageSize / 2) {
+            throw new IllegalArgumentException(
+                    "Output of " + out.length + " bytes too small for " + width + "x" + height);
+        }
+
+        int yPosition = yBuffer.position();
+        int uPosition = uBuffer.position();
+        int vPosition = vBuffer.position();
+        try {
+            copyRows(yBuffer, yRowStride, width, height, out, 0);
+        } finally {
+            yBuffer.position(yPosition);
+        }
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int layout = chromaLayout(uBuffer, vBuffer, uvRowStride, uvPixelStride, width, height);
+        if (layout == CHROMA_NV21) {
+            try {
+                copyInterleavedRows(
+                        vBuffer, uBuffer, uvRowStride, width, chromaHeight, out, imageSize);
+            } finally {
+                vBuffer.position(vPosition);
+            }
+        } else {
+            unpackPlane(vBuffer, uvRowStride, uvPixelStride, chromaWidth, chromaHeight,
+                    out, imageSize, 2);
+            unpackPlane(uBuffer, uvRowStride, uvPixelStride, chromaWidth, chromaHeight,
+                    out, imageSize + 1, 2);
+        }
+        uBuffer.position(uPosition);
+    }
+
+    /**
+     * Copies {@code cols} x {@code rows} samples of a plane into {@code out} starting at {@code
+     * offset}, {@code outPixelStride} bytes apart and without row padding. The buffer's position is
+     * left unchanged.
+     */
+    public void unpackPlane(
+            ByteBuffer buffer,
+            int rowStride,
+            int pixelStride,
+            int cols,
+            int rows,
+            byte[] out,
+            int offset,
+            int outPixelStride) {
+        int base = buffer.position();
+        try {
+            if (pixelStride == 1 && outPixelStride == 1) {
+                copyRows(buffer, rowStride, cols, rows, out, offset);
+                return;
+            }
+
+            // The last sample of a row is its last byte, trailing bytes may be missing on the last
+            // row.
+            int rowLength = (cols - 1) * pixelStride + 1;
+            byte[] row = scratch(rowLength);
+            int outputPos = offset;
+            for (int r = 0; r < rows; r++) {
+                absoluteGet(buffer, base + r * rowStride, row, 0, rowLength);
+                for (int c = 0, inputPos = 0; c < cols; c++, inputPos += pixelStride) {
+                    out[outputPos] = row[inputPos];
+                    outputPos += outPixelStride;
+                }
+            }
+        } finally {
+            buffer.position(base);
+        }
+    }
+
+    /** The chroma layout of the planes, see the CHROMA_ constants. */
+    public int chromaLayout(
+            ByteBuffer uBuffer,
+            ByteBuffer vBuffer,
+            int uvRowStride,
+            int uvPixelStride,
+            int width,
+            int height) {
+        if (uvPixelStride == 1) {
+            return CHROMA_PLANAR;
+        }
+        if (chromaLayout >= 0
+                && layoutWidth == width
+                && layoutHeight == height
+                && layoutRowStride == uvRowStride
+                && layoutPixelStride == uvPixelStride) {
+            return chromaLayout;
+        }
+
+        boolean nv21 = uvPixelStride == 2 && isNv21(uBuffer, vBuffer);
+        if (nv21 && isUniform(uBuffer)) {
+            return CHROMA_SEMI_PLANAR;
+        }
+        chromaLayout = nv21 ? CHROMA_NV21 : CHROMA_SEMI_PLANAR;
+        layoutWidth = width;
+        layoutHeight = height;
+        layoutRowStride = uvRowStride;
+        layoutPixelStride = uvPixelStride;
+        return chromaLayout;
+    }
+
+    /** Forgets the detected chroma layout, e.g. when the camera stream is reconfigured. */
+    public void resetLayout() {
+        chromaLayout = -1;
+    }
+
+    /**
+     * Whether the V buffer, advanced by one byte, holds the same bytes as the U buffer without its
+     * last byte, which is the case when both view the same interleaved VU memory.
+     */
+    static boolean isNv21(ByteBuffer uBuffer, ByteBuffer vBuffer) {
+        ByteBuffer v = vBuffer.duplicate();
+        ByteBuffer u = uBuffer.duplicate();
+        if (v.remaining() != u.remaining() || v.remaining() < 2) {
+            return false;
+        }
+        v.position(v.position() + 1);
+        u.limit(u.limit() - 1);
+        return v.compareTo(u) == 0;
+    }
+
+    /** Whether every remaining byte of the buffer has the same value. */
+    static boolean isUniform(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        if (start == end) {
+            return true;
+        }
+        byte first = buffer.get(start);
+        for (int i = start + 1; i < end; i++) {
+            if (buffer.get(i) != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Copies {@code rows} rows of {@code rowLength} bytes, in one go if the rows are tight. */
+    private static void copyRows(
+            ByteBuffer buffer, int rowStride, int rowLength, int rows, byte[] out, int offset) {
+        int base = buffer.position();
+        if (rowStride == rowLength) {
+            absoluteGet(buffer, base, out, offset, rowLength * rows);
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            absoluteGet(buffer, base + r * rowStride, out, offset + r * rowLength, rowLength);
+        }
+    }
+
+    /**
+     * Copies NV21 chroma rows out of the V buffer. Its last row ends one byte short, on the final V
+     * value, so the final U value comes from the U buffer.
+     */
+    private static void copyInterleavedRows(
+            ByteBuffer vBuffer,
+            ByteBuffer uBuffer,
+            int rowStride,
+            int rowLength,
+            int rows,
+            byte[] out,
+            int offset) {
+        int base = vBuffer.position();
+        int lastRowStart = (rows - 1) * rowStride;
+        if (rowStride == rowLength) {
+            absoluteGet(vBuffer, base, out, offset, lastRowStart + rowLength - 1);
+        } else {
+            for (int r = 0; r < rows - 1; r++) {
+                absoluteGet(vBuffer, base + r * rowStride, out, offset + r * rowLength, rowLength);
+            }
+            absoluteGet(vBuffer, base + lastRowStart,
+                    out, offset + (rows - 1) * rowLength, rowLength - 1);
+        }
+        out[offset + rows * rowLength - 1] =
+                uBuffer.get(uBuffer.position() + lastRowStart + rowLength - 2);
+    }
+
+    /** A bulk get at an absolute index; callers restore the position when done. */
+    private static void absoluteGet(
+            ByteBuffer buffer, int index, byte[] dst, int offset, int length) {
+        buffer.position(index);
+        buffer.get(dst, offset, length);
+    }
+
+    private byte[] scratch(int length) {
+        if (rowScratch.length < length) {
+            rowScratch = new byte[length];
+        }
+        return rowScratch;
+    }
+}
@@ -0,0 +1,62 @@
+package com.ric.adv_camera.vision.barcodescanner;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.ric.adv_camera.vision.DetectorPool;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ML Kit barcode scanner clients shared by the processors of every camera view, one per combination
+ * of formats. A client is created for the first processor that asks for its formats and closed when
+ * the last one lets go, so two views scanning the same formats load the model once. The clients run
+ * their detections on the {@link DetectorPool}.
+ */
+final class BarcodeScannerPool {
+
+    private static final class Client {
+        final BarcodeScanner scanner;
+        int leases;
+
+        Client(BarcodeScanner scanner) {
+            this.scanner = scanner;
+        }
+    }
+
+    private static final Map<Integer, Client> clients = new HashMap<>();
+
+    private BarcodeScannerPool() {
+    }
+
+    /** Returns the client for {@code barcodeFormats}; hand it back with {@link #release}. */
+    static synchronized BarcodeScanner acquire(int barcodeFormats) {
+        Client client = clients.get(barcodeFormats);
+        if (client == null) {
+            client = new Client(BarcodeScanning.getClient(
+                    new BarcodeScannerOptions.Builder()
+                            .setBarcodeFormats(barcodeFormats)
+                            .setExecutor(DetectorPool.getExecutor())
+                            .build()));
+            clients.put(barcodeFormats, client);
+        }
+        client.leases++;
+        return client.scanner;
+    }
+
+    /**
+     * Gives up one lease on the client for {@code barcodeFormats}, closing it if that was the last.
+     * A detection still running on a closed client may fail, which only loses that frame.
+     */
+    static synchronized void release(int barcodeFormats) {
+        Client client = clients.get(barcodeFormats);
+        if (client == null) {
+            return;
+        }
+        if (--client.leases == 0) {
+            clients.remove(barcodeFormats);
+            client.scanner.close();
+        }
+    }
+}
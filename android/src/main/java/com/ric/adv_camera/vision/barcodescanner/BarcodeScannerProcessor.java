@@ -28,12 +28,13 @@ import com.google.android.gms.tasks.Task;
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 import com.google.mlkit.vision.barcode.Barcode;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.common.InputImage;
+import com.ric.adv_camera.vision.BarcodeResultEncoder;
+import com.ric.adv_camera.vision.FrameMetadata;
 import com.ric.adv_camera.vision.VisionProcessorBase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,12 +46,25 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
 
   public interface BarcodeEventHandler {
 
-    void onBarCodeRead(List<Barcode> barcodes,double avgFrameLatency);
+    /**
+     * Called with the barcodes found in a frame. Their coordinates are relative to the detected
+     * image, which starts at ({@code frameMetadata.getOffsetX()}, {@code frameMetadata.getOffsetY()})
+     * in the full preview frame when a region of interest is set.
+     */
+    void onBarCodeRead(List<Barcode> barcodes, FrameMetadata frameMetadata, double avgFrameLatency);
   };
 
   private static final String TAG = "BarcodeProcessor";
 
-  private final BarcodeScanner barcodeScanner;
+  /** Size of the blank frame used by {@link #warmUp()}. */
+  private static final int WARM_UP_WIDTH = 320;
+  private static final int WARM_UP_HEIGHT = 240;
+
+  // Leased from BarcodeScannerPool, so views scanning the same formats share the client.
+  private volatile BarcodeScanner barcodeScanner;
+  private int barcodeFormats;
+  // Whether the client was handed back to the pool.
+  private boolean released;
 
   BarcodeEventHandler barcodeEventHandler;
 
@@ -72,17 +86,53 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
     // new BarcodeScannerOptions.Builder()
     //     .setBarcodeFormats(Barcode.FORMAT_QR_CODE)
     //     .build();
-    barcodeScanner = BarcodeScanning.getClient(
-             new BarcodeScannerOptions.Builder()
-                 .setBarcodeFormats(barcodeFormats)
-                 .build()
-    );
+    this.barcodeFormats = barcodeFormats;
+    barcodeScanner = BarcodeScannerPool.acquire(barcodeFormats);
+  }
+
+  /**
+   * Restricts detection to {@code barcodeFormats}, a combination of the {@code Barcode.FORMAT_}
+   * flags. Fewer formats detect faster. A detection still running on the old scanner may fail, which
+   * only loses that frame.
+   */
+  public synchronized void setBarcodeFormats(int barcodeFormats) {
+    if (barcodeFormats == this.barcodeFormats || released) {
+      return;
+    }
+    int previous = this.barcodeFormats;
+    this.barcodeFormats = barcodeFormats;
+    barcodeScanner = BarcodeScannerPool.acquire(barcodeFormats);
+    BarcodeScannerPool.release(previous);
+  }
+
+  public synchronized int getBarcodeFormats() {
+    return barcodeFormats;
   }
 
   @Override
   public void stop() {
     super.stop();
-    barcodeScanner.close();
+    synchronized (this) {
+      if (!released) {
+        released = true;
+        BarcodeScannerPool.release(barcodeFormats);
+      }
+    }
+  }
+
+  /**
+   * Runs the detector once on a blank mid-gray frame, so the model is loaded before the first real
+   * frame arrives. The result is ignored.
+   */
+  public void warmUp() {
+    byte[] blank = new byte[WARM_UP_WIDTH * WARM_UP_HEIGHT * 3 / 2];
+    Arrays.fill(blank, (byte) 128);
+    InputImage image =
+        InputImage.fromByteArray(
+            blank, WARM_UP_WIDTH, WARM_UP_HEIGHT, 0, InputImage.IMAGE_FORMAT_NV21);
+    barcodeScanner
+        .process(image)
+        .addOnFailureListener(e -> Log.w(TAG, "Warm-up detection failed", e));
   }
 
   @Override
@@ -94,7 +144,9 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
 
   @Override
   protected void onSuccess(
-          @NonNull List<Barcode> barcodes, @Nullable double avgFrameLatency) {
+          @NonNull List<Barcode> barcodes,
+          @NonNull FrameMetadata frameMetadata,
+          @Nullable double avgFrameLatency) {
     /*for (int i = 0; i < barcodes.size(); ++i) {
       Barcode barcode = barcodes.get(i);
       //graphicOverlay.add(new BarcodeGraphic(graphicOverlay, barcode));
@@ -103,7 +155,7 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
 
 
     if(barcodeEventHandler != null) {
-        barcodeEventHandler.onBarCodeRead(barcodes, avgFrameLatency);
+        barcodeEventHandler.onBarCodeRead(barcodes, frameMetadata, avgFrameLatency);
     }
 
   }
@@ -146,12 +198,17 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
   }
 
   public static  Map<String, Object> barcodeToMap(Barcode barcode) {
+    return barcodeToMap(barcode, 0, 0);
+  }
+
+  /** Encodes {@code barcode}, shifting its coordinates by ({@code offsetX}, {@code offsetY}). */
+  public static  Map<String, Object> barcodeToMap(Barcode barcode, int offsetX, int offsetY) {
     Map<String, Object> barcodeMap = new HashMap<>();
 
     Rect bounds = barcode.getBoundingBox();
     if (bounds != null) {
-      barcodeMap.put("left", (double) bounds.left);
-      barcodeMap.put("top", (double) bounds.top);
+      barcodeMap.put("left", (double) (bounds.left + offsetX));
+      barcodeMap.put("top", (double) (bounds.top + offsetY));
       barcodeMap.put("width", (double) bounds.width());
       barcodeMap.put("height", (double) bounds.height());
     }
@@ -159,7 +216,7 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
     List<double[]> points = new ArrayList<>();
     if (barcode.getCornerPoints() != null) {
       for (Point point : barcode.getCornerPoints()) {
-        points.add(new double[]{(double) point.x, (double) point.y});
+        points.add(new double[]{(double) (point.x + offsetX), (double) (point.y + offsetY)});
       }
     }
     barcodeMap.put("points", points);
@@ -171,6 +228,35 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
     return barcodeMap;
   }
 
+  /**
+   * Appends {@code barcode} to {@code encoder}, shifting its coordinates by ({@code offsetX}, {@code
+   * offsetY}). Binary counterpart of {@link #barcodeToMap(Barcode, int, int)}.
+   */
+  public static void writeBarcode(
+      BarcodeResultEncoder encoder, Barcode barcode, int offsetX, int offsetY) {
+    Rect bounds = barcode.getBoundingBox();
+    if (bounds != null) {
+      encoder.beginBarcode(
+          barcode.getFormat(),
+          barcode.getValueType(),
+          true,
+          bounds.left + offsetX,
+          bounds.top + offsetY,
+          bounds.width(),
+          bounds.height());
+    } else {
+      encoder.beginBarcode(barcode.getFormat(), barcode.getValueType(), false, 0, 0, 0, 0);
+    }
+
+    Point[] cornerPoints = barcode.getCornerPoints();
+    if (cornerPoints != null) {
+      for (Point point : cornerPoints) {
+        encoder.addPoint(point.x + offsetX, point.y + offsetY);
+      }
+    }
+    encoder.endBarcode(barcode.getRawValue(), barcode.getDisplayValue());
+  }
+
 
   @Override
   protected void onFailure(@NonNull Exception e) {
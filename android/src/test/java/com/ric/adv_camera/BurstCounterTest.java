@@ -0,0 +1,57 @@
+package com.ric.adv_camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.ric.adv_camera.vision.ByteBudgetQueue;
+
+import org.junit.Test;
+
+public class BurstCounterTest {
+
+    @Test
+    public void numbersCapturedAndDroppedFramesAlike() {
+        BurstCounter counter = new BurstCounter(3);
+
+        assertEquals(0, counter.next());
+        counter.onCaptured();
+        assertEquals(1, counter.next());
+        counter.onDropped();
+        assertFalse(counter.isComplete());
+        assertEquals(2, counter.next());
+        counter.onCaptured();
+
+        assertTrue(counter.isComplete());
+        assertEquals(2, counter.getCaptured());
+        assertEquals(1, counter.getDropped());
+    }
+
+    @Test
+    public void everyFrameIsEitherCapturedOrDropped() {
+        // Three 40-byte frames against a 100-byte budget, as BurstCapture feeds them.
+        ByteBudgetQueue<Integer> queue = new ByteBudgetQueue<>(100);
+        BurstCounter counter = new BurstCounter(5);
+        while (!counter.isComplete()) {
+            int index = counter.next();
+            if (index == 3) {
+                // The encoder finished the first frame.
+                queue.poll();
+                queue.release(40);
+            }
+            if (queue.offer(index, 40)) {
+                counter.onCaptured();
+            } else {
+                counter.onDropped();
+            }
+        }
+
+        assertEquals(3, counter.getCaptured());
+        assertEquals(2, counter.getDropped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBurst() {
+        new BurstCounter(0);
+    }
+}
@@ -0,0 +1,282 @@
+package com.ric.adv_camera;
+
+import com.ric.adv_camera.vision.CameraBackend;
+import com.ric.adv_camera.vision.FakeCameraBackend;
+import com.ric.adv_camera.vision.Nv21Utils;
+import com.ric.adv_camera.vision.RegionOfInterest;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CameraControllerTest {
+
+    /** A fake camera whose flash supports only {@code flashModes}. */
+    private static final class LimitedFlashBackend extends FakeCameraBackend {
+        private final List<String> flashModes;
+
+        LimitedFlashBackend(String... flashModes) {
+            this.flashModes = Arrays.asList(flashModes);
+        }
+
+        @Override
+        public List<String> getSupportedFlashModes() {
+            return flashModes;
+        }
+    }
+
+    private static final CameraBackend.FocusCallback IGNORE_FOCUS = new CameraBackend.FocusCallback() {
+        @Override
+        public void onFocused(boolean success) {
+        }
+    };
+
+    private FakeCameraBackend backend = new FakeCameraBackend();
+
+    @After
+    public void tearDown() {
+        backend.close();
+    }
+
+    private CameraController attach(int width, int height, boolean bestPictureSize, String flashType)
+            throws IOException {
+        CameraController controller = new CameraController(width, height, bestPictureSize, flashType);
+        if (!backend.isOpen()) {
+            backend.open(CameraBackend.FACING_BACK);
+        }
+        controller.attach(backend, null);
+        return controller;
+    }
+
+    @Test
+    public void attachPicksTheClosestPreviewAndLargestPictureSize() throws IOException {
+        backend.open(CameraBackend.FACING_BACK);
+        CameraController controller = new CameraController(1300, 700, true, CameraBackend.FLASH_TORCH);
+
+        CameraCapabilities applied = controller.attach(backend, null);
+
+        assertEquals(1280, applied.previewWidth);
+        assertEquals(720, applied.previewHeight);
+        assertEquals(1920, applied.pictureWidth);
+        assertEquals(1080, applied.pictureHeight);
+        assertArrayEquals(new int[] {1280, 720}, backend.getPreviewSize());
+        assertEquals(CameraBackend.FLASH_TORCH, backend.getFlashMode());
+        assertSame(backend, controller.getBackend());
+    }
+
+    @Test
+    public void attachKeepsTheDefaultPictureSize() throws IOException {
+        backend.open(CameraBackend.FACING_BACK);
+        CameraCapabilities applied = new CameraController(1280, 720, false, CameraBackend.FLASH_OFF)
+                .attach(backend, null);
+
+        assertEquals(0, applied.pictureWidth);
+        assertEquals(0, applied.pictureHeight);
+    }
+
+    @Test
+    public void cachedChoiceIsReused() throws IOException {
+        backend.open(CameraBackend.FACING_BACK);
+        CameraCapabilities cached = new CameraCapabilities(640, 480, 1280, 720);
+
+        assertSame(cached, new CameraController(1280, 720, true, CameraBackend.FLASH_OFF)
+                .attach(backend, cached));
+        assertArrayEquals(new int[] {640, 480}, backend.getPreviewSize());
+        assertArrayEquals(new int[] {1280, 720}, backend.getPictureSize());
+    }
+
+    @Test
+    public void rejectedCachedChoiceIsMadeAgain() throws IOException {
+        backend.open(CameraBackend.FACING_BACK);
+        CameraCapabilities cached = new CameraCapabilities(800, 600, 0, 0);
+
+        CameraCapabilities applied = new CameraController(1280, 720, false, CameraBackend.FLASH_OFF)
+                .attach(backend, cached);
+
+        assertNotSame(cached, applied);
+        assertEquals(1280, applied.previewWidth);
+        assertArrayEquals(new int[] {1280, 720}, backend.getPreviewSize());
+    }
+
+    @Test
+    public void previewRatioSwitchesToAMatchingSize() throws IOException {
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+
+        assertTrue(controller.setPreviewRatio("4:3"));
+        assertArrayEquals(new int[] {640, 480}, backend.getPreviewSize());
+
+        assertFalse(controller.setPreviewRatio("1:1"));
+        assertArrayEquals(new int[] {640, 480}, backend.getPreviewSize());
+    }
+
+    @Test
+    public void torchFallsBackToOn() throws IOException {
+        backend = new LimitedFlashBackend(CameraBackend.FLASH_OFF, CameraBackend.FLASH_ON);
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_TORCH);
+
+        assertEquals(CameraBackend.FLASH_ON, backend.getFlashMode());
+
+        controller.setFlashType(CameraBackend.FLASH_AUTO);
+        assertEquals(CameraBackend.FLASH_OFF, backend.getFlashMode());
+        assertEquals(CameraBackend.FLASH_AUTO, controller.getFlashType());
+    }
+
+    @Test
+    public void noFlashLeavesTheModeAlone() throws IOException {
+        backend = new LimitedFlashBackend();
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_TORCH);
+
+        assertNull(controller.selectFlashMode());
+        controller.setFlashType(CameraBackend.FLASH_ON);
+        assertEquals(CameraBackend.FLASH_OFF, backend.getFlashMode());
+    }
+
+    @Test
+    public void flashTypeChangesTheMode() throws IOException {
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_TORCH);
+
+        controller.setFlashType(CameraBackend.FLASH_ON);
+        assertEquals(CameraBackend.FLASH_ON, backend.getFlashMode());
+    }
+
+    @Test
+    public void pinchZoomsWithinTheCameraRange() throws IOException {
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+
+        assertFalse("no pinch started", controller.pinch(200f));
+        controller.startPinch(100f);
+        assertFalse("too small a move", controller.pinch(101f));
+        assertTrue(controller.pinch(200f));
+        assertEquals(2f, backend.getZoomRatio(), 1e-6f);
+
+        assertTrue(controller.pinch(1000f));
+        assertEquals(backend.getMaxZoomRatio(), backend.getZoomRatio(), 0f);
+        assertFalse("already at the maximum", controller.pinch(2000f));
+
+        assertTrue(controller.pinch(10f));
+        assertEquals(1f, controller.getZoomRatio(), 0f);
+    }
+
+    @Test
+    public void focusMapsTheTapToTheFrame() throws IOException {
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+
+        RegionOfInterest area = controller.focus(500f, 250f, 1000, 1000, 100f, IGNORE_FOCUS);
+
+        RegionOfInterest expected = new RegionOfInterest(0.4f, 0.15f, 0.6f, 0.35f)
+                .toSensorOrientation(backend.getFrameRotation());
+        assertArea(expected, area);
+        assertArea(expected, backend.getFocusArea());
+    }
+
+    @Test
+    public void focusMirrorsTheFrontCamera() throws IOException {
+        backend.open(CameraBackend.FACING_FRONT);
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+
+        RegionOfInterest area = controller.focus(100f, 500f, 1000, 1000, 100f, IGNORE_FOCUS);
+
+        assertArea(new RegionOfInterest(0.8f, 0.4f, 1f, 0.6f)
+                .toSensorOrientation(backend.getFrameRotation()), area);
+    }
+
+    @Test
+    public void focusWaitsForTheViewSize() throws IOException {
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+
+        assertNull(controller.focus(10f, 10f, 0, 0, 100f, IGNORE_FOCUS));
+        assertNull(backend.getFocusArea());
+    }
+
+    @Test
+    public void previewScaleStepsDownWithinTheAspectRatio() throws IOException {
+        CameraController controller = attach(1920, 1080, false, CameraBackend.FLASH_OFF);
+
+        assertTrue(controller.applyPreviewScale(0.75f));
+        assertArrayEquals(new int[] {1280, 720}, backend.getPreviewSize());
+
+        assertFalse(controller.applyPreviewScale(0.7f));
+
+        assertTrue(controller.applyPreviewScale(1f));
+        assertArrayEquals(new int[] {1920, 1080}, backend.getPreviewSize());
+    }
+
+    @Test
+    public void previewScaleKeepsTheBaseSizeWithoutSmallerMatch() throws IOException {
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+
+        assertFalse(controller.applyPreviewScale(0.5f));
+        assertArrayEquals(new int[] {1280, 720}, backend.getPreviewSize());
+    }
+
+    @Test
+    public void previewScaleStartsFromThePreviewRatio() throws IOException {
+        CameraController controller = attach(1920, 1080, false, CameraBackend.FLASH_OFF);
+        controller.setPreviewRatio("4:3");
+
+        assertFalse(controller.applyPreviewScale(0.5f));
+        assertArrayEquals(new int[] {640, 480}, backend.getPreviewSize());
+    }
+
+    @Test
+    public void previewKeepsRunningAcrossAScaleChange() throws Exception {
+        CameraController controller = attach(1920, 1080, false, CameraBackend.FLASH_OFF);
+        backend.startPreview();
+
+        controller.applyPreviewScale(0.75f);
+        long rendered = backend.getRenderedFrameCount();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (backend.getRenderedFrameCount() == rendered && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(backend.getRenderedFrameCount() > rendered);
+        assertEquals(Nv21Utils.frameSize(1280, 720), backend.getBufferPool().getBufferSize());
+    }
+
+    @Test
+    public void photoRotationFollowsTheSensor() throws IOException {
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+        assertEquals(90, controller.getPhotoRotation(0));
+        assertEquals(180, controller.getPhotoRotation(90));
+        assertEquals(0, controller.getPhotoRotation(270));
+    }
+
+    @Test
+    public void frontPhotoRotationIsMirrored() throws IOException {
+        backend.open(CameraBackend.FACING_FRONT);
+        CameraController controller = attach(1280, 720, false, CameraBackend.FLASH_OFF);
+        assertEquals(0, controller.getPhotoRotation(90));
+        assertEquals(180, controller.getPhotoRotation(270));
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedPictureSizeIsRejected() throws IOException {
+        attach(1280, 720, false, CameraBackend.FLASH_OFF).setPictureSize(100, 100);
+    }
+
+    @Test
+    public void asFractionReducesTheRatio() {
+        assertEquals("16:9", CameraController.asFraction(1920, 1080));
+        assertEquals("4:3", CameraController.asFraction(640, 480));
+        assertEquals("1:1", CameraController.asFraction(720, 720));
+    }
+
+    private static void assertArea(RegionOfInterest expected, RegionOfInterest actual) {
+        assertEquals("left", expected.getLeft(), actual.getLeft(), 1e-6f);
+        assertEquals("top", expected.getTop(), actual.getTop(), 1e-6f);
+        assertEquals("right", expected.getRight(), actual.getRight(), 1e-6f);
+        assertEquals("bottom", expected.getBottom(), actual.getBottom(), 1e-6f);
+    }
+}
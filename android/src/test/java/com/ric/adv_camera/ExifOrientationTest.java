@@ -0,0 +1,105 @@
+package com.ric.adv_camera;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ExifOrientationTest {
+
+    private static final byte[] SOI = {(byte) 0xFF, (byte) 0xD8};
+    private static final byte[] SOS_AND_DATA = {(byte) 0xFF, (byte) 0xDA, 0, 2, 1, 2, 3};
+    private static final byte[] JFIF = {
+            (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0};
+
+    @Test
+    public void forRotationMapsQuarterTurns() {
+        assertEquals(ExifOrientation.ORIENTATION_NORMAL, ExifOrientation.forRotation(0));
+        assertEquals(ExifOrientation.ORIENTATION_ROTATE_90, ExifOrientation.forRotation(90));
+        assertEquals(ExifOrientation.ORIENTATION_ROTATE_180, ExifOrientation.forRotation(180));
+        assertEquals(ExifOrientation.ORIENTATION_ROTATE_270, ExifOrientation.forRotation(270));
+    }
+
+    @Test
+    public void jpegWithoutExifGetsSegmentAfterSoi() {
+        byte[] jpeg = concat(SOI, SOS_AND_DATA);
+        assertEquals(2, ExifOrientation.apply(jpeg, ExifOrientation.ORIENTATION_ROTATE_90));
+    }
+
+    @Test
+    public void jfifKeepsItsApp0First() {
+        byte[] jpeg = concat(SOI, JFIF, SOS_AND_DATA);
+        assertEquals(2 + JFIF.length, ExifOrientation.apply(jpeg, ExifOrientation.ORIENTATION_ROTATE_90));
+    }
+
+    @Test
+    public void insertedSegmentIsReadBack() {
+        byte[] jpeg = concat(SOI, ExifOrientation.segment(ExifOrientation.ORIENTATION_ROTATE_270), SOS_AND_DATA);
+        assertEquals(ExifOrientation.PATCHED, ExifOrientation.apply(jpeg, ExifOrientation.ORIENTATION_ROTATE_180));
+        assertArrayEquals(
+                concat(SOI, ExifOrientation.segment(ExifOrientation.ORIENTATION_ROTATE_180), SOS_AND_DATA),
+                jpeg);
+    }
+
+    @Test
+    public void littleEndianTagIsPatchedInPlace() {
+        byte[] exif = {
+                (byte) 0xFF, (byte) 0xE1, 0, 46,
+                'E', 'x', 'i', 'f', 0, 0,
+                'I', 'I', 42, 0, 8, 0, 0, 0,
+                2, 0,
+                // Make, ASCII, 4 bytes inline.
+                0x0F, 0x01, 2, 0, 4, 0, 0, 0, 'A', 'B', 'C', 0,
+                // Orientation 1.
+                0x12, 0x01, 3, 0, 1, 0, 0, 0, 1, 0, 0, 0,
+                0, 0, 0, 0,
+        };
+        byte[] jpeg = concat(SOI, exif, SOS_AND_DATA);
+        int length = jpeg.length;
+
+        assertEquals(ExifOrientation.PATCHED, ExifOrientation.apply(jpeg, ExifOrientation.ORIENTATION_ROTATE_90));
+
+        assertEquals(length, jpeg.length);
+        int value = 2 + 4 + 6 + 8 + 2 + 12 + 8;
+        assertEquals(ExifOrientation.ORIENTATION_ROTATE_90, jpeg[value]);
+        assertEquals(0, jpeg[value + 1]);
+    }
+
+    @Test
+    public void exifWithoutOrientationTagIsUnsupported() {
+        byte[] exif = {
+                (byte) 0xFF, (byte) 0xE1, 0, 34,
+                'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8,
+                0, 1,
+                0x01, 0x0F, 0, 2, 0, 0, 0, 4, 'A', 'B', 'C', 0,
+                0, 0, 0, 0,
+        };
+        byte[] jpeg = concat(SOI, exif, SOS_AND_DATA);
+        byte[] original = jpeg.clone();
+
+        assertEquals(ExifOrientation.UNSUPPORTED, ExifOrientation.apply(jpeg, ExifOrientation.ORIENTATION_ROTATE_90));
+        assertArrayEquals(original, jpeg);
+    }
+
+    @Test
+    public void notAJpegIsUnsupported() {
+        assertEquals(ExifOrientation.UNSUPPORTED, ExifOrientation.apply(new byte[] {1, 2, 3, 4}, 1));
+    }
+
+    @Test
+    public void truncatedSegmentIsUnsupported() {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0, 40, 'E', 'x'};
+        assertEquals(ExifOrientation.UNSUPPORTED, ExifOrientation.apply(jpeg, 1));
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.write(part, 0, part.length);
+        }
+        return output.toByteArray();
+    }
+}
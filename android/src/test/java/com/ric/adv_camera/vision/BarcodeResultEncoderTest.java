@@ -0,0 +1,191 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class BarcodeResultEncoderTest {
+
+    /** Also pinned in test/barcodes_test.dart, which decodes the same bytes. */
+    private static final byte[] PINNED = {
+            1, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0x29, 0x40,
+            0, 1, 0, 0, 7, 0, 0, 0,
+            1, 1, 0, 0, 0, 2, 0, 0, 0, 3, 0, 0, 0, 4, 0, 0, 0,
+            1, 5, 0, 0, 0, 6, 0, 0, 0,
+            1, 0, 0, 0, 'A',
+            -1, -1, -1, -1,
+    };
+
+    /** {@link #PINNED}'s barcode as a {@link BarcodeTracker#LOST} event of track 7. */
+    private static final byte[] PINNED_TRACK_EVENT = {
+            1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0x29, 0x40,
+            2, 7, 0, 0, 0,
+            0, 1, 0, 0, 7, 0, 0, 0,
+            1, 1, 0, 0, 0, 2, 0, 0, 0, 3, 0, 0, 0, 4, 0, 0, 0,
+            1, 5, 0, 0, 0, 6, 0, 0, 0,
+            1, 0, 0, 0, 'A',
+            -1, -1, -1, -1,
+    };
+
+    private final BarcodeResultEncoder encoder = new BarcodeResultEncoder();
+
+    @Test
+    public void layoutIsPinned() {
+        encoder.begin(12.5);
+        encoder.beginBarcode(0x0100, 7, true, 1, 2, 3, 4);
+        encoder.addPoint(5, 6);
+        encoder.endBarcode("A", null);
+
+        assertArrayEquals(PINNED, encoder.finish());
+    }
+
+    @Test
+    public void trackEventLayoutIsPinned() {
+        encoder.beginTrackEvents(12.5);
+        encoder.beginTrackEvent(BarcodeTracker.LOST, 7);
+        encoder.beginBarcode(0x0100, 7, true, 1, 2, 3, 4);
+        encoder.addPoint(5, 6);
+        encoder.endBarcode("A", null);
+
+        assertArrayEquals(PINNED_TRACK_EVENT, encoder.finish());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void trackEventNeedsATrackEventMessage() {
+        encoder.begin(0);
+        encoder.beginTrackEvent(BarcodeTracker.APPEARED, 1);
+    }
+
+    @Test
+    public void beginResetsTheKind() {
+        encoder.beginTrackEvents(12.5);
+        encoder.beginTrackEvent(BarcodeTracker.UPDATED, 3);
+        encoder.beginBarcode(1, 1, false, 0, 0, 0, 0);
+        encoder.endBarcode("old", "old");
+        encoder.finish();
+
+        encoder.begin(12.5);
+        encoder.beginBarcode(0x0100, 7, true, 1, 2, 3, 4);
+        encoder.addPoint(5, 6);
+        encoder.endBarcode("A", null);
+
+        assertArrayEquals(PINNED, encoder.finish());
+    }
+
+    @Test
+    public void nullStringsAndMissingBounds() {
+        encoder.begin(0);
+        encoder.beginBarcode(1, 0, false, 9, 9, 9, 9);
+        encoder.endBarcode(null, null);
+
+        ByteBuffer message = wrap(encoder.finish());
+        message.position(12 + 8);
+        assertEquals(0, message.get());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("bounds are zeroed", 0, message.getInt());
+        }
+        assertEquals(0, message.get());
+        assertNull(readString(message));
+        assertNull(readString(message));
+        assertEquals(0, message.remaining());
+    }
+
+    @Test
+    public void encodesUtf8LikeString() {
+        String value = "a\u00e9\u20ac\ud83d\ude00z";
+
+        assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), encodeValue(value));
+    }
+
+    @Test
+    public void unpairedSurrogateBecomesQuestionMark() {
+        assertArrayEquals(new byte[] {'a', '?', 'b'}, encodeValue("a\ud83db"));
+        assertArrayEquals(new byte[] {'a', '?'}, encodeValue("a\ude00"));
+    }
+
+    @Test
+    public void manyBarcodesWithPointsGrowTheBuffer() {
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longValue.append("\ud83d\ude00");
+        }
+
+        encoder.begin(33.25);
+        for (int i = 0; i < 25; i++) {
+            encoder.beginBarcode(0x0100, 7, true, i, i + 1, 10, 20);
+            for (int p = 0; p < 4; p++) {
+                encoder.addPoint(i * 10 + p, -p);
+            }
+            encoder.endBarcode("value " + i, longValue.toString());
+        }
+        assertEquals(25, encoder.getCount());
+
+        ByteBuffer message = wrap(encoder.finish());
+        assertEquals(25, message.getShort(2));
+        assertEquals(33.25, message.getDouble(4), 0);
+        message.position(12);
+        for (int i = 0; i < 25; i++) {
+            assertEquals(0x0100, message.getInt());
+            assertEquals(7, message.getInt());
+            assertEquals(1, message.get());
+            assertEquals(i, message.getInt());
+            assertEquals(i + 1, message.getInt());
+            assertEquals(10, message.getInt());
+            assertEquals(20, message.getInt());
+            assertEquals(4, message.get());
+            for (int p = 0; p < 4; p++) {
+                assertEquals(i * 10 + p, message.getInt());
+                assertEquals(-p, message.getInt());
+            }
+            assertEquals("value " + i, readString(message));
+            assertEquals(longValue.toString(), readString(message));
+        }
+        assertEquals(0, message.remaining());
+    }
+
+    @Test
+    public void beginDiscardsThePreviousMessage() {
+        encoder.begin(1);
+        encoder.beginBarcode(1, 1, false, 0, 0, 0, 0);
+        encoder.endBarcode("old", "old");
+        encoder.finish();
+
+        encoder.begin(12.5);
+        encoder.beginBarcode(0x0100, 7, true, 1, 2, 3, 4);
+        encoder.addPoint(5, 6);
+        encoder.endBarcode("A", null);
+
+        assertArrayEquals(PINNED, encoder.finish());
+    }
+
+    private byte[] encodeValue(String value) {
+        encoder.begin(0);
+        encoder.beginBarcode(0, 0, false, 0, 0, 0, 0);
+        encoder.endBarcode(value, null);
+        ByteBuffer message = wrap(encoder.finish());
+        message.position(12 + 26);
+        byte[] bytes = new byte[message.getInt()];
+        message.get(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer wrap(byte[] message) {
+        return ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String readString(ByteBuffer message) {
+        int length = message.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        message.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,154 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BarcodeTrackerTest {
+
+    private static final int QR = 256;
+
+    /** A detected barcode: value and box. */
+    private static final class Code {
+        final String value;
+        final int left;
+        final int top;
+        final int right;
+        final int bottom;
+
+        Code(String value, int left, int top, int size) {
+            this.value = value;
+            this.left = left;
+            this.top = top;
+            this.right = left + size;
+            this.bottom = top + size;
+        }
+    }
+
+    private final BarcodeTracker<Code> tracker = new BarcodeTracker<>(2, 2);
+
+    /** Feeds one detection result and returns a copy of its events. */
+    private List<BarcodeTracker.Event<Code>> frame(Code... codes) {
+        tracker.beginFrame();
+        for (Code code : codes) {
+            tracker.addDetection(code.value, QR, code.left, code.top, code.right, code.bottom, code);
+        }
+        return new ArrayList<>(tracker.endFrame());
+    }
+
+    @Test
+    public void reportsACodeOnceItIsConfirmed() {
+        assertTrue(frame(new Code("a", 0, 0, 100)).isEmpty());
+
+        Code code = new Code("a", 2, 2, 100);
+        List<BarcodeTracker.Event<Code>> events = frame(code);
+        assertEquals(1, events.size());
+        BarcodeTracker.Event<Code> event = events.get(0);
+        assertEquals(BarcodeTracker.APPEARED, event.type);
+        assertEquals("a", event.value);
+        assertEquals(QR, event.format);
+        assertEquals(102, event.right);
+        assertSame(code, event.barcode);
+
+        // Jitter is not a move.
+        assertTrue(frame(new Code("a", 4, 4, 100)).isEmpty());
+    }
+
+    @Test
+    public void equalCodesSideBySideKeepTheirIds() {
+        frame(new Code("a", 0, 0, 100), new Code("a", 500, 0, 100));
+        List<BarcodeTracker.Event<Code>> appeared =
+                frame(new Code("a", 5, 0, 100), new Code("a", 505, 0, 100));
+        assertEquals(2, appeared.size());
+        int leftId = appeared.get(0).left < 250 ? appeared.get(0).trackId : appeared.get(1).trackId;
+        int rightId = appeared.get(0).left < 250 ? appeared.get(1).trackId : appeared.get(0).trackId;
+        assertNotEquals(leftId, rightId);
+
+        // Both move far enough to be reported, detected in the opposite order; each update has to
+        // stay with the track whose box it overlaps.
+        List<BarcodeTracker.Event<Code>> moved =
+                frame(new Code("a", 545, 0, 100), new Code("a", 45, 0, 100));
+        assertEquals(2, moved.size());
+        for (BarcodeTracker.Event<Code> event : moved) {
+            assertEquals(BarcodeTracker.UPDATED, event.type);
+            assertEquals(event.left < 250 ? leftId : rightId, event.trackId);
+        }
+        assertEquals(2, tracker.getTrackCount());
+    }
+
+    @Test
+    public void onlyCandidateFollowsAJump() {
+        frame(new Code("a", 0, 0, 100));
+        int id = frame(new Code("a", 0, 0, 100)).get(0).trackId;
+
+        List<BarcodeTracker.Event<Code>> events = frame(new Code("a", 900, 900, 100));
+        assertEquals(1, events.size());
+        assertEquals(BarcodeTracker.UPDATED, events.get(0).type);
+        assertEquals(id, events.get(0).trackId);
+    }
+
+    @Test
+    public void differentValuesAreDifferentTracks() {
+        frame(new Code("a", 0, 0, 100), new Code("b", 0, 0, 100));
+        List<BarcodeTracker.Event<Code>> events =
+                frame(new Code("a", 0, 0, 100), new Code("b", 0, 0, 100));
+        assertEquals(2, events.size());
+        assertNotEquals(events.get(0).trackId, events.get(1).trackId);
+    }
+
+    @Test
+    public void reportsLostAfterMissedFrames() {
+        frame(new Code("a", 0, 0, 100));
+        int id = frame(new Code("a", 0, 0, 100)).get(0).trackId;
+
+        assertTrue(frame().isEmpty());
+        List<BarcodeTracker.Event<Code>> events = frame();
+        assertEquals(1, events.size());
+        assertEquals(BarcodeTracker.LOST, events.get(0).type);
+        assertEquals(id, events.get(0).trackId);
+        assertEquals(0, tracker.getTrackCount());
+    }
+
+    @Test
+    public void misreadIsDroppedSilently() {
+        frame(new Code("typo", 0, 0, 100));
+        assertTrue(frame().isEmpty());
+        assertTrue(frame().isEmpty());
+        assertEquals(0, tracker.getTrackCount());
+    }
+
+    @Test
+    public void gapRestartsConfirmation() {
+        frame(new Code("a", 0, 0, 100));
+        frame();
+        assertTrue(frame(new Code("a", 0, 0, 100)).isEmpty());
+        assertEquals(BarcodeTracker.APPEARED, frame(new Code("a", 0, 0, 100)).get(0).type);
+    }
+
+    @Test
+    public void resetLosesConfirmedTracksOnly() {
+        frame(new Code("a", 0, 0, 100));
+        frame(new Code("a", 0, 0, 100), new Code("b", 300, 0, 100));
+
+        List<BarcodeTracker.Event<Code>> events = tracker.reset();
+        assertEquals(1, events.size());
+        assertEquals("a", events.get(0).value);
+        assertEquals(BarcodeTracker.LOST, events.get(0).type);
+        assertEquals(0, tracker.getTrackCount());
+    }
+
+    @Test
+    public void intersectionOverUnion() {
+        assertEquals(1f, BarcodeTracker.iou(0, 0, 10, 10, 0, 0, 10, 10), 1e-6f);
+        // Half overlap: 50 / (100 + 100 - 50).
+        assertEquals(1f / 3, BarcodeTracker.iou(0, 0, 10, 10, 5, 0, 15, 10), 1e-6f);
+        assertEquals(0f, BarcodeTracker.iou(0, 0, 10, 10, 10, 0, 20, 10), 0f);
+        assertEquals(0f, BarcodeTracker.iou(0, 0, 0, 0, 0, 0, 10, 10), 0f);
+    }
+}
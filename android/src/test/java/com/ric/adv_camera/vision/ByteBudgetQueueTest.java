@@ -0,0 +1,69 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ByteBudgetQueueTest {
+
+    private final ByteBudgetQueue<String> queue = new ByteBudgetQueue<>(100);
+
+    @Test
+    public void offerReservesTheBytes() {
+        assertTrue(queue.offer("a", 30));
+        assertTrue(queue.offer("b", 70));
+
+        assertEquals(100, queue.getReservedBytes());
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void pollKeepsTheBytesUntilRelease() {
+        queue.offer("a", 60);
+        queue.poll();
+
+        assertEquals(60, queue.getReservedBytes());
+        assertFalse("still being encoded", queue.offer("b", 60));
+
+        queue.release(60);
+
+        assertEquals(0, queue.getReservedBytes());
+        assertTrue(queue.offer("b", 60));
+    }
+
+    @Test
+    public void overBudgetItemIsRejectedWithoutReserving() {
+        queue.offer("a", 80);
+
+        assertFalse(queue.fits(21));
+        assertFalse(queue.offer("b", 21));
+        assertEquals(80, queue.getReservedBytes());
+
+        assertTrue("a smaller item still fits", queue.fits(20));
+        assertTrue(queue.offer("c", 20));
+        assertEquals("a", queue.poll());
+        assertEquals("c", queue.poll());
+    }
+
+    @Test
+    public void itemLargerThanTheBudgetNeverFits() {
+        assertFalse(queue.offer("a", 101));
+        assertEquals(0, queue.getReservedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasingMoreThanReservedThrows() {
+        queue.offer("a", 10);
+        queue.release(11);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBudget() {
+        new ByteBudgetQueue<String>(0);
+    }
+}
@@ -0,0 +1,162 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DetectionRateControllerTest {
+
+    private static final double FRAME_INTERVAL_MS = 1000.0 / 30;
+
+    private final DetectionRateController controller = new DetectionRateController();
+
+    /** Feeds {@code frames} frames at 30 fps, each up to {@code jitterMs} early or late. */
+    private int countDetections(int frames, int jitterMs) {
+        Random random = new Random(42);
+        int detections = 0;
+        for (int i = 0; i < frames; i++) {
+            long jitter = jitterMs > 0 ? random.nextInt(2 * jitterMs + 1) - jitterMs : 0;
+            if (controller.shouldProcess(Math.round(i * FRAME_INTERVAL_MS) + jitter)) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    private void reportLatency(long latencyMs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            controller.onDetectorLatency(latencyMs);
+        }
+    }
+
+    @Test
+    public void processesEveryFrameByDefault() {
+        assertEquals(30, countDetections(30, 0));
+        assertEquals(0, controller.getSkippedFrameCount());
+    }
+
+    @Test
+    public void strideSkipsFrames() {
+        controller.setFrameStride(3);
+
+        assertFalse(controller.shouldProcess(0));
+        assertFalse(controller.shouldProcess(33));
+        assertTrue(controller.shouldProcess(67));
+        assertEquals(3, countDetections(9, 0));
+        assertEquals(8, controller.getSkippedFrameCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsStrideBelowOne() {
+        controller.setFrameStride(0);
+    }
+
+    @Test
+    public void targetRateHoldsUnderJitter() {
+        controller.setTargetDetectionsPerSecond(10);
+
+        // Ten seconds of frames, some of which land just before a detection is due.
+        int detections = countDetections(300, 2);
+
+        assertTrue("detections: " + detections, detections >= 99 && detections <= 100);
+    }
+
+    @Test
+    public void targetRateWithoutJitter() {
+        controller.setTargetDetectionsPerSecond(10);
+        assertEquals(100, countDetections(300, 0));
+    }
+
+    @Test
+    public void maxRateCapsTheTarget() {
+        controller.setTargetDetectionsPerSecond(10);
+        controller.setMaxDetectionsPerSecond(5);
+        assertEquals(50, countDetections(300, 2));
+
+        controller.reset();
+        controller.setMaxDetectionsPerSecond(20);
+        assertEquals("a cap above the target changes nothing", 100, countDetections(300, 0));
+    }
+
+    @Test
+    public void maxRateAppliesWithoutATarget() {
+        controller.setMaxDetectionsPerSecond(5);
+        assertEquals(50, countDetections(300, 0));
+    }
+
+    @Test
+    public void pauseIsNotMadeUpWithABurst() {
+        controller.setTargetDetectionsPerSecond(10);
+        assertTrue(controller.shouldProcess(0));
+        assertFalse(controller.shouldProcess(50));
+
+        // The camera stalls for a second.
+        assertTrue(controller.shouldProcess(1050));
+        assertTrue("one early detection", controller.shouldProcess(1083));
+        assertFalse(controller.shouldProcess(1117));
+        assertTrue("back on the interval", controller.shouldProcess(1150));
+        assertFalse(controller.shouldProcess(1183));
+    }
+
+    @Test
+    public void latencyOverBudgetBacksOffAndRecovers() {
+        controller.setLatencyBudgetMs(100);
+
+        reportLatency(200, 4);
+        assertEquals("adjusts every fifth sample", 1.0, controller.getBackoff(), 0);
+        reportLatency(200, 1);
+        assertEquals(1.5, controller.getBackoff(), 1e-9);
+        reportLatency(200, 5);
+        assertEquals(2.25, controller.getBackoff(), 1e-9);
+        assertEquals(200, controller.getAverageLatencyMs(), 1e-9);
+
+        reportLatency(10, 5);
+        assertEquals(1.8, controller.getBackoff(), 1e-9);
+        reportLatency(10, 100);
+        assertEquals(1.0, controller.getBackoff(), 1e-9);
+    }
+
+    @Test
+    public void backOffStretchesTheStride() {
+        controller.setFrameStride(2);
+        controller.setLatencyBudgetMs(100);
+        reportLatency(200, 5);
+
+        assertEquals(10, countDetections(30, 0));
+    }
+
+    @Test
+    public void backOffStretchesTheTargetInterval() {
+        controller.setTargetDetectionsPerSecond(10);
+        controller.setLatencyBudgetMs(100);
+        reportLatency(200, 5);
+
+        assertTrue(controller.shouldProcess(0));
+        assertFalse(controller.shouldProcess(100));
+        assertTrue(controller.shouldProcess(150));
+    }
+
+    @Test
+    public void latencyIgnoredWithoutBudget() {
+        reportLatency(10000, 20);
+        assertEquals(1.0, controller.getBackoff(), 0);
+    }
+
+    @Test
+    public void resetStartsAFreshSession() {
+        controller.setTargetDetectionsPerSecond(10);
+        controller.setLatencyBudgetMs(100);
+        reportLatency(200, 5);
+        controller.shouldProcess(0);
+
+        controller.reset();
+
+        assertEquals(1.0, controller.getBackoff(), 0);
+        assertEquals(-1, controller.getAverageLatencyMs(), 0);
+        assertTrue(controller.shouldProcess(10));
+    }
+}
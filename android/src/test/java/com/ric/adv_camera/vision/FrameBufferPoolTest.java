@@ -0,0 +1,78 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void buffersOfOneLeaseHaveTheirOwnPosition() {
+        FrameBufferPool pool = new FrameBufferPool(1, 8);
+        FrameBufferPool.Lease lease = pool.acquire();
+        lease.array()[3] = 42;
+
+        ByteBuffer first = lease.getBuffer();
+        ByteBuffer second = lease.getBuffer();
+        first.position(5);
+        first.limit(6);
+
+        assertNotSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(8, second.limit());
+        assertEquals(42, second.get(3));
+        assertSame(lease.array(), second.array());
+    }
+
+    @Test
+    public void bufferGoesBackToTheRecyclerAfterTheLastRelease() {
+        FrameBufferPool pool = new FrameBufferPool(2, 4);
+        final List<byte[]> recycled = new ArrayList<>();
+        pool.attach(new FrameBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                recycled.add(buffer);
+            }
+        });
+        byte[] data = recycled.remove(0);
+        recycled.clear();
+
+        FrameBufferPool.Lease lease = pool.lease(data);
+        lease.retain();
+        assertNull(pool.lease(data));
+
+        lease.release();
+        assertEquals(0, recycled.size());
+        lease.release();
+        assertEquals(1, recycled.size());
+        assertSame(data, recycled.get(0));
+        assertEquals(0, pool.getLeasesHeld());
+    }
+
+    @Test
+    public void acquireCountsStarvationWhenEveryBufferIsOut() {
+        FrameBufferPool pool = new FrameBufferPool(1, 4);
+        FrameBufferPool.Lease lease = pool.acquire();
+
+        assertNull(pool.acquire());
+        assertEquals(2, pool.getStarvationCount());
+
+        lease.release();
+        assertSame(lease, pool.acquire());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasingTooOftenThrows() {
+        FrameBufferPool pool = new FrameBufferPool(1, 4);
+        FrameBufferPool.Lease lease = pool.acquire();
+        lease.release();
+        lease.release();
+    }
+}
@@ -0,0 +1,144 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameRecorderTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int FRAME_SIZE = Nv21Utils.frameSize(WIDTH, HEIGHT);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] frame(int index, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (index * 31 + i);
+        }
+        return data;
+    }
+
+    private static FrameMetadata metadata(int index) {
+        return new FrameMetadata.Builder()
+                .setWidth(WIDTH)
+                .setHeight(HEIGHT)
+                .setRotation(index % 4 * 90)
+                .setTimestampMs(1_000_000L + index * 33L)
+                .build();
+    }
+
+    private static void assertFrame(CaptureReader reader, int index, int length) throws IOException {
+        assertTrue("frame " + index, reader.advance());
+        assertEquals(1_000_000L + index * 33L, reader.getTimestampMs());
+        assertEquals(WIDTH, reader.getWidth());
+        assertEquals(HEIGHT, reader.getHeight());
+        assertEquals(index % 4 * 90, reader.getRotation());
+        assertEquals(length, reader.getLength());
+
+        FrameMetadata metadata = reader.getMetadata();
+        assertEquals(reader.getTimestampMs(), metadata.getTimestampMs());
+        assertEquals(reader.getRotation(), metadata.getRotation());
+
+        byte[] data = new byte[length];
+        reader.readData(data);
+        assertArrayEquals("data of frame " + index, frame(index, length), data);
+    }
+
+    @Test
+    public void roundTripsFramesAcrossChunkBoundaries() throws IOException {
+        // Enough frames for the recording to span three mapped chunks.
+        int frames = (int) (2 * FrameRecorder.CHUNK_SIZE / FRAME_SIZE) + 4;
+        File file = folder.newFile();
+        try (FrameRecorder recorder = new FrameRecorder(file, Long.MAX_VALUE)) {
+            for (int i = 0; i < frames; i++) {
+                // Only the first bytes of a pooled buffer are the frame.
+                assertTrue(recorder.record(Arrays.copyOf(frame(i, FRAME_SIZE), FRAME_SIZE + 64),
+                        FRAME_SIZE, metadata(i)));
+            }
+            assertEquals(frames, recorder.getFrameCount());
+        }
+
+        long expectedSize = FrameRecorder.HEADER_SIZE
+                + (long) frames * (FrameRecorder.RECORD_HEADER_SIZE + FRAME_SIZE);
+        assertEquals("trimmed on close", expectedSize, file.length());
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            for (int i = 0; i < frames; i++) {
+                assertFrame(reader, i, FRAME_SIZE);
+            }
+            assertFalse(reader.advance());
+
+            reader.rewind();
+            assertFrame(reader, 0, FRAME_SIZE);
+        }
+    }
+
+    @Test
+    public void frameSizeMayChange() throws IOException {
+        File file = folder.newFile();
+        try (FrameRecorder recorder = new FrameRecorder(file, Long.MAX_VALUE)) {
+            recorder.record(frame(0, 100), 100, metadata(0));
+            recorder.record(frame(1, 0), 0, metadata(1));
+            recorder.record(frame(2, 300), 300, metadata(2));
+        }
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertFrame(reader, 0, 100);
+            assertFrame(reader, 1, 0);
+            assertFrame(reader, 2, 300);
+            assertFalse(reader.advance());
+        }
+    }
+
+    @Test
+    public void stopsRecordingAtMaxBytes() throws IOException {
+        File file = folder.newFile();
+        long maxBytes = FrameRecorder.HEADER_SIZE + 2 * (FrameRecorder.RECORD_HEADER_SIZE + 100);
+        try (FrameRecorder recorder = new FrameRecorder(file, maxBytes)) {
+            assertTrue(recorder.record(frame(0, 100), 100, metadata(0)));
+            assertTrue(recorder.record(frame(1, 100), 100, metadata(1)));
+            assertFalse(recorder.record(frame(2, 100), 100, metadata(2)));
+            assertEquals(2, recorder.getFrameCount());
+            assertEquals(maxBytes, recorder.getBytesWritten());
+        }
+        assertEquals(maxBytes, file.length());
+    }
+
+    @Test
+    public void recordingThatWasNotClosedEndsAtTheZeroedTail() throws IOException {
+        File file = folder.newFile();
+        FrameRecorder recorder = new FrameRecorder(file, Long.MAX_VALUE);
+        recorder.record(frame(0, 100), 100, metadata(0));
+        // Without close() the file keeps the zeroed end of the mapped chunk.
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertFrame(reader, 0, 100);
+            assertFalse(reader.advance());
+        } finally {
+            recorder.close();
+        }
+        assertFalse(recorder.record(frame(1, 100), 100, metadata(1)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAFileThatIsNotACapture() throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[FrameRecorder.HEADER_SIZE]);
+        }
+        new CaptureReader(file).close();
+    }
+}
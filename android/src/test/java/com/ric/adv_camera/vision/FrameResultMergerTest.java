@@ -0,0 +1,110 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FrameResultMergerTest {
+
+    private static final List<String> BOTH = Arrays.asList("barcode", "labels");
+
+    private final List<Long> timestamps = new ArrayList<>();
+    private final List<Map<String, Object>> merged = new ArrayList<>();
+    private final FrameResultMerger merger = new FrameResultMerger(new FrameResultMerger.Listener() {
+        @Override
+        public void onMergedResults(long timestampMs, Map<String, Object> results) {
+            timestamps.add(timestampMs);
+            merged.add(results);
+        }
+    });
+
+    @Test
+    public void frameIsHandedOnOnceEveryProcessorReported() {
+        merger.expect(100, BOTH);
+        merger.onResult("barcode", 100, "code");
+        assertTrue(merged.isEmpty());
+
+        merger.onResult("labels", 100, "cat");
+
+        assertEquals(Collections.singletonList(100L), timestamps);
+        assertEquals("code", merged.get(0).get("barcode"));
+        assertEquals("cat", merged.get(0).get("labels"));
+    }
+
+    @Test
+    public void framesAreHandedOnInTimestampOrder() {
+        merger.expect(100, Collections.singletonList("barcode"));
+        merger.expect(200, Collections.singletonList("labels"));
+
+        merger.onResult("labels", 200, "cat");
+        assertTrue("waits for the older frame", merged.isEmpty());
+
+        merger.onResult("barcode", 100, "code");
+
+        assertEquals(Arrays.asList(100L, 200L), timestamps);
+    }
+
+    @Test
+    public void newerResultSkipsTheOlderFrameItOwed() {
+        merger.expect(100, BOTH);
+        merger.expect(200, BOTH);
+        merger.onResult("barcode", 100, "code 1");
+        merger.onResult("barcode", 200, "code 2");
+
+        // The label processor was busy and dropped frame 100.
+        merger.onResult("labels", 200, "cat");
+
+        assertEquals(Arrays.asList(100L, 200L), timestamps);
+        assertEquals(1, merged.get(0).size());
+        assertEquals("code 1", merged.get(0).get("barcode"));
+        assertEquals(2, merged.get(1).size());
+
+        // A late result for a frame already handed on is ignored.
+        merger.onResult("labels", 100, "dog");
+        assertEquals(2, merged.size());
+    }
+
+    @Test
+    public void frameWithoutResultsIsNotHandedOn() {
+        merger.expect(100, BOTH);
+        merger.expect(200, BOTH);
+
+        merger.onResult("barcode", 200, "code");
+        merger.onResult("labels", 200, "cat");
+
+        assertEquals(Collections.singletonList(200L), timestamps);
+    }
+
+    @Test
+    public void atMostEightFramesWait() {
+        merger.expect(0, BOTH);
+        merger.onResult("barcode", 0, "code");
+        for (int i = 1; i < FrameResultMerger.MAX_PENDING_FRAMES; i++) {
+            merger.expect(i * 33, BOTH);
+        }
+        assertTrue(merged.isEmpty());
+
+        merger.expect(FrameResultMerger.MAX_PENDING_FRAMES * 33, BOTH);
+
+        assertEquals("the oldest is handed on incomplete", Collections.singletonList(0L), timestamps);
+        assertEquals("code", merged.get(0).get("barcode"));
+    }
+
+    @Test
+    public void clearDropsPendingFrames() {
+        merger.expect(100, BOTH);
+        merger.onResult("barcode", 100, "code");
+
+        merger.clear();
+        merger.onResult("labels", 100, "cat");
+
+        assertTrue(merged.isEmpty());
+    }
+}
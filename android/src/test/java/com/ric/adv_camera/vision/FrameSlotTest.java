@@ -0,0 +1,110 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class FrameSlotTest {
+
+    private final FrameBufferPool pool = new FrameBufferPool(3, 4);
+    private final FrameSlot slot = new FrameSlot();
+
+    @Test
+    public void newerFrameReplacesAndReleasesTheWaitingOne() throws InterruptedException {
+        FrameBufferPool.Lease first = pool.acquire();
+        FrameBufferPool.Lease second = pool.acquire();
+
+        assertFalse(slot.offer(first));
+        assertTrue(slot.offer(second));
+
+        assertEquals(1, slot.getDroppedCount());
+        // The dropped frame's buffer is free again, the kept one is still leased.
+        assertEquals(1, pool.getLeasesHeld());
+        assertSame(second, slot.take());
+    }
+
+    @Test
+    public void takeWakesUpForAFrameOfferedWhileWaiting() throws Exception {
+        final AtomicReference<FrameBufferPool.Lease> taken = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = startConsumer(taken, done);
+        waitUntilParked(consumer);
+
+        FrameBufferPool.Lease frame = pool.acquire();
+        slot.offer(frame);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(frame, taken.get());
+    }
+
+    @Test
+    public void closeWakesUpTheConsumerWithNull() throws Exception {
+        final AtomicReference<FrameBufferPool.Lease> taken = new AtomicReference<>(pool.acquire());
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = startConsumer(taken, done);
+        waitUntilParked(consumer);
+
+        slot.close();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNull(taken.get());
+    }
+
+    @Test
+    public void closedSlotReleasesFramesInsteadOfKeepingThem() throws InterruptedException {
+        slot.offer(pool.acquire());
+        slot.close();
+        assertEquals(0, pool.getLeasesHeld());
+
+        slot.offer(pool.acquire());
+        assertEquals(0, pool.getLeasesHeld());
+        assertNull(slot.take());
+
+        slot.open();
+        FrameBufferPool.Lease frame = pool.acquire();
+        slot.offer(frame);
+        assertSame(frame, slot.take());
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void interruptedConsumerStopsWaiting() throws InterruptedException {
+        Thread.currentThread().interrupt();
+        slot.take();
+    }
+
+    private Thread startConsumer(
+            final AtomicReference<FrameBufferPool.Lease> taken, final CountDownLatch done) {
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(slot.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        });
+        consumer.setDaemon(true);
+        consumer.start();
+        return consumer;
+    }
+
+    private static void waitUntilParked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Consumer never started waiting");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram(10000, 1000);
+
+    private void record(int times, long latencyMs, long nowMs) {
+        for (int i = 0; i < times; i++) {
+            histogram.record(latencyMs, nowMs);
+        }
+    }
+
+    @Test
+    public void percentilesAreBucketBounds() {
+        record(50, 5, 0);
+        record(45, 50, 100);
+        record(4, 200, 200);
+        record(1, 5000, 300);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(300);
+
+        assertEquals(100, snapshot.count);
+        assertEquals(83.0, snapshot.meanMs, 1e-9);
+        assertEquals(5, snapshot.p50Ms);
+        assertEquals(50, snapshot.p95Ms);
+        assertEquals(200, snapshot.p99Ms);
+    }
+
+    @Test
+    public void samplesRoundUpToTheirBucket() {
+        histogram.record(7, 0);
+        assertEquals(8, histogram.snapshot(0).p50Ms);
+    }
+
+    @Test
+    public void overflowIsReportedAsTheLargestBound() {
+        histogram.record(60000, 0);
+        assertEquals(2000, histogram.snapshot(0).p99Ms);
+    }
+
+    @Test
+    public void samplesLeaveTheWindow() {
+        histogram.record(10, 0);
+        histogram.record(20, 5000);
+
+        assertEquals(2, histogram.snapshot(9999).count);
+        LatencyHistogram.Snapshot later = histogram.snapshot(10000);
+        assertEquals(1, later.count);
+        assertEquals(20, later.p50Ms);
+        assertEquals(0, histogram.snapshot(15000).count);
+    }
+
+    @Test
+    public void reusedSlotForgetsItsOldSamples() {
+        record(3, 10, 0);
+        // Same slot, one window later.
+        histogram.record(100, 10500);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(10500);
+        assertEquals(1, snapshot.count);
+        assertEquals(100, snapshot.p50Ms);
+    }
+
+    @Test
+    public void lateSampleForARecycledSlotIsIgnored() {
+        histogram.record(100, 10500);
+        histogram.record(10, 500);
+
+        assertEquals(1, histogram.snapshot(10500).count);
+    }
+
+    @Test
+    public void emptyAndNegativeSamples() {
+        histogram.record(-1, 0);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(0);
+        assertEquals(0, snapshot.count);
+        assertEquals(0.0, snapshot.meanMs, 0);
+        assertEquals(0, snapshot.p99Ms);
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        record(5, 10, 0);
+        histogram.reset();
+        assertEquals(0, histogram.snapshot(0).count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWindowShorterThanASlot() {
+        new LatencyHistogram(500, 1000);
+    }
+}
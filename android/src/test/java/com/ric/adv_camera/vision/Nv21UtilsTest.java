@@ -0,0 +1,104 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class Nv21UtilsTest {
+
+    /** A 4x2 frame with neutral chroma, so every pixel decodes to the gray of its luma. */
+    private static byte[] grayFrame() {
+        byte[] nv21 = new byte[Nv21Utils.frameSize(4, 2)];
+        for (int i = 0; i < 8; i++) {
+            nv21[i] = (byte) (10 * i);
+        }
+        Arrays.fill(nv21, 8, nv21.length, (byte) 128);
+        return nv21;
+    }
+
+    private static int gray(int index) {
+        int luma = 10 * index;
+        return 0xff000000 | (luma << 16) | (luma << 8) | luma;
+    }
+
+    /** The gray pixels of {@link #grayFrame()} in the given order of source indices. */
+    private static int[] grays(int... indices) {
+        int[] pixels = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            pixels[i] = gray(indices[i]);
+        }
+        return pixels;
+    }
+
+    private static int[] toArgb(int rotation, boolean mirror, int downscale) {
+        int[] out = new int[Nv21Utils.argbWidth(4, 2, rotation, downscale)
+                * Nv21Utils.argbHeight(4, 2, rotation, downscale)];
+        Nv21Utils.toArgb(grayFrame(), 4, 2, rotation, mirror, downscale, out);
+        return out;
+    }
+
+    @Test
+    public void frameSizeRoundsChromaUp() {
+        assertEquals(4 * 2 + 4, Nv21Utils.frameSize(4, 2));
+        assertEquals(3 * 3 + 2 * 4, Nv21Utils.frameSize(3, 3));
+    }
+
+    @Test
+    public void decodesUnrotated() {
+        // Source layout:  0 1 2 3
+        //                 4 5 6 7
+        assertArrayEquals(grays(0, 1, 2, 3, 4, 5, 6, 7), toArgb(0, false, 1));
+    }
+
+    @Test
+    public void rotatesClockwise() {
+        assertEquals(2, Nv21Utils.argbWidth(4, 2, 90, 1));
+        assertEquals(4, Nv21Utils.argbHeight(4, 2, 90, 1));
+        assertArrayEquals(grays(4, 0, 5, 1, 6, 2, 7, 3), toArgb(90, false, 1));
+        assertArrayEquals(grays(7, 6, 5, 4, 3, 2, 1, 0), toArgb(180, false, 1));
+        assertArrayEquals(grays(3, 7, 2, 6, 1, 5, 0, 4), toArgb(270, false, 1));
+    }
+
+    @Test
+    public void mirrorsAfterRotating() {
+        assertArrayEquals(grays(3, 2, 1, 0, 7, 6, 5, 4), toArgb(0, true, 1));
+        assertArrayEquals(grays(0, 4, 1, 5, 2, 6, 3, 7), toArgb(90, true, 1));
+    }
+
+    @Test
+    public void downscaleSamplesEveryNthPixel() {
+        assertArrayEquals(grays(0, 2), toArgb(0, false, 2));
+    }
+
+    @Test
+    public void decodesChroma() {
+        byte[] nv21 = {(byte) 128, (byte) 255, (byte) 128};
+        int[] out = new int[1];
+        Nv21Utils.toArgb(nv21, 1, 1, 0, false, 1, out);
+
+        // V at its maximum pushes red up and green down, blue stays at the luma.
+        assertEquals(0xff000000 | (255 << 16) | (38 << 8) | 128, out[0]);
+    }
+
+    @Test
+    public void cropsBothPlanes() {
+        // 4x4 frame: luma 0..15, then two VU rows of 100..107.
+        byte[] src = new byte[Nv21Utils.frameSize(4, 4)];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i < 16 ? i : 100 + i - 16);
+        }
+        byte[] dst = new byte[Nv21Utils.frameSize(2, 2)];
+
+        Nv21Utils.crop(src, 4, 4, 2, 2, 2, 2, dst);
+
+        assertArrayEquals(new byte[] {10, 11, 14, 15, 106, 107}, dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddCrop() {
+        Nv21Utils.crop(new byte[24], 4, 4, 1, 0, 2, 2, new byte[6]);
+    }
+}
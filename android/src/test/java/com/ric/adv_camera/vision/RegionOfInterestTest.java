@@ -0,0 +1,116 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RegionOfInterestTest {
+
+    /** A 640x480 sensor frame; upright it is 480x640 at 90 and 270 degrees. */
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static void assertCrop(RegionOfInterest.Crop crop,
+                                   int left, int top, int width, int height, int offsetX, int offsetY) {
+        assertEquals("left", left, crop.left);
+        assertEquals("top", top, crop.top);
+        assertEquals("width", width, crop.width);
+        assertEquals("height", height, crop.height);
+        assertEquals("offsetX", offsetX, crop.offsetX);
+        assertEquals("offsetY", offsetY, crop.offsetY);
+    }
+
+    @Test
+    public void centerWithoutRotation() {
+        RegionOfInterest roi = new RegionOfInterest(0.25f, 0.25f, 0.75f, 0.75f);
+        assertCrop(roi.toCrop(WIDTH, HEIGHT, 0), 160, 120, 320, 240, 160, 120);
+    }
+
+    @Test
+    public void bottomRightQuarterInEveryRotation() {
+        RegionOfInterest roi = new RegionOfInterest(0.5f, 0.5f, 1f, 1f);
+
+        assertCrop(roi.toCrop(WIDTH, HEIGHT, 0), 320, 240, 320, 240, 320, 240);
+        // Upright 480x640: the quarter starts at (240, 320) and is 240x320.
+        assertCrop(roi.toCrop(WIDTH, HEIGHT, 90), 320, 0, 320, 240, 240, 320);
+        assertCrop(roi.toCrop(WIDTH, HEIGHT, 180), 0, 0, 320, 240, 320, 240);
+        assertCrop(roi.toCrop(WIDTH, HEIGHT, 270), 0, 240, 320, 240, 240, 320);
+    }
+
+    @Test
+    public void topLeftQuarterAtNinetyDegrees() {
+        RegionOfInterest roi = new RegionOfInterest(0f, 0f, 0.5f, 0.5f);
+        assertCrop(roi.toCrop(WIDTH, HEIGHT, 90), 0, 240, 320, 240, 0, 0);
+    }
+
+    @Test
+    public void cropIsAlignedToEvenPixels() {
+        RegionOfInterest roi = new RegionOfInterest(0.33f, 0.33f, 0.67f, 0.67f);
+        RegionOfInterest.Crop crop = roi.toCrop(100, 100, 0);
+
+        assertEquals(32, crop.left);
+        assertEquals(32, crop.top);
+        assertEquals(0, crop.width % 2);
+        assertEquals(0, crop.height % 2);
+        // Still covers the requested pixels 33..67.
+        assertTrue(crop.left + crop.width >= 67);
+    }
+
+    @Test
+    public void fullFrame() {
+        RegionOfInterest.Crop crop = new RegionOfInterest(0f, 0f, 1f, 1f).toCrop(WIDTH, HEIGHT, 90);
+        assertTrue(crop.isFullFrame());
+        assertEquals(WIDTH * HEIGHT * 3 / 2, crop.getNv21Size());
+
+        assertFalse(new RegionOfInterest(0f, 0f, 1f, 0.5f).toCrop(WIDTH, HEIGHT, 0).isFullFrame());
+    }
+
+    @Test
+    public void cropIsReusedForTheSameFrame() {
+        RegionOfInterest roi = new RegionOfInterest(0.1f, 0.1f, 0.9f, 0.9f);
+        RegionOfInterest.Crop crop = roi.toCrop(WIDTH, HEIGHT, 90);
+        assertSame(crop, roi.toCrop(WIDTH, HEIGHT, 90));
+        assertEquals(crop.width, roi.toCrop(WIDTH, HEIGHT, 0).width);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyRegion() {
+        new RegionOfInterest(0.5f, 0f, 0.5f, 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRegionOutsideTheFrame() {
+        new RegionOfInterest(0f, 0f, 1.5f, 1f);
+    }
+
+    @Test
+    public void scaleKeepsTheCenterAndClips() {
+        RegionOfInterest scaled = new RegionOfInterest(0.2f, 0.4f, 0.6f, 0.6f).scale(0.5f);
+        assertEquals(0.3f, scaled.getLeft(), 1e-6f);
+        assertEquals(0.5f, scaled.getRight(), 1e-6f);
+        assertEquals(0.45f, scaled.getTop(), 1e-6f);
+        assertEquals(0.55f, scaled.getBottom(), 1e-6f);
+
+        RegionOfInterest clipped = new RegionOfInterest(0f, 0f, 0.5f, 0.5f).scale(3f);
+        assertEquals(0f, clipped.getLeft(), 0f);
+        assertEquals(1f, clipped.getBottom(), 0f);
+        assertEquals(1f, clipped.getArea(), 1e-6f);
+    }
+
+    @Test
+    public void sensorOrientationOfAStrip() {
+        // The top strip of the upright image is the left strip of the sensor frame at 90 degrees.
+        RegionOfInterest sensor = new RegionOfInterest(0f, 0f, 1f, 0.25f).toSensorOrientation(90);
+        assertEquals(0f, sensor.getLeft(), 0f);
+        assertEquals(0.25f, sensor.getRight(), 0f);
+        assertEquals(0f, sensor.getTop(), 0f);
+        assertEquals(1f, sensor.getBottom(), 0f);
+
+        sensor = new RegionOfInterest(0f, 0f, 1f, 0.25f).toSensorOrientation(270);
+        assertEquals(0.75f, sensor.getLeft(), 0f);
+        assertEquals(1f, sensor.getRight(), 0f);
+    }
+}
@@ -0,0 +1,118 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplayFrameSourceTest {
+
+    private static final int FRAMES = 10;
+    private static final long SPACING_MS = 50;
+    private static final long RECORDED_SPAN_MS = (FRAMES - 1) * SPACING_MS;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    /** Collects what a replay delivers. */
+    private static final class RecordingSink implements FrameSource.Sink {
+        final List<Long> recordedTimestamps = new ArrayList<>();
+        final List<Long> deliveredAtMs = new ArrayList<>();
+        final List<Byte> firstBytes = new ArrayList<>();
+        final CountDownLatch ended = new CountDownLatch(1);
+        IOException error;
+
+        @Override
+        public void onFrame(FrameBufferPool.Lease frame, FrameMetadata metadata) {
+            recordedTimestamps.add(metadata.getTimestampMs());
+            deliveredAtMs.add(frame.getTimestampMs());
+            firstBytes.add(frame.array()[0]);
+        }
+
+        @Override
+        public void onEnd(IOException error) {
+            this.error = error;
+            ended.countDown();
+        }
+
+        long deliverySpanMs() {
+            return deliveredAtMs.get(deliveredAtMs.size() - 1) - deliveredAtMs.get(0);
+        }
+    }
+
+    @Before
+    public void record() throws IOException {
+        file = folder.newFile();
+        try (FrameRecorder recorder = new FrameRecorder(file, Long.MAX_VALUE)) {
+            for (int i = 0; i < FRAMES; i++) {
+                byte[] data = new byte[Nv21Utils.frameSize(4, 4)];
+                data[0] = (byte) i;
+                recorder.record(data, data.length, new FrameMetadata.Builder()
+                        .setWidth(4)
+                        .setHeight(4)
+                        .setTimestampMs(5_000L + i * SPACING_MS)
+                        .build());
+            }
+        }
+    }
+
+    private RecordingSink replay(float speed) throws Exception {
+        ReplayFrameSource source = new ReplayFrameSource(file, speed, false);
+        RecordingSink sink = new RecordingSink();
+        source.start(sink);
+        assertTrue(sink.ended.await(5, TimeUnit.SECONDS));
+        source.stop();
+
+        assertNull(sink.error);
+        assertEquals(FRAMES, source.getDeliveredFrameCount());
+        assertEquals(0, source.getSkippedFrameCount());
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(5_000L + i * SPACING_MS, (long) sink.recordedTimestamps.get(i));
+            assertEquals(i, (byte) sink.firstBytes.get(i));
+        }
+        return sink;
+    }
+
+    @Test
+    public void replaysAtTheRecordedRate() throws Exception {
+        RecordingSink sink = replay(1f);
+
+        assertTrue("span " + sink.deliverySpanMs(), sink.deliverySpanMs() >= RECORDED_SPAN_MS - 1);
+    }
+
+    @Test
+    public void replaysFasterWithASpeedFactor() throws Exception {
+        RecordingSink sink = replay(4f);
+
+        long span = sink.deliverySpanMs();
+        assertTrue("span " + span, span >= RECORDED_SPAN_MS / 4 - 1);
+        assertTrue("span " + span, span < RECORDED_SPAN_MS);
+    }
+
+    @Test
+    public void stopEndsALoopingReplay() throws Exception {
+        ReplayFrameSource source = new ReplayFrameSource(file, 0f, true);
+        RecordingSink sink = new RecordingSink();
+        source.start(sink);
+        while (source.getDeliveredFrameCount() <= FRAMES) {
+            Thread.sleep(1);
+        }
+
+        source.stop();
+
+        assertEquals("not ended after a stop", 1, sink.ended.getCount());
+    }
+}
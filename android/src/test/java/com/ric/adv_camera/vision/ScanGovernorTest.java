@@ -0,0 +1,174 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScanGovernorTest {
+
+    /** Signals the test sets directly; a healthy, charging device by default. */
+    private static final class Signals implements ScanGovernor.SignalSource {
+        int thermalStatus = ScanGovernor.THERMAL_NONE;
+        int batteryPercent = 80;
+        boolean charging = true;
+        boolean lowMemory;
+        long latencyMs = -1;
+
+        @Override
+        public int getThermalStatus() {
+            return thermalStatus;
+        }
+
+        @Override
+        public int getBatteryPercent() {
+            return batteryPercent;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return charging;
+        }
+
+        @Override
+        public boolean isLowMemory() {
+            return lowMemory;
+        }
+
+        @Override
+        public long getDetectorLatencyMs() {
+            return latencyMs;
+        }
+    }
+
+    private static final long RECOVERY = 1000;
+
+    private final Signals signals = new Signals();
+    private final ScanGovernor governor = new ScanGovernor(signals);
+
+    @Before
+    public void setUp() {
+        governor.setRecoveryMs(RECOVERY);
+    }
+
+    @Test
+    public void healthyDeviceStaysNormal() {
+        assertFalse(governor.evaluate(0));
+        assertEquals(ScanGovernor.LEVEL_NORMAL, governor.getLevel());
+        assertEquals("none", governor.getReason());
+        assertEquals(0f, governor.getPolicy().maxDetectionsPerSecond, 0f);
+    }
+
+    @Test
+    public void stepsDownAtOnce() {
+        signals.thermalStatus = ScanGovernor.THERMAL_SEVERE;
+
+        assertTrue(governor.evaluate(0));
+        assertEquals(ScanGovernor.LEVEL_MINIMAL, governor.getLevel());
+        assertEquals("thermal", governor.getReason());
+        assertEquals(0.5f, governor.getPolicy().previewScale, 0f);
+        assertTrue(governor.getPolicy().reducedFormats);
+    }
+
+    @Test
+    public void recoversOneLevelPerPeriod() {
+        signals.thermalStatus = ScanGovernor.THERMAL_SEVERE;
+        governor.evaluate(0);
+        signals.thermalStatus = ScanGovernor.THERMAL_NONE;
+
+        assertFalse(governor.evaluate(100));
+        assertFalse(governor.evaluate(100 + RECOVERY - 1));
+        assertTrue(governor.evaluate(100 + RECOVERY));
+        assertEquals(ScanGovernor.LEVEL_SAVING, governor.getLevel());
+        assertEquals("recovering", governor.getReason());
+
+        assertFalse(governor.evaluate(100 + 2 * RECOVERY - 1));
+        assertTrue(governor.evaluate(100 + 2 * RECOVERY));
+        assertEquals(ScanGovernor.LEVEL_REDUCED, governor.getLevel());
+
+        assertTrue(governor.evaluate(100 + 3 * RECOVERY));
+        assertEquals(ScanGovernor.LEVEL_NORMAL, governor.getLevel());
+        assertEquals("none", governor.getReason());
+        assertFalse(governor.evaluate(100 + 4 * RECOVERY));
+    }
+
+    @Test
+    public void hoveringSignalRestartsTheRecovery() {
+        signals.thermalStatus = ScanGovernor.THERMAL_LIGHT;
+        governor.evaluate(0);
+
+        signals.thermalStatus = ScanGovernor.THERMAL_NONE;
+        governor.evaluate(100);
+        signals.thermalStatus = ScanGovernor.THERMAL_LIGHT;
+        assertFalse(governor.evaluate(600));
+        signals.thermalStatus = ScanGovernor.THERMAL_NONE;
+        governor.evaluate(700);
+
+        assertFalse(governor.evaluate(100 + RECOVERY));
+        assertEquals(ScanGovernor.LEVEL_REDUCED, governor.getLevel());
+        assertTrue(governor.evaluate(700 + RECOVERY));
+        assertEquals(ScanGovernor.LEVEL_NORMAL, governor.getLevel());
+    }
+
+    @Test
+    public void worstSignalWins() {
+        signals.thermalStatus = ScanGovernor.THERMAL_LIGHT;
+        signals.charging = false;
+        signals.batteryPercent = 15;
+
+        governor.evaluate(0);
+        assertEquals(ScanGovernor.LEVEL_SAVING, governor.getLevel());
+        assertEquals("battery", governor.getReason());
+    }
+
+    @Test
+    public void chargingIgnoresTheBattery() {
+        signals.batteryPercent = 5;
+        assertFalse(governor.evaluate(0));
+
+        signals.charging = false;
+        governor.evaluate(10);
+        assertEquals(ScanGovernor.LEVEL_MINIMAL, governor.getLevel());
+    }
+
+    @Test
+    public void lowMemorySaves() {
+        signals.lowMemory = true;
+        governor.evaluate(0);
+        assertEquals(ScanGovernor.LEVEL_SAVING, governor.getLevel());
+        assertEquals("memory", governor.getReason());
+    }
+
+    @Test
+    public void latencyOverBudget() {
+        governor.setLatencyBudgetMs(100);
+        signals.latencyMs = 150;
+        governor.evaluate(0);
+        assertEquals(ScanGovernor.LEVEL_REDUCED, governor.getLevel());
+        assertEquals("latency", governor.getReason());
+
+        signals.latencyMs = 201;
+        governor.evaluate(10);
+        assertEquals(ScanGovernor.LEVEL_SAVING, governor.getLevel());
+    }
+
+    @Test
+    public void latencyIgnoredWithoutBudget() {
+        governor.setLatencyBudgetMs(0);
+        signals.latencyMs = 10000;
+        assertFalse(governor.evaluate(0));
+    }
+
+    @Test
+    public void resetGoesBackToNormal() {
+        signals.lowMemory = true;
+        governor.evaluate(0);
+
+        governor.reset();
+        assertEquals(ScanGovernor.LEVEL_NORMAL, governor.getLevel());
+        assertEquals("none", governor.getReason());
+        assertEquals("normal", ScanGovernor.levelName(governor.getLevel()));
+    }
+}
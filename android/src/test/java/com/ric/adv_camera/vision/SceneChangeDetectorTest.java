@@ -0,0 +1,126 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SceneChangeDetectorTest {
+
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 96;
+
+    private final SceneChangeDetector detector = new SceneChangeDetector();
+
+    /** An NV21 frame whose Y plane is {@code luma} everywhere. */
+    private static byte[] flat(int luma) {
+        return flat(luma, WIDTH, HEIGHT);
+    }
+
+    private static byte[] flat(int luma, int width, int height) {
+        byte[] nv21 = new byte[Nv21Utils.frameSize(width, height)];
+        Arrays.fill(nv21, 0, width * height, (byte) luma);
+        Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+        return nv21;
+    }
+
+    @Before
+    public void setUp() {
+        detector.setEnabled(true);
+        detector.setRefreshIntervalMs(0);
+    }
+
+    @Test
+    public void changeAtTheThresholdIsSkipped() {
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 0));
+
+        // A mean difference of exactly the threshold is not above it.
+        assertFalse(detector.shouldProcess(flat(104), WIDTH, HEIGHT, 10));
+        assertTrue(detector.shouldProcess(flat(105), WIDTH, HEIGHT, 20));
+        assertEquals(1, detector.getSkippedCount());
+    }
+
+    @Test
+    public void smallChangeInPartOfTheFrameCounts() {
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 0));
+
+        // A quarter of the frame goes dark: mean difference 80 / 4 = 20.
+        byte[] frame = flat(100);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            Arrays.fill(frame, row * WIDTH, row * WIDTH + WIDTH / 2, (byte) 20);
+        }
+        assertTrue(detector.shouldProcess(frame, WIDTH, HEIGHT, 10));
+    }
+
+    @Test
+    public void driftAddsUpAgainstTheLastProcessedFrame() {
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 0));
+        assertFalse(detector.shouldProcess(flat(102), WIDTH, HEIGHT, 10));
+        assertFalse(detector.shouldProcess(flat(104), WIDTH, HEIGHT, 20));
+        assertTrue(detector.shouldProcess(flat(106), WIDTH, HEIGHT, 30));
+    }
+
+    @Test
+    public void thresholdIsConfigurable() {
+        detector.setThreshold(0f);
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 0));
+        assertFalse(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 10));
+        assertTrue(detector.shouldProcess(flat(101), WIDTH, HEIGHT, 20));
+    }
+
+    @Test
+    public void refreshIntervalForcesAFrame() {
+        detector.setRefreshIntervalMs(1000);
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 0));
+        assertFalse(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 999));
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 1000));
+        assertFalse(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 1500));
+    }
+
+    @Test
+    public void newSizeOrResetNeedsANewReference() {
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 0));
+        assertTrue(detector.shouldProcess(flat(100, 64, 48), 64, 48, 10));
+
+        detector.reset();
+        assertTrue(detector.shouldProcess(flat(100, 64, 48), 64, 48, 20));
+    }
+
+    @Test
+    public void disabledProcessesEveryFrame() {
+        detector.setEnabled(false);
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 0));
+        assertTrue(detector.shouldProcess(flat(100), WIDTH, HEIGHT, 10));
+        assertEquals(0, detector.getSkippedCount());
+    }
+
+    @Test
+    public void thumbnailAveragesEachCell() {
+        // Left half 0, right half 200.
+        byte[] frame = flat(0);
+        for (int row = 0; row < HEIGHT; row++) {
+            Arrays.fill(frame, row * WIDTH + WIDTH / 2, (row + 1) * WIDTH, (byte) 200);
+        }
+        int[] thumbnail = new int[SceneChangeDetector.THUMBNAIL_WIDTH * SceneChangeDetector.THUMBNAIL_HEIGHT];
+
+        SceneChangeDetector.buildThumbnail(frame, WIDTH, HEIGHT, thumbnail);
+
+        int[] expectedRow = new int[SceneChangeDetector.THUMBNAIL_WIDTH];
+        Arrays.fill(expectedRow, SceneChangeDetector.THUMBNAIL_WIDTH / 2, expectedRow.length, 200);
+        for (int row = 0; row < SceneChangeDetector.THUMBNAIL_HEIGHT; row++) {
+            int start = row * SceneChangeDetector.THUMBNAIL_WIDTH;
+            assertArrayEquals(expectedRow,
+                    Arrays.copyOfRange(thumbnail, start, start + SceneChangeDetector.THUMBNAIL_WIDTH));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeThreshold() {
+        detector.setThreshold(-1f);
+    }
+}
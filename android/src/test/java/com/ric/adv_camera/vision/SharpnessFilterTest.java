@@ -0,0 +1,131 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SharpnessFilterTest {
+
+    private static final int SIZE = 64;
+
+    /** A checkerboard of 4 pixel squares, the sharpest edges a frame can have. */
+    private static byte[] checkerboard() {
+        byte[] y = new byte[SIZE * SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                y[row * SIZE + column] = (byte) (((row / 4 + column / 4) & 1) == 0 ? 40 : 220);
+            }
+        }
+        return y;
+    }
+
+    /** {@code image} smoothed with a box filter of {@code 2 * radius + 1} pixels. */
+    private static byte[] blur(byte[] image, int radius) {
+        byte[] out = new byte[image.length];
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                int sum = 0;
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int r = Math.min(SIZE - 1, Math.max(0, row + dy));
+                        int c = Math.min(SIZE - 1, Math.max(0, column + dx));
+                        sum += image[r * SIZE + c] & 0xFF;
+                        count++;
+                    }
+                }
+                out[row * SIZE + column] = (byte) (sum / count);
+            }
+        }
+        return out;
+    }
+
+    private static double score(byte[] image, int sampleStep) {
+        return SharpnessFilter.score(image, SIZE, 0, 0, SIZE, SIZE, sampleStep);
+    }
+
+    @Test
+    public void blurLowersTheScore() {
+        byte[] sharp = checkerboard();
+        byte[] soft = blur(sharp, 1);
+        byte[] softer = blur(sharp, 2);
+
+        for (int step = 1; step <= 2; step++) {
+            assertTrue(score(sharp, step) > score(soft, step));
+            assertTrue(score(soft, step) > score(softer, step));
+            assertTrue(score(softer, step) > 0);
+        }
+    }
+
+    @Test
+    public void flatImageScoresZero() {
+        byte[] flat = new byte[SIZE * SIZE];
+        assertEquals(0.0, score(flat, 1), 0);
+    }
+
+    @Test
+    public void onlyTheRegionIsScored() {
+        // Edges only in the left half.
+        byte[] image = checkerboard();
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = SIZE / 2; column < SIZE; column++) {
+                image[row * SIZE + column] = 100;
+            }
+        }
+        assertEquals(0.0, SharpnessFilter.score(image, SIZE, SIZE / 2, 0, SIZE / 2, SIZE, 1), 0);
+        assertTrue(SharpnessFilter.score(image, SIZE, 0, 0, SIZE / 2, SIZE, 1) > 0);
+    }
+
+    @Test
+    public void dropsFramesWellBelowTheRecentAverage() {
+        SharpnessFilter filter = new SharpnessFilter();
+        filter.setEnabled(true);
+
+        assertTrue(filter.accept(100));
+        assertEquals(60.0, filter.getThreshold(), 1e-4);
+        assertFalse(filter.accept(30));
+        assertTrue(filter.accept(100));
+        assertEquals(1, filter.getDroppedCount());
+    }
+
+    @Test
+    public void neverDropsTooManyInARow() {
+        SharpnessFilter filter = new SharpnessFilter();
+        filter.setEnabled(true);
+        filter.accept(100);
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(filter.accept(30));
+        }
+        assertTrue(filter.accept(30));
+        assertEquals(5, filter.getDroppedCount());
+    }
+
+    @Test
+    public void disabledFilterOnlyScores() {
+        SharpnessFilter filter = new SharpnessFilter();
+        filter.accept(100);
+
+        assertTrue(filter.accept(1));
+        assertEquals(1.0, filter.getLastScore(), 0);
+        assertEquals(0, filter.getDroppedCount());
+    }
+
+    @Test
+    public void resetForgetsTheAverage() {
+        SharpnessFilter filter = new SharpnessFilter();
+        filter.setEnabled(true);
+        filter.accept(100);
+
+        filter.reset();
+        assertEquals(0.0, filter.getThreshold(), 0);
+        assertTrue(filter.accept(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRatioAboveOne() {
+        new SharpnessFilter().setThresholdRatio(1.5f);
+    }
+}
@@ -0,0 +1,100 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TelemetryBufferTest {
+
+    private final TelemetryBuffer buffer = new TelemetryBuffer(4);
+
+    private void recordSeconds(int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer.record(1000L * i, 30 - i, i + 0.5, 100 + i);
+        }
+    }
+
+    @Test
+    public void readsRecordsSinceASequence() {
+        recordSeconds(0, 3);
+
+        List<Map<String, Object>> records = buffer.toList(1);
+
+        assertEquals(2, records.size());
+        Map<String, Object> record = records.get(0);
+        assertEquals(1L, record.get("sequence"));
+        assertEquals(1000L, record.get("timestampMs"));
+        assertEquals(29, record.get("framesPerSecond"));
+        assertEquals(1.5, record.get("frameLatencyMs"));
+        assertEquals(101L, record.get("availableMemoryMb"));
+        assertEquals(3, buffer.getNextSequence());
+    }
+
+    @Test
+    public void keepsOnlyTheLastCapacityRecords() {
+        recordSeconds(0, 10);
+
+        List<Map<String, Object>> records = buffer.toList(0);
+
+        assertEquals(4, records.size());
+        assertEquals("a slow reader skips overwritten records", 6L, records.get(0).get("sequence"));
+        assertEquals(6000L, records.get(0).get("timestampMs"));
+        assertEquals(9L, records.get(3).get("sequence"));
+        assertEquals(2, buffer.toList(8).size());
+    }
+
+    @Test
+    public void readingAheadOfTheWriterReturnsNothing() {
+        recordSeconds(0, 2);
+        assertTrue(buffer.toList(2).isEmpty());
+        assertTrue(buffer.toList(50).isEmpty());
+    }
+
+    @Test
+    public void toMapReturnsTheNextSequence() {
+        recordSeconds(0, 3);
+
+        Map<String, Object> map = buffer.toMap(0);
+
+        assertEquals(3L, map.get("next"));
+        assertEquals(3, ((List<?>) map.get("records")).size());
+    }
+
+    @Test
+    public void csvBatchesDrainEachRecordOnce() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        recordSeconds(0, 2);
+        long next = buffer.writeCsv(csv, 0);
+        assertEquals(2, next);
+
+        next = buffer.writeCsv(csv, next);
+        assertEquals("nothing new", 2, next);
+
+        recordSeconds(2, 3);
+        next = buffer.writeCsv(csv, next);
+
+        assertEquals(3, next);
+        assertEquals("0,0,30,0.5,100\n1,1000,29,1.5,101\n2,2000,28,2.5,102\n", csv.toString());
+    }
+
+    @Test
+    public void csvBatchAfterOverflowStartsAtTheOldestHeld() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        recordSeconds(0, 6);
+
+        assertEquals(6, buffer.writeCsv(csv, 1));
+
+        assertEquals(4, csv.toString().split("\n").length);
+        assertTrue(csv.toString().startsWith("2,2000,"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new TelemetryBuffer(0);
+    }
+}
@@ -0,0 +1,184 @@
+package com.ric.adv_camera.vision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Yuv420ConverterTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    private static final int CHROMA_WIDTH = WIDTH / 2;
+    private static final int CHROMA_HEIGHT = HEIGHT / 2;
+
+    /** The samples of a frame, plane by plane and without padding. */
+    private static final class Samples {
+        final byte[] y = new byte[WIDTH * HEIGHT];
+        final byte[] u = new byte[CHROMA_WIDTH * CHROMA_HEIGHT];
+        final byte[] v = new byte[CHROMA_WIDTH * CHROMA_HEIGHT];
+
+        static Samples random(long seed) {
+            Samples samples = new Samples();
+            Random random = new Random(seed);
+            random.nextBytes(samples.y);
+            random.nextBytes(samples.u);
+            random.nextBytes(samples.v);
+            return samples;
+        }
+
+        static Samples flat() {
+            Samples samples = random(0);
+            Arrays.fill(samples.u, (byte) 128);
+            Arrays.fill(samples.v, (byte) 128);
+            return samples;
+        }
+
+        byte[] nv21() {
+            byte[] nv21 = new byte[Nv21Utils.frameSize(WIDTH, HEIGHT)];
+            System.arraycopy(y, 0, nv21, 0, y.length);
+            for (int i = 0; i < u.length; i++) {
+                nv21[y.length + 2 * i] = v[i];
+                nv21[y.length + 2 * i + 1] = u[i];
+            }
+            return nv21;
+        }
+    }
+
+    /** The planes of a YUV_420_888 image, laid out the way a camera HAL could hand them over. */
+    private static final class Planes {
+        ByteBuffer y;
+        ByteBuffer u;
+        ByteBuffer v;
+        int yRowStride;
+        int uvRowStride;
+        int uvPixelStride;
+
+        byte[] convert(Yuv420Converter converter) {
+            byte[] out = new byte[Nv21Utils.frameSize(WIDTH, HEIGHT)];
+            converter.toNv21(y, yRowStride, u, v, uvRowStride, uvPixelStride, WIDTH, HEIGHT, out);
+            return out;
+        }
+
+        int layout(Yuv420Converter converter) {
+            return converter.chromaLayout(u, v, uvRowStride, uvPixelStride, WIDTH, HEIGHT);
+        }
+    }
+
+    /** Y rows padded by {@code padding} bytes, which the converter must skip. */
+    private static ByteBuffer paddedLuma(Samples samples, int padding) {
+        int rowStride = WIDTH + padding;
+        byte[] luma = new byte[rowStride * HEIGHT];
+        for (int r = 0; r < HEIGHT; r++) {
+            System.arraycopy(samples.y, r * WIDTH, luma, r * rowStride, WIDTH);
+        }
+        return ByteBuffer.wrap(luma);
+    }
+
+    /** Interleaved chroma in one block of memory, V first as in NV21 or U first as in NV12. */
+    private static Planes interleaved(Samples samples, boolean vFirst) {
+        byte[] chroma = new byte[2 * samples.u.length];
+        for (int i = 0; i < samples.u.length; i++) {
+            chroma[2 * i] = vFirst ? samples.v[i] : samples.u[i];
+            chroma[2 * i + 1] = vFirst ? samples.u[i] : samples.v[i];
+        }
+        // Like the planes of an Image, each view ends on its last sample.
+        ByteBuffer first = ByteBuffer.wrap(chroma, 0, chroma.length - 1).slice();
+        ByteBuffer second = ByteBuffer.wrap(chroma, 1, chroma.length - 1).slice();
+
+        Planes planes = new Planes();
+        planes.y = paddedLuma(samples, 0);
+        planes.yRowStride = WIDTH;
+        planes.v = vFirst ? first : second;
+        planes.u = vFirst ? second : first;
+        planes.uvRowStride = WIDTH;
+        planes.uvPixelStride = 2;
+        return planes;
+    }
+
+    private static Planes planar(Samples samples) {
+        Planes planes = new Planes();
+        planes.y = paddedLuma(samples, 8);
+        planes.yRowStride = WIDTH + 8;
+        planes.u = ByteBuffer.wrap(samples.u.clone());
+        planes.v = ByteBuffer.wrap(samples.v.clone());
+        planes.uvRowStride = CHROMA_WIDTH;
+        planes.uvPixelStride = 1;
+        return planes;
+    }
+
+    @Test
+    public void convertsNv21Memory() {
+        Samples samples = Samples.random(1);
+        Planes planes = interleaved(samples, true);
+        Yuv420Converter converter = new Yuv420Converter();
+
+        assertArrayEquals(samples.nv21(), planes.convert(converter));
+        assertEquals(Yuv420Converter.CHROMA_NV21, planes.layout(converter));
+    }
+
+    @Test
+    public void convertsNv12Memory() {
+        Samples samples = Samples.random(2);
+        Planes planes = interleaved(samples, false);
+        Yuv420Converter converter = new Yuv420Converter();
+
+        assertArrayEquals(samples.nv21(), planes.convert(converter));
+        assertEquals(Yuv420Converter.CHROMA_SEMI_PLANAR, planes.layout(converter));
+    }
+
+    @Test
+    public void convertsPlanarChromaWithPaddedLuma() {
+        Samples samples = Samples.random(3);
+        Planes planes = planar(samples);
+        Yuv420Converter converter = new Yuv420Converter();
+
+        assertArrayEquals(samples.nv21(), planes.convert(converter));
+        assertEquals(Yuv420Converter.CHROMA_PLANAR, planes.layout(converter));
+    }
+
+    @Test
+    public void leavesBufferPositionsAlone() {
+        Planes planes = interleaved(Samples.random(4), true);
+        planes.convert(new Yuv420Converter());
+
+        assertEquals(0, planes.y.position());
+        assertEquals(0, planes.u.position());
+        assertEquals(0, planes.v.position());
+    }
+
+    @Test
+    public void flatFrameDoesNotFixTheLayout() {
+        Yuv420Converter converter = new Yuv420Converter();
+        Planes flat = interleaved(Samples.flat(), false);
+        assertArrayEquals(Samples.flat().nv21(), flat.convert(converter));
+
+        // An NV12 stream must not be read as NV21 because its first frame was flat.
+        Samples samples = Samples.random(5);
+        assertArrayEquals(samples.nv21(), interleaved(samples, false).convert(converter));
+    }
+
+    @Test
+    public void flatFrameStillConvertsNv21Memory() {
+        Yuv420Converter converter = new Yuv420Converter();
+        Planes flat = interleaved(Samples.flat(), true);
+        assertEquals(Yuv420Converter.CHROMA_SEMI_PLANAR, flat.layout(converter));
+        assertArrayEquals(Samples.flat().nv21(), flat.convert(converter));
+
+        Samples samples = Samples.random(6);
+        Planes planes = interleaved(samples, true);
+        assertEquals(Yuv420Converter.CHROMA_NV21, planes.layout(converter));
+        assertArrayEquals(samples.nv21(), planes.convert(converter));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortOutput() {
+        Planes planes = planar(Samples.random(7));
+        new Yuv420Converter().toNv21(planes.y, planes.yRowStride, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, WIDTH, HEIGHT, new byte[WIDTH * HEIGHT]);
+    }
+}
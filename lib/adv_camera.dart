@@ -2,7 +2,9 @@ library adv_camera;
 
 import 'dart:ui';
 import 'dart:async';
+import 'dart:convert';
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:adv_camera/adv_camera_plugin.dart';
 import 'package:flutter/foundation.dart';
@@ -27,6 +29,8 @@ enum FlashType { auto, on, off, torch }
 enum CameraType { front, rear }
 enum CameraPreviewRatio { r16_9, r11_9, r4_3, r1 }
 enum CameraSessionPreset { low, medium, high, photo }
+enum BurstMode { picture, preview, auto }
+enum CameraBackendType { camera1, camera2, fake }
 
 typedef void CameraCreatedCallback(AdvCameraController controller);
 typedef void ImageCapturedCallback(String path);
@@ -49,6 +53,84 @@ class AdvCamera extends StatefulWidget {
   final double initialHeight;
   final bool enableDebugMode;
 
+  /// Number of preview buffers shared between the camera and the ML Vision
+  /// pipeline (Android only). Raise it if [AdvCameraController.getPreviewBufferStats]
+  /// reports frequent starvation.
+  final int previewBufferCount;
+
+  /// Runs barcode detection on every Nth preview frame only (Android only).
+  final int detectionFrameStride;
+
+  /// Caps barcode detection to this many runs per second (Android only).
+  final double targetDetectionsPerSecond;
+
+  /// When the average detector latency exceeds this budget, detection backs
+  /// off automatically and ramps back up once it recovers (Android only).
+  final int detectorLatencyBudgetMs;
+
+  /// Skips barcode detection on preview frames that look the same as the
+  /// last detected one, for cameras mounted over a mostly static scene
+  /// (Android only).
+  final bool skipStaticScenes;
+
+  /// Mean luma difference (0..255) per pixel of a small thumbnail above which
+  /// a frame counts as changed when [skipStaticScenes] is on. Defaults to 4.
+  final double staticSceneThreshold;
+
+  /// Runs detection at least this often when [skipStaticScenes] is on, even
+  /// if nothing changed. Defaults to 1000.
+  final int staticSceneRefreshMs;
+
+  /// Skips barcode detection on preview frames that are blurred compared to
+  /// the recent ones, e.g. while the camera refocuses or moves (Android only).
+  final bool skipBlurredFrames;
+
+  /// Fraction (0..1) of the recent average sharpness below which a frame
+  /// counts as blurred when [skipBlurredFrames] is on. Defaults to 0.6.
+  final double blurThresholdRatio;
+
+  /// Number of recent preview frames
+  /// [AdvCameraController.captureSharpestFrame] picks the sharpest from; 0
+  /// keeps none (Android only).
+  final int sharpestFrameCount;
+
+  /// Limits barcode detection to this part of the preview, in normalized
+  /// (0..1) coordinates of the upright preview (Android only). The rest of the
+  /// frame is never sent to the detector.
+  final Rect regionOfInterest;
+
+  /// Reports each barcode once on [AdvCameraController.barcodeTrackEvents]
+  /// when it appears, moves and leaves the view, instead of on every frame
+  /// on [AdvCameraController.barcodeResponseStream] (Android only).
+  final bool barcodeTracking;
+
+  /// Number of detections a barcode needs before it is reported as
+  /// appeared, which filters out misreads. Defaults to 3.
+  final int barcodeConfirmFrames;
+
+  /// Number of detections without a barcode before it is reported as lost.
+  /// Defaults to 5.
+  final int barcodeLostFrames;
+
+  /// Steps scanning down while the device is hot, low on battery or memory,
+  /// or the detector falls behind, and back up once it recovers (Android
+  /// only). Level changes arrive on [AdvCameraController.governorEvents].
+  final bool enableGovernor;
+
+  /// Detector latency (95th percentile) above which the governor steps
+  /// down. Defaults to 250, 0 ignores the latency.
+  final int governorLatencyBudgetMs;
+
+  /// Formats scanned instead of [barcodeFormats] while the governor saves
+  /// power; null keeps [barcodeFormats].
+  final BarcodeFormat governorBarcodeFormats;
+
+  /// The camera API behind the preview (Android only):
+  /// [CameraBackendType.camera2] on Android 5.0 and later, or
+  /// [CameraBackendType.fake], which shows no preview and feeds synthetic
+  /// frames to the scanner, e.g. to profile it on an emulator. Null uses
+  /// Camera1. Every feature works with every backend.
+  final CameraBackendType cameraBackend;
 
   const AdvCamera({
     Key key,
@@ -67,7 +149,25 @@ class AdvCamera extends StatefulWidget {
     this.barcodeFormats,
     this.initialWidth,
     this.initialHeight,
-    this.enableDebugMode = false
+    this.enableDebugMode = false,
+    this.previewBufferCount,
+    this.detectionFrameStride,
+    this.targetDetectionsPerSecond,
+    this.detectorLatencyBudgetMs,
+    this.skipStaticScenes = false,
+    this.staticSceneThreshold,
+    this.staticSceneRefreshMs,
+    this.skipBlurredFrames = false,
+    this.blurThresholdRatio,
+    this.sharpestFrameCount,
+    this.regionOfInterest,
+    this.barcodeTracking = false,
+    this.barcodeConfirmFrames,
+    this.barcodeLostFrames,
+    this.enableGovernor = false,
+    this.governorLatencyBudgetMs,
+    this.governorBarcodeFormats,
+    this.cameraBackend,
   })  : this.initialCameraType = initialCameraType ?? CameraType.rear,
         this.cameraPreviewRatio =
             cameraPreviewRatio ?? CameraPreviewRatio.r16_9,
@@ -174,7 +274,27 @@ class _AdvCameraState extends State<AdvCamera> {
       "barcodeFormats": widget.barcodeFormats?.value ??BarcodeFormat.all.value,
       "initialHeight": widget.initialHeight ?? 720,
       "initialWidth": widget.initialWidth?? 1280,
-      "enableDebugMode": widget.enableDebugMode
+      "enableDebugMode": widget.enableDebugMode,
+      "previewBufferCount": widget.previewBufferCount ?? 3,
+      "detectionFrameStride": widget.detectionFrameStride ?? 1,
+      "targetDetectionsPerSecond": widget.targetDetectionsPerSecond ?? 0.0,
+      "detectorLatencyBudgetMs": widget.detectorLatencyBudgetMs ?? 0,
+      "skipStaticScenes": widget.skipStaticScenes,
+      "staticSceneThreshold": widget.staticSceneThreshold ?? 4.0,
+      "staticSceneRefreshMs": widget.staticSceneRefreshMs ?? 1000,
+      "skipBlurredFrames": widget.skipBlurredFrames,
+      "blurThresholdRatio": widget.blurThresholdRatio ?? 0.6,
+      "sharpestFrameCount": widget.sharpestFrameCount ?? 0,
+      "regionOfInterest": _regionOfInterestToMap(widget.regionOfInterest),
+      "barcodeTracking": widget.barcodeTracking,
+      "barcodeConfirmFrames": widget.barcodeConfirmFrames ?? 3,
+      "barcodeLostFrames": widget.barcodeLostFrames ?? 5,
+      "enableGovernor": widget.enableGovernor,
+      "governorLatencyBudgetMs": widget.governorLatencyBudgetMs ?? 250,
+      "governorBarcodeFormats": widget.governorBarcodeFormats?.value ?? 0,
+      "cameraBackend": widget.cameraBackend == null
+          ? null
+          : describeEnum(widget.cameraBackend),
       //for first run on Android (because on each device the default picture size is vary, for example MI 8 Lite's default is the lowest resolution)
     };
 
@@ -279,6 +399,17 @@ class _AdvCameraState extends State<AdvCamera> {
     }
   }
 
+  static Map<String, double> _regionOfInterestToMap(Rect roi) {
+    if (roi == null) return null;
+
+    return <String, double>{
+      "left": roi.left,
+      "top": roi.top,
+      "right": roi.right,
+      "bottom": roi.bottom,
+    };
+  }
+
   /// @return the greatest common denominator
   int findGcm(int a, int b) {
     return b == 0 ? a : findGcm(b, a % b); // Not bad for one line of code :)
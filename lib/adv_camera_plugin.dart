@@ -1,3 +1,6 @@
+import 'dart:io';
+
+import 'package:adv_camera/adv_camera.dart';
 import 'package:flutter/services.dart';
 
 class AdvCameraPlugin {
@@ -6,4 +9,20 @@ class AdvCameraPlugin {
   static Future<bool> checkForPermission() async {
     return await _channel.invokeMethod('checkForPermission');
   }
-}
\ No newline at end of file
+
+  /// Opens [cameraType] and loads the barcode model for [barcodeFormats] in
+  /// the background (Android only). The first [AdvCamera] created with the
+  /// same camera and formats takes them over and starts scanning sooner.
+  /// Unclaimed resources are released after a few seconds.
+  static Future<void> prewarm({
+    CameraType cameraType = CameraType.rear,
+    BarcodeFormat barcodeFormats,
+  }) async {
+    if (Platform.isIOS) return;
+
+    await _channel.invokeMethod('prewarm', <String, dynamic>{
+      'cameraType': cameraType == CameraType.rear ? "rear" : "front",
+      'barcodeFormats': barcodeFormats?.value ?? BarcodeFormat.all.value,
+    });
+  }
+}
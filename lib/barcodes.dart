@@ -235,6 +235,23 @@ class Barcode {
             ? null
             : BarcodeDriverLicense._(_data['driverLicense']);
 
+  Barcode._decoded(
+    this.boundingBox,
+    this._cornerPoints,
+    this.rawValue,
+    this.displayValue,
+    this.format,
+    this.valueType,
+  )   : email = null,
+        phone = null,
+        sms = null,
+        url = null,
+        wifi = null,
+        geoPoint = null,
+        contactInfo = null,
+        calendarEvent = null,
+        driverLicense = null;
+
   final List<Offset> _cornerPoints;
 
   /// The bounding rectangle of the detected barcode.
@@ -310,6 +327,159 @@ class Barcode {
   final BarcodeDriverLicense driverLicense;
 }
 
+/// What happened to a tracked barcode, see [BarcodeTrackEvent].
+enum BarcodeTrackEventType {
+  /// The barcode was seen in enough consecutive detections to be trusted.
+  appeared,
+
+  /// The barcode moved noticeably since it was last reported.
+  updated,
+
+  /// The barcode has not been seen for a while.
+  lost,
+}
+
+/// A change of a barcode followed across frames by the native tracker.
+class BarcodeTrackEvent {
+  BarcodeTrackEvent._(this.type, this.trackId, this.barcode);
+
+  final BarcodeTrackEventType type;
+
+  /// Stays the same for as long as the barcode stays in view.
+  final int trackId;
+
+  /// The latest detection of the barcode.
+  final Barcode barcode;
+}
+
+/// Version of the binary barcode layout [decodeBarcodeResults] understands.
+const int barcodeResultsVersion = 1;
+
+/// Decoded binary barcode event: the barcodes and the average frame latency.
+class BarcodeResults {
+  BarcodeResults._(this.barcodes, this.avgLatency);
+
+  final List<Barcode> barcodes;
+  final double avgLatency;
+}
+
+/// Decodes a barcode event written by `BarcodeResultEncoder` on Android.
+///
+/// All values are little-endian. The header holds the layout version (u8), the
+/// message kind (u8, 0 for results), the barcode count (u16) and the average
+/// frame latency in milliseconds (f64). Each barcode holds its format and value
+/// type (i32), whether it has bounds (u8) followed by left, top, width and
+/// height (i32), the number of corner points (u8) followed by their x and y
+/// (i32), and the raw and display values as a UTF-8 byte length (i32, -1 for
+/// null) followed by the bytes. Structured values such as [Barcode.email] are
+/// not encoded.
+///
+/// Throws a [FormatException] for a layout version it does not know or a
+/// message of another kind.
+BarcodeResults decodeBarcodeResults(Uint8List bytes) {
+  final reader = _BarcodeMessageReader(bytes, _resultsKind);
+  final barcodes = List<Barcode>(reader.count);
+  for (int i = 0; i < reader.count; i++) {
+    barcodes[i] = reader.readBarcode();
+  }
+  return BarcodeResults._(barcodes, reader.avgLatency);
+}
+
+/// Decodes the tracker events of one frame written by `BarcodeResultEncoder`
+/// on Android.
+///
+/// Same layout as [decodeBarcodeResults] with message kind 1, where each
+/// barcode is preceded by the [BarcodeTrackEventType] index (u8) and the track
+/// id (i32).
+///
+/// Throws a [FormatException] for a layout version it does not know or a
+/// message of another kind.
+List<BarcodeTrackEvent> decodeBarcodeTrackEvents(Uint8List bytes) {
+  final reader = _BarcodeMessageReader(bytes, _trackEventsKind);
+  final events = List<BarcodeTrackEvent>(reader.count);
+  for (int i = 0; i < reader.count; i++) {
+    final type = BarcodeTrackEventType.values[reader.readUint8()];
+    final trackId = reader.readInt32();
+    events[i] = BarcodeTrackEvent._(type, trackId, reader.readBarcode());
+  }
+  return events;
+}
+
+const int _resultsKind = 0;
+const int _trackEventsKind = 1;
+
+class _BarcodeMessageReader {
+  _BarcodeMessageReader(this.bytes, int expectedKind)
+      : data = ByteData.view(
+            bytes.buffer, bytes.offsetInBytes, bytes.lengthInBytes) {
+    final version = data.getUint8(0);
+    if (version != barcodeResultsVersion) {
+      throw FormatException('Unsupported barcode results version $version');
+    }
+    final kind = data.getUint8(1);
+    if (kind != expectedKind) {
+      throw FormatException('Unexpected barcode message kind $kind');
+    }
+    count = data.getUint16(2, Endian.little);
+    avgLatency = data.getFloat64(4, Endian.little);
+    offset = 12;
+  }
+
+  final Uint8List bytes;
+  final ByteData data;
+  int count;
+  double avgLatency;
+  int offset;
+
+  int readUint8() => data.getUint8(offset++);
+
+  int readInt32() {
+    final value = data.getInt32(offset, Endian.little);
+    offset += 4;
+    return value;
+  }
+
+  String readString() {
+    final length = readInt32();
+    if (length < 0) return null;
+    final value = utf8.decode(
+        Uint8List.view(bytes.buffer, bytes.offsetInBytes + offset, length));
+    offset += length;
+    return value;
+  }
+
+  Barcode readBarcode() {
+    final format = readInt32();
+    final valueType = readInt32();
+    final hasBounds = readUint8() != 0;
+    final left = readInt32();
+    final top = readInt32();
+    final width = readInt32();
+    final height = readInt32();
+    final pointCount = readUint8();
+    final points = List<Offset>(pointCount);
+    for (int p = 0; p < pointCount; p++) {
+      final x = readInt32();
+      final y = readInt32();
+      points[p] = Offset(x.toDouble(), y.toDouble());
+    }
+    final rawValue = readString();
+    final displayValue = readString();
+
+    return Barcode._decoded(
+      hasBounds
+          ? Rect.fromLTWH(left.toDouble(), top.toDouble(), width.toDouble(),
+              height.toDouble())
+          : null,
+      points,
+      rawValue,
+      displayValue,
+      BarcodeFormat._(format),
+      BarcodeValueType.values[valueType],
+    );
+  }
+}
+
 /// An email message from a 'MAILTO:' or similar QRCode type.
 class BarcodeEmail {
   BarcodeEmail._(Map<dynamic, dynamic> data)
@@ -5,7 +5,8 @@ class AdvCameraController {
   AdvCameraController._(
     this.channel,
     this._advCameraState,
-    this._barcodeEventChannel
+    this._barcodeEventChannel,
+    this._metricsEventChannel
   ) : assert(channel != null) {
     channel.setMethodCallHandler(_handleMethodCall);
   }
@@ -21,11 +22,15 @@ class AdvCameraController {
     // https://github.com/flutter/flutter/issues/26431
     // ignore: strong_mode_implicit_dynamic_method
     await channel.invokeMethod('waitForCamera');
-    final barcodeEventChannel =  EventChannel('plugins.flutter.io/adv_camera/barcodeStream');
+    final barcodeEventChannel =
+        EventChannel('plugins.flutter.io/adv_camera/barcodeStream/$id');
+    final metricsEventChannel =
+        EventChannel('plugins.flutter.io/adv_camera/metrics/$id');
     return AdvCameraController._(
       channel,
       advCameraState,
-      barcodeEventChannel
+      barcodeEventChannel,
+      metricsEventChannel
     );
   }
 
@@ -35,15 +40,45 @@ class AdvCameraController {
 
   final EventChannel _barcodeEventChannel;
 
+  final EventChannel _metricsEventChannel;
+
 
   final _AdvCameraState _advCameraState;
 
+  final StreamController<BurstEvent> _burstEvents =
+      StreamController<BurstEvent>.broadcast();
+
+  final StreamController<BarcodeTrackEvent> _barcodeTrackEvents =
+      StreamController<BarcodeTrackEvent>.broadcast();
+
+  final StreamController<GovernorState> _governorEvents =
+      StreamController<GovernorState>.broadcast();
+
+  final StreamController<ReplayResult> _replayEvents =
+      StreamController<ReplayResult>.broadcast();
+
   Future<dynamic> _handleMethodCall(MethodCall call) async {
     switch (call.method) {
       case "onImageCaptured":
         String path = call.arguments['path'] as String;
         _advCameraState.onImageCaptured(path);
         break;
+      case "onBurstFrame":
+      case "onBurstFrameDropped":
+      case "onBurstFinished":
+        _burstEvents.add(BurstEvent._(call.method, call.arguments));
+        break;
+      case "onBarcodeTrack":
+        for (final event in decodeBarcodeTrackEvents(call.arguments)) {
+          _barcodeTrackEvents.add(event);
+        }
+        break;
+      case "onGovernorLevelChanged":
+        _governorEvents.add(GovernorState._(call.arguments));
+        break;
+      case "onReplayFinished":
+        _replayEvents.add(ReplayResult._(call.arguments));
+        break;
       case "onFlashTypeChanged":
         String types = call.arguments['types'] as String;
         _advCameraState.onImageCaptured(types);
@@ -117,11 +152,25 @@ class AdvCameraController {
     }
   }
 
-  Future<void> captureImage({int maxSize}) async {
+  /// Takes a picture and completes with the path of the saved file once it
+  /// has been written. `onImageCaptured` is called with the same path.
+  Future<String> captureImage({int maxSize}) async {
     // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
     // https://github.com/flutter/flutter/issues/26431
     // ignore: strong_mode_implicit_dynamic_method
-    await channel.invokeMethod('captureImage', <String, dynamic>{
+    return await channel.invokeMethod('captureImage', <String, dynamic>{
+      'maxSize': maxSize,
+    });
+  }
+
+  /// Saves the sharpest of the last [AdvCamera.sharpestFrameCount] preview
+  /// frames instead of taking a picture, so the capture is in focus and has
+  /// no shutter delay (Android only). Completes with the path of the saved
+  /// file; `onImageCaptured` is called with the same path.
+  Future<String> captureSharpestFrame({int maxSize}) async {
+    if (Platform.isIOS) return null;
+
+    return await channel.invokeMethod('captureSharpestFrame', <String, dynamic>{
       'maxSize': maxSize,
     });
   }
@@ -237,12 +286,228 @@ class AdvCameraController {
     return finalTypes;
   }
 
+  /// Changes how often preview frames are sent to the barcode detector
+  /// (Android only). Arguments left null keep their current value; a
+  /// [targetDetectionsPerSecond] or [latencyBudgetMs] of 0 disables that limit.
+  /// See [AdvCamera.skipStaticScenes] for the static scene arguments and
+  /// [AdvCamera.skipBlurredFrames] for the blur arguments.
+  Future<void> setDetectionRate({
+    int frameStride,
+    double targetDetectionsPerSecond,
+    int latencyBudgetMs,
+    bool skipStaticScenes,
+    double staticSceneThreshold,
+    int staticSceneRefreshMs,
+    bool skipBlurredFrames,
+    double blurThresholdRatio,
+  }) async {
+    if (Platform.isIOS) return;
+
+    await channel.invokeMethod('setDetectionRate', <String, dynamic>{
+      'detectionFrameStride': frameStride,
+      'targetDetectionsPerSecond': targetDetectionsPerSecond,
+      'detectorLatencyBudgetMs': latencyBudgetMs,
+      'skipStaticScenes': skipStaticScenes,
+      'staticSceneThreshold': staticSceneThreshold,
+      'staticSceneRefreshMs': staticSceneRefreshMs,
+      'skipBlurredFrames': skipBlurredFrames,
+      'blurThresholdRatio': blurThresholdRatio,
+    });
+  }
+
+  /// Limits barcode detection to [regionOfInterest], in normalized (0..1)
+  /// coordinates of the upright preview, or scans the whole preview when null
+  /// (Android only).
+  Future<void> setRegionOfInterest(Rect regionOfInterest) async {
+    if (Platform.isIOS) return;
+
+    await channel.invokeMethod('setRegionOfInterest', <String, dynamic>{
+      'regionOfInterest':
+          _AdvCameraState._regionOfInterestToMap(regionOfInterest),
+    });
+  }
+
+  /// Returns the milestones of the last camera startup, in milliseconds since
+  /// the view was created or the camera was switched: `setupStarted`,
+  /// `cameraOpened`, `parametersApplied`, `previewStarted`,
+  /// `firstPreviewFrame` and `firstDetection`. Milestones not reached yet are
+  /// missing (Android only).
+  Future<Map<String, int>> getStartupTimeline() async {
+    if (Platform.isIOS) return null;
+
+    final timeline = await channel.invokeMethod('getStartupTimeline');
+
+    if (timeline == null) return null;
+
+    return Map<String, int>.from(timeline);
+  }
+
+  /// Returns the preview buffer pool counters of the ML Vision pipeline:
+  /// `capacity`, `leasesHeld`, `starvations`, `recycled`, `droppedFrames`,
+  /// `staticSceneSkips` and `blurredSkips` (Android only).
+  Future<Map<String, int>> getPreviewBufferStats() async {
+    if (Platform.isIOS) return null;
+
+    final stats = await channel.invokeMethod('getPreviewBufferStats');
+
+    if (stats == null) return null;
+
+    return Map<String, int>.from(stats);
+  }
+
+  /// Returns latency percentiles and drop counts of the ML Vision pipeline
+  /// over the last few seconds (Android only).
+  Future<PipelineMetrics> getMetrics() async {
+    if (Platform.isIOS) return null;
+
+    final metrics = await channel.invokeMethod('getMetrics');
+
+    if (metrics == null) return null;
+
+    return PipelineMetrics._(metrics);
+  }
+
+  /// Per-second frame rate and latency records kept in memory, from sequence
+  /// number [since] on; pass [TelemetryBatch.next] to get only newer ones
+  /// (Android only). In [AdvCamera.enableDebugMode] the records are also
+  /// appended to `adv_camera_telemetry.csv` in the app's files directory.
+  Future<TelemetryBatch> getTelemetry({int since = 0}) async {
+    if (Platform.isIOS) return null;
+
+    final telemetry = await channel.invokeMethod('getTelemetry', <String, dynamic>{
+      'since': since,
+    });
+
+    if (telemetry == null) return null;
+
+    return TelemetryBatch._(telemetry);
+  }
+
+  /// The current level of the governor, or null when
+  /// [AdvCamera.enableGovernor] is off (Android only).
+  Future<GovernorState> getGovernorState() async {
+    if (Platform.isIOS) return null;
+
+    final state = await channel.invokeMethod('getGovernorState');
+
+    if (state == null) return null;
+
+    return GovernorState._(state);
+  }
+
+  /// Level changes of the governor when [AdvCamera.enableGovernor] is on.
+  Stream<GovernorState> get governorEvents => _governorEvents.stream;
+
+  /// Pushes [getMetrics] every [interval] while listened to (Android only).
+  Stream<PipelineMetrics> metricsStream(
+      {Duration interval = const Duration(seconds: 1)}) {
+    if (Platform.isIOS) return Stream<PipelineMetrics>.empty();
+
+    return _metricsEventChannel
+        .receiveBroadcastStream(<String, dynamic>{
+          'intervalMs': interval.inMilliseconds,
+        })
+        .map((data) => PipelineMetrics._(data));
+  }
+
+  /// Captures up to [maxFrames] frames in quick succession and writes them as
+  /// JPEG files under the save path (Android only). [BurstMode.picture] takes
+  /// full-resolution pictures, [BurstMode.preview] grabs preview frames and
+  /// [BurstMode.auto] switches to preview frames when pictures are too slow.
+  /// Frames waiting to be written are capped at [byteBudget] bytes; frames
+  /// that do not fit are dropped. Progress is reported on [burstEvents].
+  Future<void> startBurst({
+    BurstMode mode = BurstMode.auto,
+    int maxFrames,
+    int byteBudget,
+    int jpegQuality,
+  }) async {
+    if (Platform.isIOS) return;
+
+    await channel.invokeMethod('startBurst', <String, dynamic>{
+      'mode': describeEnum(mode),
+      'maxFrames': maxFrames,
+      'byteBudget': byteBudget,
+      'jpegQuality': jpegQuality,
+    });
+  }
+
+  /// Stops the current burst; frames already captured are still written.
+  Future<void> stopBurst() async {
+    if (Platform.isIOS) return;
+
+    await channel.invokeMethod('stopBurst');
+  }
+
+  /// Writes every preview frame, with its size, rotation and timestamp, to a
+  /// new capture file in the app's external files directory until
+  /// [stopFrameRecording] or until the file reaches [maxBytes] (Android only).
+  /// Returns the path of the file. Frames are raw, so keep recordings short:
+  /// a second of 640x480 preview takes about 14 MB.
+  Future<String> startFrameRecording({int maxBytes}) async {
+    if (Platform.isIOS) return null;
+
+    return await channel.invokeMethod('startFrameRecording', <String, dynamic>{
+      'maxBytes': maxBytes,
+    });
+  }
+
+  /// Finishes the capture file and returns it, or null if nothing was being
+  /// recorded.
+  Future<FrameRecording> stopFrameRecording() async {
+    if (Platform.isIOS) return null;
+
+    final recording = await channel.invokeMethod('stopFrameRecording');
+
+    if (recording == null) return null;
+
+    return FrameRecording._(recording);
+  }
+
+  /// Runs barcode detection on the frames of the capture file at [path]
+  /// instead of the camera's, which keeps showing the live preview (Android
+  /// only). Frames keep their recorded spacing divided by [speed]; a [speed]
+  /// of 0 delivers them as fast as the detector takes them. With [loop] the
+  /// recording starts over at its end. Results arrive on the usual barcode
+  /// stream; [replayEvents] reports the end of the recording. Detection stays
+  /// on the recording until [stopReplay].
+  Future<void> startReplay(String path,
+      {double speed = 1.0, bool loop = false}) async {
+    if (Platform.isIOS) return;
+
+    await channel.invokeMethod('startReplay', <String, dynamic>{
+      'path': path,
+      'speed': speed,
+      'loop': loop,
+    });
+  }
+
+  /// Goes back to detecting on camera frames.
+  Future<void> stopReplay() async {
+    if (Platform.isIOS) return;
+
+    await channel.invokeMethod('stopReplay');
+  }
+
+  /// Reports replays that ran out of frames or failed.
+  Stream<ReplayResult> get replayEvents => _replayEvents.stream;
+
+  /// Saved, dropped and finished events of burst captures.
+  Stream<BurstEvent> get burstEvents => _burstEvents.stream;
+
+  /// Appeared, updated and lost events of barcodes when
+  /// [AdvCamera.barcodeTracking] is enabled (Android only).
+  Stream<BarcodeTrackEvent> get barcodeTrackEvents =>
+      _barcodeTrackEvents.stream;
+
   Stream<BarcodeResponse> _barcodeResponseStream;
   Stream<BarcodeResponse> get barcodeResponseStream {
     _barcodeResponseStream =
         _barcodeEventChannel.receiveBroadcastStream().transform(StreamTransformer<dynamic, BarcodeResponse>.fromHandlers(
             handleData: (data, sink) {
-              sink.add(BarcodeResponse.fromMap(data));
+              sink.add(data is Uint8List
+                  ? BarcodeResponse.fromBytes(data)
+                  : BarcodeResponse.fromMap(data));
             }
             )
         );
@@ -278,4 +543,208 @@ class BarcodeResponse{
     final avgLatency = double.tryParse(data["avgLatency"].toString());
     return BarcodeResponse(barcodeList, avgLatency);
   }
-}
\ No newline at end of file
+
+  /// Decodes the binary events sent by Android, see [decodeBarcodeResults].
+  static BarcodeResponse fromBytes(Uint8List data) {
+    final results = decodeBarcodeResults(data);
+    return BarcodeResponse(results.barcodes, results.avgLatency);
+  }
+}
+
+enum BurstEventType { frameSaved, frameDropped, finished }
+
+class BurstEvent {
+  final BurstEventType type;
+
+  /// Position of the frame in the burst, null for [BurstEventType.finished].
+  final int index;
+
+  /// Capture time in milliseconds since epoch.
+  final int timestamp;
+
+  /// Saved file, only for [BurstEventType.frameSaved].
+  final String path;
+
+  /// `overflow` when the byte budget was full, `error` when writing failed.
+  final String reason;
+
+  /// Totals, only for [BurstEventType.finished].
+  final int captured;
+  final int dropped;
+
+  BurstEvent._(String method, dynamic data)
+      : type = method == "onBurstFrame"
+            ? BurstEventType.frameSaved
+            : method == "onBurstFrameDropped"
+                ? BurstEventType.frameDropped
+                : BurstEventType.finished,
+        index = data['index'] as int,
+        timestamp = data['timestamp'] as int,
+        path = data['path'] as String,
+        reason = data['reason'] as String,
+        captured = data['captured'] as int,
+        dropped = data['dropped'] as int;
+}
+
+/// Latency percentiles of one pipeline stage, in milliseconds. Percentiles
+/// are the upper bounds of histogram buckets, so they round up.
+class LatencySummary {
+  final int count;
+  final double mean;
+  final int p50;
+  final int p95;
+  final int p99;
+
+  LatencySummary._(dynamic data)
+      : count = data['count'] as int,
+        mean = (data['mean'] as num).toDouble(),
+        p50 = data['p50'] as int,
+        p95 = data['p95'] as int,
+        p99 = data['p99'] as int;
+}
+
+/// Snapshot of the ML Vision pipeline over the last [windowMs] milliseconds.
+class PipelineMetrics {
+  final int windowMs;
+
+  /// From the camera delivering a frame to the detector starting on it.
+  final LatencySummary queueWait;
+
+  /// Time spent in the detector.
+  final LatencySummary detector;
+
+  /// From the detector finishing to the results reaching the main thread.
+  final LatencySummary callback;
+
+  /// From the camera to the delivered results.
+  final LatencySummary frame;
+
+  /// Frames that never reached the detector within the window, by reason:
+  /// `superseded`, `detectorBusy`, `noBuffer`, `staticScene` and `blurred`.
+  final Map<String, int> dropped;
+
+  /// Like [dropped], counted since the view was created.
+  final Map<String, int> droppedTotal;
+
+  final int processedTotal;
+
+  /// Sharpness score of the latest frame and the threshold it was held
+  /// against, 0 while blurred frames are neither skipped nor kept.
+  final double sharpness;
+  final double sharpnessThreshold;
+
+  PipelineMetrics._(dynamic data)
+      : windowMs = data['windowMs'] as int,
+        queueWait = LatencySummary._(data['queueWait']),
+        detector = LatencySummary._(data['detector']),
+        callback = LatencySummary._(data['callback']),
+        frame = LatencySummary._(data['frame']),
+        dropped = Map<String, int>.from(data['dropped']),
+        droppedTotal = Map<String, int>.from(data['droppedTotal']),
+        processedTotal = data['processedTotal'] as int,
+        sharpness = (data['sharpness']['score'] as num).toDouble(),
+        sharpnessThreshold = (data['sharpness']['threshold'] as num).toDouble();
+}
+
+/// A level of the scanning governor and the settings it applies.
+class GovernorState {
+  /// 0 (normal) to 3 (minimal).
+  final int level;
+
+  /// `normal`, `reduced`, `saving` or `minimal`.
+  final String levelName;
+
+  /// The signal that caused the level: `none`, `thermal`, `battery`,
+  /// `memory` or `latency`, or `recovering` while stepping back up.
+  final String reason;
+
+  /// Upper bound for the detection rate, 0 when uncapped.
+  final double maxDetectionsPerSecond;
+
+  /// Factor for the preview size.
+  final double previewScale;
+
+  /// Factor for the region of interest, around its center.
+  final double regionScale;
+
+  /// Whether [AdvCamera.governorBarcodeFormats] is scanned instead of
+  /// [AdvCamera.barcodeFormats].
+  final bool reducedFormats;
+
+  GovernorState._(dynamic data)
+      : level = data['level'] as int,
+        levelName = data['levelName'] as String,
+        reason = data['reason'] as String,
+        maxDetectionsPerSecond =
+            (data['maxDetectionsPerSecond'] as num).toDouble(),
+        previewScale = (data['previewScale'] as num).toDouble(),
+        regionScale = (data['regionScale'] as num).toDouble(),
+        reducedFormats = data['reducedFormats'] as bool;
+}
+
+/// One second of pipeline activity.
+class TelemetryRecord {
+  final int sequence;
+
+  /// Wall clock time the record was taken, in milliseconds since the epoch.
+  final int timestampMs;
+
+  final int framesPerSecond;
+
+  /// Mean end-to-end frame latency over the metrics window.
+  final double frameLatencyMs;
+
+  /// Memory available to the system, -1 outside debug mode.
+  final int availableMemoryMb;
+
+  TelemetryRecord._(dynamic data)
+      : sequence = data['sequence'] as int,
+        timestampMs = data['timestampMs'] as int,
+        framesPerSecond = data['framesPerSecond'] as int,
+        frameLatencyMs = (data['frameLatencyMs'] as num).toDouble(),
+        availableMemoryMb = data['availableMemoryMb'] as int;
+}
+
+/// Telemetry records returned by [AdvCameraController.getTelemetry].
+class TelemetryBatch {
+  final List<TelemetryRecord> records;
+
+  /// The sequence number to pass as `since` on the next call.
+  final int next;
+
+  TelemetryBatch._(dynamic data)
+      : records = (data['records'] as List)
+            .map((record) => TelemetryRecord._(record))
+            .toList(),
+        next = data['next'] as int;
+}
+
+/// A capture file written between [AdvCameraController.startFrameRecording]
+/// and [AdvCameraController.stopFrameRecording].
+class FrameRecording {
+  final String path;
+  final int frames;
+  final int bytes;
+
+  FrameRecording._(dynamic data)
+      : path = data['path'] as String,
+        frames = data['frames'] as int,
+        bytes = data['bytes'] as int;
+}
+
+/// The end of a replay started with [AdvCameraController.startReplay].
+class ReplayResult {
+  /// Frames handed to the detection pipeline.
+  final int frames;
+
+  /// Frames skipped because the pipeline still held every buffer.
+  final int skipped;
+
+  /// Why the replay stopped early, null if it played to the end.
+  final String error;
+
+  ReplayResult._(dynamic data)
+      : frames = data['frames'] as int,
+        skipped = data['skipped'] as int,
+        error = data['error'] as String;
+}
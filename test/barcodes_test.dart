@@ -0,0 +1,97 @@
+import 'dart:convert';
+import 'dart:typed_data';
+import 'dart:ui';
+
+import 'package:adv_camera/adv_camera.dart';
+import 'package:flutter_test/flutter_test.dart';
+
+/// The message pinned in BarcodeResultEncoderTest on Android: one QR code
+/// with bounds, one corner point, raw value 'A' and no display value.
+final Uint8List pinned = Uint8List.fromList(<int>[
+  1, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0x29, 0x40, //
+  0, 1, 0, 0, 7, 0, 0, 0, //
+  1, 1, 0, 0, 0, 2, 0, 0, 0, 3, 0, 0, 0, 4, 0, 0, 0, //
+  1, 5, 0, 0, 0, 6, 0, 0, 0, //
+  1, 0, 0, 0, 0x41, //
+  0xFF, 0xFF, 0xFF, 0xFF,
+]);
+
+/// The track event message pinned in BarcodeResultEncoderTest: the barcode of
+/// [pinned] as a lost event of track 7.
+final Uint8List pinnedTrackEvent = Uint8List.fromList(<int>[
+  1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0x29, 0x40, //
+  2, 7, 0, 0, 0, //
+  0, 1, 0, 0, 7, 0, 0, 0, //
+  1, 1, 0, 0, 0, 2, 0, 0, 0, 3, 0, 0, 0, 4, 0, 0, 0, //
+  1, 5, 0, 0, 0, 6, 0, 0, 0, //
+  1, 0, 0, 0, 0x41, //
+  0xFF, 0xFF, 0xFF, 0xFF,
+]);
+
+Uint8List _withRawValue(List<int> utf8Bytes) {
+  final header = <int>[1, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0];
+  final barcode = List<int>.filled(26, 0);
+  final length = ByteData(4)..setInt32(0, utf8Bytes.length, Endian.little);
+  return Uint8List.fromList(<int>[]
+    ..addAll(header)
+    ..addAll(barcode)
+    ..addAll(length.buffer.asUint8List())
+    ..addAll(utf8Bytes)
+    ..addAll(<int>[0xFF, 0xFF, 0xFF, 0xFF]));
+}
+
+void main() {
+  test('decodes the pinned layout', () {
+    final results = decodeBarcodeResults(pinned);
+
+    expect(results.avgLatency, 12.5);
+    expect(results.barcodes, hasLength(1));
+    final barcode = results.barcodes.single;
+    expect(barcode.format, BarcodeFormat.qrCode);
+    expect(barcode.valueType, BarcodeValueType.text);
+    expect(barcode.boundingBox, const Rect.fromLTWH(1, 2, 3, 4));
+    expect(barcode.cornerPoints, const <Offset>[Offset(5, 6)]);
+    expect(barcode.rawValue, 'A');
+    expect(barcode.displayValue, isNull);
+  });
+
+  test('decodes a view into a larger buffer', () {
+    final padded = Uint8List(pinned.length + 8)..setRange(4, 4 + pinned.length, pinned);
+    final view = Uint8List.view(padded.buffer, 4, pinned.length);
+
+    expect(decodeBarcodeResults(view).barcodes.single.rawValue, 'A');
+  });
+
+  test('decodes non-BMP characters', () {
+    const value = 'aé€\u{1F600}z';
+
+    final results = decodeBarcodeResults(_withRawValue(utf8.encode(value)));
+
+    expect(results.barcodes.single.rawValue, value);
+    expect(results.barcodes.single.boundingBox, isNull);
+    expect(results.barcodes.single.cornerPoints, isEmpty);
+  });
+
+  test('rejects an unknown version', () {
+    final bytes = Uint8List.fromList(pinned)..[0] = barcodeResultsVersion + 1;
+
+    expect(() => decodeBarcodeResults(bytes), throwsFormatException);
+  });
+
+  test('decodes the pinned track event layout', () {
+    final event = decodeBarcodeTrackEvents(pinnedTrackEvent).single;
+
+    expect(event.type, BarcodeTrackEventType.lost);
+    expect(event.trackId, 7);
+    expect(event.barcode.format, BarcodeFormat.qrCode);
+    expect(event.barcode.boundingBox, const Rect.fromLTWH(1, 2, 3, 4));
+    expect(event.barcode.cornerPoints, const <Offset>[Offset(5, 6)]);
+    expect(event.barcode.rawValue, 'A');
+    expect(event.barcode.displayValue, isNull);
+  });
+
+  test('rejects a message of the other kind', () {
+    expect(() => decodeBarcodeResults(pinnedTrackEvent), throwsFormatException);
+    expect(() => decodeBarcodeTrackEvents(pinned), throwsFormatException);
+  });
+}